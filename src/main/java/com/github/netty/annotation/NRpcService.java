@@ -48,4 +48,13 @@ public @interface NRpcService {
      * @return method timeout (milliseconds)
      */
     int timeout() default DEFAULT_TIME_OUT;
+
+    /**
+     * Maximum concurrent calls of the service. (per service, all connections share the limit)
+     * 0 then use server default {@code server.netty.nrpc.threadPool.virtualMaxConcurrencyPerService} if virtual thread mode, else unlimited.
+     * less than 0 then unlimited
+     *
+     * @return max concurrency
+     */
+    int maxConcurrency() default 0;
 }
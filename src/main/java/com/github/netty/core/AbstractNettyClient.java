@@ -33,6 +33,10 @@ public abstract class AbstractNettyClient implements Closeable {
     protected InetSocketAddress remoteAddress;
     private Bootstrap bootstrap;
     private EventLoopGroup worker;
+    /**
+     * the worker is set by {@link #setWorker(EventLoopGroup)} and shared with the other clients. the caller shutdown it, not the stop
+     */
+    private boolean sharedWorker;
     private final boolean enableEpoll;
     private volatile SocketChannel channel;
     private int ioThreadCount = 0;
@@ -96,9 +100,21 @@ public abstract class AbstractNettyClient implements Closeable {
         return channelFactory;
     }
 
+    /**
+     * New a worker that shared by many clients (e.g. the clients of a connection pool). the caller own it
+     *
+     * @return worker
+     * @see #setWorker(EventLoopGroup)
+     */
+    public EventLoopGroup newSharedWorker() {
+        return newWorkerEventLoopGroup();
+    }
+
     protected AbstractNettyClient init() {
         this.bootstrap = newClientBootstrap();
-        this.worker = newWorkerEventLoopGroup();
+        if (!sharedWorker) {
+            this.worker = newWorkerEventLoopGroup();
+        }
         ChannelFactory<? extends Channel> channelFactory = newClientChannelFactory();
         ChannelHandler bossChannelHandler = newBossChannelHandler();
 
@@ -173,6 +189,17 @@ public abstract class AbstractNettyClient implements Closeable {
         return worker;
     }
 
+    /**
+     * Use the shared worker instead of new a worker on init. the stop not shutdown the shared worker
+     *
+     * @param worker shared worker. null is new a worker on init
+     * @see #newSharedWorker()
+     */
+    public void setWorker(EventLoopGroup worker) {
+        this.worker = worker;
+        this.sharedWorker = worker != null;
+    }
+
     public int getIoRatio() {
         return ioRatio;
     }
@@ -212,8 +239,10 @@ public abstract class AbstractNettyClient implements Closeable {
         }
         return channel.close().addListener((ChannelFutureListener) future -> {
             AbstractNettyClient.this.bootstrap = null;
-            AbstractNettyClient.this.worker.shutdownGracefully();
-            AbstractNettyClient.this.worker = null;
+            if (!sharedWorker) {
+                AbstractNettyClient.this.worker.shutdownGracefully();
+                AbstractNettyClient.this.worker = null;
+            }
             AbstractNettyClient.this.initFlag.set(false);
             AbstractNettyClient.this.channel = null;
             stopAfter(future);
@@ -71,6 +71,8 @@ public class ApplicationX {
     private final Map<Class, String[]> beanNameMap = new ConcurrentHashMap<>(64);
     //存放别名与别名关系或别名与bean名称的关系
     private final Map<String, String> beanAliasMap = new ConcurrentHashMap<>(6);
+    //存放类型与该类型bean注册次数的关系(用于缓存按类型查找的结果, 注册了新的该类型bean时失效)
+    private final Map<Class, AtomicInteger> beanTypeVersionMap = new ConcurrentHashMap<>(8);
     //存放bean名称与bean描述的关系
     private final Map<String, BeanDefinition> beanDefinitionMap = new ConcurrentHashMap<>(64);
     //存放bean名称与单例对象的关系
@@ -995,7 +997,28 @@ public class ApplicationX {
         nameSet.add(beanName);
 
         beanNameMap.put(beanClass, nameSet.toArray(new String[0]));
-        return beanDefinitionMap.put(beanName, definition);
+        BeanDefinition oldDefinition = beanDefinitionMap.put(beanName, definition);
+        for (Map.Entry<Class, AtomicInteger> entry : beanTypeVersionMap.entrySet()) {
+            if (beanClass == null || entry.getKey().isAssignableFrom(beanClass)) {
+                entry.getValue().incrementAndGet();
+            }
+        }
+        return oldDefinition;
+    }
+
+    /**
+     * 获取类型的版本号. 每注册一个该类型(或子类型)的bean, 版本号加一.
+     * 用于缓存 {@link #getBeanForType(Class)} 的结果, 版本号变化后重新查找
+     *
+     * @param clazz bean类型
+     * @return 版本号
+     */
+    public int getBeanTypeVersion(Class clazz) {
+        AtomicInteger version = beanTypeVersionMap.get(clazz);
+        if (version == null) {
+            version = beanTypeVersionMap.computeIfAbsent(clazz, k -> new AtomicInteger());
+        }
+        return version.get();
     }
 
     /**
@@ -0,0 +1,88 @@
+package com.github.netty.core.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limit the concurrent running tasks of a executor that has no pool size (for example, virtual thread per task executor).
+ * The task thread wait the permit before run, so the caller (event loop) never block.
+ * Note: Do not wrap a bounded thread pool, the waiting tasks will occupy the pool threads.
+ *
+ * @author wangzihao
+ */
+public class ConcurrencyLimitExecutor implements Executor {
+    private final Executor delegate;
+    private final int maxConcurrency;
+    private final Semaphore semaphore;
+    private final AtomicInteger waitingCount = new AtomicInteger();
+
+    /**
+     * @param delegate       executor to run the task
+     * @param maxConcurrency max concurrent running tasks. less than or equal to 0 is unlimited
+     */
+    public ConcurrencyLimitExecutor(Executor delegate, int maxConcurrency) {
+        this.delegate = delegate;
+        this.maxConcurrency = Math.max(maxConcurrency, 0);
+        this.semaphore = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (semaphore == null) {
+            delegate.execute(command);
+        } else {
+            delegate.execute(() -> {
+                if (!semaphore.tryAcquire()) {
+                    waitingCount.incrementAndGet();
+                    try {
+                        semaphore.acquireUninterruptibly();
+                    } finally {
+                        waitingCount.decrementAndGet();
+                    }
+                }
+                try {
+                    command.run();
+                } finally {
+                    semaphore.release();
+                }
+            });
+        }
+    }
+
+    public Executor getDelegate() {
+        return delegate;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Number of the tasks running now
+     *
+     * @return active count. -1 if unlimited
+     */
+    public int getActiveCount() {
+        return semaphore != null ? maxConcurrency - semaphore.availablePermits() : -1;
+    }
+
+    /**
+     * Number of the tasks waiting the permit
+     *
+     * @return waiting count
+     */
+    public int getWaitingCount() {
+        return waitingCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimitExecutor{" +
+                "maxConcurrency=" + maxConcurrency +
+                ", activeCount=" + getActiveCount() +
+                ", waitingCount=" + waitingCount.get() +
+                ", delegate=" + delegate +
+                '}';
+    }
+}
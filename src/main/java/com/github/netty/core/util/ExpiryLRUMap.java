@@ -3,6 +3,8 @@ package com.github.netty.core.util;
 import java.lang.ref.Reference;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -18,6 +20,7 @@ import java.util.function.Function;
  * 5. gc回收 Reference(Weak,Soft,strong). {@link #ExpiryLRUMap(int, long, long, ConcurrentLinkedHashMap.Weigher, Class)}
  * 6. 统计功能(miss, hit) {@link #getHitCount()} {@link #getMissCount()}
  * 7. null值替换, 防止缓存击穿 {@link #setReplaceNullValueFlag(boolean)} {@link #NULL} if(data == ExpiryLRUMap.NULL)
+ * 8. 每个map独立的过期索引, 过期通知按map批量派发 {@link #setExpiryExecutor(Executor)}, 可指定扫描间隔 {@link #setScanInterval(long)}
  * 
  * 常用场景 ： localCache
  *
@@ -30,20 +33,42 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
             return "ExpiryLRUMap.NULL";
         }
     };
-    private static final ConcurrentSkipListSet<Node> NO_EXPIRY_NODES = new ConcurrentSkipListSet<>((o1, o2) -> {
+    private static final Comparator<Node> EXPIRY_COMPARATOR = (o1, o2) -> {
         if (o1 == o2) {
             return 0;
         }
         long x = o1.getExpiryTimestamp();
         long y = o2.getExpiryTimestamp();
         return x <= y ? -1 : 1;
-    });
-    private static final BlockingQueue<Node<?, ?>> EXPIRY_NOTIFY_QUEUE = new LinkedBlockingQueue<>();
+    };
     private static final Set<ExpiryLRUMap<?, ?>> INSTANCE_SET = Collections.newSetFromMap(new WeakHashMap<>());
     private static volatile ScheduledFuture<?> SCHEDULED_FUTURE;
     private final transient LongAdder missCount = new LongAdder();
     private final transient LongAdder hitCount = new LongAdder();
     private final ConcurrentLinkedHashMap<K, Node<K, V>> map;
+    /**
+     * 本map的过期索引(按过期时间排序). 每个map独立, 不与其他map竞争
+     */
+    private final ConcurrentSkipListSet<Node<K, V>> expiryNodes = new ConcurrentSkipListSet<>(EXPIRY_COMPARATOR);
+    /**
+     * 待通知的过期节点. 批量派发到 {@link #expiryExecutor}, 同一个map的通知串行执行, 一个map的慢通知不会阻塞其他map
+     */
+    private final Queue<Node<K, V>> expiryNotifyQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean expiryNotifying = new AtomicBoolean();
+    private final Runnable expiryNotifyTask = this::drainExpiryNotifyQueue;
+    /**
+     * 过期通知的执行器. 默认 {@link ExpiresNotify#getDefaultExecutor()}, 拒绝时由扫描线程通知
+     */
+    private volatile Executor expiryExecutor = ExpiresNotify.getDefaultExecutor();
+    /**
+     * 兼容 {@link #getExpiryNotifyQueue()}. 开启后本map过期的节点(通知consumer之后)放入该队列
+     */
+    private volatile boolean legacyNotifyQueueEnable;
+    /**
+     * 扫描间隔(毫秒). 小于等于全局扫描间隔时, 每次全局扫描都会扫描本map
+     */
+    private volatile long scanInterval;
+    private long nextScanTimestamp;
     private long defaultExpiryTime;
     /**
      * null值替换, 防止缓存提击穿. 需要设置成true后, 取值后需要判断是否 data == ExpiryLRUMap.NULL
@@ -116,8 +141,17 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         return Collections.unmodifiableSet(INSTANCE_SET);
     }
 
+    /**
+     * 过期通知队列已改为每个map独立, 并批量派发.
+     * 只有 {@link #setLegacyNotifyQueueEnable(boolean)} 开启的map, 过期的节点(通知consumer之后)才会放入本队列, 供旧代码take(). 队列满时丢弃最旧的节点.
+     * offer的节点转交给节点所属map派发
+     *
+     * @return 过期节点的队列
+     * @deprecated 通知由节点所属的map派发 {@link #setOnExpiryConsumer(Consumer)}
+     */
+    @Deprecated
     public static BlockingQueue<Node<?, ?>> getExpiryNotifyQueue() {
-        return EXPIRY_NOTIFY_QUEUE;
+        return ExpiresNotify.LEGACY_NOTIFY_QUEUE;
     }
 
     public static boolean isExpiry(Node node) {
@@ -226,6 +260,129 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         this.onRemoveConsumer = onRemoveConsumer;
     }
 
+    public Executor getExpiryExecutor() {
+        return expiryExecutor;
+    }
+
+    /**
+     * 设置本map的过期通知执行器. 执行器拒绝时, 由扫描线程通知
+     *
+     * @param expiryExecutor null is {@link ExpiresNotify#getDefaultExecutor()}
+     */
+    public void setExpiryExecutor(Executor expiryExecutor) {
+        this.expiryExecutor = expiryExecutor == null ? ExpiresNotify.getDefaultExecutor() : expiryExecutor;
+    }
+
+    public boolean isLegacyNotifyQueueEnable() {
+        return legacyNotifyQueueEnable;
+    }
+
+    /**
+     * 本map过期的节点是否放入 {@link #getExpiryNotifyQueue()}. 默认不放入
+     *
+     * @param legacyNotifyQueueEnable true=放入
+     * @deprecated 使用 {@link #setOnExpiryConsumer(Consumer)}
+     */
+    @Deprecated
+    public void setLegacyNotifyQueueEnable(boolean legacyNotifyQueueEnable) {
+        this.legacyNotifyQueueEnable = legacyNotifyQueueEnable;
+    }
+
+    public long getScanInterval() {
+        return scanInterval;
+    }
+
+    /**
+     * 设置本map的扫描间隔. 实际间隔不会小于全局扫描间隔 (系统属性 ExpiryLRUMap-ExpiresScan.interval, 默认100毫秒)
+     *
+     * @param scanInterval 毫秒
+     */
+    public void setScanInterval(long scanInterval) {
+        this.scanInterval = scanInterval;
+    }
+
+    /**
+     * 等待过期的节点数量
+     *
+     * @return expiry node count
+     */
+    public int getExpiryNodeCount() {
+        return expiryNodes.size();
+    }
+
+    /**
+     * 扫描过期节点, 放入通知队列
+     *
+     * @param now 当前时间
+     */
+    void scanExpiry(long now) {
+        if (expiryNodes.isEmpty()) {
+            return;
+        }
+        long scanInterval = this.scanInterval;
+        if (scanInterval > 0) {
+            if (now < nextScanTimestamp) {
+                return;
+            }
+            nextScanTimestamp = now + scanInterval;
+        }
+        Node<K, V> nowNode = new Node<>(0, null, null, null);
+        NavigableSet<Node<K, V>> headNodes = expiryNodes.headSet(nowNode);
+        if (headNodes.isEmpty()) {
+            return;
+        }
+        boolean notify = false;
+        Iterator<Node<K, V>> iterator = headNodes.iterator();
+        while (iterator.hasNext()) {
+            Node<K, V> expiryRemoveNode = iterator.next();
+            boolean remove;
+            synchronized (expiryRemoveNode) {
+                remove = map.remove(expiryRemoveNode.getKey(), expiryRemoveNode);
+            }
+            iterator.remove();
+            // removed by user or eviction. drop the index without notify
+            if (remove || expiryRemoveNode.covered) {
+                expiryNotifyQueue.offer(expiryRemoveNode);
+                notify = true;
+            }
+        }
+        if (notify) {
+            dispatchExpiryNotify();
+        }
+    }
+
+    private void dispatchExpiryNotify() {
+        if (expiryNotifying.compareAndSet(false, true)) {
+            try {
+                expiryExecutor.execute(expiryNotifyTask);
+            } catch (RejectedExecutionException e) {
+                // notify by caller thread
+                drainExpiryNotifyQueue();
+            }
+        }
+    }
+
+    private void drainExpiryNotifyQueue() {
+        do {
+            Node<K, V> node;
+            while ((node = expiryNotifyQueue.poll()) != null) {
+                Consumer<Node<K, V>> consumer = this.onExpiryConsumer;
+                if (consumer != null) {
+                    try {
+                        consumer.accept(node);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+                if (legacyNotifyQueueEnable) {
+                    ExpiresNotify.LEGACY_NOTIFY_QUEUE.publish(node);
+                }
+            }
+            expiryNotifying.set(false);
+            // offer after poll end. and the scan thread see notifying=true
+        } while (!expiryNotifyQueue.isEmpty() && expiryNotifying.compareAndSet(false, true));
+    }
+
     public boolean isReplaceNullValueFlag() {
         return replaceNullValueFlag;
     }
@@ -292,7 +449,7 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         if (old == null) {
             return null;
         } else {
-            NO_EXPIRY_NODES.remove(old);
+            expiryNodes.remove(old);
             notifyRemove(old);
             return old.getData();
         }
@@ -326,7 +483,7 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
     public void clear() {
         ArrayList<Node<K, V>> nodes = new ArrayList<>(map.values());
         map.clear();
-        nodes.forEach(NO_EXPIRY_NODES::remove);
+        nodes.forEach(expiryNodes::remove);
     }
 
     @Override
@@ -358,7 +515,7 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         Node<K, V> old = map.get(key);
         if (old != null && Objects.equals(old.getData(), value)) {
             map.remove(key, old);
-            NO_EXPIRY_NODES.remove(old);
+            expiryNodes.remove(old);
             notifyRemove(old);
             return true;
         }
@@ -515,7 +672,7 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
             this.data = value;
             this.expiryLRUMap = expiryLRUMap;
             if (expiryLRUMap != null && expiryTimestamp != Long.MAX_VALUE) {
-                NO_EXPIRY_NODES.add(this);
+                expiryLRUMap.expiryNodes.add(this);
             }
         }
 
@@ -580,29 +737,83 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         }
     }
 
-    public static class ExpiresNotify extends Thread {
-        @Override
-        public void run() {
-            while (true) {
-                ExpiryLRUMap.Node node;
-                try {
-                    node = EXPIRY_NOTIFY_QUEUE.take();
-                } catch (InterruptedException e) {
-                    return;
+    /**
+     * 过期通知. 不再是单独的通知线程, 每个map在 {@link #getExpiryExecutor()} 中派发
+     */
+    public static class ExpiresNotify {
+        private static final AtomicInteger THREAD_ID = new AtomicInteger();
+        private static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setName("ExpiryLRUMap-ExpiresNotify-" + THREAD_ID.incrementAndGet());
+            return thread;
+        });
+
+        /**
+         * 默认的过期通知线程池. 每个map同时只占用一个线程
+         *
+         * @return Executor
+         */
+        public static Executor getDefaultExecutor() {
+            return DEFAULT_EXECUTOR;
+        }
+
+        private static final int LEGACY_NOTIFY_QUEUE_CAPACITY = 65536;
+        /**
+         * 兼容 {@link #getExpiryNotifyQueue()}. offer的节点转交给节点所属map派发
+         */
+        private static final LegacyNotifyQueue LEGACY_NOTIFY_QUEUE = new LegacyNotifyQueue();
+
+        private static class LegacyNotifyQueue extends LinkedBlockingQueue<Node<?, ?>> {
+            private LegacyNotifyQueue() {
+                super(LEGACY_NOTIFY_QUEUE_CAPACITY);
+            }
+
+            /**
+             * 放入map过期的节点. 队列满时丢弃最旧的节点
+             */
+            private void publish(Node<?, ?> node) {
+                while (!super.offer(node)) {
+                    poll();
                 }
-                Consumer<Node> consumer = node.expiryLRUMap.onExpiryConsumer;
-                if (consumer != null) {
-                    try {
-                        consumer.accept(node);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+            }
+
+            @Override
+            public boolean offer(Node<?, ?> node) {
+                ExpiryLRUMap expiryLRUMap = node.getExpiryLRUMap();
+                if (expiryLRUMap == null) {
+                    return false;
                 }
+                expiryLRUMap.expiryNotifyQueue.offer(node);
+                expiryLRUMap.dispatchExpiryNotify();
+                return true;
+            }
+
+            @Override
+            public boolean offer(Node<?, ?> node, long timeout, TimeUnit unit) {
+                return offer(node);
+            }
+
+            @Override
+            public boolean add(Node<?, ?> node) {
+                if (!offer(node)) {
+                    throw new IllegalStateException("node not in ExpiryLRUMap");
+                }
+                return true;
+            }
+
+            @Override
+            public void put(Node<?, ?> node) {
+                add(node);
             }
         }
     }
 
     public static class ExpiresScan implements Runnable {
+        /**
+         * @deprecated 不再有通知线程, 保留为了兼容. 过期通知见 {@link ExpiresNotify#getDefaultExecutor()}
+         */
+        @Deprecated
         public static final ExpiresNotify NOTIFY_INSTANCE = new ExpiresNotify();
         static final ScheduledExecutorService SCHEDULED = Executors.newScheduledThreadPool(1, runnable -> {
             Thread thread = new Thread(runnable);
@@ -613,12 +824,6 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         });
         private static final ExpiresScan INSTANCE = new ExpiresScan();
 
-        static {
-            NOTIFY_INSTANCE.setDaemon(true);
-            NOTIFY_INSTANCE.setName("ExpiryLRUMap-ExpiresNotify-" + NOTIFY_INSTANCE.getId());
-            NOTIFY_INSTANCE.start();
-        }
-
         static long getScheduleInterval() {
             String intervalMillisecond = System.getProperty("ExpiryLRUMap-ExpiresScan.interval");
             long intervalLong = 100;
@@ -640,50 +845,21 @@ public class ExpiryLRUMap<K, V> extends AbstractMap<K, V> implements ConcurrentM
         @Override
         public void run() {
             try {
-                if (INSTANCE_SET.isEmpty()) {
-                    synchronized (INSTANCE_SET) {
-                        if (INSTANCE_SET.isEmpty()) {
-                            NO_EXPIRY_NODES.clear();
-                            ScheduledFuture<?> scheduledFuture = SCHEDULED_FUTURE;
-                            scheduledFuture.cancel(false);
-                            SCHEDULED_FUTURE = null;
-                        }
+                synchronized (INSTANCE_SET) {
+                    if (INSTANCE_SET.isEmpty()) {
+                        ScheduledFuture<?> scheduledFuture = SCHEDULED_FUTURE;
+                        scheduledFuture.cancel(false);
+                        SCHEDULED_FUTURE = null;
+                        return;
                     }
-                    return;
-                }
-                if (NO_EXPIRY_NODES.isEmpty()) {
-                    return;
-                }
-                Node now = new Node<>(0, null, null, null);
-                NavigableSet<Node> expiryNodes = NO_EXPIRY_NODES.headSet(now);
-                if (expiryNodes.isEmpty()) {
-                    return;
-                }
-                Iterator<Node> iterator = expiryNodes.iterator();
-                List<Node> removeList = new ArrayList<>();
-                while (iterator.hasNext()) {
-                    Node expiryRemoveNode = iterator.next();
-                    synchronized (expiryRemoveNode) {
-                        boolean remove = expiryRemoveNode.getExpiryLRUMap().map.remove(expiryRemoveNode.getKey(), expiryRemoveNode);
-                        if (!remove && !expiryRemoveNode.covered) {
-                            continue;
+                    long now = System.currentTimeMillis();
+                    for (ExpiryLRUMap<?, ?> instance : INSTANCE_SET) {
+                        try {
+                            instance.scanExpiry(now);
+                        } catch (Exception e) {
+                            e.printStackTrace();
                         }
                     }
-
-                    try {
-                        iterator.remove();
-                        removeList.add(expiryRemoveNode);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-
-                try {
-                    for (Node expiryRemoveNode : removeList) {
-                        EXPIRY_NOTIFY_QUEUE.offer(expiryRemoveNode);
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
                 }
             } catch (Exception e) {
                 e.printStackTrace();
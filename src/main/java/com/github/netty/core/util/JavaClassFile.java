@@ -371,7 +371,20 @@ public class JavaClassFile {
         V9(0 << 16 | 53),
         V10(0 << 16 | 54),
         V11(0 << 16 | 55),
-        V12(0 << 16 | 56);
+        V12(0 << 16 | 56),
+        V13(0 << 16 | 57),
+        V14(0 << 16 | 58),
+        V15(0 << 16 | 59),
+        V16(0 << 16 | 60),
+        V17(0 << 16 | 61),
+        V18(0 << 16 | 62),
+        V19(0 << 16 | 63),
+        V20(0 << 16 | 64),
+        V21(0 << 16 | 65),
+        V22(0 << 16 | 66),
+        V23(0 << 16 | 67),
+        V24(0 << 16 | 68),
+        V25(0 << 16 | 69);
 
         private long major;
 
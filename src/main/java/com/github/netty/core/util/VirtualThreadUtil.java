@@ -0,0 +1,91 @@
+package com.github.netty.core.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual thread (JDK21+) support.
+ * The project is compiled for java 17, so the virtual thread api is called by reflection. on older JVMs {@link #isSupported()} is false.
+ *
+ * @author wangzihao
+ */
+public class VirtualThreadUtil {
+    private static final LoggerX LOGGER = LoggerFactoryX.getLogger(VirtualThreadUtil.class);
+    private static final Method OF_VIRTUAL_METHOD;
+    private static final Method NAME_METHOD;
+    private static final Method FACTORY_METHOD;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR_METHOD;
+
+    static {
+        Method ofVirtual;
+        Method name;
+        Method factory;
+        Method newThreadPerTaskExecutor;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            name = builderClass.getMethod("name", String.class, long.class);
+            factory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (Throwable e) {
+            ofVirtual = null;
+            name = null;
+            factory = null;
+            newThreadPerTaskExecutor = null;
+        }
+        OF_VIRTUAL_METHOD = ofVirtual;
+        NAME_METHOD = name;
+        FACTORY_METHOD = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR_METHOD = newThreadPerTaskExecutor;
+    }
+
+    /**
+     * is the JVM support virtual thread
+     *
+     * @return true if JDK21+
+     */
+    public static boolean isSupported() {
+        return NEW_THREAD_PER_TASK_EXECUTOR_METHOD != null;
+    }
+
+    /**
+     * new virtual thread factory
+     *
+     * @param namePrefix thread name prefix. thread name = prefix + index
+     * @return null if not support
+     */
+    public static ThreadFactory newVirtualThreadFactory(String namePrefix) {
+        if (!isSupported()) {
+            return null;
+        }
+        try {
+            Object builder = OF_VIRTUAL_METHOD.invoke(null);
+            builder = NAME_METHOD.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) FACTORY_METHOD.invoke(builder);
+        } catch (Exception e) {
+            LOGGER.warn("newVirtualThreadFactory fail. {}", e.toString(), e);
+            return null;
+        }
+    }
+
+    /**
+     * new executor that start a new virtual thread for each task. (no pool, no queue)
+     *
+     * @param namePrefix thread name prefix
+     * @return null if not support
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        ThreadFactory threadFactory = newVirtualThreadFactory(namePrefix);
+        if (threadFactory == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR_METHOD.invoke(null, threadFactory);
+        } catch (Exception e) {
+            LOGGER.warn("newVirtualThreadPerTaskExecutor fail. {}", e.toString(), e);
+            return null;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import jakarta.servlet.Servlet;
 import jakarta.servlet.ServletContextEvent;
 import jakarta.servlet.ServletException;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -141,6 +142,22 @@ public class HttpServletProtocol extends AbstractProtocol {
 
         destroyFilter();
         destroyServlet();
+        destroySessionService();
+        servletContext.shutdownUploadExecutor();
+    }
+
+    /**
+     * Close the session service. (for example: write the queued sessions of the local file session)
+     */
+    protected void destroySessionService() {
+        SessionService sessionService = servletContext.getSessionService();
+        if (sessionService instanceof Closeable) {
+            try {
+                ((Closeable) sessionService).close();
+            } catch (Exception e) {
+                LOGGER.warn("destroySessionService error={},sessionService={}", e.toString(), sessionService, e);
+            }
+        }
     }
 
     @Override
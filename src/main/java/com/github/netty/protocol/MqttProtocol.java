@@ -16,12 +16,18 @@ import com.github.netty.protocol.mqtt.subscriptions.ISubscriptionsDirectory;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
 import io.netty.handler.codec.mqtt.MqttDecoder;
 import io.netty.handler.codec.mqtt.MqttEncoder;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
 import io.netty.handler.timeout.IdleStateHandler;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Internet of things messaging protocol
@@ -38,6 +44,27 @@ public class MqttProtocol extends AbstractProtocol {
     private String metricsLibratoEmail;
     private String metricsLibratoToken;
     private String metricsLibratoSource;
+    /**
+     * The directory of the segment file store (queue, retained, subscriptions). null or empty = in memory store
+     *
+     * @see com.github.netty.protocol.mqtt.config.BrokerConstants#PERSISTENT_STORE_PROPERTY_NAME
+     */
+    private String persistentStorePath;
+    /**
+     * The group commit interval of the segment file store (milliseconds)
+     *
+     * @see com.github.netty.protocol.mqtt.config.BrokerConstants#AUTOSAVE_INTERVAL_PROPERTY_NAME
+     */
+    private long autosaveIntervalMs = SegmentFileStore.DEFAULT_AUTOSAVE_INTERVAL_MS;
+    private int segmentSize = SegmentFileStore.DEFAULT_SEGMENT_SIZE;
+    /**
+     * The global byte limit of the in memory offline queues (the off-heap arena size). less than or equal to 0 = unbounded queue (default)
+     */
+    private int queueMaxBytes = 0;
+    private int queueMaxBytesPerClient = OffHeapQueueRepository.DEFAULT_MAX_BYTES_PER_CLIENT;
+    private OffHeapQueueRepository.OverflowPolicy queueOverflowPolicy = OffHeapQueueRepository.OverflowPolicy.DROP_OLDEST;
+    private IQueueRepository queueRepository;
+    private final List<Closeable> repositories = new ArrayList<>();
 
     private MqttIdleTimeoutChannelHandler timeoutHandler = new MqttIdleTimeoutChannelHandler();
     private MqttLoggerChannelHandler mqttMessageLoggerChannelHandler = new MqttLoggerChannelHandler();
@@ -101,9 +128,28 @@ public class MqttProtocol extends AbstractProtocol {
     public <T extends AbstractNettyServer> void onServerStart(T server) throws Exception {
         IAuthorizatorPolicy authorizatorPolicy = initializeAuthorizatorPolicy();
 
-        ISubscriptionsDirectory subscriptions = new CTrieSubscriptionDirectory(new MemorySubscriptionsRepository());
-        MqttSessionRegistry sessions = new MqttSessionRegistry(subscriptions, new MemoryQueueRepository());
-        mqttPostOffice = new MqttPostOffice(subscriptions, authorizatorPolicy, new MemoryRetainedRepository(), sessions, interceptor);
+        ISubscriptionsRepository subscriptionsRepository;
+        IQueueRepository queueRepository;
+        IRetainedRepository retainedRepository;
+        if (persistentStorePath == null || persistentStorePath.isEmpty()) {
+            subscriptionsRepository = new MemorySubscriptionsRepository();
+            if (queueMaxBytes > 0) {
+                queueRepository = addRepository(new OffHeapQueueRepository(queueMaxBytes, queueMaxBytesPerClient, queueOverflowPolicy));
+            } else {
+                queueRepository = new MemoryQueueRepository();
+            }
+            retainedRepository = new MemoryRetainedRepository();
+        } else {
+            File dir = new File(persistentStorePath);
+            logger.info("MQTT persistent store path = '{}', autosaveIntervalMs = {}", dir.getAbsolutePath(), autosaveIntervalMs);
+            subscriptionsRepository = addRepository(new SegmentFileSubscriptionsRepository(new File(dir, "subscriptions"), segmentSize, autosaveIntervalMs));
+            queueRepository = addRepository(new SegmentFileQueueRepository(new File(dir, "queue"), segmentSize, autosaveIntervalMs));
+            retainedRepository = addRepository(new SegmentFileRetainedRepository(new File(dir, "retained"), segmentSize, autosaveIntervalMs));
+        }
+        this.queueRepository = queueRepository;
+        ISubscriptionsDirectory subscriptions = new CTrieSubscriptionDirectory(subscriptionsRepository);
+        MqttSessionRegistry sessions = new MqttSessionRegistry(subscriptions, queueRepository);
+        mqttPostOffice = new MqttPostOffice(subscriptions, authorizatorPolicy, retainedRepository, sessions, interceptor);
         mqttServerChannelHandler = new MqttServerChannelHandler(interceptor, new BrokerConfiguration(), new AcceptAllAuthenticator(), sessions, mqttPostOffice);
     }
 
@@ -112,6 +158,30 @@ public class MqttProtocol extends AbstractProtocol {
         if (interceptor != null) {
             interceptor.stop();
         }
+        // the worker event loops still handle the publish/subscribe until the server channels are closed
+        List<Closeable> repositories = new ArrayList<>(this.repositories);
+        this.repositories.clear();
+        EventLoopGroup worker = server.getWorker();
+        if (worker != null && !worker.isTerminated()) {
+            worker.terminationFuture().addListener(future -> closeRepositories(repositories));
+        } else {
+            closeRepositories(repositories);
+        }
+    }
+
+    private void closeRepositories(List<Closeable> repositories) {
+        for (Closeable repository : repositories) {
+            try {
+                repository.close();
+            } catch (IOException e) {
+                logger.warn("close MQTT repository error. repository={}, error={}", repository, e.toString());
+            }
+        }
+    }
+
+    private <T extends Closeable> T addRepository(T repository) {
+        repositories.add(repository);
+        return repository;
     }
 
     protected IAuthorizatorPolicy initializeAuthorizatorPolicy() {
@@ -179,4 +249,59 @@ public class MqttProtocol extends AbstractProtocol {
         this.metricsLibratoSource = metricsLibratoSource;
     }
 
+    public String getPersistentStorePath() {
+        return persistentStorePath;
+    }
+
+    public void setPersistentStorePath(String persistentStorePath) {
+        this.persistentStorePath = persistentStorePath;
+    }
+
+    public long getAutosaveIntervalMs() {
+        return autosaveIntervalMs;
+    }
+
+    public void setAutosaveIntervalMs(long autosaveIntervalMs) {
+        this.autosaveIntervalMs = autosaveIntervalMs;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public int getQueueMaxBytes() {
+        return queueMaxBytes;
+    }
+
+    public void setQueueMaxBytes(int queueMaxBytes) {
+        this.queueMaxBytes = queueMaxBytes;
+    }
+
+    public int getQueueMaxBytesPerClient() {
+        return queueMaxBytesPerClient;
+    }
+
+    public void setQueueMaxBytesPerClient(int queueMaxBytesPerClient) {
+        this.queueMaxBytesPerClient = queueMaxBytesPerClient;
+    }
+
+    public OffHeapQueueRepository.OverflowPolicy getQueueOverflowPolicy() {
+        return queueOverflowPolicy;
+    }
+
+    public void setQueueOverflowPolicy(OffHeapQueueRepository.OverflowPolicy queueOverflowPolicy) {
+        this.queueOverflowPolicy = queueOverflowPolicy;
+    }
+
+    /**
+     * @return the queue repository (e.g. {@link OffHeapQueueRepository#getQueueMetrics()}). null before the server start
+     */
+    public IQueueRepository getQueueRepository() {
+        return queueRepository;
+    }
+
 }
@@ -57,6 +57,10 @@ public class NRpcProtocol extends AbstractProtocol {
      * Maximum message length per pass
      */
     private int messageMaxLength = 10 * 1024 * 1024;
+    /**
+     * zero copy decode mode {@link RpcDecoder#isZeroCopy()}
+     */
+    private boolean zeroCopyDecode = false;
     /**
      * Check the method of the same name (because the generalization parameter called allow inconsistent,
      * so the name of the method to ensure that each class is unique)
@@ -64,6 +68,10 @@ public class NRpcProtocol extends AbstractProtocol {
     private boolean methodOverwriteCheck = true;
     private final Map<Object, Instance> instanceMap = new LinkedHashMap<>();
     private String serverDefaultVersion;
+    /**
+     * Default max concurrent calls per service, if the service not declare {@link NRpcService#maxConcurrency()}. less than or equal to 0 is unlimited
+     */
+    private int serviceMaxConcurrency = 0;
 
     public NRpcProtocol(ApplicationX application) {
         this.application = application;
@@ -89,6 +97,14 @@ public class NRpcProtocol extends AbstractProtocol {
         this.serverDefaultVersion = serverDefaultVersion;
     }
 
+    public int getServiceMaxConcurrency() {
+        return serviceMaxConcurrency;
+    }
+
+    public void setServiceMaxConcurrency(int serviceMaxConcurrency) {
+        this.serviceMaxConcurrency = serviceMaxConcurrency;
+    }
+
     public void addInstance(Object instance) {
         addInstance(instance, getRequestMappingName(instance.getClass()), new ClassFileMethodToParameterNamesFunction(), annotationMethodToMethodNameFunction);
     }
@@ -103,7 +119,11 @@ public class NRpcProtocol extends AbstractProtocol {
         }
         String version = RpcServerInstance.getVersion(instance.getClass(), serverDefaultVersion);
         Integer timeout = RpcServerInstance.getTimeout(instance.getClass());
-        instanceMap.put(instance, new Instance(instance, requestMappingName, version, timeout, methodToParameterNamesFunction, methodToNameFunction, methodOverwriteCheck));
+        int maxConcurrency = RpcServerInstance.getMaxConcurrency(instance.getClass());
+        if (maxConcurrency == 0) {
+            maxConcurrency = serviceMaxConcurrency;
+        }
+        instanceMap.put(instance, new Instance(instance, requestMappingName, version, timeout, maxConcurrency, methodToParameterNamesFunction, methodToNameFunction, methodOverwriteCheck));
         logger.info("addInstance({}, {}, {})",
                 RpcServerInstance.getServerInstanceKey(requestMappingName, version),
                 instance.getClass().getSimpleName(),
@@ -135,7 +155,7 @@ public class NRpcProtocol extends AbstractProtocol {
                     instance.checkGetRpcServerInstance());
         }
         ChannelPipeline pipeline = channel.pipeline();
-        pipeline.addLast(new RpcDecoder(messageMaxLength));
+        pipeline.addLast(new RpcDecoder(messageMaxLength, zeroCopyDecode));
         pipeline.addLast(new RpcEncoder());
         pipeline.addLast(rpcServerHandler);
     }
@@ -218,6 +238,14 @@ public class NRpcProtocol extends AbstractProtocol {
         this.messageMaxLength = messageMaxLength;
     }
 
+    public boolean isZeroCopyDecode() {
+        return zeroCopyDecode;
+    }
+
+    public void setZeroCopyDecode(boolean zeroCopyDecode) {
+        this.zeroCopyDecode = zeroCopyDecode;
+    }
+
     static class Instance {
         private String requestMappingName;
         private String version;
@@ -225,12 +253,13 @@ public class NRpcProtocol extends AbstractProtocol {
         private RpcServerInstance rpcServerInstance;
         private Exception rpcServerInstanceException;
 
-        Instance(Object instance, String requestMappingName, String version, Integer timeout, Function<Method, String[]> methodToParameterNamesFunction, Function<Method, String> methodToNameFunction, boolean methodOverwriteCheck) {
+        Instance(Object instance, String requestMappingName, String version, Integer timeout, int maxConcurrency, Function<Method, String[]> methodToParameterNamesFunction, Function<Method, String> methodToNameFunction, boolean methodOverwriteCheck) {
             this.requestMappingName = requestMappingName;
             this.version = version;
             this.timeout = timeout;
             try {
                 this.rpcServerInstance = new RpcServerInstance(instance, null, version, timeout, methodToParameterNamesFunction, methodToNameFunction, methodOverwriteCheck);
+                this.rpcServerInstance.setMaxConcurrency(maxConcurrency);
             } catch (Exception e) {
                 rpcServerInstanceException = e;
             }
@@ -5,4 +5,12 @@ import java.util.Queue;
 public interface IQueueRepository {
 
     Queue<MqttSessionRegistry.EnqueuedMessage> createQueue(String clientId, boolean clean);
+
+    /**
+     * The queue of the client is dropped by the session registry (the queue is cleared before)
+     *
+     * @param clientId clientId
+     */
+    default void removeQueue(String clientId) {
+    }
 }
@@ -19,6 +19,7 @@ import com.github.netty.protocol.mqtt.subscriptions.Topic;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface IRetainedRepository {
 
@@ -29,4 +30,16 @@ public interface IRetainedRepository {
     boolean isEmpty();
 
     List<MqttRetainedMessage> retainedOnTopic(String topic);
+
+    /**
+     * Stream the retained messages that match the topic filter, not materialize the list
+     *
+     * @param topic    topic filter
+     * @param consumer matching retained message
+     */
+    default void retainedOnTopic(String topic, Consumer<MqttRetainedMessage> consumer) {
+        for (MqttRetainedMessage message : retainedOnTopic(topic)) {
+            consumer.accept(message);
+        }
+    }
 }
@@ -16,34 +16,33 @@
 package com.github.netty.protocol.mqtt;
 
 import com.github.netty.protocol.mqtt.subscriptions.Topic;
+import com.github.netty.protocol.mqtt.subscriptions.TopicTrie;
 import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 
 /*
- * In memory retained messages store
+ * In memory retained messages store. indexed by the topic level trie, the topic filter walk only the matching branches
  * */
 public final class MemoryRetainedRepository implements IRetainedRepository {
 
-    private final ConcurrentMap<Topic, MqttRetainedMessage> storage = new ConcurrentHashMap<>();
+    private final TopicTrie<MqttRetainedMessage> storage = new TopicTrie<>();
 
     @Override
     public void cleanRetained(Topic topic) {
-        storage.remove(topic);
+        storage.remove(topic.toString());
     }
 
     @Override
     public void retain(Topic topic, MqttPublishMessage msg) {
         final ByteBuf payload = msg.content();
         byte[] rawPayload = new byte[payload.readableBytes()];
-        payload.getBytes(0, rawPayload);
-        final MqttRetainedMessage toStore = new MqttRetainedMessage(msg.fixedHeader().qosLevel(), rawPayload);
-        storage.put(topic, toStore);
+        payload.getBytes(payload.readerIndex(), rawPayload);
+        final MqttRetainedMessage toStore = new MqttRetainedMessage(topic.toString(), msg.fixedHeader().qosLevel(), rawPayload);
+        storage.put(topic.toString(), toStore);
     }
 
     @Override
@@ -53,14 +52,13 @@ public final class MemoryRetainedRepository implements IRetainedRepository {
 
     @Override
     public List<MqttRetainedMessage> retainedOnTopic(String topic) {
-        final Topic searchTopic = new Topic(topic);
         final List<MqttRetainedMessage> matchingMessages = new ArrayList<>();
-        for (Map.Entry<Topic, MqttRetainedMessage> entry : storage.entrySet()) {
-            final Topic scanTopic = entry.getKey();
-            if (searchTopic.match(scanTopic)) {
-                matchingMessages.add(entry.getValue());
-            }
-        }
+        retainedOnTopic(topic, matchingMessages::add);
         return matchingMessages;
     }
+
+    @Override
+    public void retainedOnTopic(String topic, Consumer<MqttRetainedMessage> consumer) {
+        storage.match(topic, (name, message) -> consumer.accept(message));
+    }
 }
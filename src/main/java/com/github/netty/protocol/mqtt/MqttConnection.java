@@ -55,6 +55,11 @@ public final class MqttConnection {
     private MqttSessionRegistry sessionRegistry;
     private boolean connected;
     private boolean authFlushed;
+    /**
+     * true = the publish fan-out batch is writing, not flush each message (flush once by {@link #endWriteBatch()}).
+     * only read and write in the event loop of the channel
+     */
+    private boolean writeBatching;
 
     public MqttConnection(BrokerInterceptor interceptor, Channel channel, BrokerConfiguration brokerConfig, IAuthenticator authenticator,
                           MqttSessionRegistry sessionRegistry, MqttPostOffice postOffice) {
@@ -438,7 +443,7 @@ public final class MqttConnection {
             LOG.debug("OUT {} on channel {}", msg.fixedHeader().messageType(), channel);
         }
         if (channel.isWritable()) {
-            if (authFlushed) {
+            if (authFlushed || (writeBatching && channel.eventLoop().inEventLoop())) {
                 channel.write(msg).addListener(FIRE_EXCEPTION_ON_FAILURE);
             } else {
                 channel.writeAndFlush(msg).addListener(FIRE_EXCEPTION_ON_FAILURE);
@@ -446,6 +451,30 @@ public final class MqttConnection {
         }
     }
 
+    /**
+     * Start a write batch. Only start in the event loop of the channel
+     * (the fan-out may run on other event loop, e.g. the client reconnect onto other event loop), otherwise write and flush each message.
+     *
+     * @return false if already in batch, or not in the event loop of the channel
+     */
+    boolean beginWriteBatch() {
+        if (writeBatching || !channel.eventLoop().inEventLoop()) {
+            return false;
+        }
+        writeBatching = true;
+        return true;
+    }
+
+    /**
+     * End the write batch and flush once.
+     */
+    void endWriteBatch() {
+        writeBatching = false;
+        if (!authFlushed) {
+            channel.flush();
+        }
+    }
+
     public void writabilityChanged() {
         if (channel.isWritable()) {
             LOG.debug("Channel {} is again writable", channel);
@@ -24,11 +24,13 @@ import com.github.netty.protocol.mqtt.subscriptions.Subscription;
 import com.github.netty.protocol.mqtt.subscriptions.Topic;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.EventLoop;
 import io.netty.handler.codec.mqtt.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 import static io.netty.handler.codec.mqtt.MqttMessageIdVariableHeader.from;
@@ -134,22 +136,26 @@ public class MqttPostOffice {
 
     private void publishRetainedMessagesForSubscriptions(String clientID, List<Subscription> newSubscriptions) {
         MqttSession targetSession = this.sessionRegistry.retrieve(clientID);
-        for (Subscription subscription : newSubscriptions) {
-            final String topicFilter = subscription.getTopicFilter().toString();
-            final List<MqttRetainedMessage> retainedMsgs = retainedRepository.retainedOnTopic(topicFilter);
-
-            if (retainedMsgs.isEmpty()) {
-                // not found
-                continue;
+        // invoke in the event loop of the subscriber, flush once after all the retained messages
+        MqttConnection connection = targetSession.connection();
+        boolean batch = connection != null && connection.beginWriteBatch();
+        try {
+            for (Subscription subscription : newSubscriptions) {
+                final String topicFilter = subscription.getTopicFilter().toString();
+                // stream the matching messages, not materialize the list
+                retainedRepository.retainedOnTopic(topicFilter, retainedMsg -> {
+                    final MqttQoS retainedQos = retainedMsg.qosLevel();
+                    MqttQoS qos = lowerQosToTheSubscriptionDesired(subscription, retainedQos);
+
+                    final ByteBuf payloadBuf = Unpooled.wrappedBuffer(retainedMsg.getPayload());
+                    // the publish topic is the topic name of the retained message, not the filter
+                    Topic topic = retainedMsg.getTopic() != null ? new Topic(retainedMsg.getTopic()) : subscription.getTopicFilter();
+                    targetSession.sendRetainedPublishOnSessionAtQos(topic, qos, payloadBuf);
+                });
             }
-            for (MqttRetainedMessage retainedMsg : retainedMsgs) {
-                final MqttQoS retainedQos = retainedMsg.qosLevel();
-                MqttQoS qos = lowerQosToTheSubscriptionDesired(subscription, retainedQos);
-
-//                final ByteBuf origPayload = retainedMsg.getPayload();
-                final ByteBuf payloadBuf = Unpooled.wrappedBuffer(retainedMsg.getPayload());
-//                ByteBuf payload = origPayload.retainedDuplicate();
-                targetSession.sendRetainedPublishOnSessionAtQos(subscription.getTopicFilter(), qos, payloadBuf);
+        } finally {
+            if (batch) {
+                connection.endWriteBatch();
             }
         }
     }
@@ -242,31 +248,75 @@ public class MqttPostOffice {
         interceptor.notifyTopicPublished(msg, clientId, username);
     }
 
+    /**
+     * Fan-out the message to the matching subscribers. The subscribers are grouped by the event loop of the target channel,
+     * each event loop gets one batched task (the payload is retained once by the batch), and the writes of the batch is flushed once per connection.
+     * So the fan-out of a big topic not stall the event loop of the publisher.
+     * The batches are linked (not allocate the list), and the batch of one subscriber not allocate the arrays.
+     */
     private void publish2Subscribers(ByteBuf origPayload, Topic topic, MqttQoS publishingQos) {
-        Set<Subscription> topicMatchingSubscriptions = subscriptions.matchQosSharpening(topic);
+        // the array is cached by topic, iterate by index (not allocate the iterator)
+        Subscription[] topicMatchingSubscriptions = subscriptions.matchQosSharpeningArray(topic);
+        if (topicMatchingSubscriptions.length == 0) {
+            return;
+        }
 
-        for (final Subscription sub : topicMatchingSubscriptions) {
-            MqttQoS qos = lowerQosToTheSubscriptionDesired(sub, publishingQos);
+        FanOutBatch firstBatch = null;
+        FanOutBatch tailBatch = null;
+        FanOutBatch lastBatch = null;
+        for (int i = 0; i < topicMatchingSubscriptions.length; i++) {
+            final Subscription sub = topicMatchingSubscriptions[i];
             MqttSession targetSession = this.sessionRegistry.retrieve(sub.getClientId());
-
-            boolean isSessionPresent = targetSession != null;
-            if (isSessionPresent) {
-                LOG.debug("Sending PUBLISH message to active subscriber CId: {}, topicFilter: {}, qos: {}",
-                        sub.getClientId(), sub.getTopicFilter(), qos);
-                //TODO determine the user bounded to targetSession
-                if (!authorizatorPolicy.canRead(topic, "TODO", sub.getClientId())) {
-                    LOG.debug("Authorizator prohibit Client {} to be notified on {}", sub.getClientId(), topic);
-                    return;
-                }
-
-                // we need to retain because duplicate only copy r/w indexes and don't retain() causing refCnt = 0
-                ByteBuf payload = origPayload.retainedDuplicate();
-                targetSession.sendPublishOnSessionAtQos(topic, qos, payload);
-            } else {
+            if (targetSession == null) {
                 // If we are, the subscriber disconnected after the subscriptions tree selected that session as a
                 // destination.
-                LOG.debug("PUBLISH to not yet present session. CId: {}, topicFilter: {}, qos: {}", sub.getClientId(),
-                        sub.getTopicFilter(), qos);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("PUBLISH to not yet present session. CId: {}, topicFilter: {}, qos: {}", sub.getClientId(),
+                            sub.getTopicFilter(), lowerQosToTheSubscriptionDesired(sub, publishingQos));
+                }
+                continue;
+            }
+            // null = the session is not connected (the qos1/2 message of the not clean session is queued), run in the current thread
+            MqttConnection connection = targetSession.connection();
+            EventLoop eventLoop = connection != null ? connection.channel.eventLoop() : null;
+
+            FanOutBatch batch = lastBatch;
+            if (batch == null || batch.eventLoop != eventLoop) {
+                batch = firstBatch;
+                while (batch != null && batch.eventLoop != eventLoop) {
+                    batch = batch.next;
+                }
+                if (batch == null) {
+                    batch = new FanOutBatch(eventLoop, topic, origPayload, publishingQos);
+                    if (tailBatch == null) {
+                        firstBatch = batch;
+                    } else {
+                        tailBatch.next = batch;
+                    }
+                    tailBatch = batch;
+                }
+                lastBatch = batch;
+            }
+            batch.add(sub, targetSession, topicMatchingSubscriptions.length - i);
+        }
+
+        // submit the other event loop first, then run the batch of the current thread
+        for (FanOutBatch batch = firstBatch; batch != null; ) {
+            // the submitted batch is run by the other thread, read the next before submit
+            FanOutBatch next = batch.next;
+            if (batch.eventLoop != null && !batch.eventLoop.inEventLoop()) {
+                try {
+                    batch.eventLoop.execute(batch);
+                } catch (RejectedExecutionException e) {
+                    LOG.warn("Fan-out batch is rejected by the event loop, topic: {}, subscribers: {}", topic, batch.size);
+                    batch.payload.release();
+                }
+            }
+            batch = next;
+        }
+        for (FanOutBatch batch = firstBatch; batch != null; batch = batch.next) {
+            if (batch.eventLoop == null || batch.eventLoop.inEventLoop()) {
+                batch.run();
             }
         }
     }
@@ -329,4 +379,102 @@ public class MqttPostOffice {
         }
         retainedRepository.retain(topic, msg);
     }
+
+    /**
+     * The subscribers of the one event loop. Run in the event loop of the target channels.
+     * The first subscriber (and the first batching connection) is hold by the field, the arrays are allocated from the second one.
+     */
+    private class FanOutBatch implements Runnable {
+        private final EventLoop eventLoop;
+        private final Topic topic;
+        private final ByteBuf payload;
+        private final MqttQoS publishingQos;
+        /**
+         * the batch of the next event loop
+         */
+        private FanOutBatch next;
+        private Subscription firstSubscription;
+        private MqttSession firstSession;
+        private Subscription[] subscriptions;
+        private MqttSession[] sessions;
+        private int size;
+
+        private FanOutBatch(EventLoop eventLoop, Topic topic, ByteBuf origPayload, MqttQoS publishingQos) {
+            this.eventLoop = eventLoop;
+            this.topic = topic;
+            this.publishingQos = publishingQos;
+            // retain once for the batch, release after run
+            this.payload = origPayload.retain();
+        }
+
+        /**
+         * @param subscription subscription
+         * @param session      session
+         * @param remaining    the remaining subscribers of the publish (include this one). the max size of the batch
+         */
+        private void add(Subscription subscription, MqttSession session, int remaining) {
+            if (size == 0) {
+                firstSubscription = subscription;
+                firstSession = session;
+                size = 1;
+                return;
+            }
+            if (subscriptions == null) {
+                int initialCapacity = Math.min(remaining + 1, 16);
+                subscriptions = new Subscription[initialCapacity];
+                sessions = new MqttSession[initialCapacity];
+            } else if (size == subscriptions.length) {
+                int newCapacity = size << 1;
+                subscriptions = Arrays.copyOf(subscriptions, newCapacity);
+                sessions = Arrays.copyOf(sessions, newCapacity);
+            }
+            subscriptions[size] = subscription;
+            sessions[size] = session;
+            size++;
+        }
+
+        @Override
+        public void run() {
+            MqttConnection firstBatchingConnection = null;
+            MqttConnection[] batchingConnections = null;
+            int batchingCount = 0;
+            try {
+                for (int i = 0; i < size; i++) {
+                    Subscription sub = i == 0 ? firstSubscription : subscriptions[i];
+                    MqttSession session = i == 0 ? firstSession : sessions[i];
+                    //TODO determine the user bounded to targetSession
+                    if (!authorizatorPolicy.canRead(topic, "TODO", sub.getClientId())) {
+                        // skip this subscriber only, the others of the topic are still notified
+                        LOG.debug("Authorizator prohibit Client {} to be notified on {}", sub.getClientId(), topic);
+                        continue;
+                    }
+                    MqttConnection connection = session.connection();
+                    if (connection != null && connection.beginWriteBatch()) {
+                        if (batchingCount == 0) {
+                            firstBatchingConnection = connection;
+                        } else {
+                            if (batchingConnections == null) {
+                                batchingConnections = new MqttConnection[size - i + 1];
+                            }
+                            batchingConnections[batchingCount] = connection;
+                        }
+                        batchingCount++;
+                    }
+                    MqttQoS qos = lowerQosToTheSubscriptionDesired(sub, publishingQos);
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Sending PUBLISH message to active subscriber CId: {}, topicFilter: {}, qos: {}",
+                                sub.getClientId(), sub.getTopicFilter(), qos);
+                    }
+                    // we need to retain because duplicate only copy r/w indexes and don't retain() causing refCnt = 0
+                    session.sendPublishOnSessionAtQos(topic, qos, payload.retainedDuplicate());
+                }
+            } finally {
+                // flush once per connection
+                for (int i = 0; i < batchingCount; i++) {
+                    (i == 0 ? firstBatchingConnection : batchingConnections[i]).endWriteBatch();
+                }
+                payload.release();
+            }
+        }
+    }
 }
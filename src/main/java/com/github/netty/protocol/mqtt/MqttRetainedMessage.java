@@ -6,14 +6,27 @@ import java.io.Serializable;
 
 public class MqttRetainedMessage implements Serializable {
 
+    private final String topic;
     private final MqttQoS qos;
     private final byte[] payload;
 
     public MqttRetainedMessage(MqttQoS qos, byte[] payload) {
+        this(null, qos, payload);
+    }
+
+    public MqttRetainedMessage(String topic, MqttQoS qos, byte[] payload) {
+        this.topic = topic;
         this.qos = qos;
         this.payload = payload;
     }
 
+    /**
+     * @return the topic name of the retained message. null if unknown
+     */
+    public String getTopic() {
+        return topic;
+    }
+
     public MqttQoS qosLevel() {
         return qos;
     }
@@ -71,6 +71,13 @@ class MqttSession {
         this.mqttConnection = mqttConnection;
     }
 
+    /**
+     * @return the bound connection. null if the session is disconnected
+     */
+    MqttConnection connection() {
+        return mqttConnection;
+    }
+
     public boolean disconnected() {
         return status.get() == SessionStatus.DISCONNECTED;
     }
@@ -196,8 +203,7 @@ class MqttSession {
 
             // TODO drainQueueToConnection();?
         } else {
-            final MqttSessionRegistry.PublishedMessage msg = new MqttSessionRegistry.PublishedMessage(topic, qos, payload);
-            sessionQueue.add(msg);
+            enqueue(new MqttSessionRegistry.PublishedMessage(topic, qos, payload));
         }
     }
 
@@ -213,8 +219,15 @@ class MqttSession {
 
             drainQueueToConnection();
         } else {
-            final MqttSessionRegistry.PublishedMessage msg = new MqttSessionRegistry.PublishedMessage(topic, qos, payload);
-            sessionQueue.add(msg);
+            enqueue(new MqttSessionRegistry.PublishedMessage(topic, qos, payload));
+        }
+    }
+
+    private void enqueue(MqttSessionRegistry.PublishedMessage msg) {
+        if (!sessionQueue.offer(msg)) {
+            // the bounded queue is overflow, the message is dropped
+            msg.payload.release();
+            LOG.debug("Session queue is full, drop the message. CId={}, topic={}", clientId, msg.topic);
         }
     }
 
@@ -272,9 +285,13 @@ class MqttSession {
     }
 
     private void drainQueueToConnection() {
-        // consume the queue
-        while (!canSkipQueue()) {
-            final MqttSessionRegistry.EnqueuedMessage msg = sessionQueue.remove();
+        // consume the queue, while the inflight window is not full
+        while (!sessionQueue.isEmpty() && inflightSlots.get() > 0 && connected() && mqttConnection.channel.isWritable()) {
+            final MqttSessionRegistry.EnqueuedMessage msg = sessionQueue.poll();
+            if (msg == null) {
+                // the queue is consumed concurrently (the isEmpty is only a hint)
+                break;
+            }
             inflightSlots.decrementAndGet();
             int sendPacketId = mqttConnection.nextPacketId();
             inflightWindow.put(sendPacketId, msg);
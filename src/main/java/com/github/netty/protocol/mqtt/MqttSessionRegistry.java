@@ -46,6 +46,9 @@ public class MqttSessionRegistry {
     public MqttSessionRegistry(ISubscriptionsDirectory subscriptionsDirectory, IQueueRepository queueRepository) {
         this.subscriptionsDirectory = subscriptionsDirectory;
         this.queueRepository = queueRepository;
+        if (queueRepository instanceof OffHeapQueueRepository) {
+            ((OffHeapQueueRepository) queueRepository).setDisconnectHandler(this::dropConnection);
+        }
     }
 
     void bindToSession(MqttConnection mqttConnection, MqttConnectMessage msg, String clientId) {
@@ -61,6 +64,11 @@ public class MqttSessionRegistry {
 
             if (success) {
                 LOG.trace("case 1, not existing session with CId {}", clientId);
+                // the not clean session restored by the persistent queue (after the broker restart)
+                final Queue<EnqueuedMessage> sessionQueue = queues.get(clientId);
+                if (!msg.variableHeader().isCleanSession() && sessionQueue != null && !sessionQueue.isEmpty()) {
+                    postConnectAction = PostConnectAction.SEND_STORED_MESSAGES;
+                }
             } else {
                 postConnectAction = bindToExistingSession(mqttConnection, msg, clientId, newSession);
                 isSessionAlreadyStored = true;
@@ -227,8 +235,24 @@ public class MqttSessionRegistry {
         session.disconnect();
     }
 
+    /**
+     * Close the connection of the slow consumer (the queue overflow)
+     */
+    private void dropConnection(String clientId) {
+        final MqttSession session = retrieve(clientId);
+        if (session != null && session.connected()) {
+            LOG.info("The queue of the session is overflow, close the connection. CId={}", clientId);
+            session.closeImmediately();
+        }
+    }
+
     private void dropQueuesForClient(String clientId) {
-        queues.remove(clientId);
+        final Queue<EnqueuedMessage> queue = queues.remove(clientId);
+        if (queue != null) {
+            // release the stored messages (e.g. the bounded queue space)
+            queue.clear();
+            queueRepository.removeQueue(clientId);
+        }
     }
 
     private enum PostConnectAction {
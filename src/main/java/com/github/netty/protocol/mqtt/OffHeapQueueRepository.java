@@ -0,0 +1,560 @@
+package com.github.netty.protocol.mqtt;
+
+import com.github.netty.core.util.LoggerFactoryX;
+import com.github.netty.core.util.LoggerX;
+import com.github.netty.protocol.mqtt.subscriptions.Topic;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Bounded in memory queue store. The payload of the queued messages is copied into a shared off-heap ring arena,
+ * the heap only keep the topic, qos and the arena location of each message.
+ * <p>
+ * The arena size is the global byte limit, each client queue also has a byte limit.
+ * If the limit is exceeded, the {@link OverflowPolicy} decide which message is dropped (or the client is disconnected).
+ * <p>
+ * The arena allocate in the ring order, the space is reclaimed when the oldest block is freed.
+ * So a slow client that keep the oldest block, block the reclaim of the newer blocks.
+ * If the arena has enough free space but it is blocked by the oldest block of another client, the policy is applied to the owner of the oldest block
+ * (the slow client), not to the offering client: the oldest block is dropped, and with {@link OverflowPolicy#DISCONNECT} the owner is disconnected.
+ * <p>
+ * Only the not clean sessions use the bounded queue, the clean session use the plain queue (the messages are dropped on the disconnect).
+ * All the queues and the arena are guarded by one lock. (the critical section is only the memory copy)
+ *
+ * @author wangzihao
+ */
+public class OffHeapQueueRepository implements IQueueRepository, Closeable {
+    private static final LoggerX LOG = LoggerFactoryX.getLogger(OffHeapQueueRepository.class);
+    public static final int DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+    public static final int DEFAULT_MAX_BYTES_PER_CLIENT = 4 * 1024 * 1024;
+    private final Map<String, BoundedQueue> queues = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int maxBytes;
+    private final int maxBytesPerClient;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong disconnectCount = new AtomicLong();
+    /**
+     * disconnect the client (clientId). invoked out of the lock
+     */
+    private volatile Consumer<String> disconnectHandler;
+    /**
+     * the arena. lazy allocate on the first message
+     */
+    private ByteBuf arena;
+    /**
+     * the allocated blocks in the ring order (the padding block of the ring end is also in it)
+     */
+    private final ArrayDeque<Entry> blocks = new ArrayDeque<>();
+    private int readIndex;
+    private int writeIndex;
+    private volatile long totalBytes;
+    private boolean closed;
+
+    public OffHeapQueueRepository() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_BYTES_PER_CLIENT, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * @param maxBytes          the global byte limit (the arena size)
+     * @param maxBytesPerClient the byte limit of a client queue
+     * @param overflowPolicy    the policy if the limit is exceeded
+     */
+    public OffHeapQueueRepository(int maxBytes, int maxBytesPerClient, OverflowPolicy overflowPolicy) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be greater than 0. maxBytes=" + maxBytes);
+        }
+        if (maxBytesPerClient <= 0) {
+            throw new IllegalArgumentException("maxBytesPerClient must be greater than 0. maxBytesPerClient=" + maxBytesPerClient);
+        }
+        this.maxBytes = maxBytes;
+        this.maxBytesPerClient = Math.min(maxBytesPerClient, maxBytes);
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy, "overflowPolicy");
+    }
+
+    @Override
+    public Queue<MqttSessionRegistry.EnqueuedMessage> createQueue(String clientId, boolean clean) {
+        if (clean) {
+            // the clean session drop the queued messages of the old session
+            removeQueue(clientId);
+            return new ConcurrentLinkedQueue<>();
+        }
+        return queues.computeIfAbsent(clientId, BoundedQueue::new);
+    }
+
+    /**
+     * Remove the queue and free the queued messages. The offer of the removed queue is dropped
+     */
+    @Override
+    public void removeQueue(String clientId) {
+        BoundedQueue queue = queues.remove(clientId);
+        if (queue == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            queue.removed = true;
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setDisconnectHandler(Consumer<String> disconnectHandler) {
+        this.disconnectHandler = disconnectHandler;
+    }
+
+    public int getQueueCount() {
+        return queues.size();
+    }
+
+    public int getQueueSize(String clientId) {
+        BoundedQueue queue = queues.get(clientId);
+        return queue != null ? queue.size() : 0;
+    }
+
+    public long getQueueBytes(String clientId) {
+        BoundedQueue queue = queues.get(clientId);
+        return queue != null ? queue.bytes : 0;
+    }
+
+    /**
+     * @return the depth and the bytes of each client queue
+     */
+    public List<QueueMetrics> getQueueMetrics() {
+        List<QueueMetrics> list = new ArrayList<>(queues.size());
+        lock.lock();
+        try {
+            for (BoundedQueue queue : queues.values()) {
+                list.add(new QueueMetrics(queue.clientId, queue.entries.size(), queue.bytes));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return list;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getDisconnectCount() {
+        return disconnectCount.get();
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getMaxBytesPerClient() {
+        return maxBytesPerClient;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            for (BoundedQueue queue : queues.values()) {
+                queue.entries.clear();
+                queue.bytes = 0;
+            }
+            queues.clear();
+            blocks.clear();
+            readIndex = writeIndex = 0;
+            totalBytes = 0;
+            if (arena != null) {
+                arena.release();
+                arena = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Allocate the contiguous space in the ring. (only invoke in the lock)
+     *
+     * @param length length
+     * @return the offset of the arena. -1 if no space
+     */
+    private int allocate(int length) {
+        if (blocks.isEmpty()) {
+            readIndex = writeIndex = 0;
+        }
+        int offset;
+        if (blocks.isEmpty() || writeIndex > readIndex) {
+            if (maxBytes - writeIndex >= length) {
+                offset = writeIndex;
+            } else if (readIndex >= length) {
+                // wrap around, the end of the ring is a padding block
+                if (writeIndex < maxBytes) {
+                    Entry padding = new Entry(null, null, null, writeIndex, maxBytes - writeIndex);
+                    padding.freed = true;
+                    blocks.addLast(padding);
+                }
+                offset = 0;
+            } else {
+                return -1;
+            }
+        } else if (readIndex - writeIndex >= length) {
+            offset = writeIndex;
+        } else {
+            return -1;
+        }
+        if (arena == null) {
+            arena = Unpooled.directBuffer(maxBytes, maxBytes);
+        }
+        writeIndex = offset + length;
+        return offset;
+    }
+
+    /**
+     * Free the block of the message. (only invoke in the lock)
+     */
+    private void free(Entry entry) {
+        if (entry.length == 0) {
+            return;
+        }
+        entry.freed = true;
+        totalBytes -= entry.length;
+        entry.owner.bytes -= entry.length;
+        Entry first;
+        while ((first = blocks.peekFirst()) != null && first.freed) {
+            blocks.pollFirst();
+        }
+        if (first == null) {
+            readIndex = writeIndex = 0;
+        } else {
+            readIndex = first.offset;
+        }
+    }
+
+    private static void addSlowQueue(List<BoundedQueue> slowQueues, BoundedQueue queue) {
+        if (slowQueues != null && !slowQueues.contains(queue)) {
+            slowQueues.add(queue);
+        }
+    }
+
+    /**
+     * Disconnect the slow client. invoke out of the lock
+     */
+    private void disconnect(String clientId) {
+        Consumer<String> handler = disconnectHandler;
+        if (handler != null) {
+            disconnectCount.incrementAndGet();
+            handler.accept(clientId);
+        }
+    }
+
+    private MqttSessionRegistry.EnqueuedMessage decode(Entry entry) {
+        if (entry.topic == null) {
+            return new MqttSessionRegistry.PubRelMarker();
+        }
+        byte[] payload = new byte[entry.length];
+        if (entry.length > 0) {
+            arena.getBytes(entry.offset, payload);
+        }
+        return new MqttSessionRegistry.PublishedMessage(entry.topic, entry.qos, Unpooled.wrappedBuffer(payload));
+    }
+
+    /**
+     * The overflow policy, if the client queue or the arena is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * drop the oldest messages until there is enough space.
+         * (the oldest message of the client queue, or the oldest message of the arena)
+         */
+        DROP_OLDEST,
+        /**
+         * drop the new message.
+         * If the arena has enough free space but it is blocked by the oldest block of another client, drop that oldest block (not the new message)
+         */
+        DROP_NEWEST,
+        /**
+         * disconnect the slow client if it is connected.
+         * If the client queue is full, or the arena is full of the live messages, drop the new message and disconnect the offering client
+         * (the owner of the oldest block if the arena is full).
+         * If the arena has enough free space but it is blocked by the oldest block of another client,
+         * drop the oldest block and disconnect the owner of the oldest block, the new message is accepted
+         */
+        DISCONNECT
+    }
+
+    public static class QueueMetrics {
+        private final String clientId;
+        private final int size;
+        private final long bytes;
+
+        public QueueMetrics(String clientId, int size, long bytes) {
+            this.clientId = clientId;
+            this.size = size;
+            this.bytes = bytes;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return "QueueMetrics{" +
+                    "clientId='" + clientId + '\'' +
+                    ", size=" + size +
+                    ", bytes=" + bytes +
+                    '}';
+        }
+    }
+
+    /**
+     * The queued message. (the PubRelMarker if the topic is null)
+     */
+    private static class Entry {
+        private final BoundedQueue owner;
+        private final Topic topic;
+        private final MqttQoS qos;
+        private final int offset;
+        private final int length;
+        private boolean freed;
+
+        private Entry(BoundedQueue owner, Topic topic, MqttQoS qos, int offset, int length) {
+            this.owner = owner;
+            this.topic = topic;
+            this.qos = qos;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The queue of a client. The offer return false if the message is dropped (the payload is still owned by the caller)
+     */
+    private class BoundedQueue extends AbstractQueue<MqttSessionRegistry.EnqueuedMessage> {
+        private final String clientId;
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private volatile long bytes;
+        /**
+         * removed from the repository. only access in the lock
+         */
+        private boolean removed;
+
+        private BoundedQueue(String clientId) {
+            this.clientId = clientId;
+        }
+
+        @Override
+        public boolean offer(MqttSessionRegistry.EnqueuedMessage message) {
+            if (!(message instanceof MqttSessionRegistry.PublishedMessage)) {
+                lock.lock();
+                try {
+                    entries.addLast(new Entry(this, null, null, 0, 0));
+                } finally {
+                    lock.unlock();
+                }
+                return true;
+            }
+            MqttSessionRegistry.PublishedMessage publishedMessage = (MqttSessionRegistry.PublishedMessage) message;
+            ByteBuf payload = publishedMessage.payload;
+            int length = payload.readableBytes();
+            List<BoundedQueue> slowQueues = overflowPolicy == OverflowPolicy.DISCONNECT ? new ArrayList<>(1) : null;
+            boolean accepted;
+            lock.lock();
+            try {
+                accepted = !closed && !removed && enqueue(publishedMessage, payload, length, slowQueues);
+            } finally {
+                lock.unlock();
+            }
+            if (slowQueues != null) {
+                for (BoundedQueue slowQueue : slowQueues) {
+                    disconnect(slowQueue.clientId);
+                }
+            }
+            if (accepted) {
+                // the payload is copied, the queue is the owner of the payload
+                payload.release();
+                return true;
+            }
+            droppedCount.incrementAndGet();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("MQTT queue overflow, drop the message. clientId={}, topic={}, bytes={}, queueBytes={}, totalBytes={}, policy={}",
+                        clientId, publishedMessage.topic, length, bytes, totalBytes, overflowPolicy);
+            }
+            return false;
+        }
+
+        /**
+         * only invoke in the lock
+         *
+         * @param slowQueues the queues to disconnect (out of the lock). null if the policy is not {@link OverflowPolicy#DISCONNECT}
+         */
+        private boolean enqueue(MqttSessionRegistry.PublishedMessage message, ByteBuf payload, int length, List<BoundedQueue> slowQueues) {
+            if (length > maxBytesPerClient) {
+                addSlowQueue(slowQueues, this);
+                return false;
+            }
+            while (bytes + length > maxBytesPerClient) {
+                if (overflowPolicy != OverflowPolicy.DROP_OLDEST || !dropOldest()) {
+                    addSlowQueue(slowQueues, this);
+                    return false;
+                }
+            }
+            int offset = 0;
+            if (length > 0) {
+                while ((offset = allocate(length)) == -1) {
+                    Entry oldest = blocks.peekFirst();
+                    if (oldest == null) {
+                        return false;
+                    }
+                    if (overflowPolicy != OverflowPolicy.DROP_OLDEST) {
+                        BoundedQueue owner = oldest.owner;
+                        addSlowQueue(slowQueues, owner);
+                        // the arena is full of the live messages, or this queue is the slow one. drop the new message
+                        if (owner == this || totalBytes + length > maxBytes) {
+                            return false;
+                        }
+                        // the free space is enough, but blocked by the oldest block of the slow client. drop the oldest block
+                    }
+                    // the oldest block of the arena is the oldest message of the owner queue
+                    oldest.owner.entries.removeFirstOccurrence(oldest);
+                    free(oldest);
+                    droppedCount.incrementAndGet();
+                }
+                arena.setBytes(offset, payload, payload.readerIndex(), length);
+            }
+            Entry entry = new Entry(this, message.topic, message.publishingQos, offset, length);
+            if (length > 0) {
+                blocks.addLast(entry);
+                totalBytes += length;
+                bytes += length;
+            }
+            entries.addLast(entry);
+            return true;
+        }
+
+        /**
+         * Drop the oldest message of the queue (the PubRelMarker is keep). only invoke in the lock
+         *
+         * @return false if there is no message to drop
+         */
+        private boolean dropOldest() {
+            for (Iterator<Entry> iterator = entries.iterator(); iterator.hasNext(); ) {
+                Entry entry = iterator.next();
+                if (entry.topic != null) {
+                    iterator.remove();
+                    free(entry);
+                    droppedCount.incrementAndGet();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public MqttSessionRegistry.EnqueuedMessage poll() {
+            lock.lock();
+            try {
+                Entry entry = entries.pollFirst();
+                if (entry == null) {
+                    return null;
+                }
+                MqttSessionRegistry.EnqueuedMessage message = decode(entry);
+                free(entry);
+                return message;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public MqttSessionRegistry.EnqueuedMessage peek() {
+            lock.lock();
+            try {
+                Entry entry = entries.peekFirst();
+                return entry != null ? decode(entry) : null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void clear() {
+            lock.lock();
+            try {
+                Entry entry;
+                while ((entry = entries.pollFirst()) != null) {
+                    free(entry);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        /**
+         * The snapshot of the queue (the payload is copied)
+         */
+        @Override
+        public Iterator<MqttSessionRegistry.EnqueuedMessage> iterator() {
+            List<MqttSessionRegistry.EnqueuedMessage> snapshot;
+            lock.lock();
+            try {
+                snapshot = new ArrayList<>(entries.size());
+                for (Entry entry : entries) {
+                    snapshot.add(decode(entry));
+                }
+            } finally {
+                lock.unlock();
+            }
+            return Collections.unmodifiableList(snapshot).iterator();
+        }
+
+        @Override
+        public String toString() {
+            return "BoundedQueue{" +
+                    "clientId='" + clientId + '\'' +
+                    ", size=" + entries.size() +
+                    ", bytes=" + bytes +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package com.github.netty.protocol.mqtt;
+
+import com.github.netty.protocol.mqtt.subscriptions.Topic;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Segment file queue store. The offline messages of the not clean session survive the broker restart.
+ * The payload is in the memory-mapped segment file, the heap only keep the record location of each message (16 bytes).
+ * <p>
+ * Enqueue record: clientId | seq(8) | marker(1) | qos(1) | topic | payload
+ * Dequeue record: clientId | seq(8). all the messages of the client that seq less than or equal to the seq are dequeued
+ *
+ * @see SegmentFileStore
+ */
+public class SegmentFileQueueRepository implements IQueueRepository, Closeable {
+    private static final byte TYPE_ENQUEUE = 1;
+    private static final byte TYPE_DEQUEUE = 2;
+    private static final byte MARKER_PUBLISH = 0;
+    private static final byte MARKER_PUB_REL = 1;
+    private final Map<String, FileQueue> queues = new ConcurrentHashMap<>();
+    private final SegmentFileStore store;
+    private final ReentrantLock lock;
+
+    public SegmentFileQueueRepository(File dir) throws IOException {
+        this(dir, SegmentFileStore.DEFAULT_SEGMENT_SIZE, SegmentFileStore.DEFAULT_AUTOSAVE_INTERVAL_MS);
+    }
+
+    /**
+     * @param dir                the directory of the segment files
+     * @param segmentSize        the size of a segment file (bytes)
+     * @param autosaveIntervalMs group commit interval (milliseconds). if less than or equal to 0, force after every append
+     * @throws IOException open file error
+     */
+    public SegmentFileQueueRepository(File dir, int segmentSize, long autosaveIntervalMs) throws IOException {
+        this.store = new SegmentFileStore(dir, segmentSize, autosaveIntervalMs, new Handler());
+        this.lock = store.getLock();
+        store.open();
+        lock.lock();
+        try {
+            for (FileQueue queue : queues.values()) {
+                queue.restoreEnd();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Queue<MqttSessionRegistry.EnqueuedMessage> createQueue(String clientId, boolean clean) {
+        if (clean) {
+            // the clean session not survive the restart, drop the stored messages (the queue instance is keep for the seq)
+            FileQueue queue = queues.get(clientId);
+            if (queue != null) {
+                queue.clear();
+            }
+            return new ConcurrentLinkedQueue<>();
+        }
+        return queues.computeIfAbsent(clientId, FileQueue::new);
+    }
+
+    public SegmentFileStore getStore() {
+        return store;
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+
+    private static ByteBuffer dequeueBody(byte[] clientId, long seq) {
+        ByteBuffer body = ByteBuffer.allocate(4 + clientId.length + 8);
+        SegmentFileStore.putBytes(body, clientId);
+        body.putLong(seq);
+        body.flip();
+        return body;
+    }
+
+    /**
+     * Stable merge sort the parallel arrays by seq
+     */
+    private static void sortBySeq(long[] seqs, long[] locations, int size) {
+        boolean sorted = true;
+        for (int i = 1; i < size; i++) {
+            if (seqs[i - 1] > seqs[i]) {
+                sorted = false;
+                break;
+            }
+        }
+        if (sorted) {
+            return;
+        }
+        long[] tmpSeqs = new long[size];
+        long[] tmpLocations = new long[size];
+        for (int width = 1; width < size; width <<= 1) {
+            for (int low = 0; low < size; low += width << 1) {
+                int mid = Math.min(low + width, size);
+                int high = Math.min(low + (width << 1), size);
+                int i = low;
+                int j = mid;
+                int k = low;
+                while (i < mid && j < high) {
+                    if (seqs[j] < seqs[i]) {
+                        tmpSeqs[k] = seqs[j];
+                        tmpLocations[k++] = locations[j++];
+                    } else {
+                        tmpSeqs[k] = seqs[i];
+                        tmpLocations[k++] = locations[i++];
+                    }
+                }
+                while (i < mid) {
+                    tmpSeqs[k] = seqs[i];
+                    tmpLocations[k++] = locations[i++];
+                }
+                while (j < high) {
+                    tmpSeqs[k] = seqs[j];
+                    tmpLocations[k++] = locations[j++];
+                }
+            }
+            System.arraycopy(tmpSeqs, 0, seqs, 0, size);
+            System.arraycopy(tmpLocations, 0, locations, 0, size);
+        }
+    }
+
+    private class Handler implements SegmentFileStore.RecordHandler {
+        @Override
+        public void onRestore(byte type, ByteBuffer body, long location) {
+            String clientId = SegmentFileStore.getString(body);
+            long seq = body.getLong();
+            FileQueue queue = queues.computeIfAbsent(clientId, FileQueue::new);
+            if (type == TYPE_ENQUEUE) {
+                queue.restoreEnqueue(seq, location);
+            } else {
+                queue.restoreDequeue(seq);
+                store.markGarbage(location);
+            }
+        }
+
+        @Override
+        public boolean isLive(byte type, ByteBuffer body, long location) {
+            if (type != TYPE_ENQUEUE) {
+                return false;
+            }
+            FileQueue queue = queues.get(SegmentFileStore.getString(body));
+            return queue != null && queue.locationOf(body.getLong()) == location;
+        }
+
+        @Override
+        public void onRelocate(byte type, ByteBuffer body, long oldLocation, long newLocation) {
+            FileQueue queue = queues.get(SegmentFileStore.getString(body));
+            queue.relocate(body.getLong(), newLocation);
+        }
+    }
+
+    /**
+     * The queue of a client. seq and location is in the ring arrays (ordered by seq)
+     */
+    private class FileQueue extends AbstractQueue<MqttSessionRegistry.EnqueuedMessage> {
+        private final String clientId;
+        private final byte[] clientIdBytes;
+        private long[] seqs = new long[16];
+        private long[] locations = new long[16];
+        private int head;
+        /**
+         * write in the lock, read without the lock (size/isEmpty)
+         */
+        private volatile int size;
+        private long nextSeq;
+        /**
+         * the max seq of the dequeue record (only for restore)
+         */
+        private long dequeuedSeq = -1;
+
+        private FileQueue(String clientId) {
+            this.clientId = clientId;
+            this.clientIdBytes = SegmentFileStore.toBytes(clientId);
+        }
+
+        @Override
+        public boolean offer(MqttSessionRegistry.EnqueuedMessage message) {
+            byte marker;
+            byte qos;
+            byte[] topic;
+            ByteBuf payload;
+            if (message instanceof MqttSessionRegistry.PublishedMessage) {
+                MqttSessionRegistry.PublishedMessage publishedMessage = (MqttSessionRegistry.PublishedMessage) message;
+                marker = MARKER_PUBLISH;
+                qos = (byte) publishedMessage.publishingQos.value();
+                topic = SegmentFileStore.toBytes(publishedMessage.topic.toString());
+                payload = publishedMessage.payload;
+            } else {
+                marker = MARKER_PUB_REL;
+                qos = 0;
+                topic = new byte[0];
+                payload = null;
+            }
+            ByteBuffer body = ByteBuffer.allocate(4 + clientIdBytes.length + 8 + 2 + 4 + topic.length);
+            lock.lock();
+            try {
+                long seq = nextSeq++;
+                SegmentFileStore.putBytes(body, clientIdBytes);
+                body.putLong(seq);
+                body.put(marker);
+                body.put(qos);
+                SegmentFileStore.putBytes(body, topic);
+                body.flip();
+                addLast(seq, store.append(TYPE_ENQUEUE, body, payload));
+            } finally {
+                lock.unlock();
+            }
+            store.syncIfNeed();
+            // the payload is stored, the queue is the owner of the payload
+            if (payload != null) {
+                payload.release();
+            }
+            return true;
+        }
+
+        @Override
+        public MqttSessionRegistry.EnqueuedMessage poll() {
+            MqttSessionRegistry.EnqueuedMessage message;
+            lock.lock();
+            try {
+                if (size == 0) {
+                    return null;
+                }
+                long seq = seqs[head];
+                long location = locations[head];
+                message = decode(location);
+                removeFirst();
+                store.markGarbage(location);
+                store.markGarbage(store.append(TYPE_DEQUEUE, dequeueBody(clientIdBytes, seq), null));
+            } finally {
+                lock.unlock();
+            }
+            store.syncIfNeed();
+            return message;
+        }
+
+        @Override
+        public MqttSessionRegistry.EnqueuedMessage peek() {
+            lock.lock();
+            try {
+                return size == 0 ? null : decode(locations[head]);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void clear() {
+            lock.lock();
+            try {
+                if (size == 0) {
+                    return;
+                }
+                for (int i = 0; i < size; i++) {
+                    store.markGarbage(locations[index(i)]);
+                }
+                store.markGarbage(store.append(TYPE_DEQUEUE, dequeueBody(clientIdBytes, nextSeq - 1), null));
+                head = 0;
+                size = 0;
+            } finally {
+                lock.unlock();
+            }
+            store.syncIfNeed();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<MqttSessionRegistry.EnqueuedMessage> iterator() {
+            long[] snapshot;
+            lock.lock();
+            try {
+                snapshot = new long[size];
+                for (int i = 0; i < size; i++) {
+                    snapshot[i] = seqs[index(i)];
+                }
+            } finally {
+                lock.unlock();
+            }
+            return new Iterator<MqttSessionRegistry.EnqueuedMessage>() {
+                private int cursor;
+                private MqttSessionRegistry.EnqueuedMessage next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && cursor < snapshot.length) {
+                        lock.lock();
+                        try {
+                            long location = locationOf(snapshot[cursor++]);
+                            if (location != -1) {
+                                next = decode(location);
+                            }
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public MqttSessionRegistry.EnqueuedMessage next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    MqttSessionRegistry.EnqueuedMessage message = next;
+                    next = null;
+                    return message;
+                }
+            };
+        }
+
+        private MqttSessionRegistry.EnqueuedMessage decode(long location) {
+            ByteBuffer body = store.read(location);
+            SegmentFileStore.getString(body);
+            body.getLong();
+            byte marker = body.get();
+            if (marker == MARKER_PUB_REL) {
+                return new MqttSessionRegistry.PubRelMarker();
+            }
+            MqttQoS qos = MqttQoS.valueOf(body.get());
+            Topic topic = new Topic(SegmentFileStore.getString(body));
+            // copy out of the segment (the segment may be deleted by the compaction)
+            ByteBuf payload = Unpooled.buffer(body.remaining());
+            payload.writeBytes(body);
+            return new MqttSessionRegistry.PublishedMessage(topic, qos, payload);
+        }
+
+        private int index(int i) {
+            return (head + i) & (seqs.length - 1);
+        }
+
+        private void addLast(long seq, long location) {
+            if (size == seqs.length) {
+                long[] newSeqs = new long[size << 1];
+                long[] newLocations = new long[size << 1];
+                for (int i = 0; i < size; i++) {
+                    newSeqs[i] = seqs[index(i)];
+                    newLocations[i] = locations[index(i)];
+                }
+                seqs = newSeqs;
+                locations = newLocations;
+                head = 0;
+            }
+            int tail = index(size);
+            seqs[tail] = seq;
+            locations[tail] = location;
+            size++;
+        }
+
+        private void removeFirst() {
+            head = index(1);
+            size--;
+        }
+
+        /**
+         * binary search the seq
+         *
+         * @param seq seq
+         * @return the position in the queue. -1 if not exist
+         */
+        private int positionOf(long seq) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midSeq = seqs[index(mid)];
+                if (midSeq < seq) {
+                    low = mid + 1;
+                } else if (midSeq > seq) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        private long locationOf(long seq) {
+            int position = positionOf(seq);
+            return position == -1 ? -1 : locations[index(position)];
+        }
+
+        private void relocate(long seq, long location) {
+            int position = positionOf(seq);
+            if (position != -1) {
+                locations[index(position)] = location;
+            }
+        }
+
+        private void restoreEnqueue(long seq, long location) {
+            // the relocated record (by the compaction) is out of the seq order, sort on the restore end
+            addLast(seq, location);
+        }
+
+        private void restoreDequeue(long seq) {
+            if (seq > dequeuedSeq) {
+                dequeuedSeq = seq;
+            }
+        }
+
+        /**
+         * Sort the restored records by seq, drop the dequeued records and the old copy of the relocated records
+         */
+        private void restoreEnd() {
+            // not wrap on the restore (head = 0)
+            sortBySeq(seqs, locations, size);
+            int newSize = 0;
+            for (int i = 0; i < size; i++) {
+                long seq = seqs[i];
+                long location = locations[i];
+                if (seq <= dequeuedSeq) {
+                    store.markGarbage(location);
+                } else if (newSize > 0 && seqs[newSize - 1] == seq) {
+                    // the same seq, the later appended is the live copy (stable sort)
+                    store.markGarbage(locations[newSize - 1]);
+                    locations[newSize - 1] = location;
+                } else {
+                    seqs[newSize] = seq;
+                    locations[newSize] = location;
+                    newSize++;
+                }
+            }
+            size = newSize;
+            nextSeq = Math.max(dequeuedSeq + 1, size > 0 ? seqs[size - 1] + 1 : 0);
+        }
+    }
+}
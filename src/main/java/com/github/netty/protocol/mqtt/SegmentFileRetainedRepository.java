@@ -0,0 +1,187 @@
+package com.github.netty.protocol.mqtt;
+
+import com.github.netty.protocol.mqtt.subscriptions.Topic;
+import com.github.netty.protocol.mqtt.subscriptions.TopicTrie;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Segment file retained messages store. The payload is in the memory-mapped segment file, the heap only keep the topic trie and the record location.
+ * <p>
+ * Put record: topic | qos(1) | payload
+ * Remove record: topic
+ *
+ * @see SegmentFileStore
+ */
+public class SegmentFileRetainedRepository implements IRetainedRepository, Closeable {
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    /**
+     * the messages read in the lock per batch of the {@link #retainedOnTopic(String, Consumer)}
+     */
+    private static final int READ_BATCH_SIZE = 64;
+    /**
+     * topic : record location. only write in the lock
+     */
+    private final TopicTrie<Long> index = new TopicTrie<>();
+    private final SegmentFileStore store;
+    private final ReentrantLock lock;
+
+    public SegmentFileRetainedRepository(File dir) throws IOException {
+        this(dir, SegmentFileStore.DEFAULT_SEGMENT_SIZE, SegmentFileStore.DEFAULT_AUTOSAVE_INTERVAL_MS);
+    }
+
+    /**
+     * @param dir                the directory of the segment files
+     * @param segmentSize        the size of a segment file (bytes)
+     * @param autosaveIntervalMs group commit interval (milliseconds). if less than or equal to 0, force after every append
+     * @throws IOException open file error
+     */
+    public SegmentFileRetainedRepository(File dir, int segmentSize, long autosaveIntervalMs) throws IOException {
+        this.store = new SegmentFileStore(dir, segmentSize, autosaveIntervalMs, new Handler());
+        this.lock = store.getLock();
+        store.open();
+    }
+
+    @Override
+    public void cleanRetained(Topic topic) {
+        lock.lock();
+        try {
+            Long location = index.remove(topic.toString());
+            if (location == null) {
+                return;
+            }
+            store.markGarbage(location);
+            byte[] topicBytes = SegmentFileStore.toBytes(topic.toString());
+            ByteBuffer body = ByteBuffer.allocate(4 + topicBytes.length);
+            SegmentFileStore.putBytes(body, topicBytes);
+            body.flip();
+            store.markGarbage(store.append(TYPE_REMOVE, body, null));
+        } finally {
+            lock.unlock();
+        }
+        store.syncIfNeed();
+    }
+
+    @Override
+    public void retain(Topic topic, MqttPublishMessage msg) {
+        final ByteBuf payload = msg.content();
+        byte[] topicBytes = SegmentFileStore.toBytes(topic.toString());
+        ByteBuffer body = ByteBuffer.allocate(4 + topicBytes.length + 1);
+        SegmentFileStore.putBytes(body, topicBytes);
+        body.put((byte) msg.fixedHeader().qosLevel().value());
+        body.flip();
+        lock.lock();
+        try {
+            Long old = index.put(topic.toString(), store.append(TYPE_PUT, body, payload));
+            if (old != null) {
+                store.markGarbage(old);
+            }
+        } finally {
+            lock.unlock();
+        }
+        store.syncIfNeed();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    @Override
+    public List<MqttRetainedMessage> retainedOnTopic(String topic) {
+        final List<MqttRetainedMessage> matchingMessages = new ArrayList<>();
+        retainedOnTopic(topic, matchingMessages::add);
+        return matchingMessages;
+    }
+
+    /**
+     * The matching topics are collected from the trie (lock free), the messages are copied out of the segment in batches in the lock,
+     * and the consumer is invoked out of the lock (the consumer write the frames to the channel)
+     */
+    @Override
+    public void retainedOnTopic(String topic, Consumer<MqttRetainedMessage> consumer) {
+        List<String> topicList = new ArrayList<>();
+        index.match(topic, (name, location) -> topicList.add(name));
+        List<MqttRetainedMessage> batch = new ArrayList<>(Math.min(topicList.size(), READ_BATCH_SIZE));
+        for (int i = 0; i < topicList.size(); ) {
+            int end = Math.min(i + READ_BATCH_SIZE, topicList.size());
+            lock.lock();
+            try {
+                for (; i < end; i++) {
+                    String name = topicList.get(i);
+                    // the location may be changed (overwrite, remove, compaction) after the match
+                    Long location = index.get(name);
+                    if (location != null) {
+                        batch.add(read(name, location));
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (MqttRetainedMessage message : batch) {
+                consumer.accept(message);
+            }
+            batch.clear();
+        }
+    }
+
+    private MqttRetainedMessage read(String topic, long location) {
+        ByteBuffer body = store.read(location);
+        SegmentFileStore.getString(body);
+        MqttQoS qos = MqttQoS.valueOf(body.get());
+        byte[] payload = new byte[body.remaining()];
+        body.get(payload);
+        return new MqttRetainedMessage(topic, qos, payload);
+    }
+
+    public SegmentFileStore getStore() {
+        return store;
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+
+    private class Handler implements SegmentFileStore.RecordHandler {
+        @Override
+        public void onRestore(byte type, ByteBuffer body, long location) {
+            String topic = SegmentFileStore.getString(body);
+            Long old;
+            if (type == TYPE_PUT) {
+                old = index.put(topic, location);
+            } else {
+                old = index.remove(topic);
+                store.markGarbage(location);
+            }
+            if (old != null) {
+                store.markGarbage(old);
+            }
+        }
+
+        @Override
+        public boolean isLive(byte type, ByteBuffer body, long location) {
+            if (type != TYPE_PUT) {
+                return false;
+            }
+            Long current = index.get(SegmentFileStore.getString(body));
+            return current != null && current == location;
+        }
+
+        @Override
+        public void onRelocate(byte type, ByteBuffer body, long oldLocation, long newLocation) {
+            index.put(SegmentFileStore.getString(body), newLocation);
+        }
+    }
+}
@@ -0,0 +1,536 @@
+package com.github.netty.protocol.mqtt;
+
+import com.github.netty.core.util.LoggerFactoryX;
+import com.github.netty.core.util.LoggerX;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only segment file store (the embedded persistence of the mqtt broker).
+ * The records are appended to the memory-mapped segment files, the owner (repository) keep the in-memory index (key : record location).
+ * Group commit: the dirty segments are forced to the disk once per autosave interval (not once per record).
+ * Compaction: if the garbage is more than the live records, the live records of the oldest segment are appended to the tail, and the segment file is deleted.
+ * Only the oldest segment is compacted, so the remove record (tombstone) can be dropped (there is no older record of the key).
+ * The live records are copied in batches, the lock is released between the batches.
+ * <p>
+ * Record format: length(4) | crc32(4) | type(1) | body
+ * Location: segmentId(high 32 bit) | offset(low 32 bit)
+ * <p>
+ * Note: The append/read/markGarbage must be invoke in the {@link #getLock()}, and invoke {@link #syncIfNeed()} after the unlock.
+ * After the {@link #close()}, the append/read/markGarbage throw {@link IllegalStateException}
+ *
+ * @author wangzihao
+ */
+public class SegmentFileStore implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final long DEFAULT_AUTOSAVE_INTERVAL_MS = 1000;
+    /**
+     * the bytes of the oldest segment scanned in the lock per batch of the compaction
+     */
+    private static final int COMPACT_BATCH_BYTES = 256 * 1024;
+    private static final int HEADER_LENGTH = 9;
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private final LoggerX logger = LoggerFactoryX.getLogger(SegmentFileStore.class);
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * read lock: force the segment out of the lock. write lock: unmap the segment (compact, close)
+     */
+    private final ReentrantReadWriteLock unmapLock = new ReentrantReadWriteLock();
+    /**
+     * only one flush at a time. the dirty flag is cleared before the force, so a flush that sees nothing dirty must wait for the running force
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+    /**
+     * only one compaction at a time
+     */
+    private final Object compactLock = new Object();
+    private final CRC32 crc32 = new CRC32();
+    /**
+     * segment id : segment. the first is the oldest, the last is the active segment
+     */
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final File dir;
+    private final int segmentSize;
+    private final long autosaveIntervalMs;
+    private final RecordHandler handler;
+    private Segment active;
+    private long totalBytes;
+    private long garbageBytes;
+    /**
+     * compact if the store is larger than this, and the garbage is more than the live records
+     */
+    private long compactMinBytes;
+    private AutosaveThread autosaveThread;
+    private volatile boolean closed;
+
+    /**
+     * @param dir                the directory of the segment files
+     * @param segmentSize        the size of a segment file (bytes)
+     * @param autosaveIntervalMs the interval of force the dirty segments to disk. if less than or equal to 0, force after every append ({@link #syncIfNeed()})
+     * @param handler            restore the index, check and relocate the live records of the compaction
+     */
+    public SegmentFileStore(File dir, int segmentSize, long autosaveIntervalMs, RecordHandler handler) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.autosaveIntervalMs = autosaveIntervalMs;
+        this.handler = handler;
+        this.compactMinBytes = segmentSize;
+    }
+
+    public static byte[] toBytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    public static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    private static long location(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Open the segment files and restore the index (invoke {@link RecordHandler#onRestore(byte, ByteBuffer, long)} in the append order).
+     * The broken tail of the last segment is ignored (overwrite by the next append).
+     *
+     * @throws IOException open file error
+     */
+    public void open() throws IOException {
+        lock.lock();
+        try {
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("mkdirs error. dir=" + dir);
+            }
+            File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    int id = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(id, new Segment(id, file, (int) Math.max(file.length(), segmentSize)));
+                }
+            }
+            for (Segment segment : segments.values()) {
+                restore(segment);
+            }
+            if (segments.isEmpty()) {
+                active = newSegment(1, segmentSize);
+            } else {
+                active = segments.lastEntry().getValue();
+            }
+        } finally {
+            lock.unlock();
+        }
+        this.autosaveThread = new AutosaveThread();
+        this.autosaveThread.start();
+    }
+
+    private void restore(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + HEADER_LENGTH <= segment.capacity) {
+            int length = buffer.getInt(position);
+            if (length < HEADER_LENGTH || position + length > segment.capacity) {
+                break;
+            }
+            crc32.reset();
+            crc32.update(slice(buffer, position + 8, length - 8));
+            if (buffer.getInt(position + 4) != (int) crc32.getValue()) {
+                logger.warn("segment record crc error, ignore the tail. file={}, offset={}", segment.file, position);
+                break;
+            }
+            segment.writePosition = position + length;
+            totalBytes += length;
+            handler.onRestore(buffer.get(position + 8), slice(buffer, position + HEADER_LENGTH, length - HEADER_LENGTH), location(segment.id, position));
+            position += length;
+        }
+    }
+
+    private Segment newSegment(int id, int capacity) throws IOException {
+        File file = new File(dir, String.format("%010d%s", id, SEGMENT_SUFFIX));
+        Segment segment = new Segment(id, file, capacity);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        return slice.slice();
+    }
+
+    /**
+     * Append the record. invoke in the lock
+     *
+     * @param type    record type
+     * @param body    record body (flip). the position is not change
+     * @param payload the body tail. nullable. the readable bytes is copied, the reader index and refCnt is not change
+     * @return the record location
+     * @throws IllegalStateException the store is closed
+     */
+    public long append(byte type, ByteBuffer body, ByteBuf payload) {
+        checkOpen();
+        int payloadLength = payload != null ? payload.readableBytes() : 0;
+        int length = HEADER_LENGTH + body.remaining() + payloadLength;
+        Segment segment = active;
+        if (segment.capacity - segment.writePosition < length) {
+            try {
+                segment = active = newSegment(segment.id + 1, Math.max(segmentSize, length));
+            } catch (IOException e) {
+                throw new IllegalStateException("create segment file error. dir=" + dir + ", error=" + e, e);
+            }
+        }
+        int position = segment.writePosition;
+        MappedByteBuffer buffer = segment.buffer;
+        ByteBuffer dst = buffer.duplicate();
+        dst.limit(position + length).position(position + 8);
+        dst.put(type);
+        dst.put(body.duplicate());
+        if (payload != null) {
+            payload.getBytes(payload.readerIndex(), dst);
+        }
+        crc32.reset();
+        crc32.update(slice(buffer, position + 8, length - 8));
+        buffer.putInt(position + 4, (int) crc32.getValue());
+        // the length is written at last, the restore is stopped on the zero length
+        buffer.putInt(position, length);
+
+        segment.writePosition += length;
+        segment.dirty = true;
+        totalBytes += length;
+        return location(segment.id, position);
+    }
+
+    /**
+     * The closed flag is set before the close takes the lock (and unmap the segments), so the check in the lock is enough
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("segment store is closed. dir=" + dir);
+        }
+    }
+
+    /**
+     * If the autosave interval is less than or equal to 0, force the dirty segments to the disk.
+     * invoke out of the lock after the append (the other threads can append when forcing)
+     */
+    public void syncIfNeed() {
+        if (autosaveIntervalMs <= 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Read the record body. invoke in the lock, and do not use the body after the unlock (the segment may be deleted by the compaction)
+     *
+     * @param location record location
+     * @return record body
+     * @throws IllegalStateException the store is closed
+     */
+    public ByteBuffer read(long location) {
+        checkOpen();
+        Segment segment = segments.get(segmentId(location));
+        int offset = offset(location);
+        int length = segment.buffer.getInt(offset);
+        return slice(segment.buffer, offset + HEADER_LENGTH, length - HEADER_LENGTH).asReadOnlyBuffer();
+    }
+
+    /**
+     * Mark the record as garbage (the record is removed or overwritten). Each record is marked once. invoke in the lock
+     *
+     * @param location record location
+     * @throws IllegalStateException the store is closed
+     */
+    public void markGarbage(long location) {
+        checkOpen();
+        Segment segment = segments.get(segmentId(location));
+        if (segment != null) {
+            garbageBytes += segment.buffer.getInt(offset(location));
+        }
+    }
+
+    /**
+     * Compact the oldest segment, if the garbage is more than the live records.
+     * The live records are copied in batches, the lock is released between the batches, so the append is not blocked by the whole segment copy.
+     * The records not copied are still readable (the segment is deleted after all the records are copied and forced).
+     *
+     * @return true if a segment is compacted
+     */
+    public boolean compact() {
+        synchronized (compactLock) {
+            Segment oldest;
+            lock.lock();
+            try {
+                if (closed || segments.size() <= 1 || totalBytes < compactMinBytes || garbageBytes * 2 <= totalBytes) {
+                    return false;
+                }
+                oldest = segments.firstEntry().getValue();
+            } finally {
+                lock.unlock();
+            }
+            // not the active segment, the write position is not change
+            MappedByteBuffer buffer = oldest.buffer;
+            int liveBytes = 0;
+            int position = 0;
+            while (position < oldest.writePosition) {
+                lock.lock();
+                try {
+                    if (closed) {
+                        return false;
+                    }
+                    int batchEnd = position + COMPACT_BATCH_BYTES;
+                    while (position < oldest.writePosition && position < batchEnd) {
+                        int length = buffer.getInt(position);
+                        byte type = buffer.get(position + 8);
+                        ByteBuffer body = slice(buffer, position + HEADER_LENGTH, length - HEADER_LENGTH);
+                        long location = location(oldest.id, position);
+                        if (handler.isLive(type, body.duplicate(), location)) {
+                            long newLocation = append(type, body, null);
+                            handler.onRelocate(type, body, location, newLocation);
+                            liveBytes += length;
+                        }
+                        position += length;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            // the relocated records must be on the disk before delete the segment
+            flush();
+
+            unmapLock.writeLock().lock();
+            try {
+                lock.lock();
+                try {
+                    if (closed) {
+                        return false;
+                    }
+                    segments.remove(oldest.id);
+                    totalBytes -= oldest.writePosition;
+                    garbageBytes = Math.max(0, garbageBytes - (oldest.writePosition - liveBytes));
+                } finally {
+                    lock.unlock();
+                }
+                oldest.close();
+            } finally {
+                unmapLock.writeLock().unlock();
+            }
+            if (!oldest.file.delete()) {
+                logger.warn("delete segment file fail. file={}", oldest.file);
+            }
+            logger.debug("compact segment {}, live bytes {}, total bytes {}, garbage bytes {}", oldest.file.getName(), liveBytes, totalBytes, garbageBytes);
+            return true;
+        }
+    }
+
+    /**
+     * Force the dirty segments to the disk (group commit)
+     */
+    public void flush() {
+        flushLock.lock();
+        // the segment is not unmapped when forcing out of the lock
+        unmapLock.readLock().lock();
+        try {
+            List<Segment> dirtySegments = new ArrayList<>(2);
+            lock.lock();
+            try {
+                for (Segment segment : segments.values()) {
+                    if (segment.dirty) {
+                        segment.dirty = false;
+                        dirtySegments.add(segment);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (Segment segment : dirtySegments) {
+                segment.buffer.force();
+            }
+        } finally {
+            unmapLock.readLock().unlock();
+            flushLock.unlock();
+        }
+    }
+
+    private void force(Segment segment) {
+        segment.dirty = false;
+        segment.buffer.force();
+    }
+
+    public ReentrantLock getLock() {
+        return lock;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getGarbageBytes() {
+        return garbageBytes;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public long getCompactMinBytes() {
+        return compactMinBytes;
+    }
+
+    public void setCompactMinBytes(long compactMinBytes) {
+        this.compactMinBytes = compactMinBytes;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        AutosaveThread autosaveThread = this.autosaveThread;
+        if (autosaveThread != null) {
+            LockSupport.unpark(autosaveThread);
+            try {
+                autosaveThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        unmapLock.writeLock().lock();
+        lock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                force(segment);
+                segment.close();
+            }
+            segments.clear();
+        } finally {
+            lock.unlock();
+            unmapLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentFileStore{" +
+                "dir=" + dir +
+                ", segments=" + segments.size() +
+                ", totalBytes=" + totalBytes +
+                ", garbageBytes=" + garbageBytes +
+                '}';
+    }
+
+    /**
+     * The owner of the store (keep the in-memory index)
+     */
+    public interface RecordHandler {
+        /**
+         * Restore the index by the record. if the record is overwrite or removed, invoke {@link #markGarbage(long)}
+         *
+         * @param type     record type
+         * @param body     record body
+         * @param location record location
+         */
+        void onRestore(byte type, ByteBuffer body, long location);
+
+        /**
+         * @param type     record type
+         * @param body     record body
+         * @param location record location
+         * @return true if the record is in the index (copy to the tail on the compaction), false if the record is garbage
+         */
+        boolean isLive(byte type, ByteBuffer body, long location);
+
+        /**
+         * The live record is moved by the compaction, update the index
+         *
+         * @param type        record type
+         * @param body        record body
+         * @param oldLocation the location in the compacted segment
+         * @param newLocation new location
+         */
+        void onRelocate(byte type, ByteBuffer body, long oldLocation, long newLocation);
+    }
+
+    private static class Segment {
+        private final int id;
+        private final File file;
+        private final int capacity;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private boolean dirty;
+
+        private Segment(int id, File file, int capacity) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.capacity = capacity;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            try {
+                PlatformDependent.freeDirectBuffer(buffer);
+            } catch (Throwable ignored) {
+                // unmap by the gc
+            }
+        }
+    }
+
+    private class AutosaveThread extends Thread {
+        private AutosaveThread() {
+            super("NettyX-" + SegmentFileStore.this.dir.getName() + "-Autosave");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long intervalMs = autosaveIntervalMs > 0 ? autosaveIntervalMs : DEFAULT_AUTOSAVE_INTERVAL_MS;
+            while (!closed) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(intervalMs));
+                try {
+                    flush();
+                    compact();
+                } catch (Throwable t) {
+                    logger.warn("segment store autosave error. store={}, error={}", SegmentFileStore.this, t.toString(), t);
+                }
+            }
+        }
+    }
+}
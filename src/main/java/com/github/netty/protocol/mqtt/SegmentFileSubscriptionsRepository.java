@@ -0,0 +1,188 @@
+package com.github.netty.protocol.mqtt;
+
+import com.github.netty.protocol.mqtt.subscriptions.Subscription;
+import com.github.netty.protocol.mqtt.subscriptions.Topic;
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Segment file subscriptions store. The subscriptions of the not clean session survive the broker restart.
+ * <p>
+ * Put record: clientId | topic | qos(1)
+ * Remove record: clientId | topic
+ *
+ * @see SegmentFileStore
+ */
+public class SegmentFileSubscriptionsRepository implements ISubscriptionsRepository, Closeable {
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    /**
+     * clientId : (topic : subscription). only access in the lock
+     */
+    private final Map<String, Map<String, Entry>> index = new LinkedHashMap<>();
+    private final SegmentFileStore store;
+    private final ReentrantLock lock;
+
+    public SegmentFileSubscriptionsRepository(File dir) throws IOException {
+        this(dir, SegmentFileStore.DEFAULT_SEGMENT_SIZE, SegmentFileStore.DEFAULT_AUTOSAVE_INTERVAL_MS);
+    }
+
+    /**
+     * @param dir                the directory of the segment files
+     * @param segmentSize        the size of a segment file (bytes)
+     * @param autosaveIntervalMs group commit interval (milliseconds). if less than or equal to 0, force after every append
+     * @throws IOException open file error
+     */
+    public SegmentFileSubscriptionsRepository(File dir, int segmentSize, long autosaveIntervalMs) throws IOException {
+        this.store = new SegmentFileStore(dir, segmentSize, autosaveIntervalMs, new Handler());
+        this.lock = store.getLock();
+        store.open();
+    }
+
+    private static ByteBuffer body(String clientId, String topic, MqttQoS qos) {
+        byte[] clientIdBytes = SegmentFileStore.toBytes(clientId);
+        byte[] topicBytes = SegmentFileStore.toBytes(topic);
+        ByteBuffer body = ByteBuffer.allocate(4 + clientIdBytes.length + 4 + topicBytes.length + (qos != null ? 1 : 0));
+        SegmentFileStore.putBytes(body, clientIdBytes);
+        SegmentFileStore.putBytes(body, topicBytes);
+        if (qos != null) {
+            body.put((byte) qos.value());
+        }
+        body.flip();
+        return body;
+    }
+
+    @Override
+    public List<Subscription> listAllSubscriptions() {
+        lock.lock();
+        try {
+            List<Subscription> list = new ArrayList<>();
+            for (Map<String, Entry> topicMap : index.values()) {
+                for (Entry entry : topicMap.values()) {
+                    list.add(entry.subscription);
+                }
+            }
+            return list;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addNewSubscription(Subscription subscription) {
+        String topic = subscription.getTopicFilter().toString();
+        ByteBuffer body = body(subscription.getClientId(), topic, subscription.getRequestedQos());
+        lock.lock();
+        try {
+            long location = store.append(TYPE_PUT, body, null);
+            Entry old = index.computeIfAbsent(subscription.getClientId(), k -> new LinkedHashMap<>())
+                    .put(topic, new Entry(subscription, location));
+            if (old != null) {
+                store.markGarbage(old.location);
+            }
+        } finally {
+            lock.unlock();
+        }
+        store.syncIfNeed();
+    }
+
+    @Override
+    public void removeSubscription(String topic, String clientID) {
+        lock.lock();
+        try {
+            Entry old = remove(clientID, topic);
+            if (old == null) {
+                return;
+            }
+            store.markGarbage(old.location);
+            store.markGarbage(store.append(TYPE_REMOVE, body(clientID, topic, null), null));
+        } finally {
+            lock.unlock();
+        }
+        store.syncIfNeed();
+    }
+
+    private Entry remove(String clientId, String topic) {
+        Map<String, Entry> topicMap = index.get(clientId);
+        if (topicMap == null) {
+            return null;
+        }
+        Entry old = topicMap.remove(topic);
+        if (topicMap.isEmpty()) {
+            index.remove(clientId);
+        }
+        return old;
+    }
+
+    private Entry get(ByteBuffer body) {
+        String clientId = SegmentFileStore.getString(body);
+        String topic = SegmentFileStore.getString(body);
+        Map<String, Entry> topicMap = index.get(clientId);
+        return topicMap != null ? topicMap.get(topic) : null;
+    }
+
+    public SegmentFileStore getStore() {
+        return store;
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+
+    private static class Entry {
+        private final Subscription subscription;
+        private long location;
+
+        private Entry(Subscription subscription, long location) {
+            this.subscription = subscription;
+            this.location = location;
+        }
+    }
+
+    private class Handler implements SegmentFileStore.RecordHandler {
+        @Override
+        public void onRestore(byte type, ByteBuffer body, long location) {
+            String clientId = SegmentFileStore.getString(body);
+            String topic = SegmentFileStore.getString(body);
+            Entry old;
+            if (type == TYPE_PUT) {
+                Subscription subscription = new Subscription(clientId, new Topic(topic), MqttQoS.valueOf(body.get()));
+                old = index.computeIfAbsent(clientId, k -> new LinkedHashMap<>())
+                        .put(topic, new Entry(subscription, location));
+            } else {
+                old = remove(clientId, topic);
+                store.markGarbage(location);
+            }
+            if (old != null) {
+                store.markGarbage(old.location);
+            }
+        }
+
+        @Override
+        public boolean isLive(byte type, ByteBuffer body, long location) {
+            if (type != TYPE_PUT) {
+                return false;
+            }
+            Entry entry = get(body);
+            return entry != null && entry.location == location;
+        }
+
+        @Override
+        public void onRelocate(byte type, ByteBuffer body, long oldLocation, long newLocation) {
+            Entry entry = get(body);
+            if (entry != null) {
+                entry.location = newLocation;
+            }
+        }
+    }
+}
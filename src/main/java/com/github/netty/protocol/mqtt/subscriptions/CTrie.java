@@ -4,12 +4,17 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class CTrie {
 
     private static final Token ROOT = new Token("root");
     private static final INode NO_PARENT = null;
     INode root;
+    /**
+     * change count of the tree. increment after each subscribe/unsubscribe, the match cache is stale if the generation changed
+     */
+    private final AtomicLong generation = new AtomicLong();
 
     CTrie() {
         final CNode mainNode = new CNode();
@@ -77,6 +82,7 @@ public class CTrie {
         do {
             res = insert(newSubscription.topicFilter, this.root, newSubscription);
         } while (res == Action.REPEAT);
+        generation.incrementAndGet();
     }
 
     private Action insert(Topic topic, final INode inode, Subscription newSubscription) {
@@ -139,6 +145,7 @@ public class CTrie {
         do {
             res = remove(clientID, topic, this.root, NO_PARENT);
         } while (res == Action.REPEAT);
+        generation.incrementAndGet();
     }
 
     private Action remove(String clientId, Topic topic, INode inode, INode iParent) {
@@ -189,6 +196,15 @@ public class CTrie {
         return iParent.compareAndSet(iParent.mainNode(), updatedCnode) ? Action.OK : Action.REPEAT;
     }
 
+    /**
+     * Get the change count of the tree. read it before the match, and the match result is valid while the generation not change
+     *
+     * @return generation
+     */
+    public long generation() {
+        return generation.get();
+    }
+
     public int size() {
         SubscriptionCounterVisitor visitor = new SubscriptionCounterVisitor();
         dfsVisit(this.root, visitor, 0);
@@ -20,14 +20,32 @@ import com.github.netty.core.util.LoggerX;
 import com.github.netty.protocol.mqtt.ISubscriptionsRepository;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CTrieSubscriptionDirectory implements ISubscriptionsDirectory {
 
     private static final LoggerX LOG = LoggerFactoryX.getLogger(CTrieSubscriptionDirectory.class);
+    private static final Subscription[] EMPTY = new Subscription[0];
+    public static final int DEFAULT_MAX_MATCH_CACHE_SIZE = 4096;
     private CTrie ctrie;
     private volatile ISubscriptionsRepository subscriptionsRepository;
+    /**
+     * publish topic string -> resolved qos sharpening subscriptions. the entry is valid while the ctrie generation not change
+     */
+    private final Map<String, MatchEntry> matchCache = new ConcurrentHashMap<>();
+    private final int maxMatchCacheSize;
+    private volatile long matchCacheGeneration;
 
     public CTrieSubscriptionDirectory(ISubscriptionsRepository subscriptionsRepository) {
+        this(subscriptionsRepository, DEFAULT_MAX_MATCH_CACHE_SIZE);
+    }
+
+    /**
+     * @param subscriptionsRepository subscriptionsRepository
+     * @param maxMatchCacheSize       max topic count of the match cache. 0 = disable cache
+     */
+    public CTrieSubscriptionDirectory(ISubscriptionsRepository subscriptionsRepository, int maxMatchCacheSize) {
+        this.maxMatchCacheSize = maxMatchCacheSize;
         LOG.info("Initializing CTrie");
         ctrie = new CTrie();
 
@@ -66,7 +84,45 @@ public class CTrieSubscriptionDirectory implements ISubscriptionsDirectory {
 
     @Override
     public Set<Subscription> matchQosSharpening(Topic topic) {
+        return new HashSet<>(Arrays.asList(matchQosSharpeningArray(topic)));
+    }
+
+    /**
+     * Get the resolved subscriptions from the match cache. The cache key is the topic string,
+     * so the cache hit not need parse the topic tokens and walk the ctrie.
+     * The generation is read before the match, if subscribe/unsubscribe during the match, the entry is stale on next get.
+     *
+     * @param topic publish topic
+     * @return matching subscriptions. the caller must not modify it
+     */
+    @Override
+    public Subscription[] matchQosSharpeningArray(Topic topic) {
+        if (maxMatchCacheSize <= 0) {
+            return doMatchQosSharpening(topic);
+        }
+        long generation = ctrie.generation();
+        String key = topic.toString();
+        MatchEntry entry = matchCache.get(key);
+        if (entry != null && entry.generation == generation) {
+            return entry.subscriptions;
+        }
+        Subscription[] subscriptions = doMatchQosSharpening(topic);
+        if (matchCacheGeneration != generation) {
+            // all entries is stale
+            matchCache.clear();
+            matchCacheGeneration = generation;
+        }
+        if (entry != null || matchCache.size() < maxMatchCacheSize) {
+            matchCache.put(key, new MatchEntry(generation, subscriptions));
+        }
+        return subscriptions;
+    }
+
+    private Subscription[] doMatchQosSharpening(Topic topic) {
         final Set<Subscription> subscriptions = matchWithoutQosSharpening(topic);
+        if (subscriptions.isEmpty()) {
+            return EMPTY;
+        }
 
         Map<String, Subscription> subsGroupedByClient = new HashMap<>();
         for (Subscription sub : subscriptions) {
@@ -76,7 +132,11 @@ public class CTrieSubscriptionDirectory implements ISubscriptionsDirectory {
                 subsGroupedByClient.put(sub.clientId, sub);
             }
         }
-        return new HashSet<>(subsGroupedByClient.values());
+        return subsGroupedByClient.values().toArray(EMPTY);
+    }
+
+    public int getMatchCacheSize() {
+        return matchCache.size();
     }
 
     @Override
@@ -107,4 +167,14 @@ public class CTrieSubscriptionDirectory implements ISubscriptionsDirectory {
     public String dumpTree() {
         return ctrie.dumpTree();
     }
+
+    private static class MatchEntry {
+        private final long generation;
+        private final Subscription[] subscriptions;
+
+        private MatchEntry(long generation, Subscription[] subscriptions) {
+            this.generation = generation;
+            this.subscriptions = subscriptions;
+        }
+    }
 }
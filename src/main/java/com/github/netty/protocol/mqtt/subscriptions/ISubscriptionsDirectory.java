@@ -23,6 +23,17 @@ public interface ISubscriptionsDirectory {
 
     Set<Subscription> matchQosSharpening(Topic topic);
 
+    /**
+     * Same as {@link #matchQosSharpening(Topic)}, but return the array for the publish fan-out.
+     * The array may be shared (cached), the caller must not modify it.
+     *
+     * @param topic publish topic
+     * @return matching subscriptions (one per client, with the greatest qos). empty array if not matching.
+     */
+    default Subscription[] matchQosSharpeningArray(Topic topic) {
+        return matchQosSharpening(topic).toArray(new Subscription[0]);
+    }
+
     void add(Subscription newSubscription);
 
     void removeSubscription(Topic topic, String clientID);
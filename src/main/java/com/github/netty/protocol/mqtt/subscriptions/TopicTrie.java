@@ -0,0 +1,200 @@
+package com.github.netty.protocol.mqtt.subscriptions;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * The topic name index by the topic level (token) trie. (for the retained messages)
+ * The match of the topic filter walk only the matching branches, not scan all the topics.
+ * <p>
+ * The read (get/match) is lock free, the write (put/remove) is serialized by the trie lock.
+ *
+ * @param <V> value type
+ * @author wangzihao
+ */
+public class TopicTrie<V> {
+    private static final char SEPARATOR = '/';
+    private static final String MULTI = "#";
+    private static final String SINGLE = "+";
+    private final Node<V> root = new Node<>(null);
+    private volatile int size;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(String topic) {
+        Node<V> node = root;
+        int start = 0;
+        while (node != null) {
+            int end = topic.indexOf(SEPARATOR, start);
+            if (end == -1) {
+                node = node.children.get(topic.substring(start));
+                break;
+            }
+            node = node.children.get(topic.substring(start, end));
+            start = end + 1;
+        }
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * @param topic topic name (not contains the wildcard)
+     * @param value value
+     * @return old value
+     */
+    public synchronized V put(String topic, V value) {
+        Node<V> node = root;
+        int start = 0;
+        while (true) {
+            int end = topic.indexOf(SEPARATOR, start);
+            String level = end == -1 ? topic.substring(start) : topic.substring(start, end);
+            Node<V> child = node.children.get(level);
+            if (child == null) {
+                child = new Node<>(node);
+                node.children.put(level, child);
+            }
+            node = child;
+            if (end == -1) {
+                break;
+            }
+            start = end + 1;
+        }
+        V old = node.value;
+        if (node.topic == null) {
+            node.topic = topic;
+        }
+        node.value = value;
+        if (old == null) {
+            size++;
+        }
+        return old;
+    }
+
+    /**
+     * @param topic topic name
+     * @return old value
+     */
+    public synchronized V remove(String topic) {
+        Node<V> node = root;
+        int start = 0;
+        String level;
+        while (true) {
+            int end = topic.indexOf(SEPARATOR, start);
+            level = end == -1 ? topic.substring(start) : topic.substring(start, end);
+            node = node.children.get(level);
+            if (node == null) {
+                return null;
+            }
+            if (end == -1) {
+                break;
+            }
+            start = end + 1;
+        }
+        V old = node.value;
+        if (old == null) {
+            return null;
+        }
+        node.value = null;
+        size--;
+        // prune the empty branch
+        int levelEnd = topic.length();
+        while (node.parent != null && node.value == null && node.children.isEmpty()) {
+            int levelStart = topic.lastIndexOf(SEPARATOR, levelEnd - 1) + 1;
+            node.parent.children.remove(topic.substring(levelStart, levelEnd));
+            node = node.parent;
+            levelEnd = levelStart - 1;
+        }
+        return old;
+    }
+
+    /**
+     * Stream the values that the topic name match the topic filter.
+     * According to the MQTT spec, the wildcard (# and +) of the first level not match the topic start with '$'
+     *
+     * @param topicFilter topic filter. (e.g. a/+/c, a/#)
+     * @param consumer    topic name, value
+     */
+    public void match(String topicFilter, BiConsumer<String, V> consumer) {
+        match(root, topicFilter, 0, true, consumer);
+    }
+
+    private void match(Node<V> node, String filter, int start, boolean first, BiConsumer<String, V> consumer) {
+        if (start > filter.length()) {
+            V value = node.value;
+            if (value != null) {
+                consumer.accept(node.topic, value);
+            }
+            return;
+        }
+        int end = filter.indexOf(SEPARATOR, start);
+        if (end == -1) {
+            end = filter.length();
+        }
+        String level = filter.substring(start, end);
+        if (MULTI.equals(level)) {
+            // 'a/#' also match the parent 'a'
+            if (!first) {
+                V value = node.value;
+                if (value != null) {
+                    consumer.accept(node.topic, value);
+                }
+            }
+            for (Map.Entry<String, Node<V>> entry : node.children.entrySet()) {
+                if (first && isSystemTopic(entry.getKey())) {
+                    continue;
+                }
+                forEach(entry.getValue(), consumer);
+            }
+        } else if (SINGLE.equals(level)) {
+            for (Map.Entry<String, Node<V>> entry : node.children.entrySet()) {
+                if (first && isSystemTopic(entry.getKey())) {
+                    continue;
+                }
+                match(entry.getValue(), filter, end + 1, false, consumer);
+            }
+        } else {
+            Node<V> child = node.children.get(level);
+            if (child != null) {
+                match(child, filter, end + 1, false, consumer);
+            }
+        }
+    }
+
+    public void forEach(BiConsumer<String, V> consumer) {
+        forEach(root, consumer);
+    }
+
+    private void forEach(Node<V> node, BiConsumer<String, V> consumer) {
+        V value = node.value;
+        if (value != null) {
+            consumer.accept(node.topic, value);
+        }
+        for (Node<V> child : node.children.values()) {
+            forEach(child, consumer);
+        }
+    }
+
+    private static boolean isSystemTopic(String level) {
+        return !level.isEmpty() && level.charAt(0) == '$';
+    }
+
+    private static class Node<V> {
+        private final Node<V> parent;
+        private final Map<String, Node<V>> children = new ConcurrentHashMap<>(4);
+        /**
+         * the topic name of the node path. set before the first value, never change
+         */
+        private volatile String topic;
+        private volatile V value;
+
+        private Node(Node<V> parent) {
+            this.parent = parent;
+        }
+    }
+}
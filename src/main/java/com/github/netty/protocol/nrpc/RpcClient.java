@@ -32,6 +32,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -74,7 +75,7 @@ public class RpcClient extends AbstractNettyClient {
         }
     };
     protected final DataCodec dataCodec;
-    protected final ExpiryLRUMap<Integer, RpcDone> rpcDoneMap = new ExpiryLRUMap<>(512, Long.MAX_VALUE, Long.MAX_VALUE, null);
+    protected final RpcInFlightMap<RpcDone> rpcDoneMap = new RpcInFlightMap<>(this::onDoneTimeout);
     private final Map<String, Sender> rpcInstanceMap = new LinkedHashMap<>(6);
     private final AtomicInteger requestIdIncr = new AtomicInteger();
     private final AtomicBoolean scheduleReconnectTaskIngFlag = new AtomicBoolean(false);
@@ -84,6 +85,24 @@ public class RpcClient extends AbstractNettyClient {
     private int reconnectScheduledIntervalMs = 5000;
     private long connectTimeout = 1000;
     private int messageMaxLength = 10 * 1024 * 1024;
+    /**
+     * Request by numeric method id (negotiated per connection) instead of service, version, method name
+     */
+    private boolean methodIdEnable = false;
+    /**
+     * current connection method id table
+     */
+    private volatile MethodIdTable methodIdTable;
+    /**
+     * Batch the request write and flush. {@link RpcWriteBatcher}
+     */
+    private boolean writeBatchEnable = false;
+    private int writeBatchMaxSize = 64;
+    private long writeBatchMaxLingerMicros = 50;
+    /**
+     * current connection write batcher
+     */
+    private volatile RpcWriteBatcher writeBatcher;
     private RpcDBService rpcDBService;
     private RpcCommandService rpcCommandService;
     /**
@@ -127,16 +146,17 @@ public class RpcClient extends AbstractNettyClient {
                 aop.onEncodeRequestBefore(rpcContext, params);
             }
         });
-        rpcDoneMap.setOnExpiryConsumer(node -> {
-            try {
-                node.getData().doneTimeout(node.getKey(), node.getCreateTimestamp(), node.getExpiryTimestamp());
-            } catch (Exception e) {
-                logger.warn("doneTimeout exception. client = {}, message = {}.", this, e.toString(), e);
-            }
-        });
         this.rpcCommandAsyncService = newInstance(RpcCommandAsyncService.class);
     }
 
+    private void onDoneTimeout(int requestId, RpcDone rpcDone, long createTimestamp, long expiryTimestamp) {
+        try {
+            rpcDone.doneTimeout(requestId, createTimestamp, expiryTimestamp);
+        } catch (Exception e) {
+            logger.warn("doneTimeout exception. client = {}, message = {}.", this, e.toString(), e);
+        }
+    }
+
     public static String getClientInstanceKey(Class interfaceClass, String requestMappingName, String version) {
         return interfaceClass.getName() + version + requestMappingName;
     }
@@ -184,6 +204,93 @@ public class RpcClient extends AbstractNettyClient {
         this.messageMaxLength = messageMaxLength;
     }
 
+    public boolean isMethodIdEnable() {
+        return methodIdEnable;
+    }
+
+    public void setMethodIdEnable(boolean methodIdEnable) {
+        this.methodIdEnable = methodIdEnable;
+    }
+
+    public boolean isWriteBatchEnable() {
+        return writeBatchEnable;
+    }
+
+    public void setWriteBatchEnable(boolean writeBatchEnable) {
+        this.writeBatchEnable = writeBatchEnable;
+    }
+
+    public int getWriteBatchMaxSize() {
+        return writeBatchMaxSize;
+    }
+
+    public void setWriteBatchMaxSize(int writeBatchMaxSize) {
+        this.writeBatchMaxSize = writeBatchMaxSize;
+    }
+
+    public long getWriteBatchMaxLingerMicros() {
+        return writeBatchMaxLingerMicros;
+    }
+
+    public void setWriteBatchMaxLingerMicros(long writeBatchMaxLingerMicros) {
+        this.writeBatchMaxLingerMicros = writeBatchMaxLingerMicros;
+    }
+
+    /**
+     * Write and flush the request. if write batch enable, flush together with other requests.
+     *
+     * @param channel channel
+     * @param request request
+     * @return write future
+     */
+    ChannelFuture writeRequest(Channel channel, RequestPacket request) {
+        RpcWriteBatcher batcher = this.writeBatcher;
+        if (batcher != null && batcher.getChannel() == channel) {
+            return batcher.write(request);
+        } else {
+            return channel.writeAndFlush(request);
+        }
+    }
+
+    /**
+     * Get the method id of current connection.
+     * The first call register the id to server. then request by name until the server confirm it.
+     *
+     * @param rpcMethod          rpcMethod
+     * @param channel            current channel
+     * @param requestMappingName requestMappingName
+     * @param version            version
+     * @return method id. -1 is request by name
+     */
+    int getMethodId(RpcMethod<RpcClient> rpcMethod, Channel channel, String requestMappingName, String version) {
+        MethodIdTable table = this.methodIdTable;
+        if (table == null || table.channel != channel) {
+            return -1;
+        }
+        if (rpcMethod.methodIdTable == table) {
+            return rpcMethod.methodId;
+        }
+        if (rpcMethod.methodIdRegisterTable != table) {
+            synchronized (rpcMethod) {
+                if (rpcMethod.methodIdRegisterTable != table) {
+                    int id = table.idIncr.getAndIncrement();
+                    if (id <= RpcPacket.MethodIdPacket.MAX_METHOD_ID) {
+                        table.registerMap.put(id, rpcMethod);
+                        RpcPacket.MethodIdPacket packet = new RpcPacket.MethodIdPacket();
+                        packet.setAck(ACK_YES);
+                        packet.setMethodId(id);
+                        packet.setRequestMappingName(requestMappingName);
+                        packet.setVersion(version);
+                        packet.setMethodName(rpcMethod.getMethodName());
+                        channel.writeAndFlush(packet);
+                    }
+                    rpcMethod.methodIdRegisterTable = table;
+                }
+            }
+        }
+        return -1;
+    }
+
     public BiConsumer<Long, RpcClient> getReconnectTaskSuccessConsumer() {
         return reconnectTaskSuccessConsumer;
     }
@@ -284,6 +391,7 @@ public class RpcClient extends AbstractNettyClient {
         if (rpcMethodMap.isEmpty()) {
             throw new IllegalStateException("The RPC service interface must have at least one method, class=[" + clazz.getSimpleName() + "]");
         }
+        rpcMethodMap.values().forEach(dataCodec::register);
         Sender rpcInstance = new Sender(this, timeout, requestMappingName, version, rpcMethodMap);
         rpcInstanceMap.put(getClientInstanceKey(clazz, requestMappingName, version), rpcInstance);
         return rpcInstance;
@@ -354,7 +462,7 @@ public class RpcClient extends AbstractNettyClient {
         return scheduleReconnectTaskIngFlag.get();
     }
 
-    public ExpiryLRUMap<Integer, RpcDone> getRpcDoneMap() {
+    public RpcInFlightMap<RpcDone> getRpcDoneMap() {
         return rpcDoneMap;
     }
 
@@ -756,12 +864,13 @@ public class RpcClient extends AbstractNettyClient {
                 SocketChannel channel = rpcClient.getChannel();
                 rpcContext.setRemoteAddress(channel.remoteAddress());
                 rpcContext.setLocalAddress(channel.localAddress());
+                rpcRequest.setMethodId(rpcClient.getMethodId(method, channel, requestMappingName, version));
                 if (ackFlag == ACK_YES) {
                     future = RpcClientFuture.newInstance(rpcContext);
                     rpcClient.rpcDoneMap.put(requestId, future);
                 }
                 rpcRequest.setTimeout(timeout);
-                channel.writeAndFlush(rpcRequest).addListener((ChannelFutureListener) channelFuture -> {
+                rpcClient.writeRequest(channel, rpcRequest).addListener((ChannelFutureListener) channelFuture -> {
                     if (rpcContext.getState() == INIT) {
                         logger.warn("on timeout after. write event. isSuccess={},channel={}",
                                 channelFuture.isSuccess(), channelFuture.channel());
@@ -855,6 +964,19 @@ public class RpcClient extends AbstractNettyClient {
         }
     }
 
+    /**
+     * Method id table of one connection. (method id only valid in the connection)
+     */
+    static class MethodIdTable {
+        final Channel channel;
+        final AtomicInteger idIncr = new AtomicInteger();
+        final Map<Integer, RpcMethod<RpcClient>> registerMap = new ConcurrentHashMap<>();
+
+        MethodIdTable(Channel channel) {
+            this.channel = channel;
+        }
+    }
+
     static class ChunkAckSender implements ChunkAck {
         private final int requestId;
         private final int chunkId;
@@ -959,6 +1081,16 @@ public class RpcClient extends AbstractNettyClient {
                 if (rpcDone != null) {
                     rpcDone.done(last);
                 }
+            } else if (packet instanceof RpcPacket.MethodIdPacket) {
+                // server confirm the method id
+                MethodIdTable table = methodIdTable;
+                if (table != null && table.channel == ctx.channel()) {
+                    RpcMethod<RpcClient> rpcMethod = table.registerMap.remove(((RpcPacket.MethodIdPacket) packet).getMethodId());
+                    if (rpcMethod != null) {
+                        rpcMethod.methodId = ((RpcPacket.MethodIdPacket) packet).getMethodId();
+                        rpcMethod.methodIdTable = table;
+                    }
+                }
             } else {
                 if (logger.isDebugEnabled()) {
                     logger.debug("client received packet={}", String.valueOf(packet));
@@ -976,6 +1108,13 @@ public class RpcClient extends AbstractNettyClient {
         @Override
         public void channelActive(ChannelHandlerContext ctx) throws Exception {
             state = State.UP;
+            rpcDoneMap.start(ctx.channel().eventLoop());
+            if (methodIdEnable) {
+                methodIdTable = new MethodIdTable(ctx.channel());
+            }
+            if (writeBatchEnable) {
+                writeBatcher = new RpcWriteBatcher(ctx.channel(), writeBatchMaxSize, writeBatchMaxLingerMicros);
+            }
             for (RpcClientAop aop : nettyRpcClientAopList) {
                 aop.onConnectAfter(RpcClient.this);
             }
@@ -169,6 +169,7 @@ public class RpcClientReactivePublisher implements Publisher<Object>, Subscripti
             rpcRequest.setMethodName(rpcContext.getRpcMethod().getMethodName());
             rpcRequest.setAck(rpcMethod.isReturnVoid() ? ACK_NO : ACK_YES);
             rpcRequest.setTimeout(timeout);
+            rpcRequest.setMethodId(rpcClient.getMethodId(rpcMethod, channel, requestMappingName, version));
             rpcContext.setRequest(rpcRequest);
             rpcContext.setTimeout(timeout);
             rpcClient.onStateUpdate(rpcContext, INIT);
@@ -177,7 +178,7 @@ public class RpcClientReactivePublisher implements Publisher<Object>, Subscripti
             rpcClient.onStateUpdate(rpcContext, WRITE_ING);
 
             rpcRequest.setTimeout(timeout);
-            ChannelFuture writeAndFlushFuture = channel.writeAndFlush(rpcRequest);
+            ChannelFuture writeAndFlushFuture = rpcClient.writeRequest(channel, rpcRequest);
             rpcClient.rpcDoneMap.put(requestId, this, timeout);
             writeAndFlushFuture.addListener((ChannelFutureListener) future -> {
                 CONTEXT_LOCAL.set(rpcContext);
@@ -0,0 +1,432 @@
+package com.github.netty.protocol.nrpc;
+
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-flight request registry. (request id - callback)
+ * An int key open addressing map (no boxing, no node per entry), the timeout is driven by a hashed timer wheel ticking on an event loop.
+ * The wheel bucket only record the request id, a removed request is skipped lazily when the bucket is ticked.
+ * Note: one instance per connection. the tick is scheduled only when there are timeout entries.
+ * If the event loop is shut down (the tick is rejected), the event loop is unbound and the timeout entries are expired at once on the caller thread.
+ *
+ * @param <V> value type
+ * @author wangzihao
+ */
+public class RpcInFlightMap<V> {
+    private static final long NO_EXPIRY = Long.MAX_VALUE;
+    private final ExpiryListener<V> expiryListener;
+    private final long tickMillis;
+    private final int wheelMask;
+    private final int[][] wheelBuckets;
+    private final int[] wheelBucketSizes;
+    private final Runnable tickTask = this::tick;
+    private int[] keys;
+    private Object[] values;
+    private long[] createTimestamps;
+    private long[] expiryTimestamps;
+    private int mask;
+    private volatile int size;
+    private int expirySize;
+    private long lastTick;
+    private EventExecutor executor;
+    private boolean tickScheduled;
+
+    public RpcInFlightMap(ExpiryListener<V> expiryListener) {
+        this(64, 10, 512, expiryListener);
+    }
+
+    /**
+     * @param initialCapacity initialCapacity
+     * @param tickMillis      timer wheel tick duration
+     * @param wheelSize       timer wheel bucket count
+     * @param expiryListener  on expiry. call on the event loop (the caller thread if the event loop is shut down), Do not block
+     */
+    public RpcInFlightMap(int initialCapacity, long tickMillis, int wheelSize, ExpiryListener<V> expiryListener) {
+        int capacity = powerOfTwo(Math.max(initialCapacity, 4));
+        int wheelCapacity = powerOfTwo(Math.max(wheelSize, 2));
+        this.expiryListener = expiryListener;
+        this.tickMillis = Math.max(1, tickMillis);
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.createTimestamps = new long[capacity];
+        this.expiryTimestamps = new long[capacity];
+        this.mask = capacity - 1;
+        this.wheelMask = wheelCapacity - 1;
+        this.wheelBuckets = new int[wheelCapacity][];
+        this.wheelBucketSizes = new int[wheelCapacity];
+        this.lastTick = System.currentTimeMillis() / this.tickMillis;
+    }
+
+    private static int powerOfTwo(int value) {
+        int n = 1;
+        while (n < value) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Bind the event loop that tick the timer wheel.
+     * Bind again on reconnect, the channel may be registered on other event loop. the tick scheduled on the old event loop is ignored.
+     *
+     * @param executor event loop
+     */
+    public void start(EventExecutor executor) {
+        boolean rejected;
+        synchronized (this) {
+            if (this.executor == executor) {
+                return;
+            }
+            this.executor = executor;
+            tickScheduled = false;
+            rejected = !scheduleTickIfNeed();
+        }
+        if (rejected) {
+            expireAll();
+        }
+    }
+
+    public V put(int key, V value) {
+        return put(key, value, -1);
+    }
+
+    /**
+     * put
+     *
+     * @param key           request id
+     * @param value         value
+     * @param timeoutMillis timeout. less than or equal to 0 is never expiry
+     * @return old value
+     */
+    public V put(int key, V value, long timeoutMillis) {
+        return put(key, value, timeoutMillis, false);
+    }
+
+    /**
+     * put if the request id is not in flight. the pending entry is not replaced (keep the timeout and completion)
+     *
+     * @param key           request id
+     * @param value         value
+     * @param timeoutMillis timeout. less than or equal to 0 is never expiry
+     * @return null if put. else the pending value (duplicate request id)
+     */
+    public V putIfAbsent(int key, V value, long timeoutMillis) {
+        return put(key, value, timeoutMillis, true);
+    }
+
+    private V put(int key, V value, long timeoutMillis, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        long now = System.currentTimeMillis();
+        long expiryTimestamp = timeoutMillis > 0 ? now + timeoutMillis : NO_EXPIRY;
+        V old;
+        boolean rejected = false;
+        synchronized (this) {
+            int index = indexOf(key);
+            if (index >= 0) {
+                old = (V) values[index];
+                if (onlyIfAbsent) {
+                    return old;
+                }
+                if (expiryTimestamps[index] != NO_EXPIRY) {
+                    expirySize--;
+                }
+            } else {
+                old = null;
+                if ((size + 1) * 4 > keys.length * 3) {
+                    resize(keys.length << 1);
+                }
+                index = ~indexOf(key);
+                keys[index] = key;
+                size++;
+            }
+            values[index] = value;
+            createTimestamps[index] = now;
+            expiryTimestamps[index] = expiryTimestamp;
+            if (expiryTimestamp != NO_EXPIRY) {
+                expirySize++;
+                addToWheel(key, expiryTimestamp);
+                rejected = !scheduleTickIfNeed();
+            }
+        }
+        if (rejected) {
+            expireAll();
+        }
+        return old;
+    }
+
+    public V get(int key) {
+        synchronized (this) {
+            int index = indexOf(key);
+            return index >= 0 ? (V) values[index] : null;
+        }
+    }
+
+    public V remove(int key) {
+        synchronized (this) {
+            int index = indexOf(key);
+            if (index < 0) {
+                return null;
+            }
+            V old = (V) values[index];
+            removeAt(index);
+            return old;
+        }
+    }
+
+    /**
+     * Remove only if the current value is the value
+     *
+     * @param key   request id
+     * @param value value
+     * @return true if removed
+     */
+    public boolean remove(int key, V value) {
+        synchronized (this) {
+            int index = indexOf(key);
+            if (index < 0 || values[index] != value) {
+                return false;
+            }
+            removeAt(index);
+            return true;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param key key
+     * @return index if found. else ~(empty index)
+     */
+    private int indexOf(int key) {
+        int index = hash(key) & mask;
+        while (true) {
+            if (values[index] == null) {
+                return ~index;
+            }
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Backward shift deletion. (no tombstone)
+     */
+    private void removeAt(int index) {
+        if (expiryTimestamps[index] != NO_EXPIRY) {
+            expirySize--;
+        }
+        size--;
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            // move the entry to the hole, if the hole is between home and next (cyclic)
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                createTimestamps[hole] = createTimestamps[next];
+                expiryTimestamps[hole] = expiryTimestamps[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[hole] = null;
+    }
+
+    private void resize(int newCapacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        long[] oldCreateTimestamps = createTimestamps;
+        long[] oldExpiryTimestamps = expiryTimestamps;
+        keys = new int[newCapacity];
+        values = new Object[newCapacity];
+        createTimestamps = new long[newCapacity];
+        expiryTimestamps = new long[newCapacity];
+        mask = newCapacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int index = ~indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+                createTimestamps[index] = oldCreateTimestamps[i];
+                expiryTimestamps[index] = oldExpiryTimestamps[i];
+            }
+        }
+    }
+
+    private int bucketOf(long expiryTimestamp) {
+        return (int) ((expiryTimestamp + tickMillis - 1) / tickMillis) & wheelMask;
+    }
+
+    private void addToWheel(int key, long expiryTimestamp) {
+        int bucket = bucketOf(expiryTimestamp);
+        int[] keys = wheelBuckets[bucket];
+        int bucketSize = wheelBucketSizes[bucket];
+        if (keys == null) {
+            keys = wheelBuckets[bucket] = new int[8];
+        } else if (bucketSize == keys.length) {
+            keys = wheelBuckets[bucket] = Arrays.copyOf(keys, bucketSize << 1);
+        }
+        keys[bucketSize] = key;
+        wheelBucketSizes[bucket] = bucketSize + 1;
+    }
+
+    /**
+     * schedule the tick on the event loop
+     *
+     * @return false if the event loop is shut down. the event loop is unbound, the caller must {@link #expireAll()} after unlock
+     */
+    private boolean scheduleTickIfNeed() {
+        if (!tickScheduled && expirySize > 0 && executor != null) {
+            try {
+                executor.schedule(tickTask, tickMillis, TimeUnit.MILLISECONDS);
+                tickScheduled = true;
+            } catch (RejectedExecutionException e) {
+                // no tick until start again. the put from the expiry listener not schedule again
+                executor = null;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Expire all the timeout entries at once on the caller thread. (no event loop tick them)
+     */
+    private void expireAll() {
+        List<Expiry<V>> expiryList = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null && expiryTimestamps[i] != NO_EXPIRY) {
+                    expiryList.add(new Expiry<>(keys[i], (V) values[i], createTimestamps[i], expiryTimestamps[i]));
+                }
+            }
+            // removeAt move the entries, remove by key
+            for (Expiry<V> expiry : expiryList) {
+                removeAt(indexOf(expiry.key));
+            }
+            Arrays.fill(wheelBucketSizes, 0);
+        }
+        if (expiryListener != null) {
+            for (Expiry<V> expiry : expiryList) {
+                expiryListener.onExpiry(expiry.key, expiry.value, expiry.createTimestamp, expiry.expiryTimestamp);
+            }
+        }
+    }
+
+    private void tick() {
+        List<Expiry<V>> expiryList = null;
+        long now = System.currentTimeMillis();
+        boolean rejected;
+        synchronized (this) {
+            if (executor != null && !executor.inEventLoop()) {
+                // scheduled on the old event loop before start again
+                return;
+            }
+            tickScheduled = false;
+            long currentTick = now / tickMillis;
+            // one round at most. the bucket keep the entries of next rounds
+            long beginTick = Math.max(lastTick, currentTick - wheelMask);
+            for (long t = beginTick; t <= currentTick; t++) {
+                int bucket = (int) t & wheelMask;
+                int[] bucketKeys = wheelBuckets[bucket];
+                int bucketSize = wheelBucketSizes[bucket];
+                int keep = 0;
+                for (int i = 0; i < bucketSize; i++) {
+                    int key = bucketKeys[i];
+                    int index = indexOf(key);
+                    if (index < 0) {
+                        // removed
+                        continue;
+                    }
+                    long expiryTimestamp = expiryTimestamps[index];
+                    if (expiryTimestamp == NO_EXPIRY || bucketOf(expiryTimestamp) != bucket) {
+                        // put again. the entry is in other bucket
+                        continue;
+                    }
+                    if (expiryTimestamp > now) {
+                        bucketKeys[keep++] = key;
+                        continue;
+                    }
+                    if (expiryList == null) {
+                        expiryList = new ArrayList<>();
+                    }
+                    expiryList.add(new Expiry<>(key, (V) values[index], createTimestamps[index], expiryTimestamp));
+                    removeAt(index);
+                }
+                if (bucketKeys != null) {
+                    Arrays.fill(bucketKeys, keep, bucketSize, 0);
+                }
+                wheelBucketSizes[bucket] = keep;
+            }
+            lastTick = currentTick;
+            rejected = !scheduleTickIfNeed();
+        }
+        if (expiryList != null && expiryListener != null) {
+            for (Expiry<V> expiry : expiryList) {
+                expiryListener.onExpiry(expiry.key, expiry.value, expiry.createTimestamp, expiry.expiryTimestamp);
+            }
+        }
+        if (rejected) {
+            expireAll();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RpcInFlightMap{" +
+                "size=" + size +
+                ", expirySize=" + expirySize +
+                ", tickMillis=" + tickMillis +
+                ", wheelSize=" + wheelBuckets.length +
+                '}';
+    }
+
+    private static class Expiry<V> {
+        private final int key;
+        private final V value;
+        private final long createTimestamp;
+        private final long expiryTimestamp;
+
+        private Expiry(int key, V value, long createTimestamp, long expiryTimestamp) {
+            this.key = key;
+            this.value = value;
+            this.createTimestamp = createTimestamp;
+            this.expiryTimestamp = expiryTimestamp;
+        }
+    }
+
+    @FunctionalInterface
+    public interface ExpiryListener<V> {
+        /**
+         * on expiry. (the entry is removed)
+         *
+         * @param key             request id
+         * @param value           value
+         * @param createTimestamp createTimestamp
+         * @param expiryTimestamp expiryTimestamp
+         */
+        void onExpiry(int key, V value, long createTimestamp, long expiryTimestamp);
+    }
+}
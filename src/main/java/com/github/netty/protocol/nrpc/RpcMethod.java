@@ -61,6 +61,12 @@ public class RpcMethod<INSTANCE> {
     private final MethodHandle methodHandle;
     private final int parameterCount;
     private String loggerName;
+    /**
+     * client method id. usable when methodIdTable is the current connection table. (negotiated by RpcClient)
+     */
+    int methodId = -1;
+    volatile Object methodIdTable;
+    volatile Object methodIdRegisterTable;
 
     private RpcMethod(INSTANCE instance, Method method, String[] parameterNames, String methodName,
                       NRpcMethod methodAnnotation,
@@ -3,6 +3,8 @@ package com.github.netty.protocol.nrpc;
 import com.github.netty.core.util.Recyclable;
 import com.github.netty.core.util.Recycler;
 import com.github.netty.protocol.nrpc.codec.DataCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 
 import java.util.StringJoiner;
 import java.util.function.Consumer;
@@ -14,6 +16,8 @@ import java.util.function.Consumer;
  * ---------------------------------------------------------------|
  * | client                       |           server              |
  * |--------------------------------------------------------------|
+ * | TYPE_METHOD_ID -》           |                               |
+ * |                              |      《- TYPE_METHOD_ID       |
  * | TYPE_CLIENT_REQUEST -》      |                               |
  * |                              |      《- TYPE_RESPONSE_CHUNK  |
  * | TYPE_RESPONSE_CHUNK_ACK  -》 |                               |
@@ -41,6 +45,15 @@ public class RpcPacket implements Recyclable {
      * rpc response data
      */
     public static final byte TYPE_RESPONSE_LAST = 2;
+    /**
+     * rpc request args. (method by id, note: server must confirm the id by {@link #TYPE_METHOD_ID})
+     */
+    public static final byte TYPE_CLIENT_REQUEST_METHOD_ID = 7;
+    /**
+     * register (service, version, method) to a numeric id. client request, server confirm.
+     * @see MethodIdPacket
+     */
+    public static final byte TYPE_METHOD_ID = 8;
 
     public static final byte ACK_NO = 0;
     public static final byte ACK_YES = 1;
@@ -52,6 +65,10 @@ public class RpcPacket implements Recyclable {
      */
     private byte ack = ACK_NO;
     private byte[] data;
+    /**
+     * zero copy data. a retained slice of the frame (only set by zero copy decode mode)
+     */
+    private ByteBuf dataBuf;
     private long packetLength;
 
     public RpcPacket(int packetType) {
@@ -79,6 +96,9 @@ public class RpcPacket implements Recyclable {
     }
 
     public byte[] getData() {
+        if (data == null && dataBuf != null) {
+            data = ByteBufUtil.getBytes(dataBuf);
+        }
         return data;
     }
 
@@ -86,6 +106,34 @@ public class RpcPacket implements Recyclable {
         this.data = data;
     }
 
+    public ByteBuf getDataBuf() {
+        return dataBuf;
+    }
+
+    public void setDataBuf(ByteBuf dataBuf) {
+        this.dataBuf = dataBuf;
+    }
+
+    public int getDataLength() {
+        if (dataBuf != null) {
+            return dataBuf.readableBytes();
+        }
+        return data == null ? -1 : data.length;
+    }
+
+    /**
+     * release zero copy data
+     */
+    public void releaseDataBuf() {
+        ByteBuf dataBuf = this.dataBuf;
+        if (dataBuf != null) {
+            this.dataBuf = null;
+            if (dataBuf.refCnt() > 0) {
+                dataBuf.release();
+            }
+        }
+    }
+
     @Override
     public String toString() {
         StringJoiner joiner = new StringJoiner(",", "{", "}")
@@ -102,7 +150,7 @@ public class RpcPacket implements Recyclable {
 
     @Override
     public void recycle() {
-
+        releaseDataBuf();
     }
 
     /**
@@ -115,6 +163,10 @@ public class RpcPacket implements Recyclable {
         private String version;
         private String methodName;
         private int timeout;
+        /**
+         * -1 is request by name. other is request by id {@link #TYPE_CLIENT_REQUEST_METHOD_ID}
+         */
+        private int methodId = -1;
 
         private RequestPacket() {
             super(TYPE_CLIENT_REQUEST);
@@ -164,8 +216,17 @@ public class RpcPacket implements Recyclable {
             this.version = version;
         }
 
+        public int getMethodId() {
+            return methodId;
+        }
+
+        public void setMethodId(int methodId) {
+            this.methodId = methodId;
+        }
+
         @Override
         public void recycle() {
+            releaseDataBuf();
 //            RECYCLER.recycleInstance(this);
         }
 
@@ -175,7 +236,66 @@ public class RpcPacket implements Recyclable {
             joiner.add("\"requestMappingName\":\"" + requestMappingName + "\"");
             joiner.add("\"version\":\"" + version + "\"");
             joiner.add("\"methodName\":\"" + methodName + "\"");
-            joiner.add("\"dataLength\":" + (getData() == null ? "null" : getData().length));
+            joiner.add("\"methodId\":" + methodId);
+            joiner.add("\"dataLength\":" + (getDataLength() == -1 ? "null" : getDataLength()));
+        }
+    }
+
+    /**
+     * Method id register. (client send, server echo it when the method exist)
+     */
+    public static class MethodIdPacket extends RpcPacket {
+        /**
+         * method id is (2 byte Unsigned)
+         */
+        public static final int MAX_METHOD_ID = 0xFFFF;
+        private int methodId;
+        private String requestMappingName;
+        private String version;
+        private String methodName;
+
+        public MethodIdPacket() {
+            super(TYPE_METHOD_ID);
+        }
+
+        public int getMethodId() {
+            return methodId;
+        }
+
+        public void setMethodId(int methodId) {
+            this.methodId = methodId;
+        }
+
+        public String getRequestMappingName() {
+            return requestMappingName;
+        }
+
+        public void setRequestMappingName(String requestMappingName) {
+            this.requestMappingName = requestMappingName;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public void setVersion(String version) {
+            this.version = version;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public void setMethodName(String methodName) {
+            this.methodName = methodName;
+        }
+
+        @Override
+        public void toStringAppend(StringJoiner joiner) {
+            joiner.add("\"methodId\":" + methodId);
+            joiner.add("\"requestMappingName\":\"" + requestMappingName + "\"");
+            joiner.add("\"version\":\"" + version + "\"");
+            joiner.add("\"methodName\":\"" + methodName + "\"");
         }
     }
 
@@ -281,6 +401,7 @@ public class RpcPacket implements Recyclable {
 
         @Override
         public void recycle() {
+            releaseDataBuf();
 //            this.message = null;
 //            this.encode = null;
 //            this.setData(null);
@@ -297,7 +418,7 @@ public class RpcPacket implements Recyclable {
                 joiner.add("\"message\":\"" + message.replace("\"", "\\\\\"") + "\"");
             }
             joiner.add("\"encode\":\"" + encode + "\"");
-            joiner.add("\"dataLength\":" + (getData() == null ? "null" : getData().length));
+            joiner.add("\"dataLength\":" + (getDataLength() == -1 ? "null" : getDataLength()));
         }
     }
 
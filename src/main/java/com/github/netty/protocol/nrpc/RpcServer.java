@@ -34,6 +34,10 @@ public class RpcServer extends AbstractNettyServer {
      * Maximum message length per pass
      */
     private int messageMaxLength = 10 * 1024 * 1024;
+    /**
+     * zero copy decode mode {@link RpcDecoder#isZeroCopy()}
+     */
+    private boolean zeroCopyDecode = false;
 
     public RpcServer(int port) {
         this("", port);
@@ -112,7 +116,7 @@ public class RpcServer extends AbstractNettyServer {
                 }
 
                 ChannelPipeline pipeline = ch.pipeline();
-                pipeline.addLast(new RpcDecoder(messageMaxLength));
+                pipeline.addLast(new RpcDecoder(messageMaxLength, zeroCopyDecode));
                 pipeline.addLast(new RpcEncoder());
                 pipeline.addLast(rpcServerHandler);
 
@@ -130,6 +134,14 @@ public class RpcServer extends AbstractNettyServer {
         this.messageMaxLength = messageMaxLength;
     }
 
+    public boolean isZeroCopyDecode() {
+        return zeroCopyDecode;
+    }
+
+    public void setZeroCopyDecode(boolean zeroCopyDecode) {
+        this.zeroCopyDecode = zeroCopyDecode;
+    }
+
     static class Instance {
         Object instance;
         String requestMappingName;
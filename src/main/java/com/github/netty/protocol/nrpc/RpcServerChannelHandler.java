@@ -13,6 +13,7 @@ import io.netty.channel.ChannelHandlerContext;
 
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -21,6 +22,8 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
@@ -40,11 +43,15 @@ import static com.github.netty.protocol.nrpc.codec.DataCodec.Encode.BINARY;
 public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, Object> {
     private static final LoggerX logger = LoggerFactoryX.getLogger(RpcServerChannelHandler.class);
 
-    protected final ExpiryLRUMap<RpcRunnable, RpcRunnable> rpcServerMethodDoneMap = new ExpiryLRUMap<>(512, Long.MAX_VALUE, Long.MAX_VALUE, null);
+    protected final RpcInFlightMap<RpcRunnable> rpcServerMethodDoneMap = new RpcInFlightMap<>(this::onRunnableTimeout);
     protected final ExpiryLRUMap<Integer, ChunkAckCallback> rpcChunkAckCallbackMap = new ExpiryLRUMap<>(512, Long.MAX_VALUE, Long.MAX_VALUE, null);
     private final Map<String, RpcServerInstance> serviceInstanceMap = new ConcurrentHashMap<>(8);
     private final List<RpcServerAop> nettyRpcServerAopList = new CopyOnWriteArrayList<>();
     private final AtomicInteger chunkIdIncr = new AtomicInteger();
+    /**
+     * method id table. negotiated by client {@link MethodIdPacket} (index is method id)
+     */
+    private MethodId[] methodIdTable = new MethodId[0];
     /**
      * Data encoder decoder. (Serialization or Deserialization)
      */
@@ -66,23 +73,6 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
                 aop.onDecodeRequestBefore(rpcContext, params);
             }
         });
-        rpcServerMethodDoneMap.setOnExpiryConsumer(node -> {
-            try {
-                RpcRunnable runnable = node.getData();
-                if (!runnable.done) {
-                    if (runnable.timeoutNotifyFlag.compareAndSet(false, true)) {
-                        runnable.executor.execute(runnable::onTimeout);
-                    }
-                    if (runnable.timeoutInterrupt) {
-                        runnable.taskThread.interrupt();
-                        runnable.interruptCount++;
-                        rpcServerMethodDoneMap.put(node.getKey(), runnable, 100);
-                    }
-                }
-            } catch (Exception e) {
-                logger.warn("doneTimeout exception. server = {}, message = {}.", this, e.toString(), e);
-            }
-        });
         rpcChunkAckCallbackMap.setOnExpiryConsumer(node -> {
             try {
                 ChunkAckCallback runnable = node.getData();
@@ -97,6 +87,23 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
         });
     }
 
+    private void onRunnableTimeout(int requestId, RpcRunnable runnable, long createTimestamp, long expiryTimestamp) {
+        try {
+            if (!runnable.done) {
+                if (runnable.timeoutNotifyFlag.compareAndSet(false, true)) {
+                    runnable.executor.execute(runnable::onTimeout);
+                }
+                if (runnable.timeoutInterrupt && runnable.taskThread != null) {
+                    runnable.taskThread.interrupt();
+                    runnable.interruptCount++;
+                    rpcServerMethodDoneMap.put(requestId, runnable, 100);
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("doneTimeout exception. server = {}, message = {}.", this, e.toString(), e);
+        }
+    }
+
     /**
      * Get the service name
      *
@@ -175,6 +182,7 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
             } else {
                 if (rpcRunnable != null) {
                     rpcRunnable.done = true;
+                    channelHandler.rpcServerMethodDoneMap.remove(rpcRunnable.requestId, rpcRunnable);
                 }
                 response = lastResponse;
             }
@@ -219,6 +227,7 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         this.context = ctx;
+        rpcServerMethodDoneMap.start(ctx.channel().eventLoop());
 
         RpcContext<RpcServerInstance> rpcContext = newRpcContext();
         rpcContext.setRemoteAddress((InetSocketAddress) ctx.channel().remoteAddress());
@@ -262,6 +271,8 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
                 RequestPacket request = (RequestPacket) packet;
                 rpcContext = newRpcContext();
                 async = handleRequestPacket(rpcContext, request, ctx);
+            } else if (packet instanceof MethodIdPacket) {
+                handleMethodIdPacket((MethodIdPacket) packet, ctx);
             } else if (packet instanceof ResponseChunkAckPacket) {
                 ResponseChunkAckPacket response = (ResponseChunkAckPacket) packet;
                 ChunkAckCallback callback = rpcChunkAckCallbackMap.remove(response.getAckChunkId());
@@ -289,9 +300,27 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
             rpcContext.setRequest(request);
             rpcContext.setRpcBeginTimestamp(System.currentTimeMillis());
 
+            RpcServerInstance rpcInstance;
+            RpcMethod<RpcServerInstance> rpcMethod;
+            int methodIdIndex = request.getMethodId();
+            if (methodIdIndex == -1) {
+                rpcInstance = serviceInstanceMap.get(RpcServerInstance.getServerInstanceKey(request.getRequestMappingName(), request.getVersion()));
+                rpcMethod = rpcInstance != null ? rpcInstance.getRpcMethod(request.getMethodName()) : null;
+            } else {
+                MethodId methodId = methodIdIndex < methodIdTable.length ? methodIdTable[methodIdIndex] : null;
+                if (methodId != null) {
+                    request.setRequestMappingName(methodId.requestMappingName);
+                    request.setVersion(methodId.version);
+                    request.setMethodName(methodId.methodName);
+                    rpcInstance = methodId.rpcInstance;
+                    rpcMethod = methodId.rpcMethod;
+                } else {
+                    rpcInstance = null;
+                    rpcMethod = null;
+                }
+            }
+
             // not found instance
-            String serverInstanceKey = RpcServerInstance.getServerInstanceKey(request.getRequestMappingName(), request.getVersion());
-            RpcServerInstance rpcInstance = serviceInstanceMap.get(serverInstanceKey);
             if (rpcInstance == null) {
                 if (request.getAck() == ACK_YES) {
                     ResponseLastPacket response = ResponsePacket.newLastPacket();
@@ -301,7 +330,11 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
                         response.setRequestId(request.getRequestId());
                         response.setEncode(BINARY);
                         response.setStatus(ResponsePacket.NO_SUCH_SERVICE);
-                        response.setMessage("not found service " + serverInstanceKey);
+                        if (methodIdIndex == -1) {
+                            response.setMessage("not found service " + RpcServerInstance.getServerInstanceKey(request.getRequestMappingName(), request.getVersion()));
+                        } else {
+                            response.setMessage("not found service by method id " + methodIdIndex);
+                        }
                         ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
                         release = false;
                     } finally {
@@ -311,7 +344,6 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
                     }
                 }
             } else {
-                RpcMethod<RpcServerInstance> rpcMethod = rpcInstance.getRpcMethod(request.getMethodName());
                 rpcContext.setRpcMethod(rpcMethod);
                 ResponseLastPacket response = ResponsePacket.newLastPacket();
                 rpcContext.setResponse(response);
@@ -328,12 +360,41 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
                     int timeout = choseTimeout(rpcInstance.getTimeout(), rpcMethod.getTimeout(), request.getTimeout());
                     rpcContext.setTimeout(timeout);
                     RpcRunnable runnable = new RpcRunnable(threadPool, rpcMethod, timeout, response, request, dataCodec, this, rpcContext);
-                    if (timeout > 0) {
-                        rpcServerMethodDoneMap.put(runnable, runnable, timeout);
+                    if (timeout > 0 && rpcServerMethodDoneMap.putIfAbsent(runnable.requestId, runnable, timeout) != null) {
+                        // duplicate request id. keep the pending request (timeout and completion)
+                        logger.warn("reject duplicate request id. server = {}, requestId = {}, method = {}", this, runnable.requestId, rpcMethod);
+                        response.setEncode(DataCodec.Encode.BINARY);
+                        response.setStatus(SERVER_ERROR);
+                        response.setMessage("duplicate request id [" + runnable.requestId + "]");
+                        response.setData(null);
+                        writeAndFlush(request.getAck(), response, rpcContext, RpcContext.RpcState.WRITE_FINISH);
+                    } else {
+                        // per service limit. take the permit before submit, a busy service is rejected fast and not hold the pool threads
+                        Semaphore concurrencyLimiter = null;
+                        RejectedExecutionException busy = null;
+                        try {
+                            concurrencyLimiter = rpcInstance.tryAcquireConcurrency();
+                        } catch (RejectedExecutionException e) {
+                            busy = e;
+                        }
+                        if (busy != null) {
+                            rpcServerMethodDoneMap.remove(runnable.requestId, runnable);
+                            async = buildAndWriteAndFlush(request, response, rpcContext, this, rpcMethod, null, busy, RpcContext.RpcState.WRITE_FINISH, null, null, -1, null);
+                        } else {
+                            runnable.concurrencyLimiter = concurrencyLimiter;
+                            try {
+                                // execute by rpc thread pool
+                                threadPool.execute(runnable);
+                            } catch (RuntimeException e) {
+                                if (concurrencyLimiter != null) {
+                                    concurrencyLimiter.release();
+                                }
+                                rpcServerMethodDoneMap.remove(runnable.requestId, runnable);
+                                throw e;
+                            }
+                            async = true;
+                        }
                     }
-                    // execute by rpc thread pool
-                    threadPool.execute(runnable);
-                    async = true;
                 } else {
                     // invoke method by sync
                     CONTEXT_LOCAL.set(rpcContext);
@@ -358,6 +419,36 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
         return async;
     }
 
+    /**
+     * Register the method id. if the method exist, echo the packet to confirm the id.
+     * Note: only called by the channel event loop.
+     *
+     * @param packet MethodIdPacket
+     * @param ctx    ChannelHandlerContext
+     */
+    private void handleMethodIdPacket(MethodIdPacket packet, ChannelHandlerContext ctx) {
+        int index = packet.getMethodId();
+        if (index < 0 || index > MethodIdPacket.MAX_METHOD_ID) {
+            return;
+        }
+        RpcServerInstance rpcInstance = serviceInstanceMap.get(RpcServerInstance.getServerInstanceKey(packet.getRequestMappingName(), packet.getVersion()));
+        RpcMethod<RpcServerInstance> rpcMethod = rpcInstance != null ? rpcInstance.getRpcMethod(packet.getMethodName()) : null;
+        if (rpcMethod == null) {
+            // client continue request by name, then got NO_SUCH_SERVICE or NO_SUCH_METHOD
+            return;
+        }
+        MethodId[] table = this.methodIdTable;
+        if (index >= table.length) {
+            table = Arrays.copyOf(table, Math.min(Math.max(index + 1, table.length << 1), MethodIdPacket.MAX_METHOD_ID + 1));
+            this.methodIdTable = table;
+        }
+        table[index] = new MethodId(packet.getRequestMappingName(), packet.getVersion(), packet.getMethodName(), rpcInstance, rpcMethod);
+        if (packet.getAck() == ACK_YES) {
+            packet.setAck(ACK_NO);
+            ctx.writeAndFlush(packet).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        }
+    }
+
     private int newChunkId() {
         int id = chunkIdIncr.getAndIncrement();
         if (id == Integer.MAX_VALUE) {
@@ -533,6 +624,22 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
         return Collections.unmodifiableMap(serviceInstanceMap);
     }
 
+    static class MethodId {
+        final String requestMappingName;
+        final String version;
+        final String methodName;
+        final RpcServerInstance rpcInstance;
+        final RpcMethod<RpcServerInstance> rpcMethod;
+
+        MethodId(String requestMappingName, String version, String methodName, RpcServerInstance rpcInstance, RpcMethod<RpcServerInstance> rpcMethod) {
+            this.requestMappingName = requestMappingName;
+            this.version = version;
+            this.methodName = methodName;
+            this.rpcInstance = rpcInstance;
+            this.rpcMethod = rpcMethod;
+        }
+    }
+
     public static class ChunkAckCallback<ACK_TYPE> extends CompletableFuture<ACK_TYPE> {
         final AtomicBoolean timeoutNotifyFlag = new AtomicBoolean();
         final long startTimestamp = System.currentTimeMillis();
@@ -571,6 +678,7 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
 
     public static class RpcRunnable implements Runnable {
         final AtomicBoolean timeoutNotifyFlag = new AtomicBoolean();
+        final int requestId;
         RpcMethod<RpcServerInstance> rpcMethod;
         RpcServerChannelHandler channelHandler;
         RequestPacket request;
@@ -583,6 +691,10 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
         boolean timeoutInterrupt;
         int timeout;
         Executor executor;
+        /**
+         * the service permit taken before submit. null if unlimited
+         */
+        Semaphore concurrencyLimiter;
 
         RpcRunnable(Executor executor, RpcMethod<RpcServerInstance> rpcMethod,
                     int timeout,
@@ -597,6 +709,7 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
             this.channelHandler = channelHandler;
             this.dataCodec = dataCodec;
             this.request = request;
+            this.requestId = request.getRequestId();
             this.rpcContext = rpcContext;
         }
 
@@ -630,8 +743,13 @@ public class RpcServerChannelHandler extends AbstractChannelHandler<RpcPacket, O
                 result = rpcMethod.getInstance().invoke(rpcMethod, request, rpcContext, channelHandler);
             } catch (Throwable t) {
                 throwable = t;
+            } finally {
+                if (concurrencyLimiter != null) {
+                    concurrencyLimiter.release();
+                }
             }
             done = true;
+            channelHandler.rpcServerMethodDoneMap.remove(requestId, this);
             buildAndWriteAndFlush(request, response, rpcContext, channelHandler, rpcMethod, result, throwable, RpcContext.RpcState.WRITE_FINISH, null, this, -1, null);
             rpcContext.setRpcEndTimestamp(System.currentTimeMillis());
             try {
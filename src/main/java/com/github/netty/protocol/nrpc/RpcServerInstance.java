@@ -3,9 +3,12 @@ package com.github.netty.protocol.nrpc;
 import com.github.netty.annotation.NRpcService;
 import com.github.netty.core.util.ReflectUtil;
 import com.github.netty.protocol.nrpc.codec.DataCodec;
+import io.netty.buffer.ByteBuf;
 
 import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.function.Function;
 
 import static com.github.netty.protocol.nrpc.RpcContext.RpcState.*;
@@ -23,6 +26,11 @@ public class RpcServerInstance {
     private Function<Method, String[]> methodToParameterNamesFunction;
     private String version;
     private Integer timeout;
+    /**
+     * Concurrency limit of the service. null is unlimited
+     */
+    private volatile Semaphore concurrencyLimiter;
+    private int maxConcurrency;
 
     /**
      * A constructor
@@ -46,6 +54,9 @@ public class RpcServerInstance {
         if (rpcMethodMap.isEmpty()) {
             throw new IllegalStateException("An RPC service must have at least one method, class=[" + instance.getClass().getSimpleName() + "]");
         }
+        if (dataCodec != null) {
+            rpcMethodMap.values().forEach(dataCodec::register);
+        }
     }
 
     public static boolean isRpcInnerClass(Class clazz) {
@@ -63,6 +74,11 @@ public class RpcServerInstance {
         return timeout;
     }
 
+    public static int getMaxConcurrency(Class clazz) {
+        NRpcService rpcInterfaceAnn = ReflectUtil.findAnnotation(clazz, NRpcService.class);
+        return rpcInterfaceAnn != null ? rpcInterfaceAnn.maxConcurrency() : 0;
+    }
+
     public static String getVersion(Class clazz, String defaultReturnVersion) {
         NRpcService rpcInterfaceAnn = ReflectUtil.findAnnotation(clazz, NRpcService.class);
         String version;
@@ -90,6 +106,48 @@ public class RpcServerInstance {
         this.timeout = timeout;
     }
 
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Set the concurrency limit. less than or equal to 0 is unlimited
+     *
+     * @param maxConcurrency max concurrent calls of the service
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = Math.max(maxConcurrency, 0);
+        this.concurrencyLimiter = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+    }
+
+    /**
+     * Number of the calls running now. (only if limited)
+     *
+     * @return active count
+     */
+    public int getActiveCount() {
+        Semaphore limiter = this.concurrencyLimiter;
+        return limiter != null ? maxConcurrency - limiter.availablePermits() : -1;
+    }
+
+    /**
+     * Acquire a concurrency permit without wait. called before submit the call to the executor,
+     * so a busy service is rejected fast and the waiting calls never hold the executor threads.
+     *
+     * @return the limiter to release. null if unlimited
+     * @throws RejectedExecutionException the service is busy (no permit)
+     */
+    public Semaphore tryAcquireConcurrency() throws RejectedExecutionException {
+        Semaphore limiter = this.concurrencyLimiter;
+        if (limiter == null) {
+            return null;
+        }
+        if (!limiter.tryAcquire()) {
+            throw new RejectedExecutionException("service busy. maxConcurrency=" + maxConcurrency + ", instance=" + instance.getClass().getSimpleName());
+        }
+        return limiter;
+    }
+
     public String getVersion() {
         return version;
     }
@@ -110,7 +168,21 @@ public class RpcServerInstance {
                          RpcContext<RpcServerInstance> rpcContext, RpcServerChannelHandler server) throws Throwable {
         server.onStateUpdate(rpcContext, INIT);
         try {
-            Object[] args = dataCodec.decodeRequestData(rpcRequest.getData(), rpcMethod);
+            Object[] args;
+            ByteBuf dataBuf = rpcRequest.getDataBuf();
+            if (dataBuf != null) {
+                try {
+                    args = dataCodec.decodeRequestData(dataBuf, rpcMethod);
+                } finally {
+                    // the aops can read the request data after the invoke. keep a copy (RequestPacket#getData) only if there are aops
+                    if (!server.getAopList().isEmpty()) {
+                        rpcRequest.getData();
+                    }
+                    rpcRequest.releaseDataBuf();
+                }
+            } else {
+                args = dataCodec.decodeRequestData(rpcRequest.getData(), rpcMethod);
+            }
             rpcContext.setArgs(args);
             server.onStateUpdate(rpcContext, READ_ING);
 
@@ -128,6 +200,9 @@ public class RpcServerInstance {
 
     public void setDataCodec(DataCodec dataCodec) {
         this.dataCodec = dataCodec;
+        if (dataCodec != null) {
+            rpcMethodMap.values().forEach(dataCodec::register);
+        }
     }
 
     public Object getInstance() {
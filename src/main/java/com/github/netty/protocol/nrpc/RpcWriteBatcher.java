@@ -0,0 +1,118 @@
+package com.github.netty.protocol.nrpc;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client request write batching. (one flush for many requests)
+ * Caller threads enqueue lock-free, the channel event loop writes the queued requests then flush once.
+ * A batch is flushed when it reach maxBatchSize, or when the first request of the batch waited maxLingerMicros.
+ * Note: one instance per channel.
+ *
+ * @author wangzihao
+ */
+public class RpcWriteBatcher {
+    private final Channel channel;
+    private final EventLoop eventLoop;
+    private final int maxBatchSize;
+    private final long maxLingerMicros;
+    private final Queue<Entry> queue = PlatformDependent.newMpscQueue();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Runnable flushTask = this::flush;
+
+    public RpcWriteBatcher(Channel channel, int maxBatchSize, long maxLingerMicros) {
+        this.channel = channel;
+        this.eventLoop = channel.eventLoop();
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxLingerMicros = Math.max(0, maxLingerMicros);
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getMaxLingerMicros() {
+        return maxLingerMicros;
+    }
+
+    /**
+     * Number of requests waiting flush
+     *
+     * @return pending size
+     */
+    public int getPendingSize() {
+        return size.get();
+    }
+
+    /**
+     * Write a message in the next batch
+     *
+     * @param message message
+     * @return write future
+     */
+    public ChannelFuture write(Object message) {
+        ChannelPromise promise = channel.newPromise();
+        queue.offer(new Entry(message, promise));
+        int pending = size.incrementAndGet();
+        if (pending == 1) {
+            // first of the batch
+            if (maxLingerMicros == 0 || maxBatchSize == 1) {
+                eventLoop.execute(flushTask);
+            } else {
+                eventLoop.schedule(flushTask, maxLingerMicros, TimeUnit.MICROSECONDS);
+            }
+        } else if (pending == maxBatchSize) {
+            eventLoop.execute(flushTask);
+        }
+        return promise;
+    }
+
+    private void flush() {
+        int remaining;
+        do {
+            int count = 0;
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                channel.write(entry.message, entry.promise);
+                count++;
+            }
+            if (count == 0) {
+                return;
+            }
+            channel.flush();
+            // the producer offer before increment, so remaining entries already in the queue
+            remaining = size.addAndGet(-count);
+        } while (remaining > 0);
+    }
+
+    @Override
+    public String toString() {
+        return "RpcWriteBatcher{" +
+                "maxBatchSize=" + maxBatchSize +
+                ", maxLingerMicros=" + maxLingerMicros +
+                ", pendingSize=" + size.get() +
+                ", channel=" + channel +
+                '}';
+    }
+
+    private static class Entry {
+        private final Object message;
+        private final ChannelPromise promise;
+
+        private Entry(Object message, ChannelPromise promise) {
+            this.message = message;
+            this.promise = promise;
+        }
+    }
+}
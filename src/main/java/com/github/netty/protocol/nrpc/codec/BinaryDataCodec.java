@@ -0,0 +1,243 @@
+package com.github.netty.protocol.nrpc.codec;
+
+import com.github.netty.core.util.TypeUtil;
+import com.github.netty.protocol.nrpc.RpcClient;
+import com.github.netty.protocol.nrpc.RpcMethod;
+import com.github.netty.protocol.nrpc.RpcServerInstance;
+import com.github.netty.protocol.nrpc.exception.RpcDecodeException;
+import com.github.netty.protocol.nrpc.exception.RpcEncodeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Binary data codec. The parameter types are compiled to {@link BinarySchema} once, no field names and no text parsing on the wire.
+ * <p>
+ * Request = 4 byte parameter schema hash + parameter values (by position) + extra parameters (added by the encode request consumer).
+ * Response = value with type tag. (the server implementation can declare a different return type than the client interface)
+ * <p>
+ * Note: client and server must share the same parameter types, else {@link RpcDecodeException}.
+ *
+ * @author wangzihao
+ */
+public class BinaryDataCodec implements DataCodec {
+    private static final byte[] EMPTY = {};
+    private static final FastThreadLocal<Map<String, Object>> PARAMETER_MAP_LOCAL = new FastThreadLocal<Map<String, Object>>() {
+        @Override
+        protected Map<String, Object> initialValue() throws Exception {
+            return new LinkedHashMap<>(32);
+        }
+    };
+    private final List<Consumer<Map<String, Object>>> encodeRequestConsumerList = new CopyOnWriteArrayList<>();
+    private final List<Consumer<Map<String, Object>>> decodeRequestConsumerList = new CopyOnWriteArrayList<>();
+    private final BinarySchema schema;
+    private final ByteBufAllocator allocator;
+
+    public BinaryDataCodec() {
+        this(BinarySchema.getDefault(), ByteBufAllocator.DEFAULT);
+    }
+
+    public BinaryDataCodec(BinarySchema schema, ByteBufAllocator allocator) {
+        this.schema = schema;
+        this.allocator = allocator;
+    }
+
+    public BinarySchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Compile the parameter and return types when the method is registered
+     */
+    @Override
+    public void register(RpcMethod<?> rpcMethod) {
+        schema.register(rpcMethod);
+    }
+
+    @Override
+    public List<Consumer<Map<String, Object>>> getEncodeRequestConsumerList() {
+        return encodeRequestConsumerList;
+    }
+
+    @Override
+    public List<Consumer<Map<String, Object>>> getDecodeRequestConsumerList() {
+        return decodeRequestConsumerList;
+    }
+
+    @Override
+    public byte[] encodeRequestData(Object[] data, RpcMethod<RpcClient> rpcMethod) {
+        BinarySchema.MethodSchema methodSchema = schema.getMethodSchema(rpcMethod);
+        BinarySchema.Codec[] codecs = methodSchema.getParameterCodecs();
+        String[] parameterNames = rpcMethod.getParameterNames();
+        Object[] values = data;
+        Map<String, Object> parameterMap = null;
+        if (!encodeRequestConsumerList.isEmpty()) {
+            parameterMap = PARAMETER_MAP_LOCAL.get();
+            for (int i = 0; i < parameterNames.length; i++) {
+                parameterMap.put(parameterNames[i], data != null && i < data.length ? data[i] : null);
+            }
+            for (Consumer<Map<String, Object>> consumer : encodeRequestConsumerList) {
+                consumer.accept(parameterMap);
+            }
+            values = new Object[parameterNames.length];
+            for (int i = 0; i < parameterNames.length; i++) {
+                values[i] = parameterMap.remove(parameterNames[i]);
+            }
+        }
+
+        ByteBuf out = allocator.heapBuffer();
+        try {
+            out.writeInt(methodSchema.getParameterHash());
+            for (int i = 0; i < codecs.length; i++) {
+                codecs[i].write(out, values != null && i < values.length ? values[i] : null);
+            }
+            if (parameterMap == null || parameterMap.isEmpty()) {
+                out.writeByte(0);
+            } else {
+                BinarySchema.writeVarInt(out, parameterMap.size());
+                BinarySchema.Codec dynamicCodec = schema.getDynamicCodec();
+                for (Map.Entry<String, Object> entry : parameterMap.entrySet()) {
+                    BinarySchema.writeString(out, entry.getKey());
+                    dynamicCodec.write(out, entry.getValue());
+                }
+            }
+            return ByteBufUtil.getBytes(out);
+        } catch (RpcEncodeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RpcEncodeException("encodeRequestData " + rpcMethod + " binary error " + e, e);
+        } finally {
+            out.release();
+            if (parameterMap != null) {
+                parameterMap.clear();
+            }
+        }
+    }
+
+    @Override
+    public Object[] decodeRequestData(byte[] data, RpcMethod<RpcServerInstance> rpcMethod) {
+        return decodeRequestData(data == null ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(data), rpcMethod);
+    }
+
+    @Override
+    public Object[] decodeRequestData(ByteBuf data, RpcMethod<RpcServerInstance> rpcMethod) {
+        String[] parameterNames = rpcMethod.getParameterNames();
+        Object[] parameterValues = new Object[parameterNames.length];
+        Map<String, Object> parameterMap = decodeRequestConsumerList.isEmpty() ? null : PARAMETER_MAP_LOCAL.get();
+        try {
+            if (data != null && data.isReadable()) {
+                BinarySchema.MethodSchema methodSchema = schema.getMethodSchema(rpcMethod);
+                int hash = data.readInt();
+                if (hash != methodSchema.getParameterHash()) {
+                    throw new RpcDecodeException("decodeRequestData " + rpcMethod + " binary schema mismatch. client and server parameter types are different");
+                }
+                BinarySchema.Codec[] codecs = methodSchema.getParameterCodecs();
+                for (int i = 0; i < codecs.length; i++) {
+                    parameterValues[i] = codecs[i].read(data);
+                }
+                int extraSize = BinarySchema.readVarInt(data);
+                if (extraSize > 0 && parameterMap != null) {
+                    BinarySchema.Codec dynamicCodec = schema.getDynamicCodec();
+                    for (int i = 0; i < extraSize; i++) {
+                        String name = BinarySchema.readString(data);
+                        parameterMap.put(name, dynamicCodec.read(data));
+                    }
+                }
+            }
+            if (parameterMap != null) {
+                for (int i = 0; i < parameterNames.length; i++) {
+                    parameterMap.put(parameterNames[i], parameterValues[i]);
+                }
+                for (Consumer<Map<String, Object>> consumer : decodeRequestConsumerList) {
+                    consumer.accept(parameterMap);
+                }
+                for (int i = 0; i < parameterNames.length; i++) {
+                    parameterValues[i] = parameterMap.get(parameterNames[i]);
+                }
+            }
+            return parameterValues;
+        } catch (RpcDecodeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RpcDecodeException("decodeRequestData " + rpcMethod + " binary error " + e, e);
+        } finally {
+            if (parameterMap != null) {
+                parameterMap.clear();
+            }
+        }
+    }
+
+    @Override
+    public byte[] encodeResponseData(Object data, RpcMethod<RpcServerInstance> rpcMethod) {
+        if (data == null) {
+            return EMPTY;
+        }
+        return encode(data, rpcMethod);
+    }
+
+    @Override
+    public Object decodeResponseData(byte[] data, RpcMethod<RpcClient> rpcMethod) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        return decode(data, rpcMethod.getGenericReturnType());
+    }
+
+    @Override
+    public Object decodeChunkResponseData(byte[] data, Type type) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        return decode(data, type);
+    }
+
+    @Override
+    public byte[] encodeChunkResponseData(Object data) {
+        if (data == null) {
+            return EMPTY;
+        }
+        return encode(data, data.getClass());
+    }
+
+    private byte[] encode(Object data, Object source) {
+        ByteBuf out = allocator.heapBuffer();
+        try {
+            schema.getDynamicCodec().write(out, data);
+            return ByteBufUtil.getBytes(out);
+        } catch (RpcEncodeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RpcEncodeException("encodeResponseData " + source + " binary error " + e, e);
+        } finally {
+            out.release();
+        }
+    }
+
+    private Object decode(byte[] data, Type type) {
+        Object value;
+        try {
+            value = schema.getDynamicCodec().read(Unpooled.wrappedBuffer(data));
+        } catch (RpcDecodeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RpcDecodeException("decodeResponseData " + type + " binary error " + e, e);
+        }
+        if (value != null && type instanceof Class && !((Class<?>) type).isPrimitive()
+                && !((Class<?>) type).isInstance(value)) {
+            try {
+                value = TypeUtil.cast(value, (Class<?>) type);
+            } catch (Exception e) {
+                // return value.
+            }
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,1144 @@
+package com.github.netty.protocol.nrpc.codec;
+
+import com.github.netty.protocol.nrpc.RpcMethod;
+import com.github.netty.protocol.nrpc.exception.RpcDecodeException;
+import com.github.netty.protocol.nrpc.exception.RpcEncodeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binary schema. Compile a java type to a {@link Codec} once, then encode or decode it without reflection lookup or text parsing.
+ * <p>
+ * Fields are positional and length-prefixed. numbers is zigzag varint, string is (varint length + 1) + utf8 bytes, 0 length is null.
+ * The type that can not be known by declaration (Object, interface, abstract class, type variable) write a 1 byte tag before the value.
+ * <p>
+ * Note: client and server must declare the same types (share the api jar). Each payload begin with a schema hash, mismatch is {@link RpcDecodeException}.
+ * <p>
+ * The tagged value (pojo, enum) carry the class name. The decoder only accept the class that compiled in this schema
+ * (the method types by {@link #register(RpcMethod)}, or {@link #register(Type...)}), never load a class by the name from the wire.
+ * So the server can return a subclass of the declared return type only if the client register it.
+ * <p>
+ * The decoder read the untrusted frame. Each length is checked against the readable bytes before allocate (each element is at least 1 byte),
+ * and the nesting depth is limited ({@link #MAX_DEPTH}), the malformed payload is {@link RpcDecodeException}.
+ *
+ * @author wangzihao
+ */
+public class BinarySchema {
+    private static final BinarySchema DEFAULT = new BinarySchema();
+    /**
+     * the max nesting depth of the decode (array, collection, map, pojo)
+     */
+    public static final int MAX_DEPTH = 512;
+    private static final FastThreadLocal<int[]> DEPTH_THREAD_LOCAL = new FastThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_TRUE = 1;
+    private static final byte TAG_FALSE = 2;
+    private static final byte TAG_BYTE = 3;
+    private static final byte TAG_SHORT = 4;
+    private static final byte TAG_CHAR = 5;
+    private static final byte TAG_INT = 6;
+    private static final byte TAG_LONG = 7;
+    private static final byte TAG_FLOAT = 8;
+    private static final byte TAG_DOUBLE = 9;
+    private static final byte TAG_STRING = 10;
+    private static final byte TAG_BYTES = 11;
+    private static final byte TAG_LIST = 12;
+    private static final byte TAG_SET = 13;
+    private static final byte TAG_MAP = 14;
+    private static final byte TAG_BIG_DECIMAL = 15;
+    private static final byte TAG_BIG_INTEGER = 16;
+    private static final byte TAG_DATE = 17;
+    private static final byte TAG_ENUM = 18;
+    private static final byte TAG_POJO = 19;
+    // 20 is reserved (removed java serializable)
+    private static final byte TAG_ARRAY = 21;
+
+    private final Map<Type, Codec> codecMap = new ConcurrentHashMap<>();
+    private final Map<Method, MethodSchema> methodSchemaMap = new ConcurrentHashMap<>();
+    /**
+     * the compiled pojo and enum classes. (the allowlist of the class name on the wire)
+     */
+    private final Map<String, Class<?>> classMap = new ConcurrentHashMap<>();
+    private final Codec dynamicCodec = new DynamicCodec();
+
+    public static BinarySchema getDefault() {
+        return DEFAULT;
+    }
+
+    public static void writeVarInt(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(ByteBuf in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new RpcDecodeException("binary malformed varint");
+    }
+
+    public static void writeVarLong(ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(ByteBuf in) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new RpcDecodeException("binary malformed varlong");
+    }
+
+    public static void writeString(ByteBuf out, String value) {
+        if (value == null) {
+            out.writeByte(0);
+            return;
+        }
+        writeVarInt(out, ByteBufUtil.utf8Bytes(value) + 1);
+        ByteBufUtil.writeUtf8(out, value);
+    }
+
+    public static String readString(ByteBuf in) {
+        int length = readVarInt(in) - 1;
+        if (length == -1) {
+            return null;
+        }
+        checkLength(in, length);
+        return in.readCharSequence(length, DataCodec.CHARSET_UTF8).toString();
+    }
+
+    /**
+     * Check the length (or the element count) from the wire before allocate. each element is at least 1 byte
+     *
+     * @param in     the frame
+     * @param length length
+     * @return length
+     * @throws RpcDecodeException the length is negative or more than the readable bytes
+     */
+    public static int checkLength(ByteBuf in, int length) {
+        if (length < 0 || length > in.readableBytes()) {
+            throw new RpcDecodeException("binary decode length " + length + " out of the readable bytes " + in.readableBytes());
+        }
+        return length;
+    }
+
+    /**
+     * Enter a nested value (array, collection, map, pojo). must invoke {@link #exitNested()} in the finally
+     *
+     * @throws RpcDecodeException the nesting depth is more than {@link #MAX_DEPTH}
+     */
+    private static void enterNested() {
+        int[] depth = DEPTH_THREAD_LOCAL.get();
+        if (++depth[0] > MAX_DEPTH) {
+            depth[0]--;
+            throw new RpcDecodeException("binary decode nesting depth more than " + MAX_DEPTH);
+        }
+    }
+
+    private static void exitNested() {
+        DEPTH_THREAD_LOCAL.get()[0]--;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Compile the method schema when the method is registered (not on the first call)
+     *
+     * @param rpcMethod rpcMethod
+     */
+    public void register(RpcMethod<?> rpcMethod) {
+        getMethodSchema(rpcMethod);
+        Type chunkType = rpcMethod.getChunkGenericReturnType();
+        if (chunkType != null) {
+            getCodec(chunkType);
+        }
+    }
+
+    /**
+     * Compile the types, then the decoder accept them as the tagged value. (e.g. the subclass of the declared return type)
+     *
+     * @param types java types
+     */
+    public void register(Type... types) {
+        for (Type type : types) {
+            getCodec(type);
+        }
+    }
+
+    /**
+     * Get the compiled method schema (parameters and return type)
+     *
+     * @param rpcMethod rpcMethod
+     * @return MethodSchema
+     */
+    public MethodSchema getMethodSchema(RpcMethod<?> rpcMethod) {
+        Method method = rpcMethod.getMethod();
+        MethodSchema schema = methodSchemaMap.get(method);
+        if (schema == null) {
+            Type[] parameterTypes = method.getGenericParameterTypes();
+            Codec[] parameterCodecs = new Codec[parameterTypes.length];
+            StringJoiner descriptor = new StringJoiner(",", "(", ")");
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterCodecs[i] = getCodec(parameterTypes[i]);
+                descriptor.add(parameterCodecs[i].descriptor(new HashSet<>()));
+            }
+            Codec returnCodec = getCodec(rpcMethod.getGenericReturnType());
+            schema = new MethodSchema(parameterCodecs, descriptor.toString().hashCode(), returnCodec,
+                    returnCodec.descriptor(new HashSet<>()).hashCode());
+            methodSchemaMap.put(method, schema);
+        }
+        return schema;
+    }
+
+    /**
+     * Get the compiled type codec
+     *
+     * @param type java type
+     * @return Codec
+     */
+    public Codec getCodec(Type type) {
+        Codec codec = codecMap.get(type);
+        if (codec == null) {
+            synchronized (this) {
+                codec = codecMap.get(type);
+                if (codec == null) {
+                    Map<Type, Codec> compiling = new HashMap<>();
+                    codec = compile(type, compiling);
+                    compiling.put(type, codec);
+                    for (Map.Entry<Type, Codec> entry : compiling.entrySet()) {
+                        Codec compiled = entry.getValue();
+                        if (compiled instanceof PojoCodec) {
+                            Class<?> clazz = ((PojoCodec) compiled).type;
+                            classMap.put(clazz.getName(), clazz);
+                        } else if (compiled instanceof EnumCodec) {
+                            Class<?> clazz = ((EnumCodec) compiled).type;
+                            classMap.put(clazz.getName(), clazz);
+                        }
+                    }
+                    codecMap.putAll(compiling);
+                }
+            }
+        }
+        return codec;
+    }
+
+    public Codec getDynamicCodec() {
+        return dynamicCodec;
+    }
+
+    private Codec lookup(Type type, Map<Type, Codec> compiling) {
+        Codec codec = codecMap.get(type);
+        if (codec == null) {
+            codec = compiling.get(type);
+        }
+        if (codec == null) {
+            codec = compile(type, compiling);
+            compiling.put(type, codec);
+        }
+        return codec;
+    }
+
+    private Codec compile(Type type, Map<Type, Codec> compiling) {
+        if (type instanceof Class) {
+            return compileClass((Class<?>) type, compiling);
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            Class<?> rawType = (Class<?>) parameterizedType.getRawType();
+            Type[] arguments = parameterizedType.getActualTypeArguments();
+            if (Collection.class.isAssignableFrom(rawType) && arguments.length == 1) {
+                return new CollectionCodec(rawType, lookup(arguments[0], compiling));
+            } else if (Map.class.isAssignableFrom(rawType) && arguments.length == 2) {
+                return new MapCodec(rawType, lookup(arguments[0], compiling), lookup(arguments[1], compiling));
+            } else {
+                return compileClass(rawType, compiling);
+            }
+        } else if (type instanceof GenericArrayType) {
+            Type componentType = ((GenericArrayType) type).getGenericComponentType();
+            Class<?> componentClass = componentType instanceof ParameterizedType ? (Class<?>) ((ParameterizedType) componentType).getRawType() : Object.class;
+            return new ArrayCodec(componentClass, lookup(componentType, compiling));
+        } else {
+            // TypeVariable, WildcardType
+            return dynamicCodec;
+        }
+    }
+
+    private Codec compileClass(Class<?> clazz, Map<Type, Codec> compiling) {
+        if (clazz == void.class || clazz == Void.class || clazz == Object.class) {
+            return dynamicCodec;
+        } else if (clazz == int.class || clazz == Integer.class) {
+            return new IntCodec(clazz.isPrimitive());
+        } else if (clazz == long.class || clazz == Long.class) {
+            return new LongCodec(clazz.isPrimitive());
+        } else if (clazz == boolean.class || clazz == Boolean.class) {
+            return new BooleanCodec(clazz.isPrimitive());
+        } else if (clazz == double.class || clazz == Double.class) {
+            return new DoubleCodec(clazz.isPrimitive());
+        } else if (clazz == float.class || clazz == Float.class) {
+            return new FloatCodec(clazz.isPrimitive());
+        } else if (clazz == short.class || clazz == Short.class) {
+            return new ShortCodec(clazz.isPrimitive());
+        } else if (clazz == byte.class || clazz == Byte.class) {
+            return new ByteCodec(clazz.isPrimitive());
+        } else if (clazz == char.class || clazz == Character.class) {
+            return new CharCodec(clazz.isPrimitive());
+        } else if (clazz == String.class) {
+            return new StringCodec();
+        } else if (clazz == byte[].class) {
+            return new BytesCodec();
+        } else if (clazz.isEnum()) {
+            return new EnumCodec(clazz);
+        } else if (clazz.isArray()) {
+            return new ArrayCodec(clazz.getComponentType(), lookup(clazz.getComponentType(), compiling));
+        } else if (Collection.class.isAssignableFrom(clazz)) {
+            return new CollectionCodec(clazz, dynamicCodec);
+        } else if (Map.class.isAssignableFrom(clazz)) {
+            return new MapCodec(clazz, dynamicCodec, dynamicCodec);
+        } else if (!isPojo(clazz)) {
+            return dynamicCodec;
+        } else {
+            PojoCodec codec = new PojoCodec(clazz);
+            // put before compile fields. (recursive type)
+            compiling.put(clazz, codec);
+            List<Field> fieldList = getPojoFields(clazz);
+            Field[] fields = fieldList.toArray(new Field[0]);
+            Codec[] codecs = new Codec[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                // the Field is a copy of each getDeclaredFields, set accessible on the field that the codec use
+                fields[i].setAccessible(true);
+                codecs[i] = lookup(fields[i].getGenericType(), compiling);
+            }
+            codec.fields = fields;
+            codec.codecs = codecs;
+            return codec;
+        }
+    }
+
+    private boolean isPojo(Class<?> clazz) {
+        if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())
+                || clazz.getName().startsWith("java.") || clazz.getName().startsWith("javax.")) {
+            return false;
+        }
+        try {
+            clazz.getDeclaredConstructor().setAccessible(true);
+            for (Field field : getPojoFields(clazz)) {
+                field.setAccessible(true);
+            }
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private List<Field> getPojoFields(Class<?> clazz) {
+        LinkedList<Class<?>> hierarchy = new LinkedList<>();
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.addFirst(c);
+        }
+        List<Field> list = new ArrayList<>();
+        for (Class<?> c : hierarchy) {
+            List<Field> declaredFields = new ArrayList<>();
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                declaredFields.add(field);
+            }
+            // stable order. (getDeclaredFields is no particular order)
+            declaredFields.sort(Comparator.comparing(Field::getName));
+            list.addAll(declaredFields);
+        }
+        return list;
+    }
+
+    /**
+     * Only the compiled class. (the class name is from the wire, never load or instantiate a unknown class)
+     */
+    private Class<?> forName(String className) {
+        Class<?> clazz = classMap.get(className);
+        if (clazz == null) {
+            throw new RpcDecodeException("binary decode class " + className + " is not registered. need BinarySchema#register(" + className + ")");
+        }
+        return clazz;
+    }
+
+    private static Collection<Object> newCollection(Class<?> type, int size) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            if (SortedSet.class.isAssignableFrom(type)) {
+                return new TreeSet<>();
+            } else if (Set.class.isAssignableFrom(type)) {
+                return new LinkedHashSet<>(size);
+            } else {
+                return new ArrayList<>(size);
+            }
+        }
+        try {
+            return (Collection<Object>) type.getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new RpcDecodeException("binary decode new collection " + type + " error " + e, e);
+        }
+    }
+
+    private static Map<Object, Object> newMap(Class<?> type, int size) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            if (SortedMap.class.isAssignableFrom(type)) {
+                return new TreeMap<>();
+            } else {
+                return new LinkedHashMap<>(Math.max(16, (int) (size / 0.75F) + 1));
+            }
+        }
+        try {
+            return (Map<Object, Object>) type.getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new RpcDecodeException("binary decode new map " + type + " error " + e, e);
+        }
+    }
+
+    /**
+     * Compiled method. (parameter codecs and return codec)
+     */
+    public static class MethodSchema {
+        private final Codec[] parameterCodecs;
+        private final int parameterHash;
+        private final Codec returnCodec;
+        private final int returnHash;
+
+        MethodSchema(Codec[] parameterCodecs, int parameterHash, Codec returnCodec, int returnHash) {
+            this.parameterCodecs = parameterCodecs;
+            this.parameterHash = parameterHash;
+            this.returnCodec = returnCodec;
+            this.returnHash = returnHash;
+        }
+
+        public Codec[] getParameterCodecs() {
+            return parameterCodecs;
+        }
+
+        public int getParameterHash() {
+            return parameterHash;
+        }
+
+        public Codec getReturnCodec() {
+            return returnCodec;
+        }
+
+        public int getReturnHash() {
+            return returnHash;
+        }
+    }
+
+    /**
+     * Compiled type
+     */
+    public abstract static class Codec {
+
+        public abstract void write(ByteBuf out, Object value);
+
+        public abstract Object read(ByteBuf in);
+
+        /**
+         * type descriptor. (for schema hash)
+         *
+         * @param visited recursive pojo
+         * @return descriptor
+         */
+        abstract String descriptor(Set<Class<?>> visited);
+    }
+
+    abstract static class NullableCodec extends Codec {
+        final boolean primitive;
+
+        NullableCodec(boolean primitive) {
+            this.primitive = primitive;
+        }
+
+        @Override
+        public void write(ByteBuf out, Object value) {
+            if (!primitive) {
+                if (value == null) {
+                    out.writeByte(0);
+                    return;
+                }
+                out.writeByte(1);
+            }
+            writeValue(out, value);
+        }
+
+        @Override
+        public Object read(ByteBuf in) {
+            if (!primitive && in.readByte() == 0) {
+                return null;
+            }
+            return readValue(in);
+        }
+
+        abstract void writeValue(ByteBuf out, Object value);
+
+        abstract Object readValue(ByteBuf in);
+    }
+
+    static class IntCodec extends NullableCodec {
+        IntCodec(boolean primitive) {
+            super(primitive);
+        }
+
+        @Override
+        void writeValue(ByteBuf out, Object value) {
+            writeVarInt(out, zigzag(value == null ? 0 : ((Number) value).intValue()));
+        }
+
+        @Override
+        Object readValue(ByteBuf in) {
+            return unzigzag(readVarInt(in));
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return primitive ? "I" : "Ljava/lang/Integer;";
+        }
+    }
+
+    static class LongCodec extends NullableCodec {
+        LongCodec(boolean primitive) {
+            super(primitive);
+        }
+
+        @Override
+        void writeValue(ByteBuf out, Object value) {
+            writeVarLong(out, zigzag(value == null ? 0L : ((Number) value).longValue()));
+        }
+
+        @Override
+        Object readValue(ByteBuf in) {
+            return unzigzag(readVarLong(in));
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return primitive ? "J" : "Ljava/lang/Long;";
+        }
+    }
+
+    static class ShortCodec extends NullableCodec {
+        ShortCodec(boolean primitive) {
+            super(primitive);
+        }
+
+        @Override
+        void writeValue(ByteBuf out, Object value) {
+            out.writeShort(value == null ? 0 : ((Number) value).shortValue());
+        }
+
+        @Override
+        Object readValue(ByteBuf in) {
+            return in.readShort();
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return primitive ? "S" : "Ljava/lang/Short;";
+        }
+    }
+
+    static class ByteCodec extends NullableCodec {
+        ByteCodec(boolean primitive) {
+            super(primitive);
+        }
+
+        @Override
+        void writeValue(ByteBuf out, Object value) {
+            out.writeByte(value == null ? 0 : ((Number) value).byteValue());
+        }
+
+        @Override
+        Object readValue(ByteBuf in) {
+            return in.readByte();
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return primitive ? "B" : "Ljava/lang/Byte;";
+        }
+    }
+
+    static class CharCodec extends NullableCodec {
+        CharCodec(boolean primitive) {
+            super(primitive);
+        }
+
+        @Override
+        void writeValue(ByteBuf out, Object value) {
+            out.writeChar(value == null ? 0 : (Character) value);
+        }
+
+        @Override
+        Object readValue(ByteBuf in) {
+            return in.readChar();
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return primitive ? "C" : "Ljava/lang/Character;";
+        }
+    }
+
+    static class BooleanCodec extends NullableCodec {
+        BooleanCodec(boolean primitive) {
+            super(primitive);
+        }
+
+        @Override
+        void writeValue(ByteBuf out, Object value) {
+            out.writeBoolean(value != null && (Boolean) value);
+        }
+
+        @Override
+        Object readValue(ByteBuf in) {
+            return in.readBoolean();
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return primitive ? "Z" : "Ljava/lang/Boolean;";
+        }
+    }
+
+    static class DoubleCodec extends NullableCodec {
+        DoubleCodec(boolean primitive) {
+            super(primitive);
+        }
+
+        @Override
+        void writeValue(ByteBuf out, Object value) {
+            out.writeDouble(value == null ? 0D : ((Number) value).doubleValue());
+        }
+
+        @Override
+        Object readValue(ByteBuf in) {
+            return in.readDouble();
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return primitive ? "D" : "Ljava/lang/Double;";
+        }
+    }
+
+    static class FloatCodec extends NullableCodec {
+        FloatCodec(boolean primitive) {
+            super(primitive);
+        }
+
+        @Override
+        void writeValue(ByteBuf out, Object value) {
+            out.writeFloat(value == null ? 0F : ((Number) value).floatValue());
+        }
+
+        @Override
+        Object readValue(ByteBuf in) {
+            return in.readFloat();
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return primitive ? "F" : "Ljava/lang/Float;";
+        }
+    }
+
+    static class StringCodec extends Codec {
+        @Override
+        public void write(ByteBuf out, Object value) {
+            writeString(out, (String) value);
+        }
+
+        @Override
+        public Object read(ByteBuf in) {
+            return readString(in);
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return "Ljava/lang/String;";
+        }
+    }
+
+    static class BytesCodec extends Codec {
+        @Override
+        public void write(ByteBuf out, Object value) {
+            if (value == null) {
+                out.writeByte(0);
+                return;
+            }
+            byte[] bytes = (byte[]) value;
+            writeVarInt(out, bytes.length + 1);
+            out.writeBytes(bytes);
+        }
+
+        @Override
+        public Object read(ByteBuf in) {
+            int length = readVarInt(in) - 1;
+            if (length == -1) {
+                return null;
+            }
+            byte[] bytes = new byte[checkLength(in, length)];
+            in.readBytes(bytes);
+            return bytes;
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return "[B";
+        }
+    }
+
+    static class EnumCodec extends Codec {
+        private final Class type;
+
+        EnumCodec(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public void write(ByteBuf out, Object value) {
+            writeString(out, value == null ? null : ((Enum) value).name());
+        }
+
+        @Override
+        public Object read(ByteBuf in) {
+            String name = readString(in);
+            return name == null ? null : Enum.valueOf(type, name);
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return "E" + type.getName() + ";";
+        }
+    }
+
+    class ArrayCodec extends Codec {
+        private final Class<?> componentType;
+        private final Codec componentCodec;
+
+        ArrayCodec(Class<?> componentType, Codec componentCodec) {
+            this.componentType = componentType;
+            this.componentCodec = componentCodec;
+        }
+
+        @Override
+        public void write(ByteBuf out, Object value) {
+            if (value == null) {
+                out.writeByte(0);
+                return;
+            }
+            int length = Array.getLength(value);
+            writeVarInt(out, length + 1);
+            for (int i = 0; i < length; i++) {
+                componentCodec.write(out, Array.get(value, i));
+            }
+        }
+
+        @Override
+        public Object read(ByteBuf in) {
+            int length = readVarInt(in) - 1;
+            if (length == -1) {
+                return null;
+            }
+            Object array = Array.newInstance(componentType, checkLength(in, length));
+            enterNested();
+            try {
+                for (int i = 0; i < length; i++) {
+                    Array.set(array, i, componentCodec.read(in));
+                }
+            } finally {
+                exitNested();
+            }
+            return array;
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return "[" + componentCodec.descriptor(visited);
+        }
+    }
+
+    class CollectionCodec extends Codec {
+        private final Class<?> type;
+        private final Codec elementCodec;
+
+        CollectionCodec(Class<?> type, Codec elementCodec) {
+            this.type = type;
+            this.elementCodec = elementCodec;
+        }
+
+        @Override
+        public void write(ByteBuf out, Object value) {
+            if (value == null) {
+                out.writeByte(0);
+                return;
+            }
+            Collection<?> collection = (Collection<?>) value;
+            writeVarInt(out, collection.size() + 1);
+            for (Object element : collection) {
+                elementCodec.write(out, element);
+            }
+        }
+
+        @Override
+        public Object read(ByteBuf in) {
+            int size = readVarInt(in) - 1;
+            if (size == -1) {
+                return null;
+            }
+            Collection<Object> collection = newCollection(type, checkLength(in, size));
+            enterNested();
+            try {
+                for (int i = 0; i < size; i++) {
+                    collection.add(elementCodec.read(in));
+                }
+            } finally {
+                exitNested();
+            }
+            return collection;
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return "L" + type.getName() + "<" + elementCodec.descriptor(visited) + ">;";
+        }
+    }
+
+    class MapCodec extends Codec {
+        private final Class<?> type;
+        private final Codec keyCodec;
+        private final Codec valueCodec;
+
+        MapCodec(Class<?> type, Codec keyCodec, Codec valueCodec) {
+            this.type = type;
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+        }
+
+        @Override
+        public void write(ByteBuf out, Object value) {
+            if (value == null) {
+                out.writeByte(0);
+                return;
+            }
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeVarInt(out, map.size() + 1);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                keyCodec.write(out, entry.getKey());
+                valueCodec.write(out, entry.getValue());
+            }
+        }
+
+        @Override
+        public Object read(ByteBuf in) {
+            int size = readVarInt(in) - 1;
+            if (size == -1) {
+                return null;
+            }
+            Map<Object, Object> map = newMap(type, checkLength(in, size));
+            enterNested();
+            try {
+                for (int i = 0; i < size; i++) {
+                    Object key = keyCodec.read(in);
+                    map.put(key, valueCodec.read(in));
+                }
+            } finally {
+                exitNested();
+            }
+            return map;
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return "L" + type.getName() + "<" + keyCodec.descriptor(visited) + valueCodec.descriptor(visited) + ">;";
+        }
+    }
+
+    static class PojoCodec extends Codec {
+        private final Class<?> type;
+        private final Constructor<?> constructor;
+        private Field[] fields;
+        private Codec[] codecs;
+
+        PojoCodec(Class<?> type) {
+            this.type = type;
+            try {
+                this.constructor = type.getDeclaredConstructor();
+                this.constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("binary pojo need no args constructor " + type, e);
+            }
+        }
+
+        @Override
+        public void write(ByteBuf out, Object value) {
+            if (value == null) {
+                out.writeByte(0);
+                return;
+            }
+            out.writeByte(1);
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    codecs[i].write(out, fields[i].get(value));
+                }
+            } catch (IllegalAccessException e) {
+                throw new RpcEncodeException("binary encode " + type + " error " + e, e);
+            }
+        }
+
+        @Override
+        public Object read(ByteBuf in) {
+            if (in.readByte() == 0) {
+                return null;
+            }
+            enterNested();
+            try {
+                Object value = constructor.newInstance();
+                for (int i = 0; i < fields.length; i++) {
+                    Object fieldValue = codecs[i].read(in);
+                    if (fieldValue != null || !fields[i].getType().isPrimitive()) {
+                        fields[i].set(value, fieldValue);
+                    }
+                }
+                return value;
+            } catch (ReflectiveOperationException e) {
+                throw new RpcDecodeException("binary decode " + type + " error " + e, e);
+            } finally {
+                exitNested();
+            }
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            if (!visited.add(type)) {
+                return "L" + type.getName() + ";";
+            }
+            StringJoiner joiner = new StringJoiner(",", "L" + type.getName() + "{", "};");
+            for (int i = 0; i < fields.length; i++) {
+                joiner.add(fields[i].getName() + ":" + codecs[i].descriptor(visited));
+            }
+            return joiner.toString();
+        }
+    }
+
+    /**
+     * The type can not be known by declaration. write a tag before the value.
+     */
+    class DynamicCodec extends Codec {
+        @Override
+        public void write(ByteBuf out, Object value) {
+            if (value == null) {
+                out.writeByte(TAG_NULL);
+            } else if (value instanceof String) {
+                out.writeByte(TAG_STRING);
+                writeString(out, (String) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(TAG_INT);
+                writeVarInt(out, zigzag((Integer) value));
+            } else if (value instanceof Long) {
+                out.writeByte(TAG_LONG);
+                writeVarLong(out, zigzag((Long) value));
+            } else if (value instanceof Boolean) {
+                out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+            } else if (value instanceof Double) {
+                out.writeByte(TAG_DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Float) {
+                out.writeByte(TAG_FLOAT);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Short) {
+                out.writeByte(TAG_SHORT);
+                out.writeShort((Short) value);
+            } else if (value instanceof Byte) {
+                out.writeByte(TAG_BYTE);
+                out.writeByte((Byte) value);
+            } else if (value instanceof Character) {
+                out.writeByte(TAG_CHAR);
+                out.writeChar((Character) value);
+            } else if (value instanceof byte[]) {
+                out.writeByte(TAG_BYTES);
+                byte[] bytes = (byte[]) value;
+                writeVarInt(out, bytes.length);
+                out.writeBytes(bytes);
+            } else if (value instanceof Map) {
+                out.writeByte(TAG_MAP);
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeVarInt(out, map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    write(out, entry.getKey());
+                    write(out, entry.getValue());
+                }
+            } else if (value instanceof Collection) {
+                out.writeByte(value instanceof Set ? TAG_SET : TAG_LIST);
+                Collection<?> collection = (Collection<?>) value;
+                writeVarInt(out, collection.size());
+                for (Object element : collection) {
+                    write(out, element);
+                }
+            } else if (value instanceof BigDecimal) {
+                out.writeByte(TAG_BIG_DECIMAL);
+                writeString(out, value.toString());
+            } else if (value instanceof BigInteger) {
+                out.writeByte(TAG_BIG_INTEGER);
+                writeString(out, value.toString());
+            } else if (value.getClass() == Date.class) {
+                out.writeByte(TAG_DATE);
+                writeVarLong(out, zigzag(((Date) value).getTime()));
+            } else if (value instanceof Enum) {
+                out.writeByte(TAG_ENUM);
+                writeString(out, ((Enum) value).getDeclaringClass().getName());
+                writeString(out, ((Enum) value).name());
+            } else if (value instanceof Object[]) {
+                out.writeByte(TAG_ARRAY);
+                Object[] array = (Object[]) value;
+                writeVarInt(out, array.length);
+                for (Object element : array) {
+                    write(out, element);
+                }
+            } else {
+                Codec codec = getCodec(value.getClass());
+                if (codec instanceof PojoCodec) {
+                    out.writeByte(TAG_POJO);
+                    writeString(out, value.getClass().getName());
+                    codec.write(out, value);
+                } else {
+                    throw new RpcEncodeException("binary encode not support type " + value.getClass() + ". need no args constructor");
+                }
+            }
+        }
+
+        @Override
+        public Object read(ByteBuf in) {
+            byte tag = in.readByte();
+            enterNested();
+            try {
+                return read(in, tag);
+            } finally {
+                exitNested();
+            }
+        }
+
+        private Object read(ByteBuf in, byte tag) {
+            switch (tag) {
+                case TAG_NULL:
+                    return null;
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+                case TAG_STRING:
+                    return readString(in);
+                case TAG_INT:
+                    return unzigzag(readVarInt(in));
+                case TAG_LONG:
+                    return unzigzag(readVarLong(in));
+                case TAG_DOUBLE:
+                    return in.readDouble();
+                case TAG_FLOAT:
+                    return in.readFloat();
+                case TAG_SHORT:
+                    return in.readShort();
+                case TAG_BYTE:
+                    return in.readByte();
+                case TAG_CHAR:
+                    return in.readChar();
+                case TAG_BYTES: {
+                    byte[] bytes = new byte[checkLength(in, readVarInt(in))];
+                    in.readBytes(bytes);
+                    return bytes;
+                }
+                case TAG_MAP: {
+                    int size = checkLength(in, readVarInt(in));
+                    Map<Object, Object> map = newMap(Map.class, size);
+                    for (int i = 0; i < size; i++) {
+                        Object key = read(in);
+                        map.put(key, read(in));
+                    }
+                    return map;
+                }
+                case TAG_SET:
+                case TAG_LIST: {
+                    int size = checkLength(in, readVarInt(in));
+                    Collection<Object> collection = newCollection(tag == TAG_SET ? Set.class : List.class, size);
+                    for (int i = 0; i < size; i++) {
+                        collection.add(read(in));
+                    }
+                    return collection;
+                }
+                case TAG_BIG_DECIMAL:
+                    return new BigDecimal(readString(in));
+                case TAG_BIG_INTEGER:
+                    return new BigInteger(readString(in));
+                case TAG_DATE:
+                    return new Date(unzigzag(readVarLong(in)));
+                case TAG_ENUM: {
+                    Class type = forName(readString(in));
+                    return Enum.valueOf(type, readString(in));
+                }
+                case TAG_ARRAY: {
+                    Object[] array = new Object[checkLength(in, readVarInt(in))];
+                    for (int i = 0; i < array.length; i++) {
+                        array[i] = read(in);
+                    }
+                    return array;
+                }
+                case TAG_POJO: {
+                    Codec codec = getCodec(forName(readString(in)));
+                    return codec.read(in);
+                }
+                default:
+                    throw new RpcDecodeException("binary decode unknown tag " + tag);
+            }
+        }
+
+        @Override
+        String descriptor(Set<Class<?>> visited) {
+            return "?";
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.github.netty.protocol.nrpc.codec;
 import com.github.netty.protocol.nrpc.RpcClient;
 import com.github.netty.protocol.nrpc.RpcMethod;
 import com.github.netty.protocol.nrpc.RpcServerInstance;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 
 import java.lang.reflect.Type;
 import java.nio.charset.Charset;
@@ -22,6 +24,15 @@ public interface DataCodec {
         return DataCodecUtil.buildThrowableRpcMessage(throwable);
     }
 
+    /**
+     * The method is registered (client interface or server instance). prepare the codec of the method. default do nothing
+     *
+     * @param rpcMethod rpcMethod
+     */
+    default void register(RpcMethod<?> rpcMethod) {
+
+    }
+
     /**
      * Request data - encoding
      *
@@ -79,6 +90,17 @@ public interface DataCodec {
      */
     Object[] decodeRequestData(byte[] data, RpcMethod<RpcServerInstance> rpcMethod);
 
+    /**
+     * Request data - decoding (zero copy decode mode, read straight from the frame)
+     *
+     * @param data      data. the caller release it
+     * @param rpcMethod rpcMethod
+     * @return Object[]
+     */
+    default Object[] decodeRequestData(ByteBuf data, RpcMethod<RpcServerInstance> rpcMethod) {
+        return decodeRequestData(ByteBufUtil.getBytes(data), rpcMethod);
+    }
+
     /**
      * The client parses
      *
@@ -65,7 +65,7 @@ public class DataCodecUtil {
     /**
      * set codec
      *
-     * @param codec [fastjson,jackson,jdk,auto]
+     * @param codec [fastjson,jackson,jdk,binary,auto]
      */
     public static void setDataCodec(String codec) {
         System.setProperty(SYSTEM_PROPERTY_CODEC_KEY, codec);
@@ -84,6 +84,10 @@ public class DataCodecUtil {
                     dataCodec = new JacksonDataCodec();
                     break;
                 }
+                case "binary": {
+                    dataCodec = new BinaryDataCodec();
+                    break;
+                }
                 default:
                 case "jdk": {
                     dataCodec = new JdkDataCodec();
@@ -13,6 +13,8 @@ import com.github.netty.protocol.nrpc.RpcMethod;
 import com.github.netty.protocol.nrpc.RpcServerInstance;
 import com.github.netty.protocol.nrpc.exception.RpcDecodeException;
 import com.github.netty.protocol.nrpc.exception.RpcEncodeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.util.concurrent.FastThreadLocal;
 
 import java.lang.reflect.Type;
@@ -164,6 +166,30 @@ public class FastJsonDataCodec implements DataCodec {
         } else {
             parameterMap = PARAMETER_MAP_LOCAL.get();
         }
+        return decodeRequestData(parameterMap, rpcMethod);
+    }
+
+    @Override
+    public Object[] decodeRequestData(ByteBuf data, RpcMethod<RpcServerInstance> rpcMethod) {
+        Map parameterMap;
+        if (data != null && data.isReadable()) {
+            try {
+                if (data.hasArray()) {
+                    parameterMap = (Map) JSON.parse(data.array(), data.arrayOffset() + data.readerIndex(), data.readableBytes(), CHARSET_DECODER_LOCAL.get(), FEATURE_MASK);
+                } else {
+                    byte[] bytes = ByteBufUtil.getBytes(data);
+                    parameterMap = (Map) JSON.parse(bytes, 0, bytes.length, CHARSET_DECODER_LOCAL.get(), FEATURE_MASK);
+                }
+            } catch (Exception e) {
+                throw new RpcDecodeException("decodeRequestData " + rpcMethod + " fastjson error " + e, e);
+            }
+        } else {
+            parameterMap = PARAMETER_MAP_LOCAL.get();
+        }
+        return decodeRequestData(parameterMap, rpcMethod);
+    }
+
+    protected Object[] decodeRequestData(Map parameterMap, RpcMethod<RpcServerInstance> rpcMethod) {
         try {
             for (Consumer<Map<String, Object>> consumer : decodeRequestConsumerList) {
                 consumer.accept(parameterMap);
@@ -8,8 +8,11 @@ import com.github.netty.protocol.nrpc.RpcMethod;
 import com.github.netty.protocol.nrpc.RpcServerInstance;
 import com.github.netty.protocol.nrpc.exception.RpcDecodeException;
 import com.github.netty.protocol.nrpc.exception.RpcEncodeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.util.concurrent.FastThreadLocal;
 
+import java.io.InputStream;
 import java.lang.reflect.Type;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -106,6 +109,29 @@ public class JacksonDataCodec implements DataCodec {
         } else {
             parameterMap = PARAMETER_MAP_LOCAL.get();
         }
+        return decodeRequestData(parameterMap, rpcMethod);
+    }
+
+    @Override
+    public Object[] decodeRequestData(ByteBuf data, RpcMethod<RpcServerInstance> rpcMethod) {
+        Map parameterMap;
+        if (data != null && data.isReadable()) {
+            try {
+                if (data.hasArray()) {
+                    parameterMap = objectMapper.readValue(data.array(), data.arrayOffset() + data.readerIndex(), data.readableBytes(), LinkedHashMap.class);
+                } else {
+                    parameterMap = objectMapper.readValue((InputStream) new ByteBufInputStream(data), LinkedHashMap.class);
+                }
+            } catch (Exception e) {
+                throw new RpcDecodeException("decodeRequestData " + rpcMethod + " jackson error " + e, e);
+            }
+        } else {
+            parameterMap = PARAMETER_MAP_LOCAL.get();
+        }
+        return decodeRequestData(parameterMap, rpcMethod);
+    }
+
+    protected Object[] decodeRequestData(Map parameterMap, RpcMethod<RpcServerInstance> rpcMethod) {
         try {
             for (Consumer<Map<String, Object>> consumer : decodeRequestConsumerList) {
                 consumer.accept(parameterMap);
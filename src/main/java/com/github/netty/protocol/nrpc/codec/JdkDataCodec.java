@@ -6,6 +6,8 @@ import com.github.netty.protocol.nrpc.RpcMethod;
 import com.github.netty.protocol.nrpc.RpcServerInstance;
 import com.github.netty.protocol.nrpc.exception.RpcDecodeException;
 import com.github.netty.protocol.nrpc.exception.RpcEncodeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.util.concurrent.FastThreadLocal;
 
 import java.io.*;
@@ -101,6 +103,25 @@ public class JdkDataCodec implements DataCodec {
         } else {
             parameterMap = PARAMETER_MAP_LOCAL.get();
         }
+        return decodeRequestData(parameterMap, rpcMethod);
+    }
+
+    @Override
+    public Object[] decodeRequestData(ByteBuf data, RpcMethod<RpcServerInstance> rpcMethod) {
+        Map parameterMap;
+        if (data != null && data.isReadable()) {
+            try {
+                parameterMap = (Map) decode(new ByteBufInputStream(data), LinkedHashMap.class);
+            } catch (Exception e) {
+                throw new RpcDecodeException("decodeRequestData " + rpcMethod + " jdk error " + e, e);
+            }
+        } else {
+            parameterMap = PARAMETER_MAP_LOCAL.get();
+        }
+        return decodeRequestData(parameterMap, rpcMethod);
+    }
+
+    protected Object[] decodeRequestData(Map parameterMap, RpcMethod<RpcServerInstance> rpcMethod) {
         try {
             for (Consumer<Map<String, Object>> consumer : decodeRequestConsumerList) {
                 consumer.accept(parameterMap);
@@ -191,7 +212,10 @@ public class JdkDataCodec implements DataCodec {
     }
 
     public Object decode(byte[] bytes, Type returnType) throws Exception {
-        InputStream inputStream = new ByteArrayInputStream(bytes);
+        return decode(new ByteArrayInputStream(bytes), returnType);
+    }
+
+    public Object decode(InputStream inputStream, Type returnType) throws Exception {
         ObjectInputStream objectInputStream;
         if (SPRING_OBJECT_INPUT_STREAM_CONSTRUCTOR != null) {
             objectInputStream = SPRING_OBJECT_INPUT_STREAM_CONSTRUCTOR.newInstance(inputStream, getClass().getClassLoader());
@@ -30,17 +30,42 @@ import static com.github.netty.protocol.nrpc.codec.RpcEncoder.RPC_CHARSET;
  * |   NRPC/010     |  2   | 0    |     35       |     1      |  200   |       2        |  ok      | 1      |     24      | {"age":10,"name":"wang"} |
  * -+----------------+------+------+--------------+------------+--------+----------------+----------+--------+-------------+--------------------------+
  *
+ *
+ * Request by method id Packet (note:  7 = request by method id type. the method id confirmed by packet type 8)
+ * -+------8B--------+--1B--+--1B--+------4B------+-----4B-----+-----4B-----+-----2B-----+-----4B------+-------length-------------+
+ * | header/version | type | ACK   | total length | Request ID | timeout/ms | method id  | data length |         data             |
+ * |   NRPC/010     |  7   | 1    |     32       |     1      |     1000   |     3      |     24      | {"age":10,"name":"wang"} |
+ * -+----------------+------+------+--------------+------------+------------+------------+-------------+--------------------------+
+ *
+ *
+ * Method id Packet (note: 8 = method id type. client register, server echo)
+ * -+------8B--------+--1B--+--1B--+------4B------+-----2B-----+------1B--------+-----length-----+------1B--------+---length---+------1B-------+---length----+
+ * | header/version | type | ACK   | total length | method id  | service length | service name   | version length |  version   | method length | method name |
+ * |   NRPC/010     |  8   | 1    |     22       |     3      |       9        | "/sys/user"    |       0        |            |      7        |  getUser    |
+ * -+----------------+------+------+--------------+------------+----------------+----------------+----------------+------------+---------------+-------------+
+ *
  * @author wangzihao
  */
 public class RpcDecoder extends LengthFieldBasedFrameDecoder {
     private static final byte[] EMPTY = {};
     private static final int LENGTH_FIELD_OFFSET = PROTOCOL_HEADER.length + BYTE_LENGTH + BYTE_LENGTH;
+    /**
+     * zero copy decode mode.
+     * 1. request data is a retained slice of the frame {@link RpcPacket#getDataBuf()}, need release by {@link RpcPacket#releaseDataBuf()}
+     * 2. service name, version, method name read from {@link RpcStringTable} (the response message is unique, not in the table)
+     */
+    private final boolean zeroCopy;
+    private final RpcStringTable stringTable;
 
     public RpcDecoder() {
         this(10 * 1024 * 1024);
     }
 
     public RpcDecoder(int maxLength) {
+        this(maxLength, false);
+    }
+
+    public RpcDecoder(int maxLength, boolean zeroCopy) {
         super(maxLength,
                 //  header | type | ACK
                 LENGTH_FIELD_OFFSET,
@@ -48,6 +73,12 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
                 0,
                 0,
                 true);
+        this.zeroCopy = zeroCopy;
+        this.stringTable = zeroCopy ? new RpcStringTable(256, RPC_CHARSET) : null;
+    }
+
+    public boolean isZeroCopy() {
+        return zeroCopy;
     }
 
     @Override
@@ -97,17 +128,46 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
                 packet.setTimeout(msg.readInt());
 
                 //Request service name
-                packet.setRequestMappingName(msg.readCharSequence(msg.readUnsignedByte(), RPC_CHARSET).toString());
+                packet.setRequestMappingName(readNameString(msg));
 
                 //Request service version
-                packet.setVersion(msg.readCharSequence(msg.readUnsignedByte(), RPC_CHARSET).toString());
+                packet.setVersion(readNameString(msg));
 
                 //Request method
-                packet.setMethodName(msg.readCharSequence(msg.readUnsignedByte(), RPC_CHARSET).toString());
+                packet.setMethodName(readNameString(msg));
 
                 //Request data
                 long dataLength = msg.readUnsignedInt();
-                if (dataLength > 0) {
+                if (dataLength > 0 && zeroCopy) {
+                    packet.setDataBuf(msg.readRetainedSlice((int) dataLength));
+                } else if (dataLength > 0) {
+                    packet.setData(new byte[(int) dataLength]);
+                    msg.readBytes(packet.getData());
+                } else {
+                    packet.setData(EMPTY);
+                }
+                return packet;
+            }
+            case RpcPacket.TYPE_CLIENT_REQUEST_METHOD_ID: {
+                RequestPacket packet = RequestPacket.newInstance();
+                packet.setPacketLength(totalPacketLength);
+                //Ack
+                packet.setAck(ack);
+
+                //Request ID
+                packet.setRequestId(msg.readInt());
+
+                //Request Timeout
+                packet.setTimeout(msg.readInt());
+
+                //Request method id. (service name, version, method name set by RpcServerChannelHandler)
+                packet.setMethodId(msg.readUnsignedShort());
+
+                //Request data
+                long dataLength = msg.readUnsignedInt();
+                if (dataLength > 0 && zeroCopy) {
+                    packet.setDataBuf(msg.readRetainedSlice((int) dataLength));
+                } else if (dataLength > 0) {
                     packet.setData(new byte[(int) dataLength]);
                     msg.readBytes(packet.getData());
                 } else {
@@ -115,6 +175,25 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
                 }
                 return packet;
             }
+            case RpcPacket.TYPE_METHOD_ID: {
+                RpcPacket.MethodIdPacket packet = new RpcPacket.MethodIdPacket();
+                packet.setPacketLength(totalPacketLength);
+                //Ack
+                packet.setAck(ack);
+
+                //method id
+                packet.setMethodId(msg.readUnsignedShort());
+
+                //service name
+                packet.setRequestMappingName(readNameString(msg));
+
+                //service version
+                packet.setVersion(readNameString(msg));
+
+                //method name
+                packet.setMethodName(readNameString(msg));
+                return packet;
+            }
             case RpcPacket.TYPE_RESPONSE_CHUNK_ACK:
             case RpcPacket.TYPE_RESPONSE_CHUNK:
             case RpcPacket.TYPE_RESPONSE_LAST: {
@@ -133,7 +212,7 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
                 packet.setEncode(DataCodec.Encode.indexOf(msg.readUnsignedByte()));
 
                 //Response information
-                packet.setMessage(msg.readCharSequence(msg.readUnsignedByte(), RPC_CHARSET).toString());
+                packet.setMessage(readString(msg));
 
                 //Request data
                 long dataLength = msg.readUnsignedInt();
@@ -170,4 +249,32 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
         }
     }
 
+    /**
+     * read (1 byte Unsigned) length + (length byte) string
+     *
+     * @param msg msg
+     * @return string
+     */
+    protected String readString(ByteBuf msg) {
+        int length = msg.readUnsignedByte();
+        return msg.readCharSequence(length, RPC_CHARSET).toString();
+    }
+
+    /**
+     * read (1 byte Unsigned) length + (length byte) string.
+     * the name (service name, version, method name) is repeated, so read from the {@link RpcStringTable} if zero copy
+     *
+     * @param msg msg
+     * @return string
+     */
+    protected String readNameString(ByteBuf msg) {
+        if (stringTable == null) {
+            return readString(msg);
+        }
+        int length = msg.readUnsignedByte();
+        String string = stringTable.get(msg, msg.readerIndex(), length);
+        msg.skipBytes(length);
+        return string;
+    }
+
 }
@@ -29,6 +29,20 @@ import static com.github.netty.protocol.nrpc.RpcPacket.*;
  * |   NRPC/010     |  2   | 0    |     35       |     1      |  200   |       2        |  ok      | 1      |     24      | {"age":10,"name":"wang"} |
  * -+----------------+------+------+--------------+------------+--------+----------------+----------+--------+-------------+--------------------------+
  *
+ *
+ * Request by method id Packet (note:  7 = request by method id type. the method id confirmed by packet type 8)
+ * -+------8B--------+--1B--+--1B--+------4B------+-----4B-----+-----4B-----+-----2B-----+-----4B------+-------length-------------+
+ * | header/version | type | ACK   | total length | Request ID | timeout/ms | method id  | data length |         data             |
+ * |   NRPC/010     |  7   | 1    |     32       |     1      |     1000   |     3      |     24      | {"age":10,"name":"wang"} |
+ * -+----------------+------+------+--------------+------------+------------+------------+-------------+--------------------------+
+ *
+ *
+ * Method id Packet (note: 8 = method id type. client register, server echo)
+ * -+------8B--------+--1B--+--1B--+------4B------+-----2B-----+------1B--------+-----length-----+------1B--------+---length---+------1B-------+---length----+
+ * | header/version | type | ACK   | total length | method id  | service length | service name   | version length |  version   | method length | method name |
+ * |   NRPC/010     |  8   | 1    |     22       |     3      |       9        | "/sys/user"    |       0        |            |      7        |  getUser    |
+ * -+----------------+------+------+--------------+------------+----------------+----------------+----------------+------------+---------------+-------------+
+ *
  * @author wangzihao
  */
 @ChannelHandler.Sharable
@@ -49,6 +63,16 @@ public class RpcEncoder extends MessageToByteEncoder<RpcPacket> {
      * (Request ID)4B + (status)2B + (message length)1B + (encode)1B + (data length)4B
      */
     private static final int FIXED_RESPONSE_LENGTH = INT_LENGTH + SHORT_LENGTH + BYTE_LENGTH + BYTE_LENGTH + INT_LENGTH;
+    /**
+     * Fixed request by method id length (note : Not including the total length.)
+     * (Request ID)4B + (timeout/ms)4B + (method id)2B + (data length)4B
+     */
+    private static final int FIXED_REQUEST_METHOD_ID_LENGTH = INT_LENGTH + INT_LENGTH + SHORT_LENGTH + INT_LENGTH;
+    /**
+     * Fixed method id length (note : Not including the total length.)
+     * (method id)2B + (service name length)1B + (service version length)1B + (method length)1B
+     */
+    private static final int FIXED_METHOD_ID_LENGTH = SHORT_LENGTH + BYTE_LENGTH + BYTE_LENGTH + BYTE_LENGTH;
 
     public RpcEncoder() {
     }
@@ -59,7 +83,16 @@ public class RpcEncoder extends MessageToByteEncoder<RpcPacket> {
         try {
             switch (packetType) {
                 case TYPE_CLIENT_REQUEST: {
-                    encodePacket((RequestPacket) packet, out);
+                    RequestPacket request = (RequestPacket) packet;
+                    if (request.getMethodId() == -1) {
+                        encodePacket(request, out);
+                    } else {
+                        encodeMethodIdPacket(request, out);
+                    }
+                    break;
+                }
+                case TYPE_METHOD_ID: {
+                    encodePacket((MethodIdPacket) packet, out);
                     break;
                 }
                 case TYPE_RESPONSE_CHUNK_ACK:
@@ -154,6 +187,92 @@ public class RpcEncoder extends MessageToByteEncoder<RpcPacket> {
         out.setInt(writerTotalLengthIndex, writeTotalLength);
     }
 
+    protected void encodeMethodIdPacket(RequestPacket packet, ByteBuf out) {
+        int writeTotalLength = FIXED_REQUEST_METHOD_ID_LENGTH;
+
+        //(8 byte) protocol head
+        out.writeBytes(PROTOCOL_HEADER);
+
+        //(1 byte Unsigned) RPC packet type
+        out.writeByte(RpcPacket.TYPE_CLIENT_REQUEST_METHOD_ID);
+
+        //(1 byte Unsigned) RPC packet ack
+        out.writeByte(packet.getAck());
+
+        //(4 byte Unsigned) total length
+        int writerTotalLengthIndex = out.writerIndex();
+        out.writerIndex(writerTotalLengthIndex + INT_LENGTH);
+
+        //(4 byte) Request ID
+        out.writeInt(packet.getRequestId());
+
+        //(4 byte) Request Timeout
+        out.writeInt(packet.getTimeout());
+
+        //(2 byte Unsigned) method id
+        out.writeShort(packet.getMethodId());
+
+        //(4 byte Unsigned) data length
+        byte[] data = packet.getData();
+        out.writeInt(data.length);
+        if (data.length > 0) {
+            //(length byte)  data
+            out.writeBytes(data);
+            writeTotalLength += data.length;
+        }
+
+        //set total length Unsigned
+        out.setInt(writerTotalLengthIndex, writeTotalLength);
+    }
+
+    protected void encodePacket(MethodIdPacket packet, ByteBuf out) {
+        int writeCurrentLength;
+        int writeTotalLength = FIXED_METHOD_ID_LENGTH;
+
+        //(8 byte) protocol head
+        out.writeBytes(PROTOCOL_HEADER);
+
+        //(1 byte Unsigned) RPC packet type
+        out.writeByte(RpcPacket.TYPE_METHOD_ID);
+
+        //(1 byte Unsigned) RPC packet ack
+        out.writeByte(packet.getAck());
+
+        //(4 byte Unsigned) total length
+        int writerTotalLengthIndex = out.writerIndex();
+        out.writerIndex(writerTotalLengthIndex + INT_LENGTH);
+
+        //(2 byte Unsigned) method id
+        out.writeShort(packet.getMethodId());
+
+        //(length byte) service name
+        out.writerIndex(out.writerIndex() + BYTE_LENGTH);
+        writeCurrentLength = out.writeCharSequence(packet.getRequestMappingName(), RPC_CHARSET);
+
+        //(1 byte Unsigned) service name length
+        out.setByte(out.writerIndex() - writeCurrentLength - BYTE_LENGTH, writeCurrentLength);
+        writeTotalLength += writeCurrentLength;
+
+        //(length byte) service version
+        out.writerIndex(out.writerIndex() + BYTE_LENGTH);
+        writeCurrentLength = out.writeCharSequence(packet.getVersion(), RPC_CHARSET);
+
+        //(1 byte Unsigned) service version length
+        out.setByte(out.writerIndex() - writeCurrentLength - BYTE_LENGTH, writeCurrentLength);
+        writeTotalLength += writeCurrentLength;
+
+        //(length byte Unsigned)  method name
+        out.writerIndex(out.writerIndex() + BYTE_LENGTH);
+        writeCurrentLength = out.writeCharSequence(packet.getMethodName(), RPC_CHARSET);
+
+        //(1 byte Unsigned) method length
+        out.setByte(out.writerIndex() - writeCurrentLength - BYTE_LENGTH, writeCurrentLength);
+        writeTotalLength += writeCurrentLength;
+
+        //set total length Unsigned
+        out.setInt(writerTotalLengthIndex, writeTotalLength);
+    }
+
     protected void encodePacket(ResponsePacket packet, ByteBuf out) {
         int writeCurrentLength;
         int writeTotalLength = FIXED_RESPONSE_LENGTH;
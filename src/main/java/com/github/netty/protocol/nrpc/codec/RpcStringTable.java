@@ -0,0 +1,99 @@
+package com.github.netty.protocol.nrpc.codec;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.Charset;
+
+/**
+ * Interned name table (service name, version, method name). the response message is not interned, it is unique per response.
+ * Names are matched against the raw bytes of the frame, so a hit returns the cached String without any allocation.
+ * Note: not thread safe. one instance per channel (RpcDecoder is not sharable).
+ *
+ * @author wangzihao
+ */
+public class RpcStringTable {
+    /**
+     * Maximum probe length before overwriting the home slot
+     */
+    private static final int MAX_PROBE = 8;
+    private final Charset charset;
+    private final byte[][] keys;
+    private final String[] values;
+    private final int[] hashes;
+    private final int mask;
+
+    public RpcStringTable(int capacity, Charset charset) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.charset = charset;
+        this.keys = new byte[size][];
+        this.values = new String[size];
+        this.hashes = new int[size];
+        this.mask = size - 1;
+    }
+
+    private static int hash(ByteBuf buf, int index, int length) {
+        int h = 1;
+        for (int i = index, end = index + length; i < end; i++) {
+            h = 31 * h + buf.getByte(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(byte[] key, ByteBuf buf, int index, int length) {
+        if (key.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != buf.getByte(index + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the string of the bytes. (do not move the reader index)
+     *
+     * @param buf    buf
+     * @param index  bytes begin index
+     * @param length bytes length
+     * @return interned string
+     */
+    public String get(ByteBuf buf, int index, int length) {
+        if (length == 0) {
+            return "";
+        }
+        int h = hash(buf, index, length);
+        int home = h & mask;
+        int slot = home;
+        for (int i = 0; i < MAX_PROBE; i++) {
+            byte[] key = keys[slot];
+            if (key == null) {
+                return put(slot, h, buf, index, length);
+            }
+            if (hashes[slot] == h && equals(key, buf, index, length)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        // table crowded. the newest name wins the home slot
+        return put(home, h, buf, index, length);
+    }
+
+    private String put(int slot, int h, ByteBuf buf, int index, int length) {
+        byte[] key = new byte[length];
+        buf.getBytes(index, key);
+        String value = new String(key, charset);
+        values[slot] = value;
+        hashes[slot] = h;
+        keys[slot] = key;
+        return value;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.netty.protocol.nrpc.service;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The field record of the {@link RpcDBService} value. (a value that is a map of named binary fields)
+ * A record can be merged by the delta record ({@link RpcDBService#putDelta4(String, byte[], int, String)}),
+ * so the client only send the changed fields, the server not need know the field content.
+ * <p>
+ * Format: magic(2) | putCount(int) | [name(utf) | length(int) | bytes]... | removeCount(int) | [name(utf)]...
+ *
+ * @author wangzihao
+ */
+public class RpcDBFields {
+    private static final int MAGIC = 0xDBF1;
+    private final Map<String, byte[]> fields;
+    private final Set<String> removeFields;
+
+    public RpcDBFields() {
+        this(new LinkedHashMap<>(8), new LinkedHashSet<>(2));
+    }
+
+    private RpcDBFields(Map<String, byte[]> fields, Set<String> removeFields) {
+        this.fields = fields;
+        this.removeFields = removeFields;
+    }
+
+    /**
+     * Is field record bytes
+     *
+     * @param bytes bytes
+     * @return true if the bytes is {@link RpcDBFields}
+     */
+    public static boolean isFields(byte[] bytes) {
+        return bytes != null && bytes.length >= 2
+                && ((bytes[0] & 0xFF) << 8 | (bytes[1] & 0xFF)) == MAGIC;
+    }
+
+    /**
+     * Parse field record.
+     * The bytes is from the client, so each count and length is checked by the remaining bytes before read.
+     *
+     * @param bytes bytes
+     * @return RpcDBFields
+     * @throws IllegalArgumentException if the bytes is not field record, or the record is corrupt
+     */
+    public static RpcDBFields parse(byte[] bytes) {
+        if (!isFields(bytes)) {
+            throw new IllegalArgumentException("not RpcDBFields bytes");
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 2, bytes.length - 2))) {
+            // a put field is at least name length(2) + length(4)
+            int putCount = checkLength(in, "putCount", in.readInt(), 6);
+            Map<String, byte[]> fields = new LinkedHashMap<>(8);
+            for (int i = 0; i < putCount; i++) {
+                String name = in.readUTF();
+                byte[] value = new byte[checkLength(in, "length", in.readInt(), 1)];
+                in.readFully(value);
+                fields.put(name, value);
+            }
+            // a remove field is at least name length(2)
+            int removeCount = checkLength(in, "removeCount", in.readInt(), 2);
+            Set<String> removeFields = new LinkedHashSet<>(2);
+            for (int i = 0; i < removeCount; i++) {
+                removeFields.add(in.readUTF());
+            }
+            return new RpcDBFields(fields, removeFields);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("parse RpcDBFields error=" + e, e);
+        }
+    }
+
+    private static int checkLength(DataInputStream in, String name, int length, int minBytes) throws IOException {
+        if (length < 0 || (long) length * minBytes > in.available()) {
+            throw new IllegalArgumentException("parse RpcDBFields error. " + name + "=" + length
+                    + " out of the remaining bytes " + in.available());
+        }
+        return length;
+    }
+
+    public RpcDBFields put(String name, byte[] value) {
+        fields.put(name, value);
+        removeFields.remove(name);
+        return this;
+    }
+
+    public RpcDBFields remove(String name) {
+        fields.remove(name);
+        removeFields.add(name);
+        return this;
+    }
+
+    public byte[] get(String name) {
+        return fields.get(name);
+    }
+
+    public Map<String, byte[]> getFields() {
+        return fields;
+    }
+
+    public Set<String> getRemoveFields() {
+        return removeFields;
+    }
+
+    /**
+     * Merge the delta record into this. (put the fields, remove the removeFields of the delta)
+     *
+     * @param delta delta record
+     * @return this
+     */
+    public RpcDBFields merge(RpcDBFields delta) {
+        for (String name : delta.removeFields) {
+            fields.remove(name);
+        }
+        fields.putAll(delta.fields);
+        return this;
+    }
+
+    public byte[] toBytes() {
+        int size = 10;
+        for (Map.Entry<String, byte[]> entry : fields.entrySet()) {
+            size += entry.getKey().length() + entry.getValue().length + 6;
+        }
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(size);
+        try (DataOutputStream out = new DataOutputStream(bout)) {
+            out.writeShort(MAGIC);
+            out.writeInt(fields.size());
+            for (Map.Entry<String, byte[]> entry : fields.entrySet()) {
+                byte[] value = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(value.length);
+                out.write(value);
+            }
+            out.writeInt(removeFields.size());
+            for (String name : removeFields) {
+                out.writeUTF(name);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("RpcDBFields toBytes error=" + e, e);
+        }
+        return bout.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+        return "RpcDBFields{" +
+                "fields=" + fields.keySet() +
+                ", removeFields=" + removeFields +
+                '}';
+    }
+}
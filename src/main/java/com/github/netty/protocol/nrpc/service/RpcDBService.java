@@ -32,6 +32,7 @@ public interface RpcDBService {
      * @param data         data
      * @param expireSecond expireSecond
      * @param group        group
+     *                     (the parameter name of the key is "group" on the wire. keep it, the old servers decode by it)
      */
     void put4(@NRpcParam("group") String key, @NRpcParam("data") byte[] data, @NRpcParam("expireSecond") int expireSecond, @NRpcParam("group") String group);
 
@@ -39,6 +40,34 @@ public interface RpcDBService {
 
     void put(@NRpcParam("group") String key, @NRpcParam("data") byte[] data);
 
+    /**
+     * put, and return the version of the data
+     *
+     * @param key          key
+     * @param data         data
+     * @param expireSecond expireSecond
+     * @param group        group
+     * @return the version of the data. (changed on every put). -1 if not supported (the data is not versioned)
+     */
+    default long putVersion4(@NRpcParam("key") String key, @NRpcParam("data") byte[] data, @NRpcParam("expireSecond") int expireSecond, @NRpcParam("group") String group) {
+        put4(key, data, expireSecond, group);
+        return -1;
+    }
+
+    /**
+     * put the changed fields. the value of the key is {@link RpcDBFields}
+     *
+     * @param key          key
+     * @param delta        the changed fields (put fields and remove fields). {@link RpcDBFields#toBytes()}
+     * @param expireSecond expireSecond
+     * @param group        group
+     * @return the version of the data, the previous version + 1 (so the client knows no other put between, if it has the previous version).
+     * -1 if the key not exist (or the value is not {@link RpcDBFields}, or not supported), the client need put the whole value
+     */
+    default long putDelta4(@NRpcParam("key") String key, @NRpcParam("delta") byte[] delta, @NRpcParam("expireSecond") int expireSecond, @NRpcParam("group") String group) {
+        return -1;
+    }
+
     /**
      * Gets the number of groups
      *
@@ -58,6 +87,39 @@ public interface RpcDBService {
 
     byte[] get(@NRpcParam("key") String key);
 
+    /**
+     * Get the version of the data
+     *
+     * @param key   key
+     * @param group group
+     * @return version. -1 if the key not exist (or not supported)
+     */
+    default long version2(@NRpcParam("key") String key, @NRpcParam("group") String group) {
+        return -1;
+    }
+
+    /**
+     * Get the data if the version changed. (the client revalidate the cached data)
+     *
+     * @param key     key
+     * @param version the version of the cached data. -1 if not cached
+     * @param group   group
+     * @return null if the key not exist. otherwise version(8 byte) + data, the data is absent if the version not changed.
+     * the version is -1 if not supported (always return the data)
+     */
+    default byte[] getIfChanged3(@NRpcParam("key") String key, @NRpcParam("version") long version, @NRpcParam("group") String group) {
+        byte[] data = get2(key, group);
+        if (data == null) {
+            return null;
+        }
+        byte[] bytes = new byte[data.length + 8];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) 0xFF;
+        }
+        System.arraycopy(data, 0, bytes, 8, data.length);
+        return bytes;
+    }
+
     /**
      * changeKey
      *
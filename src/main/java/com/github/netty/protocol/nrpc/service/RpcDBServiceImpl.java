@@ -6,15 +6,24 @@ import java.util.List;
 import java.util.Map;
 import java.util.RandomAccess;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * RpcDBServiceImpl
+ * The write (put, putDelta, changeKey, remove) hold the lock of the group map, because {@link #putDelta4(String, byte[], int, String)} is read-modify-write.
+ * The read is not locked.
  *
  * @author wangzihao
  */
 public class RpcDBServiceImpl implements RpcDBService {
     private static final String SHARING_GROUP = "/sharing";
-    private final Map<String, RpcDBExpiryLRUMap<String, byte[]>> memExpiryGroupMap = new ConcurrentHashMap<>(64);
+    private static final byte[] EMPTY = {};
+    private final Map<String, RpcDBExpiryLRUMap<String, Value>> memExpiryGroupMap = new ConcurrentHashMap<>(64);
+    /**
+     * The version of the new value. start from the time, so the version is not reused after restart.
+     * the delta put is the previous version + 1, the generator is kept greater than it, so a new value of the removed key never reuse a old version
+     */
+    private final AtomicLong versionGenerator = new AtomicLong(System.currentTimeMillis() << 16);
 
     @Override
     public boolean exist2(String key, String group) {
@@ -33,7 +42,34 @@ public class RpcDBServiceImpl implements RpcDBService {
 
     @Override
     public void put4(String key, byte[] data, int expireSecond, String group) {
-        getMemExpiryMap(group).put(key, data, expireSecond);
+        putVersion4(key, data, expireSecond, group);
+    }
+
+    @Override
+    public long putVersion4(String key, byte[] data, int expireSecond, String group) {
+        RpcDBExpiryLRUMap<String, Value> memExpiryMap = getMemExpiryMap(group);
+        synchronized (memExpiryMap) {
+            Value value = new Value(data, versionGenerator.incrementAndGet());
+            memExpiryMap.put(key, value, toTimeout(expireSecond));
+            return value.version;
+        }
+    }
+
+    @Override
+    public long putDelta4(String key, byte[] delta, int expireSecond, String group) {
+        RpcDBExpiryLRUMap<String, Value> memExpiryMap = getMemExpiryMap(group);
+        synchronized (memExpiryMap) {
+            Value value = memExpiryMap.get(key);
+            if (value == null || !RpcDBFields.isFields(value.data)) {
+                return -1;
+            }
+            byte[] newData = RpcDBFields.parse(value.data).merge(RpcDBFields.parse(delta)).toBytes();
+            long version = value.version + 1;
+            versionGenerator.accumulateAndGet(version, Math::max);
+            Value newValue = new Value(newData, version);
+            memExpiryMap.put(key, newValue, toTimeout(expireSecond));
+            return newValue.version;
+        }
     }
 
     @Override
@@ -57,7 +93,32 @@ public class RpcDBServiceImpl implements RpcDBService {
 
     @Override
     public byte[] get2(String key, String group) {
-        return getMemExpiryMap(group).get(key);
+        Value value = getMemExpiryMap(group).get(key);
+        return value != null ? value.data : null;
+    }
+
+    @Override
+    public long version2(String key, String group) {
+        Value value = getMemExpiryMap(group).get(key);
+        return value != null ? value.version : -1;
+    }
+
+    @Override
+    public byte[] getIfChanged3(String key, long version, String group) {
+        Value value = getMemExpiryMap(group).get(key);
+        if (value == null) {
+            return null;
+        }
+        // not changed, only return the version
+        byte[] data = value.version == version ? EMPTY : value.data;
+        byte[] bytes = new byte[data.length + 8];
+        long v = value.version;
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) v;
+            v >>>= 8;
+        }
+        System.arraycopy(data, 0, bytes, 8, data.length);
+        return bytes;
     }
 
     @Override
@@ -67,8 +128,10 @@ public class RpcDBServiceImpl implements RpcDBService {
 
     @Override
     public void changeKey3(String oldKey, String newKey, String group) {
-        RpcDBExpiryLRUMap<String, byte[]> memExpiryMap = getMemExpiryMap(group);
-        memExpiryMap.put(newKey, memExpiryMap.remove(oldKey));
+        RpcDBExpiryLRUMap<String, Value> memExpiryMap = getMemExpiryMap(group);
+        synchronized (memExpiryMap) {
+            memExpiryMap.put(newKey, memExpiryMap.remove(oldKey));
+        }
     }
 
     @Override
@@ -78,7 +141,10 @@ public class RpcDBServiceImpl implements RpcDBService {
 
     @Override
     public void remove2(String key, String group) {
-        getMemExpiryMap(group).remove(key);
+        RpcDBExpiryLRUMap<String, Value> memExpiryMap = getMemExpiryMap(group);
+        synchronized (memExpiryMap) {
+            memExpiryMap.remove(key);
+        }
     }
 
     @Override
@@ -102,22 +168,32 @@ public class RpcDBServiceImpl implements RpcDBService {
             return;
         }
 
-        RpcDBExpiryLRUMap<String, byte[]> map = getMemExpiryMap(group);
-        if (keys instanceof RandomAccess) {
-            int size = keys.size();
-            for (int i = 0; i < size; i++) {
-                String key = keys.get(i);
-                map.remove(key);
-            }
-        } else {
-            for (String key : keys) {
-                map.remove(key);
+        RpcDBExpiryLRUMap<String, Value> map = getMemExpiryMap(group);
+        synchronized (map) {
+            if (keys instanceof RandomAccess) {
+                int size = keys.size();
+                for (int i = 0; i < size; i++) {
+                    String key = keys.get(i);
+                    map.remove(key);
+                }
+            } else {
+                for (String key : keys) {
+                    map.remove(key);
+                }
             }
         }
     }
 
-    private RpcDBExpiryLRUMap<String, byte[]> getMemExpiryMap(String group) {
-        RpcDBExpiryLRUMap<String, byte[]> memExpiryMap = memExpiryGroupMap.get(group);
+    /**
+     * @param expireSecond expireSecond. less than or equal to 0 is never expire
+     * @return timeout of {@link ExpiryLRUMap} (millisecond)
+     */
+    private long toTimeout(int expireSecond) {
+        return expireSecond > 0 ? expireSecond * 1000L : -1;
+    }
+
+    private RpcDBExpiryLRUMap<String, Value> getMemExpiryMap(String group) {
+        RpcDBExpiryLRUMap<String, Value> memExpiryMap = memExpiryGroupMap.get(group);
         if (memExpiryMap == null) {
             synchronized (memExpiryGroupMap) {
                 memExpiryMap = memExpiryGroupMap.get(group);
@@ -130,9 +206,24 @@ public class RpcDBServiceImpl implements RpcDBService {
         return memExpiryMap;
     }
 
+    /**
+     * The data with the version. the version is changed on every put
+     */
+    private static class Value {
+        private final byte[] data;
+        private final long version;
+
+        private Value(byte[] data, long version) {
+            this.data = data;
+            this.version = version;
+        }
+    }
+
     private static class RpcDBExpiryLRUMap<K, V> extends ExpiryLRUMap<K, V> {
         RpcDBExpiryLRUMap(long defaultExpiryTime) {
             super(defaultExpiryTime);
+            // the expire time is in seconds (expireSecond)
+            setScanInterval(1000);
         }
     }
 }
@@ -0,0 +1,590 @@
+package com.github.netty.protocol.servlet;
+
+import com.github.netty.core.util.LoggerFactoryX;
+import com.github.netty.core.util.LoggerX;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact binary session codec. (type-tagged)
+ * The common types (primitive wrapper, String, byte[], Date, enum, ArrayList, HashSet, HashMap...) are written as tag + varint/bytes,
+ * other {@link Serializable} value is written by the jdk serialization.
+ * The collection is written as tag + kind + items, the kind is the concrete class (for example LinkedList), so it is decoded as the same class.
+ * The class name (enum, serializable value) is written once per bytes, then is referenced by the index of the class-name dictionary.
+ * <p>
+ * Session format: magic(2) | version(1) | id | creationTime | lastAccessedTime | maxInactiveInterval | accessCount | attributeCount | [name | value]...
+ * Attribute format: version(1) | value
+ *
+ * @author wangzihao
+ */
+public class BinarySessionCodec implements SessionCodec {
+    private static final LoggerX LOGGER = LoggerFactoryX.getLogger(BinarySessionCodec.class);
+    private static final int MAGIC = 0x5343;
+    private static final byte VERSION = 1;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_TRUE = 1;
+    private static final byte TAG_FALSE = 2;
+    private static final byte TAG_INT = 3;
+    private static final byte TAG_LONG = 4;
+    private static final byte TAG_DOUBLE = 5;
+    private static final byte TAG_FLOAT = 6;
+    private static final byte TAG_STRING = 7;
+    private static final byte TAG_BYTES = 8;
+    private static final byte TAG_SHORT = 9;
+    private static final byte TAG_BYTE = 10;
+    private static final byte TAG_CHAR = 11;
+    private static final byte TAG_DATE = 12;
+    private static final byte TAG_BIG_DECIMAL = 13;
+    private static final byte TAG_BIG_INTEGER = 14;
+    private static final byte TAG_LIST = 15;
+    private static final byte TAG_SET = 16;
+    private static final byte TAG_MAP = 17;
+    private static final byte TAG_ENUM = 18;
+    private static final byte TAG_SERIALIZABLE = 19;
+
+    /**
+     * Is the session bytes of this codec
+     *
+     * @param bytes bytes
+     * @return true if the magic match
+     */
+    public static boolean isSessionBytes(byte[] bytes) {
+        return bytes != null && bytes.length >= 3
+                && ((bytes[0] & 0xFF) << 8 | (bytes[1] & 0xFF)) == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(Session session) {
+        Writer writer = new Writer(128);
+        writer.writeByte(MAGIC >>> 8);
+        writer.writeByte(MAGIC);
+        writer.writeByte(VERSION);
+        writer.writeString(session.getId());
+        writer.writeVarLong(session.getCreationTime());
+        writer.writeVarLong(session.getLastAccessedTime());
+        writer.writeVarLong(session.getMaxInactiveInterval());
+        writer.writeVarLong(session.getAccessCount());
+
+        Map<String, Object> attributeMap = session.getAttributeMap();
+        if (attributeMap == null || attributeMap.isEmpty()) {
+            writer.writeInt(0);
+            return writer.toByteArray();
+        }
+        List<Map.Entry<String, Object>> entryList = new ArrayList<>(attributeMap.entrySet());
+        int countIndex = writer.size();
+        writer.writeInt(0);
+        int count = 0;
+        for (Map.Entry<String, Object> entry : entryList) {
+            long mark = writer.mark();
+            try {
+                writer.writeString(entry.getKey());
+                writer.writeValue(entry.getValue());
+                count++;
+            } catch (IOException | RuntimeException e) {
+                writer.reset(mark);
+                LOGGER.warn("The value of key={} in the http session property can not encode and has been skipped automatically. error={}", entry.getKey(), e.toString());
+            }
+        }
+        writer.setInt(countIndex, count);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public Session decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (!isSessionBytes(bytes)) {
+            throw new IllegalArgumentException("decode http session error. not BinarySessionCodec bytes");
+        }
+        Reader reader = new Reader(bytes, 2);
+        try {
+            reader.checkVersion();
+            Session session = new Session();
+            session.setId(reader.readString());
+            session.setCreationTime(reader.readVarLong());
+            session.setLastAccessedTime(reader.readVarLong());
+            session.setMaxInactiveInterval((int) reader.readVarLong());
+            session.setAccessCount((int) reader.readVarLong());
+
+            int attributeSize = reader.readInt();
+            if (attributeSize > 0) {
+                Map<String, Object> attributeMap = new ConcurrentHashMap<>(Math.max(6, attributeSize * 4 / 3 + 1));
+                for (int i = 0; i < attributeSize; i++) {
+                    String key = reader.readString();
+                    Object value = reader.readValue();
+                    if (value != null) {
+                        attributeMap.put(key, value);
+                    }
+                }
+                session.setAttributeMap(attributeMap);
+            }
+            return session;
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("decode http session error=" + e, e);
+        }
+    }
+
+    @Override
+    public byte[] encodeAttribute(String name, Object value) {
+        Writer writer = new Writer(32);
+        writer.writeByte(VERSION);
+        try {
+            writer.writeValue(value);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("The value of key={} in the http session property can not encode and has been skipped automatically. error={}", name, e.toString());
+            return null;
+        }
+        return writer.toByteArray();
+    }
+
+    @Override
+    public Object decodeAttribute(String name, byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            Reader reader = new Reader(bytes, 0);
+            reader.checkVersion();
+            return reader.readValue();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("The value of key={} in the http session property can not decode. error={}", name, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Encode a value that not a common type. default use the jdk serialization
+     *
+     * @param value value
+     * @return bytes
+     * @throws IOException not serializable
+     */
+    protected byte[] serialize(Object value) throws IOException {
+        if (!(value instanceof Serializable)) {
+            throw new NotSerializableException(value.getClass().getName());
+        }
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(64);
+        try (ObjectOutputStream oout = new ObjectOutputStream(bout)) {
+            oout.writeObject(value);
+        }
+        return bout.toByteArray();
+    }
+
+    /**
+     * Decode a value of {@link #serialize(Object)}
+     *
+     * @param className class name of the value
+     * @param bytes     bytes
+     * @return value
+     * @throws IOException            read error
+     * @throws ClassNotFoundException class not found
+     */
+    protected Object deserialize(String className, byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return ois.readObject();
+        }
+    }
+
+    /**
+     * The kind of the collection. the index of the class (kind byte)
+     */
+    private static final Class<?>[] LIST_KINDS = {ArrayList.class, LinkedList.class};
+    private static final Class<?>[] SET_KINDS = {HashSet.class, LinkedHashSet.class};
+    private static final Class<?>[] MAP_KINDS = {HashMap.class, LinkedHashMap.class};
+
+    /**
+     * @return the kind. -1 if other class (Arrays$ArrayList, TreeMap, unmodifiable...), it is written by the jdk serialization
+     */
+    private static int kindOf(Class<?>[] kinds, Object value) {
+        Class<?> type = value.getClass();
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i] == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private class Writer {
+        private final Map<String, Integer> classNameDictionary = new HashMap<>(4);
+        private byte[] buf;
+        private int count;
+
+        Writer(int initialCapacity) {
+            this.buf = new byte[initialCapacity];
+        }
+
+        void writeValue(Object value) throws IOException {
+            int kind;
+            if (value == null) {
+                writeByte(TAG_NULL);
+            } else if (value instanceof String) {
+                writeByte(TAG_STRING);
+                writeString((String) value);
+            } else if (value instanceof Integer) {
+                writeByte(TAG_INT);
+                writeVarLong((Integer) value);
+            } else if (value instanceof Long) {
+                writeByte(TAG_LONG);
+                writeVarLong((Long) value);
+            } else if (value instanceof Boolean) {
+                writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+            } else if (value instanceof Double) {
+                writeByte(TAG_DOUBLE);
+                writeLong(Double.doubleToLongBits((Double) value));
+            } else if (value instanceof Float) {
+                writeByte(TAG_FLOAT);
+                writeInt(Float.floatToIntBits((Float) value));
+            } else if (value instanceof byte[]) {
+                writeByte(TAG_BYTES);
+                writeBytes((byte[]) value);
+            } else if (value instanceof Short) {
+                writeByte(TAG_SHORT);
+                writeVarLong((Short) value);
+            } else if (value instanceof Byte) {
+                writeByte(TAG_BYTE);
+                writeByte((Byte) value);
+            } else if (value instanceof Character) {
+                writeByte(TAG_CHAR);
+                writeVarLong((Character) value);
+            } else if (value.getClass() == Date.class) {
+                writeByte(TAG_DATE);
+                writeVarLong(((Date) value).getTime());
+            } else if (value.getClass() == BigDecimal.class) {
+                writeByte(TAG_BIG_DECIMAL);
+                writeString(value.toString());
+            } else if (value.getClass() == BigInteger.class) {
+                writeByte(TAG_BIG_INTEGER);
+                writeBytes(((BigInteger) value).toByteArray());
+            } else if (value instanceof Enum) {
+                writeByte(TAG_ENUM);
+                writeClassName(((Enum<?>) value).getDeclaringClass().getName());
+                writeString(((Enum<?>) value).name());
+            } else if ((kind = kindOf(LIST_KINDS, value)) != -1) {
+                writeCollection(TAG_LIST, kind, (Collection<?>) value);
+            } else if ((kind = kindOf(SET_KINDS, value)) != -1) {
+                writeCollection(TAG_SET, kind, (Collection<?>) value);
+            } else if ((kind = kindOf(MAP_KINDS, value)) != -1) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeByte(TAG_MAP);
+                writeByte(kind);
+                writeVarLong(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeValue(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            } else {
+                byte[] bytes = serialize(value);
+                writeByte(TAG_SERIALIZABLE);
+                writeClassName(value.getClass().getName());
+                writeBytes(bytes);
+            }
+        }
+
+        void writeCollection(byte tag, int kind, Collection<?> collection) throws IOException {
+            writeByte(tag);
+            writeByte(kind);
+            writeVarLong(collection.size());
+            for (Object item : collection) {
+                writeValue(item);
+            }
+        }
+
+        void writeClassName(String className) {
+            Integer index = classNameDictionary.get(className);
+            if (index != null) {
+                writeVarLong(index + 1);
+            } else {
+                classNameDictionary.put(className, classNameDictionary.size());
+                writeVarLong(0);
+                writeString(className);
+            }
+        }
+
+        void writeString(String value) {
+            writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, count, bytes.length);
+            count += bytes.length;
+        }
+
+        /**
+         * zigzag varint
+         */
+        void writeVarLong(long value) {
+            long v = (value << 1) ^ (value >> 63);
+            ensureCapacity(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[count++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[count++] = (byte) v;
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            setInt(count, value);
+            count += 4;
+        }
+
+        void setInt(int index, int value) {
+            buf[index] = (byte) (value >>> 24);
+            buf[index + 1] = (byte) (value >>> 16);
+            buf[index + 2] = (byte) (value >>> 8);
+            buf[index + 3] = (byte) value;
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buf[count++] = (byte) value;
+        }
+
+        int size() {
+            return count;
+        }
+
+        /**
+         * @return the mark for {@link #reset(long)}. (buffer size and dictionary size)
+         */
+        long mark() {
+            return (long) classNameDictionary.size() << 32 | count;
+        }
+
+        void reset(long mark) {
+            count = (int) mark;
+            int dictionarySize = (int) (mark >>> 32);
+            // the class name written after the mark is discarded
+            classNameDictionary.values().removeIf(index -> index >= dictionarySize);
+        }
+
+        private void ensureCapacity(int length) {
+            if (count + length > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + length));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+    }
+
+    private class Reader {
+        private final List<String> classNameDictionary = new ArrayList<>(4);
+        private final byte[] buf;
+        private int index;
+
+        Reader(byte[] buf, int index) {
+            this.buf = buf;
+            this.index = index;
+        }
+
+        void checkVersion() throws IOException {
+            byte version = readByte();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("unsupported version " + version);
+            }
+        }
+
+        Object readValue() throws IOException {
+            byte tag = readByte();
+            switch (tag) {
+                case TAG_NULL:
+                    return null;
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+                case TAG_INT:
+                    return (int) readVarLong();
+                case TAG_LONG:
+                    return readVarLong();
+                case TAG_DOUBLE:
+                    return Double.longBitsToDouble(readLong());
+                case TAG_FLOAT:
+                    return Float.intBitsToFloat(readInt());
+                case TAG_STRING:
+                    return readString();
+                case TAG_BYTES:
+                    return readBytes();
+                case TAG_SHORT:
+                    return (short) readVarLong();
+                case TAG_BYTE:
+                    return readByte();
+                case TAG_CHAR:
+                    return (char) readVarLong();
+                case TAG_DATE:
+                    return new Date(readVarLong());
+                case TAG_BIG_DECIMAL:
+                    return new BigDecimal(readString());
+                case TAG_BIG_INTEGER:
+                    return new BigInteger(readBytes());
+                case TAG_LIST: {
+                    byte kind = readByte();
+                    int size = readSize();
+                    List<Object> list;
+                    if (kind == 0) {
+                        list = new ArrayList<>(size);
+                    } else if (kind == 1) {
+                        list = new LinkedList<>();
+                    } else {
+                        throw new StreamCorruptedException("unknown list kind " + kind);
+                    }
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                }
+                case TAG_SET: {
+                    byte kind = readByte();
+                    int size = readSize();
+                    Set<Object> set;
+                    if (kind == 0) {
+                        set = new HashSet<>(size * 4 / 3 + 1);
+                    } else if (kind == 1) {
+                        set = new LinkedHashSet<>(size * 4 / 3 + 1);
+                    } else {
+                        throw new StreamCorruptedException("unknown set kind " + kind);
+                    }
+                    for (int i = 0; i < size; i++) {
+                        set.add(readValue());
+                    }
+                    return set;
+                }
+                case TAG_MAP: {
+                    byte kind = readByte();
+                    int size = readSize();
+                    Map<Object, Object> map;
+                    if (kind == 0) {
+                        map = new HashMap<>(size * 4 / 3 + 1);
+                    } else if (kind == 1) {
+                        map = new LinkedHashMap<>(size * 4 / 3 + 1);
+                    } else {
+                        throw new StreamCorruptedException("unknown map kind " + kind);
+                    }
+                    for (int i = 0; i < size; i++) {
+                        map.put(readValue(), readValue());
+                    }
+                    return map;
+                }
+                case TAG_ENUM: {
+                    String className = readClassName();
+                    String name = readString();
+                    return readEnum(className, name);
+                }
+                case TAG_SERIALIZABLE: {
+                    String className = readClassName();
+                    byte[] bytes = readBytes();
+                    try {
+                        return deserialize(className, bytes);
+                    } catch (ClassNotFoundException | IOException e) {
+                        // the bytes is consumed, skip the value only
+                        LOGGER.warn("The value of class={} in the http session property can not decode. error={}", className, e.toString());
+                        return null;
+                    }
+                }
+                default:
+                    throw new StreamCorruptedException("unknown tag " + tag);
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object readEnum(String className, String name) {
+            try {
+                ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+                Class type = Class.forName(className, false, classLoader != null ? classLoader : BinarySessionCodec.class.getClassLoader());
+                return Enum.valueOf(type, name);
+            } catch (ClassNotFoundException | IllegalArgumentException e) {
+                LOGGER.warn("The value of class={} in the http session property can not decode. error={}", className, e.toString());
+                return null;
+            }
+        }
+
+        String readClassName() throws IOException {
+            int ref = readSize();
+            if (ref == 0) {
+                String className = readString();
+                classNameDictionary.add(className);
+                return className;
+            }
+            if (ref > classNameDictionary.size()) {
+                throw new StreamCorruptedException("unknown class name index " + ref);
+            }
+            return classNameDictionary.get(ref - 1);
+        }
+
+        String readString() throws IOException {
+            int length = readSize();
+            checkReadable(length);
+            String value = new String(buf, index, length, StandardCharsets.UTF_8);
+            index += length;
+            return value;
+        }
+
+        byte[] readBytes() throws IOException {
+            int length = readSize();
+            checkReadable(length);
+            byte[] bytes = Arrays.copyOfRange(buf, index, index + length);
+            index += length;
+            return bytes;
+        }
+
+        int readSize() throws IOException {
+            long size = readVarLong();
+            if (size < 0 || size > buf.length) {
+                throw new StreamCorruptedException("invalid size " + size);
+            }
+            return (int) size;
+        }
+
+        long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (v >>> 1) ^ -(v & 1);
+                }
+            }
+            throw new StreamCorruptedException("malformed varint");
+        }
+
+        long readLong() throws IOException {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        int readInt() throws IOException {
+            checkReadable(4);
+            int value = (buf[index] & 0xFF) << 24 | (buf[index + 1] & 0xFF) << 16
+                    | (buf[index + 2] & 0xFF) << 8 | (buf[index + 3] & 0xFF);
+            index += 4;
+            return value;
+        }
+
+        byte readByte() throws IOException {
+            checkReadable(1);
+            return buf[index++];
+        }
+
+        private void checkReadable(int length) throws IOException {
+            if (index + length > buf.length) {
+                throw new EOFException();
+            }
+        }
+    }
+}
@@ -67,6 +67,7 @@ public class DefaultServlet extends HttpServlet {
     private String characterEncoding = "utf-8";
     private final Map<String, String> mimeTypeMappings = new CaseInsensitiveKeyMap<>();
     private final HttpHeaders responseHeaders = new DefaultHttpHeaders();
+    private volatile StaticResourceCache resourceCache;
 
     public DefaultServlet() {
         DEFAULT_MIME_TYPE_MAPPINGS.forEach((k, v) -> mimeTypeMappings.put(k.toString(), v.toString()));
@@ -231,6 +232,23 @@ public class DefaultServlet extends HttpServlet {
         return homePages;
     }
 
+    public StaticResourceCache getResourceCache() {
+        return resourceCache;
+    }
+
+    /**
+     * Hot small file cache. null is disable (default)
+     *
+     * @param resourceCache resourceCache
+     */
+    public void setResourceCache(StaticResourceCache resourceCache) {
+        StaticResourceCache old = this.resourceCache;
+        this.resourceCache = resourceCache;
+        if (old != null && old != resourceCache) {
+            old.clear();
+        }
+    }
+
     protected void sendNotFound(HttpServletRequest request, HttpServletResponse response) throws IOException {
         response.sendError(HttpServletResponse.SC_NOT_FOUND);
     }
@@ -255,7 +273,9 @@ public class DefaultServlet extends HttpServlet {
     }
 
     protected void sendRange(HttpServletRequest request, HttpServletResponse response, File file, String contentType) throws IOException {
-        WebResource resource = new WebResource(file);
+        StaticResourceCache resourceCache = this.resourceCache;
+        StaticResourceCache.Entry cacheEntry = resourceCache != null ? resourceCache.get(file, contentType) : null;
+        WebResource resource = cacheEntry != null ? cacheEntry.getResource() : new WebResource(file);
 
         List<Range> ranges = parseRange(request, response, resource);
         if (ranges == null) {
@@ -271,6 +291,10 @@ public class DefaultServlet extends HttpServlet {
         if (lastModifiedHttp != null) {
             response.setHeader("Last-Modified", lastModifiedHttp);
         }
+        if (isNotModified(request, resource)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
 
         ServletResponse r = response;
         while (r instanceof ServletResponseWrapper) {
@@ -279,7 +303,9 @@ public class DefaultServlet extends HttpServlet {
 
         NettyOutputStream ostream = (NettyOutputStream) r.getOutputStream();
         if (ranges.isEmpty()) {
-            ostream.write(file);
+            if (cacheEntry == null || !sendCache(request, response, ostream, cacheEntry)) {
+                ostream.write(file);
+            }
         } else {
             response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
             if (ranges.size() == 1) {
@@ -295,6 +321,99 @@ public class DefaultServlet extends HttpServlet {
         }
     }
 
+    /**
+     * send the cached file content. (the precomputed gzip content if the client accept gzip)
+     *
+     * @return false if the entry is evicted concurrently, the caller send the file
+     */
+    protected boolean sendCache(HttpServletRequest request, HttpServletResponse response,
+                                NettyOutputStream ostream, StaticResourceCache.Entry cacheEntry) throws IOException {
+        ByteBuf content = null;
+        boolean gzip = false;
+        if (cacheEntry.isExistGzipContent()) {
+            response.addHeader("Vary", "Accept-Encoding");
+            if (isAcceptGzip(request)) {
+                content = cacheEntry.retainedContent(true);
+                gzip = content != null;
+            }
+        }
+        if (content == null) {
+            content = cacheEntry.retainedContent(false);
+            if (content == null) {
+                return false;
+            }
+        }
+        if (gzip) {
+            // the content compressor pass through the response that has Content-Encoding
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.setContentLengthLong(content.readableBytes());
+        ostream.write(content);
+        return true;
+    }
+
+    /**
+     * Checking If-None-Match, If-Modified-Since
+     *
+     * @return true if the client cached resource is not modified
+     */
+    protected boolean isNotModified(HttpServletRequest request, WebResource resource) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            String eTag = resource.getETag();
+            if (eTag == null) {
+                return false;
+            }
+            // weak comparison
+            String opaqueTag = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+            for (String value : ifNoneMatch.split(",")) {
+                String trim = value.trim();
+                if ("*".equals(trim) || opaqueTag.equals(trim.startsWith("W/") ? trim.substring(2) : trim)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String ifModifiedSince = request.getHeader("If-Modified-Since");
+        long lastModified = resource.getLastModified();
+        if (ifModifiedSince != null && lastModified > 0) {
+            Date ifModifiedSinceDate = DateFormatter.parseHttpDate(ifModifiedSince);
+            // the http date has no milliseconds
+            return ifModifiedSinceDate != null && lastModified / 1000 <= ifModifiedSinceDate.getTime() / 1000;
+        }
+        return false;
+    }
+
+    protected static boolean isAcceptGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String value : acceptEncoding.split(",")) {
+            String trim = value.trim();
+            int paramIndex = trim.indexOf(';');
+            String encoding = paramIndex == -1 ? trim : trim.substring(0, paramIndex).trim();
+            if (!"gzip".equalsIgnoreCase(encoding) && !"*".equals(encoding)) {
+                continue;
+            }
+            // gzip;q=0 is not acceptable
+            if (paramIndex != -1) {
+                String param = trim.substring(paramIndex + 1).trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        if (Double.parseDouble(param.substring(2)) <= 0) {
+                            return false;
+                        }
+                    } catch (NumberFormatException e) {
+                        // Ignore
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
     protected void sendMultipartByteRanges(File file, NettyOutputStream ostream, List<Range> ranges, String contentType) throws IOException {
         ByteBuf contentTypeByteBuf = null;
         if (contentType != null && contentType.length() > 0) {
@@ -375,8 +494,12 @@ public class DefaultServlet extends HttpServlet {
         private String weakETag;
 
         public WebResource(File file) {
-            this.length = file.length();
-            this.lastModified = file.lastModified();
+            this(file.lastModified(), file.length());
+        }
+
+        public WebResource(long lastModified, long length) {
+            this.lastModified = lastModified;
+            this.length = length;
         }
 
         public long getLastModified() {
@@ -437,4 +560,12 @@ public class DefaultServlet extends HttpServlet {
     public HttpHeaders getResponseHeaders() {
         return responseHeaders;
     }
+
+    @Override
+    public void destroy() {
+        StaticResourceCache resourceCache = this.resourceCache;
+        if (resourceCache != null) {
+            resourceCache.clear();
+        }
+    }
 }
@@ -3,9 +3,12 @@ package com.github.netty.protocol.servlet;
 import com.github.netty.core.AbstractChannelHandler;
 import com.github.netty.core.MessageToRunnable;
 import com.github.netty.core.util.RecyclableUtil;
+import com.github.netty.protocol.servlet.http2.Http2StreamScheduler;
+import com.github.netty.protocol.servlet.util.HttpConstants;
 import com.github.netty.protocol.servlet.util.Protocol;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.util.AttributeKey;
 
 import java.io.IOException;
@@ -66,7 +69,7 @@ public class DispatcherChannelHandler extends AbstractChannelHandler<Object, Obj
             if (messageToRunnable != null) {
                 Runnable runnable = messageToRunnable.onMessage(context, msg);
                 if (runnable != null) {
-                    run(runnable);
+                    run(context, runnable);
                 }
             } else {
                 logger.warn("no handler message = {}", msg.getClass());
@@ -78,15 +81,52 @@ public class DispatcherChannelHandler extends AbstractChannelHandler<Object, Obj
         }
     }
 
+    /**
+     * Run the request task. the http2 stream task is scheduled by the {@link Http2StreamScheduler} if enabled
+     *
+     * @param context context
+     * @param task    task
+     */
+    protected void run(ChannelHandlerContext context, Runnable task) {
+        if (protocol.isHttp2() && task instanceof NettyMessageToServletRunnable.HttpRunnable) {
+            Http2StreamScheduler scheduler = servletContext.getHttp2StreamScheduler();
+            if (scheduler != null) {
+                HttpHeaders headers = ((NettyMessageToServletRunnable.HttpRunnable) task).getExchange().request.nettyRequest.headers();
+                Integer streamId = headers.getInt(HttpConstants.H2_EXT_STREAM_ID);
+                if (streamId != null) {
+                    int weight = headers.getInt(HttpConstants.H2_EXT_STREAM_WEIGHT, Http2StreamScheduler.DEFAULT_WEIGHT);
+                    scheduler.execute(context.channel(), streamId, weight, task);
+                    return;
+                }
+            }
+        }
+        run(task);
+    }
+
+    /**
+     * Release the task that not run. (the http2 stream is reset, or the connection is closed)
+     *
+     * @param task task
+     */
+    static void abort(Runnable task) {
+        if (task instanceof NettyMessageToServletRunnable.HttpRunnable) {
+            ((NettyMessageToServletRunnable.HttpRunnable) task).abort();
+        }
+    }
+
     protected void run(Runnable task) {
         switch (protocol) {
             case h2c:
             case h2: {
-                servletContext.getExecutor().execute(task);
+                Executor executor = servletContext.getDispatchExecutor();
+                if (executor == null) {
+                    executor = servletContext.getExecutor();
+                }
+                executor.execute(task);
                 break;
             }
             default: {
-                Executor executor = servletContext.getAsyncExecutor();
+                Executor executor = servletContext.getDispatchExecutor();
                 if (executor != null) {
                     executor.execute(task);
                 } else {
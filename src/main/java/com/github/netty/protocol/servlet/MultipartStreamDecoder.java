@@ -0,0 +1,333 @@
+package com.github.netty.protocol.servlet;
+
+import com.github.netty.core.util.LoggerFactoryX;
+import com.github.netty.core.util.LoggerX;
+import com.github.netty.core.util.RecyclableUtil;
+import com.github.netty.core.util.ResourceManager;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.multipart.*;
+import io.netty.util.internal.PlatformDependent;
+import jakarta.servlet.http.Part;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Streaming multipart decoder. (one instance per request)
+ * The event loop only enqueue the {@link HttpContent}, the parts are decoded on the upload executor as the body arrive
+ * (the file part is written to disk by the {@link HttpDataFactory}, not on the event loop), and the decoded part is available before the whole body arrive.
+ * Backpressure: if the not decoded bytes more than highWaterMark, the channel autoRead is off until it less than lowWaterMark.
+ * Note: the body is decoded once, not keep the raw body. so the servlet input stream of the request has no data.
+ *
+ * @author wangzihao
+ */
+public class MultipartStreamDecoder implements Runnable {
+    private static final LoggerX LOGGER = LoggerFactoryX.getLogger(MultipartStreamDecoder.class);
+    private final InterfaceHttpPostRequestDecoder decoder;
+    private final Supplier<ResourceManager> resourceManagerSupplier;
+    private final Channel channel;
+    private final Executor executor;
+    private final long highWaterMark;
+    private final long lowWaterMark;
+    private final Queue<HttpContent> queue = PlatformDependent.newMpscQueue();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition condition = lock.newCondition();
+    private final List<InterfaceHttpData> httpDataList = new ArrayList<>();
+    private final List<Part> partList = new ArrayList<>();
+    private final Runnable resumeReadTask = this::resumeReadIfNeed;
+    private volatile boolean done;
+    private volatile boolean closed;
+    private volatile DecoderException decoderException;
+    /**
+     * only change in the event loop
+     */
+    private volatile boolean readPaused;
+
+    /**
+     * @param decoder                 multipart decoder
+     * @param resourceManagerSupplier resourceManagerSupplier of the part
+     * @param channel                 the channel of the request. turn off autoRead if the decode is slow
+     * @param executor                decode executor. Do not use the servlet executor (the servlet thread wait the decode)
+     * @param highWaterMark           max not decoded bytes
+     */
+    public MultipartStreamDecoder(InterfaceHttpPostRequestDecoder decoder, Supplier<ResourceManager> resourceManagerSupplier,
+                                  Channel channel, Executor executor, long highWaterMark) {
+        this.decoder = decoder;
+        this.resourceManagerSupplier = resourceManagerSupplier;
+        this.channel = channel;
+        this.executor = executor;
+        this.highWaterMark = Math.max(1, highWaterMark);
+        this.lowWaterMark = this.highWaterMark / 2;
+    }
+
+    /**
+     * Enqueue the body. call on the event loop
+     *
+     * @param httpContent body. the decoder release it
+     */
+    public void offer(HttpContent httpContent) {
+        if (closed) {
+            RecyclableUtil.release(httpContent);
+            return;
+        }
+        int bytes = httpContent.content().readableBytes();
+        queue.offer(httpContent);
+        if (pendingBytes.addAndGet(bytes) > highWaterMark && !readPaused) {
+            readPaused = true;
+            channel.config().setAutoRead(false);
+            // the decode thread may drain all before readPaused visible
+            resumeReadIfNeed();
+        }
+        if (running.compareAndSet(false, true)) {
+            executor.execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        do {
+            HttpContent httpContent;
+            while ((httpContent = queue.poll()) != null) {
+                int bytes = httpContent.content().readableBytes();
+                try {
+                    if (!closed) {
+                        decode(httpContent);
+                    }
+                } finally {
+                    RecyclableUtil.release(httpContent);
+                }
+                if (pendingBytes.addAndGet(-bytes) <= lowWaterMark && readPaused) {
+                    channel.eventLoop().execute(resumeReadTask);
+                }
+            }
+            running.set(false);
+        } while (!queue.isEmpty() && running.compareAndSet(false, true));
+    }
+
+    private void decode(HttpContent httpContent) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (decoderException == null) {
+                try {
+                    decoder.offer(httpContent);
+                    while (hasNext()) {
+                        addHttpData(decoder.next());
+                    }
+                } catch (DecoderException e) {
+                    onError(e);
+                } catch (Throwable e) {
+                    onError(new DecoderException("MultipartStreamDecoder#decode -> decoder.offer(httpContent) error!", e));
+                }
+            }
+            if (httpContent instanceof LastHttpContent) {
+                this.done = true;
+                signalAll();
+                channel.eventLoop().execute(resumeReadTask);
+            }
+        }
+    }
+
+    private boolean hasNext() {
+        try {
+            return decoder.hasNext();
+        } catch (HttpPostRequestDecoder.EndOfDataDecoderException e) {
+            return false;
+        }
+    }
+
+    private void addHttpData(InterfaceHttpData httpData) {
+        Part part;
+        InterfaceHttpData.HttpDataType httpDataType = httpData.getHttpDataType();
+        if (httpDataType == InterfaceHttpData.HttpDataType.Attribute) {
+            part = new ServletTextPart((Attribute) httpData, resourceManagerSupplier);
+        } else if (httpDataType == InterfaceHttpData.HttpDataType.FileUpload) {
+            part = new ServletFilePart((FileUpload) httpData, resourceManagerSupplier);
+        } else {
+            part = null;
+        }
+        lock.lock();
+        try {
+            httpDataList.add(httpData);
+            if (part != null) {
+                partList.add(part);
+            }
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onError(DecoderException e) {
+        this.decoderException = e;
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("multipart stream decode error. channel = {}, error = {}", channel, e.toString(), e);
+        }
+        signalAll();
+    }
+
+    private void resumeReadIfNeed() {
+        if (readPaused && (closed || done || pendingBytes.get() <= lowWaterMark)) {
+            readPaused = false;
+            channel.config().setAutoRead(true);
+        }
+    }
+
+    private void signalAll() {
+        lock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait all parts decoded
+     *
+     * @param timeoutMs timeout. less than or equal to 0 is not control timeout
+     * @return false if timeout
+     */
+    public boolean awaitDone(long timeoutMs) {
+        long deadline = timeoutMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs) : 0;
+        lock.lock();
+        try {
+            while (!done && !closed && decoderException == null) {
+                if (timeoutMs > 0) {
+                    long nanos = deadline - System.nanoTime();
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    condition.awaitNanos(nanos);
+                } else {
+                    condition.await();
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            PlatformDependent.throwException(e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait the part decoded. (not wait the whole body)
+     *
+     * @param name      part name
+     * @param timeoutMs timeout. less than or equal to 0 is not control timeout
+     * @return null if the part not exist, or decode fail, or timeout
+     */
+    public Part awaitPart(String name, long timeoutMs) {
+        long deadline = timeoutMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs) : 0;
+        int index = 0;
+        lock.lock();
+        try {
+            while (true) {
+                for (; index < partList.size(); index++) {
+                    Part part = partList.get(index);
+                    if (name.equals(part.getName())) {
+                        return part;
+                    }
+                }
+                if (done || closed || decoderException != null) {
+                    return null;
+                }
+                if (timeoutMs > 0) {
+                    long nanos = deadline - System.nanoTime();
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    condition.awaitNanos(nanos);
+                } else {
+                    condition.await();
+                }
+            }
+        } catch (InterruptedException e) {
+            PlatformDependent.throwException(e);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the decoded data (Attribute, FileUpload)
+     */
+    public List<InterfaceHttpData> getHttpDataList() {
+        lock.lock();
+        try {
+            return new ArrayList<>(httpDataList);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the decoded parts
+     */
+    public List<Part> getPartList() {
+        lock.lock();
+        try {
+            return new ArrayList<>(partList);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public DecoderException getDecoderException() {
+        return decoderException;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * Stop decode. the not decoded body is released, the channel autoRead is restored.
+     * wait the current decoding content, then the decoder can be destroy.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        synchronized (this) {
+            closed = true;
+        }
+        signalAll();
+        if (running.compareAndSet(false, true)) {
+            executor.execute(this);
+        }
+        channel.eventLoop().execute(resumeReadTask);
+    }
+
+    @Override
+    public String toString() {
+        return "MultipartStreamDecoder{" +
+                "done=" + done +
+                ", closed=" + closed +
+                ", pendingBytes=" + pendingBytes.get() +
+                ", readPaused=" + readPaused +
+                ", channel=" + channel +
+                '}';
+    }
+}
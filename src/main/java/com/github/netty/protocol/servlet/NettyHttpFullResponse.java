@@ -0,0 +1,165 @@
+package com.github.netty.protocol.servlet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderResult;
+import io.netty.handler.codec.http.*;
+
+import java.io.Flushable;
+
+/**
+ * The whole response in one message. (response header + buffered body)
+ * Used when the body fits in the response buffer, the header is the {@link NettyHttpResponse} of the exchange,
+ * and is settled lazily by {@link #flush()} like a streaming response.
+ *
+ * @author wangzihao
+ */
+public class NettyHttpFullResponse implements FullHttpResponse, Flushable {
+    private final NettyHttpResponse response;
+    private final ByteBuf content;
+
+    public NettyHttpFullResponse(NettyHttpResponse response, ByteBuf content) {
+        this.response = response;
+        this.content = content;
+    }
+
+    public NettyHttpResponse getResponse() {
+        return response;
+    }
+
+    @Override
+    public void flush() {
+        response.flush();
+    }
+
+    @Override
+    public ByteBuf content() {
+        return content;
+    }
+
+    @Override
+    public HttpHeaders trailingHeaders() {
+        return EmptyHttpHeaders.INSTANCE;
+    }
+
+    @Override
+    public HttpHeaders headers() {
+        return response.headers();
+    }
+
+    @Override
+    public HttpResponseStatus getStatus() {
+        return response.getStatus();
+    }
+
+    @Override
+    public HttpResponseStatus status() {
+        return response.status();
+    }
+
+    @Override
+    public FullHttpResponse setStatus(HttpResponseStatus status) {
+        response.setStatus(status);
+        return this;
+    }
+
+    @Override
+    public HttpVersion getProtocolVersion() {
+        return response.getProtocolVersion();
+    }
+
+    @Override
+    public HttpVersion protocolVersion() {
+        return response.protocolVersion();
+    }
+
+    @Override
+    public FullHttpResponse setProtocolVersion(HttpVersion version) {
+        response.setProtocolVersion(version);
+        return this;
+    }
+
+    @Override
+    public DecoderResult getDecoderResult() {
+        return response.getDecoderResult();
+    }
+
+    @Override
+    public DecoderResult decoderResult() {
+        return response.decoderResult();
+    }
+
+    @Override
+    public void setDecoderResult(DecoderResult result) {
+        response.setDecoderResult(result);
+    }
+
+    @Override
+    public FullHttpResponse copy() {
+        return replace(content.copy());
+    }
+
+    @Override
+    public FullHttpResponse duplicate() {
+        return replace(content.duplicate());
+    }
+
+    @Override
+    public FullHttpResponse retainedDuplicate() {
+        return replace(content.retainedDuplicate());
+    }
+
+    @Override
+    public FullHttpResponse replace(ByteBuf content) {
+        DefaultFullHttpResponse copy = new DefaultFullHttpResponse(protocolVersion(), status(), content,
+                headers().copy(), trailingHeaders().copy());
+        copy.setDecoderResult(decoderResult());
+        return copy;
+    }
+
+    @Override
+    public int refCnt() {
+        return content.refCnt();
+    }
+
+    @Override
+    public FullHttpResponse retain() {
+        content.retain();
+        return this;
+    }
+
+    @Override
+    public FullHttpResponse retain(int increment) {
+        content.retain(increment);
+        return this;
+    }
+
+    @Override
+    public FullHttpResponse touch() {
+        content.touch();
+        return this;
+    }
+
+    @Override
+    public FullHttpResponse touch(Object hint) {
+        content.touch(hint);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return content.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return content.release(decrement);
+    }
+
+    @Override
+    public String toString() {
+        return "NettyHttpFullResponse{" +
+                "response=" + response +
+                ", content=" + content +
+                '}';
+    }
+}
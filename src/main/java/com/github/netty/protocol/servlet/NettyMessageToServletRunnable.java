@@ -369,6 +369,18 @@ public class NettyMessageToServletRunnable implements MessageToRunnable {
             }
         }
 
+        /**
+         * Abort the task that not run. the exchange is closed, the servlet is not called
+         */
+        public void abort() {
+            ServletHttpExchange exchange = this.exchange;
+            if (exchange != null) {
+                exchange.abort();
+                exchange.close();
+            }
+            recycle();
+        }
+
         @Override
         public void recycle() {
             exchange = null;
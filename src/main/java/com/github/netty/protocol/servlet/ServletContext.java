@@ -1,10 +1,13 @@
 package com.github.netty.protocol.servlet;
 
 import com.github.netty.Version;
+import com.github.netty.core.util.ConcurrencyLimitExecutor;
 import com.github.netty.core.util.LoggerFactoryX;
 import com.github.netty.core.util.LoggerX;
 import com.github.netty.core.util.ResourceManager;
 import com.github.netty.core.util.SystemPropertyUtil;
+import com.github.netty.core.util.ThreadPoolX;
+import com.github.netty.protocol.servlet.http2.Http2StreamScheduler;
 import com.github.netty.protocol.servlet.util.*;
 import com.github.netty.protocol.servlet.websocket.WebSocketServerContainer;
 import io.netty.handler.codec.http.multipart.DefaultHttpDataFactory;
@@ -100,6 +103,20 @@ public class ServletContext implements jakarta.servlet.ServletContext {
      * 客户端断开后，如果超过abortAfterMessageTimeoutMs后，还没有收到完整的body，则抛出abort异常
      */
     long abortAfterMessageTimeoutMs = 500;
+    /**
+     * Multipart streaming decode. the parts are decoded on the upload executor as the body arrive, and not keep the raw body.
+     * (the input stream of the multipart request has no data)
+     */
+    boolean enableMultipartStreaming = false;
+    /**
+     * Multipart streaming decode. max not decoded bytes of a request, if more than it, the channel stop read.
+     */
+    long multipartStreamingHighWaterMark = 1024 * 1024;
+    private volatile Executor uploadExecutor;
+    /**
+     * the upload executor created by {@link #getUploadExecutor()}. shutdown on destroy
+     */
+    private ThreadPoolX defaultUploadExecutor;
     boolean enableLookupFlag = false;
     boolean useRelativeRedirects = true;
     String requestCharacterEncoding = HttpConstants.DEFAULT_CHARSET.name();
@@ -109,7 +126,26 @@ public class ServletContext implements jakarta.servlet.ServletContext {
     BiFunction<jakarta.servlet.http.Cookie, HttpServletRequest, String> cookieSameSiteSupplier;
     private LoggerX logger = LoggerFactoryX.getLogger(getLogName(""));
     private Supplier<Executor> asyncExecutorSupplier;
+    /**
+     * Maximum concurrent servlet requests of the context. less than or equal to 0 is unlimited.
+     * (the virtual thread executor has no pool size, so the context limit it)
+     */
+    private int maxConcurrency = 0;
+    private volatile ConcurrencyLimitExecutor concurrencyLimiter;
+    /**
+     * Http2 (h2, h2c) max running streams of a connection. less than or equal to 0 is not schedule the stream (submit to the executor directly)
+     */
+    private int http2MaxConcurrentStreamsPerConnection = 0;
+    /**
+     * Http2 (h2, h2c) max running streams of all connections. less than or equal to 0 is unlimited
+     */
+    private int http2MaxConcurrentStreams = 0;
+    private volatile Http2StreamScheduler http2StreamScheduler;
     private SessionService sessionService;
+    /**
+     * Session codec of the persistent session service (local file, remote rpc)
+     */
+    private SessionCodec sessionCodec = new BinarySessionCodec();
     private Set<SessionTrackingMode> sessionTrackingModeSet;
     private Servlet defaultServlet = new DefaultServlet();
     private boolean mapperContextRootRedirectEnabled = true;
@@ -256,6 +292,61 @@ public class ServletContext implements jakarta.servlet.ServletContext {
         this.uploadFileTimeoutMs = uploadFileTimeoutMs;
     }
 
+    public boolean isEnableMultipartStreaming() {
+        return enableMultipartStreaming;
+    }
+
+    public void setEnableMultipartStreaming(boolean enableMultipartStreaming) {
+        this.enableMultipartStreaming = enableMultipartStreaming;
+    }
+
+    public long getMultipartStreamingHighWaterMark() {
+        return multipartStreamingHighWaterMark;
+    }
+
+    public void setMultipartStreamingHighWaterMark(long multipartStreamingHighWaterMark) {
+        this.multipartStreamingHighWaterMark = multipartStreamingHighWaterMark;
+    }
+
+    /**
+     * The executor that decode the multipart streaming. (write the file part to disk)
+     * Note: the servlet thread wait the decode, so it is not the servlet executor.
+     *
+     * @return upload executor
+     */
+    public Executor getUploadExecutor() {
+        if (uploadExecutor == null) {
+            synchronized (this) {
+                if (uploadExecutor == null) {
+                    uploadExecutor = defaultUploadExecutor = new ThreadPoolX("Upload", Math.max(2, Runtime.getRuntime().availableProcessors()), Thread.NORM_PRIORITY, true);
+                }
+            }
+        }
+        return uploadExecutor;
+    }
+
+    public void setUploadExecutor(Executor uploadExecutor) {
+        this.uploadExecutor = uploadExecutor;
+    }
+
+    /**
+     * Shutdown the upload executor created by {@link #getUploadExecutor()}. the executor set by {@link #setUploadExecutor(Executor)} is not shutdown.
+     */
+    public void shutdownUploadExecutor() {
+        ThreadPoolX executor;
+        synchronized (this) {
+            executor = defaultUploadExecutor;
+            if (executor == null) {
+                return;
+            }
+            defaultUploadExecutor = null;
+            if (uploadExecutor == executor) {
+                uploadExecutor = null;
+            }
+        }
+        executor.shutdown();
+    }
+
     public long getAbortAfterMessageTimeoutMs() {
         return abortAfterMessageTimeoutMs;
     }
@@ -319,6 +410,92 @@ public class ServletContext implements jakarta.servlet.ServletContext {
         return asyncExecutorSupplier != null ? asyncExecutorSupplier.get() : null;
     }
 
+    /**
+     * The executor that dispatch the servlet request. (async executor with the context concurrency limit)
+     * Note: the response is always written by the channel event loop, the servlet thread only submit the write.
+     *
+     * @return null if run on the event loop
+     */
+    public Executor getDispatchExecutor() {
+        Executor executor = getAsyncExecutor();
+        if (executor == null || maxConcurrency <= 0) {
+            return executor;
+        }
+        ConcurrencyLimitExecutor limiter = this.concurrencyLimiter;
+        if (limiter == null || limiter.getDelegate() != executor) {
+            synchronized (this) {
+                limiter = this.concurrencyLimiter;
+                if (limiter == null || limiter.getDelegate() != executor) {
+                    this.concurrencyLimiter = limiter = new ConcurrencyLimitExecutor(executor, maxConcurrency);
+                }
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * The concurrency limiter of the context
+     *
+     * @return null if unlimited or no request dispatched
+     */
+    public ConcurrencyLimitExecutor getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        synchronized (this) {
+            this.maxConcurrency = maxConcurrency;
+            this.concurrencyLimiter = null;
+        }
+    }
+
+    /**
+     * The http2 stream scheduler of the context
+     *
+     * @return null if not enable
+     */
+    public Http2StreamScheduler getHttp2StreamScheduler() {
+        Http2StreamScheduler scheduler = this.http2StreamScheduler;
+        if (scheduler == null && http2MaxConcurrentStreamsPerConnection > 0) {
+            synchronized (this) {
+                scheduler = this.http2StreamScheduler;
+                if (scheduler == null && http2MaxConcurrentStreamsPerConnection > 0) {
+                    this.http2StreamScheduler = scheduler = new Http2StreamScheduler(() -> {
+                        Executor executor = getDispatchExecutor();
+                        return executor != null ? executor : getExecutor();
+                    }, DispatcherChannelHandler::abort, http2MaxConcurrentStreamsPerConnection, http2MaxConcurrentStreams);
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    public int getHttp2MaxConcurrentStreamsPerConnection() {
+        return http2MaxConcurrentStreamsPerConnection;
+    }
+
+    public void setHttp2MaxConcurrentStreamsPerConnection(int http2MaxConcurrentStreamsPerConnection) {
+        synchronized (this) {
+            this.http2MaxConcurrentStreamsPerConnection = http2MaxConcurrentStreamsPerConnection;
+            this.http2StreamScheduler = null;
+        }
+    }
+
+    public int getHttp2MaxConcurrentStreams() {
+        return http2MaxConcurrentStreams;
+    }
+
+    public void setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+        synchronized (this) {
+            this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+            this.http2StreamScheduler = null;
+        }
+    }
+
     public Collection<String> getNotExistBodyParameters() {
         return notExistBodyParameters;
     }
@@ -417,6 +594,17 @@ public class ServletContext implements jakarta.servlet.ServletContext {
         this.sessionService = sessionService;
     }
 
+    public SessionCodec getSessionCodec() {
+        return sessionCodec;
+    }
+
+    public void setSessionCodec(SessionCodec sessionCodec) {
+        this.sessionCodec = Objects.requireNonNull(sessionCodec);
+        if (sessionService instanceof SessionCompositeServiceImpl) {
+            ((SessionCompositeServiceImpl) sessionService).setSessionCodec(sessionCodec);
+        }
+    }
+
     public int getSessionTimeout() {
         return sessionTimeout;
     }
@@ -526,7 +714,7 @@ public class ServletContext implements jakarta.servlet.ServletContext {
             return null;
         }
         ServletFilterChain filterChain = ServletFilterChain.newInstance(this, servletRegistration);
-        filterUrlMapper.addMappingObjects(relativePathNoQueryString, dispatcherType, filterChain.filterRegistrationList);
+        filterChain.filterRegistrationList = filterUrlMapper.getMappingObjects(relativePathNoQueryString, dispatcherType);
         return ServletRequestDispatcher.newInstancePath(filterChain, pathNormalize, contextPath, relativePathNoQueryString, element, queryIndex);
     }
 
@@ -538,7 +726,8 @@ public class ServletContext implements jakarta.servlet.ServletContext {
         }
 
         ServletFilterChain filterChain = ServletFilterChain.newInstance(this, servletRegistration);
-        List<FilterMapper.Element<ServletFilterRegistration>> filterList = filterChain.filterRegistrationList;
+        List<FilterMapper.Element<ServletFilterRegistration>> filterList = new ArrayList<>();
+        filterChain.filterRegistrationList = filterList;
         for (ServletFilterRegistration registration : filterRegistrationMap.values()) {
             for (String servletName : registration.servletNameMappingSet) {
                 if (servletName.equals(name)) {
@@ -10,7 +10,7 @@ import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -22,10 +22,11 @@ public class ServletFilterChain implements FilterChain, Recyclable {
     private static final LoggerX logger = LoggerFactoryX.getLogger(ServletEventListenerManager.class);
     private static final Recycler<ServletFilterChain> RECYCLER = new Recycler<>(ServletFilterChain::new);
     /**
+     * The resolved filters. shared immutable list from the {@link FilterMapper} cache, Do not modify.
      * Consider that each request is handled by only one thread, and that the ServletContext will create a new SimpleFilterChain object on each request
-     * therefore, the FilterChain's Iterator is used as a private variable of the FilterChain, without thread safety problems
+     * therefore, the cursor (pos) is used as a private variable of the FilterChain, without thread safety problems
      */
-    final List<FilterMapper.Element<ServletFilterRegistration>> filterRegistrationList = new ArrayList<>(16);
+    List<FilterMapper.Element<ServletFilterRegistration>> filterRegistrationList = Collections.emptyList();
     ServletRegistration servletRegistration;
     private com.github.netty.protocol.servlet.ServletContext servletContext;
 
@@ -140,7 +141,7 @@ public class ServletFilterChain implements FilterChain, Recyclable {
     public void recycle() {
         pos = 0;
         servletContext = null;
-        filterRegistrationList.clear();
+        filterRegistrationList = Collections.emptyList();
         servletRegistration = null;
         RECYCLER.recycleInstance(this);
     }
@@ -234,9 +234,29 @@ public class ServletHttpServletRequest implements HttpServletRequest, Recyclable
         instance.inputStream.fileSizeThreshold = instance.getFileSizeThreshold();
         instance.inputStream.fileUploadTimeoutMs = exchange.servletContext.uploadFileTimeoutMs;
         instance.inputStream.contentLength = contentLength;
+        if (instance.isMultipart && exchange.servletContext.enableMultipartStreaming) {
+            instance.inputStream.multipartStreamDecoder = instance.newMultipartStreamDecoder();
+        }
         return instance;
     }
 
+    private MultipartStreamDecoder newMultipartStreamDecoder() {
+        InterfaceHttpPostRequestDecoder postRequestDecoder;
+        try {
+            postRequestDecoder = postRequestDecoderSupplier.get();
+        } catch (DecoderException e) {
+            // bad request. the input stream handle it
+            return null;
+        }
+        if (postRequestDecoder == null) {
+            return null;
+        }
+        ServletContext servletContext = httpExchange.servletContext;
+        return new MultipartStreamDecoder(postRequestDecoder, resourceManagerSupplier,
+                httpExchange.channelHandlerContext.channel(), servletContext.getUploadExecutor(),
+                servletContext.multipartStreamingHighWaterMark);
+    }
+
     void setDispatcher(ServletRequestDispatcher dispatcher) {
         this.dispatcher = dispatcher;
         this.asyncSupportedFlag = dispatcher.filterChain.servletRegistration.asyncSupported;
@@ -367,6 +387,11 @@ public class ServletHttpServletRequest implements HttpServletRequest, Recyclable
      * stream gets POST data. If these conditions are met, it is no longer valid to read the POST data directly from the input stream of the request object.
      */
     private void decodeBody() {
+        MultipartStreamDecoder multipartStreamDecoder = inputStream.multipartStreamDecoder;
+        if (multipartStreamDecoder != null) {
+            decodeMultipartStream(multipartStreamDecoder);
+            return;
+        }
         //wait LastHttpContent
         try {
             inputStream.awaitDataIfNeed(-1);
@@ -416,6 +441,40 @@ public class ServletHttpServletRequest implements HttpServletRequest, Recyclable
         }
     }
 
+    /**
+     * The parts are decoded by the upload executor, wait the decode done
+     */
+    private void decodeMultipartStream(MultipartStreamDecoder multipartStreamDecoder) {
+        try {
+            if (!multipartStreamDecoder.awaitDone(inputStream.fileUploadTimeoutMs)) {
+                inputStream.needCloseClient = true;
+                throw new IOException("await multipart decode timeout. timeout = " + inputStream.fileUploadTimeoutMs + "/ms");
+            }
+            // abort or closed
+            inputStream.awaitDataIfNeed(-1);
+        } catch (IOException e) {
+            PlatformDependent.throwException(e);
+        }
+        DecoderException decoderException = multipartStreamDecoder.getDecoderException();
+        if (decoderException != null) {
+            inputStream.needCloseClient = true;
+            throw decoderException;
+        }
+        for (InterfaceHttpData interfaceData : multipartStreamDecoder.getHttpDataList()) {
+            if (interfaceData.getHttpDataType() == InterfaceHttpData.HttpDataType.Attribute) {
+                Attribute data = (Attribute) interfaceData;
+                String value;
+                try {
+                    value = data.getValue();
+                } catch (IOException e) {
+                    value = "";
+                }
+                parameterMap.add(data.getName(), value);
+            }
+        }
+        fileUploadList.addAll(multipartStreamDecoder.getPartList());
+    }
+
     /**
      * Parsing URL parameters
      */
@@ -1406,6 +1465,14 @@ public class ServletHttpServletRequest implements HttpServletRequest, Recyclable
 
     @Override
     public Part getPart(String name) throws IOException, ServletException {
+        MultipartStreamDecoder multipartStreamDecoder = inputStream.multipartStreamDecoder;
+        if (multipartStreamDecoder != null && !decodeBodyFlag.get()) {
+            // not wait the whole body
+            Part part = multipartStreamDecoder.awaitPart(name, inputStream.fileUploadTimeoutMs);
+            if (part != null) {
+                return part;
+            }
+        }
         for (Part part : getParts()) {
             if (name.equals(part.getName())) {
                 return part;
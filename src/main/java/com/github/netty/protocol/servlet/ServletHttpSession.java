@@ -27,6 +27,22 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
     private int maxInactiveInterval;
     private int accessCount;
     private Session source;
+    /**
+     * true if changed since the last save. (id, max inactive interval, attribute)
+     */
+    private volatile boolean dirty;
+    /**
+     * true if accessed since the last save. (lastAccessedTime, accessCount)
+     */
+    private volatile boolean accessDirty;
+    /**
+     * true if the session is not saved yet, the session service need save the whole session.
+     */
+    private volatile boolean allAttributeDirty;
+    /**
+     * The attribute names changed since the last save
+     */
+    private Set<String> dirtyAttributeNames;
 
     ServletHttpSession(Session session, ServletContext servletContext) {
         this.servletContext = servletContext;
@@ -40,8 +56,69 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
         return attributeMap;
     }
 
+    /**
+     * Save to the session service if changed. only the changed attribute names is passed ({@link Session#changedAttributeNames()}).
+     * If only accessed, the session service can throttle the write ({@link Session#accessOnly()})
+     */
     public void save() {
-        getServletContext().getSessionService().saveSession(unwrap());
+        if (!dirty && !accessDirty) {
+            return;
+        }
+        boolean accessOnly = !dirty && !allAttributeDirty;
+        dirty = false;
+        accessDirty = false;
+        Set<String> changedAttributeNames;
+        if (allAttributeDirty) {
+            allAttributeDirty = false;
+            changedAttributeNames = null;
+        } else {
+            Set<String> dirtyAttributeNames = this.dirtyAttributeNames;
+            if (dirtyAttributeNames == null || dirtyAttributeNames.isEmpty()) {
+                changedAttributeNames = Collections.emptySet();
+            } else {
+                changedAttributeNames = new HashSet<>(dirtyAttributeNames);
+                dirtyAttributeNames.removeAll(changedAttributeNames);
+            }
+        }
+        Session session = unwrap();
+        session.changedAttributeNames(changedAttributeNames);
+        session.accessOnly(accessOnly);
+        try {
+            getServletContext().getSessionService().saveSession(session);
+        } catch (RuntimeException e) {
+            // retry on the next save
+            if (accessOnly) {
+                accessDirty = true;
+            } else {
+                dirty = true;
+                allAttributeDirty = true;
+            }
+            throw e;
+        } finally {
+            session.changedAttributeNames(null);
+            session.accessOnly(false);
+        }
+    }
+
+    /**
+     * Mark the attribute changed, save it on the next {@link #save()}.
+     * The setAttribute and removeAttribute mark it automatically. call this after changing a mutable value
+     * (for example: a POJO or a collection got by {@link #getAttribute(String)}) without setAttribute again.
+     *
+     * @param name attribute name
+     */
+    public void markAttributeDirty(String name) {
+        Set<String> dirtyAttributeNames = this.dirtyAttributeNames;
+        if (dirtyAttributeNames == null) {
+            synchronized (this) {
+                dirtyAttributeNames = this.dirtyAttributeNames;
+                if (dirtyAttributeNames == null) {
+                    this.dirtyAttributeNames = dirtyAttributeNames = ConcurrentHashMap.newKeySet(4);
+                }
+            }
+        }
+        dirtyAttributeNames.add(name);
+        dirty = true;
     }
 
     @Override
@@ -56,6 +133,7 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
 
     public void setId(String id) {
         this.id = id;
+        this.dirty = true;
     }
 
     @Override
@@ -76,6 +154,7 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
     @Override
     public void setMaxInactiveInterval(int interval) {
         maxInactiveInterval = interval;
+        dirty = true;
     }
 
     @Override
@@ -121,6 +200,7 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
         }
 
         Object oldValue = getAttributeMap().put(name, value);
+        markAttributeDirty(name);
 
         if (value instanceof HttpSessionBindingListener) {
             httpSessionBindingListenerList.add((HttpSessionBindingListener) value);
@@ -166,6 +246,9 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
             return;
         }
         Object oldValue = getAttributeMap().remove(name);
+        if (oldValue != null) {
+            markAttributeDirty(name);
+        }
 
         if (oldValue instanceof HttpSessionBindingListener) {
             httpSessionBindingListenerList.remove(oldValue);
@@ -245,6 +328,7 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
 
     public void access() {
         accessCount++;
+        accessDirty = true;
 
         if (isNew()) {
             currAccessedTime = System.currentTimeMillis();
@@ -272,6 +356,8 @@ public class ServletHttpSession implements HttpSession, Wrapper<Session> {
         //Unit seconds
         this.maxInactiveInterval = source.getMaxInactiveInterval();
         this.accessCount = source.getAccessCount();
+        // never saved
+        this.allAttributeDirty = accessCount == 0;
 
         if (attributeMap != null) {
             httpSessionBindingListenerList.clear();
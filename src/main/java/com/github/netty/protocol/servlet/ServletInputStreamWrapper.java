@@ -76,6 +76,10 @@ public class ServletInputStreamWrapper extends jakarta.servlet.ServletInputStrea
     private Exception createFileException;
     private long mark = -1;
     private volatile ScheduledFuture<?> checkMessageChangeFuture;
+    /**
+     * not null if the multipart body decode by streaming. (not keep the raw body)
+     */
+    volatile MultipartStreamDecoder multipartStreamDecoder;
     private final AtomicInteger version = new AtomicInteger();
 
     public ServletInputStreamWrapper(Supplier<InterfaceHttpPostRequestDecoder> requestDecoderSupplier, Supplier<ResourceManager> resourceManagerSupplier) {
@@ -105,8 +109,13 @@ public class ServletInputStreamWrapper extends jakarta.servlet.ServletInputStrea
 
     void onMessage(HttpContent httpContent) {
         try {
+            MultipartStreamDecoder multipartStreamDecoder = this.multipartStreamDecoder;
             if (closed.get()) {
                 RecyclableUtil.release(httpContent);
+            } else if (multipartStreamDecoder != null) {
+                receivedContentLength.addAndGet(httpContent.content().readableBytes());
+                multipartStreamDecoder.offer(httpContent);
+                conditionSignalAll();
             } else {
                 onMessage0(httpContent);
             }
@@ -473,6 +482,10 @@ public class ServletInputStreamWrapper extends jakarta.servlet.ServletInputStrea
             this.readListener = null;
             this.decoderException = null;
             this.createFileException = null;
+            MultipartStreamDecoder multipartStreamDecoder = this.multipartStreamDecoder;
+            if (multipartStreamDecoder != null) {
+                multipartStreamDecoder.close();
+            }
             this.checkMessageChangeFuture = null;
             ScheduledFuture<?> checkMessageChangeFuture = this.checkMessageChangeFuture;
             this.checkMessageChangeFuture = null;
@@ -531,7 +544,7 @@ public class ServletInputStreamWrapper extends jakarta.servlet.ServletInputStrea
         if (0 == len) {
             return 0;
         }
-        if (!existBody()) {
+        if (!existBody() || multipartStreamDecoder != null) {
             return -1;
         }
         awaitDataIfNeed(1);
@@ -558,7 +571,7 @@ public class ServletInputStreamWrapper extends jakarta.servlet.ServletInputStrea
     public int read() throws IOException {
         checkClosed();
 
-        if (!existBody()) {
+        if (!existBody() || multipartStreamDecoder != null) {
             return -1;
         }
         awaitDataIfNeed(1);
@@ -648,6 +661,7 @@ public class ServletInputStreamWrapper extends jakarta.servlet.ServletInputStrea
         this.onDataAvailableFlag.set(false);
         this.receivedContentLengthFileSizeThresholdFlag.set(false);
         this.source = source;
+        this.multipartStreamDecoder = null;
         this.readListener = null;
         this.readerIndex.set(0L);
         this.receivedContentLength.set(0);
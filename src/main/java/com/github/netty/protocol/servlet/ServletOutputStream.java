@@ -5,6 +5,8 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
 import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.stream.ChunkedFile;
 import io.netty.handler.stream.ChunkedInput;
@@ -39,6 +41,11 @@ public class ServletOutputStream extends jakarta.servlet.ServletOutputStream imp
     protected WriteListener writeListener;
     protected ChannelProgressivePromise lastContentPromise;
     private ChannelProgressivePromise blockPromise;
+    /**
+     * Response buffer. the small writes are aggregated, write to the channel only on overflow, flush() or close().
+     * (size = {@link ServletHttpServletResponse#getBufferSize()}, 0 is disable)
+     */
+    private ByteBuf buffer;
 
     protected ServletOutputStream() {
     }
@@ -46,6 +53,7 @@ public class ServletOutputStream extends jakarta.servlet.ServletOutputStream imp
     public static ServletOutputStream newInstance(ServletHttpExchange servletHttpExchange) {
         ServletOutputStream instance = RECYCLER.getInstance();
         instance.blockPromise = null;
+        instance.buffer = null;
         instance.setServletHttpExchange(servletHttpExchange);
         instance.writeBytes.set(0);
         instance.isSendResponse.set(false);
@@ -60,6 +68,7 @@ public class ServletOutputStream extends jakarta.servlet.ServletOutputStream imp
 
     @Override
     public void write(ByteBuffer buffer) throws IOException {
+        flushBuffer();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(buffer);
         writeHttpBody(byteBuf, byteBuf.readableBytes());
     }
@@ -67,23 +76,27 @@ public class ServletOutputStream extends jakarta.servlet.ServletOutputStream imp
     //原来的write(ByteBuffer buffer)和ServletOutputStream同名方法冲突了
     @Override
     public ChannelProgressivePromise writeJDK(ByteBuffer httpBody) throws IOException {
+        flushBuffer();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(httpBody);
         return writeHttpBody(byteBuf, byteBuf.readableBytes());
     }
 
     @Override
     public ChannelProgressivePromise write(ByteBuf httpBody) throws IOException {
+        flushBuffer();
         IOUtil.writerModeToReadMode(httpBody);
         return writeHttpBody(httpBody, httpBody.readableBytes());
     }
 
     @Override
     public ChannelProgressivePromise write(ChunkedInput input) throws IOException {
+        flushBuffer();
         return writeHttpBody(input, input.length());
     }
 
     @Override
     public ChannelProgressivePromise write(File file, long position, long count) throws IOException {
+        flushBuffer();
         if (isHttp2()) {
             return writeHttpBody(new ChunkedFile(new RandomAccessFile(file, "r"), position, count, h2ChunkSize), count);
         } else {
@@ -93,6 +106,7 @@ public class ServletOutputStream extends jakarta.servlet.ServletOutputStream imp
 
     @Override
     public ChannelProgressivePromise write(File httpBody) throws IOException {
+        flushBuffer();
         long length = httpBody.length();
         if (isHttp2()) {
             return writeHttpBody(new ChunkedFile(new RandomAccessFile(httpBody, "r"), 0, length, h2ChunkSize), length);
@@ -111,7 +125,6 @@ public class ServletOutputStream extends jakarta.servlet.ServletOutputStream imp
         }
         try {
             checkClosed();
-            writeResponseHeaderIfNeed();
             ServletHttpExchange servletHttpExchange = this.servletHttpExchange;
             ChannelHandlerContext context = servletHttpExchange.channelHandlerContext;
             ChannelProgressivePromise promise = context.newProgressivePromise();
@@ -123,16 +136,21 @@ public class ServletOutputStream extends jakarta.servlet.ServletOutputStream imp
             long contentLength = servletHttpExchange.response.getContentLength();
             // response finish
             if (contentLength >= 0 && writeBytes.get() >= contentLength) {
-                if (httpBody instanceof ByteBuf) {
+                if (httpBody instanceof ByteBuf && isSendResponse.compareAndSet(false, true)) {
+                    // the whole response in one message. (for example: cached static resource)
+                    context.write(new NettyHttpFullResponse(servletHttpExchange.response.nettyResponse, (ByteBuf) httpBody), promise);
+                } else if (httpBody instanceof ByteBuf) {
                     DefaultLastHttpContent httpContent = new DefaultLastHttpContent((ByteBuf) httpBody);
                     context.write(httpContent, promise);
                 } else {
+                    writeResponseHeaderIfNeed();
                     context.write(httpBody);
                     context.write(LastHttpContent.EMPTY_LAST_CONTENT, promise);
                 }
                 lastContentPromise = promise;
             } else {
                 // Response continues
+                writeResponseHeaderIfNeed();
                 context.write(httpBody, promise);
             }
 
@@ -205,16 +223,99 @@ public class ServletOutputStream extends jakarta.servlet.ServletOutputStream imp
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
         checkClosed();
-        if (len == 0) {
+        if (len == 0 || lastContentPromise != null) {
+            // content length reached. the response is finished
             return;
         }
 
-        ChannelHandlerContext context = servletHttpExchange.channelHandlerContext;
-        ByteBuf ioByteBuf = context.alloc().ioBuffer(len);
-        ioByteBuf.writeBytes(b, off, len);
-        IOUtil.writerModeToReadMode(ioByteBuf);
+        ServletHttpExchange exchange = this.servletHttpExchange;
+        ChannelHandlerContext context = exchange.channelHandlerContext;
+        int bufferSize = exchange.response.getBufferSize();
+        ByteBuf buffer = this.buffer;
+        long contentLength = exchange.response.getContentLength();
+        if (contentLength >= 0) {
+            // the bytes over the Content-Length are dropped
+            long remaining = contentLength - writeBytes.get() - (buffer != null ? buffer.readableBytes() : 0);
+            if (len > remaining) {
+                len = (int) Math.max(remaining, 0);
+                if (len == 0) {
+                    return;
+                }
+            }
+        }
+        if (buffer != null && buffer.readableBytes() + len > bufferSize) {
+            // overflow
+            flushBuffer();
+            buffer = null;
+        }
+        if (len >= bufferSize) {
+            ByteBuf ioByteBuf = context.alloc().ioBuffer(len);
+            ioByteBuf.writeBytes(b, off, len);
+            IOUtil.writerModeToReadMode(ioByteBuf);
+            writeHttpBody(ioByteBuf, ioByteBuf.readableBytes());
+            return;
+        }
 
-        writeHttpBody(ioByteBuf, ioByteBuf.readableBytes());
+        if (buffer == null) {
+            this.buffer = buffer = context.alloc().ioBuffer(Math.min(Math.max(len, 1024), bufferSize), bufferSize);
+        }
+        buffer.writeBytes(b, off, len);
+
+        // response finish
+        if (contentLength >= 0 && writeBytes.get() + buffer.readableBytes() >= contentLength) {
+            writeLastContent();
+        }
+    }
+
+    /**
+     * Write the buffered bytes to the channel (not flush)
+     *
+     * @throws IOException IOException
+     */
+    protected void flushBuffer() throws IOException {
+        ByteBuf buffer = this.buffer;
+        if (buffer != null) {
+            this.buffer = null;
+            writeHttpBody(buffer, buffer.readableBytes());
+        }
+    }
+
+    /**
+     * Write the end of the response.
+     * If the header not write yet, the whole response fits in the buffer, then write one {@link NettyHttpFullResponse} with exact Content-Length.
+     *
+     * @return last content promise
+     */
+    private ChannelProgressivePromise writeLastContent() {
+        ServletHttpExchange exchange = this.servletHttpExchange;
+        ChannelHandlerContext context = exchange.channelHandlerContext;
+        ChannelProgressivePromise promise = context.newProgressivePromise();
+        ByteBuf content = this.buffer;
+        this.buffer = null;
+        int length = content != null ? content.readableBytes() : 0;
+        if (length > 0) {
+            writeBytes.addAndGet(length);
+        }
+        if (isSendResponse.compareAndSet(false, true)) {
+            ServletHttpServletResponse response = exchange.response;
+            if (response.getContentLength() < 0 && isContentLengthAllowed(exchange)) {
+                response.setContentLengthLong(length);
+            }
+            context.write(new NettyHttpFullResponse(response.nettyResponse, content != null ? content : Unpooled.EMPTY_BUFFER), promise);
+        } else if (content != null) {
+            context.write(new DefaultLastHttpContent(content), promise);
+        } else {
+            context.write(LastHttpContent.EMPTY_LAST_CONTENT, promise);
+        }
+        lastContentPromise = promise;
+        return promise;
+    }
+
+    private static boolean isContentLengthAllowed(ServletHttpExchange exchange) {
+        int status = exchange.response.getStatus();
+        return status != HttpResponseStatus.NO_CONTENT.code()
+                && status != HttpResponseStatus.NOT_MODIFIED.code()
+                && !HttpMethod.HEAD.equals(exchange.request.nettyRequest.method());
     }
 
     @Override
@@ -260,6 +361,15 @@ public class ServletOutputStream extends jakarta.servlet.ServletOutputStream imp
     @Override
     public void write(int b) throws IOException {
         checkClosed();
+        ByteBuf buffer = this.buffer;
+        if (buffer != null && buffer.isWritable()) {
+            buffer.writeByte(b);
+            long contentLength = servletHttpExchange.response.getContentLength();
+            if (contentLength >= 0 && writeBytes.get() + buffer.readableBytes() >= contentLength) {
+                writeLastContent();
+            }
+            return;
+        }
         byte[] bytes = new byte[]{(byte) b};
         write(bytes, 0, bytes.length);
     }
@@ -267,6 +377,7 @@ public class ServletOutputStream extends jakarta.servlet.ServletOutputStream imp
     @Override
     public void flush() throws IOException {
         checkClosed();
+        flushBuffer();
         writeResponseHeaderIfNeed();
         ServletHttpExchange exchange = this.servletHttpExchange;
         if (exchange != null && !exchange.servletContext.autoFlush) {
@@ -291,12 +402,20 @@ public class ServletOutputStream extends jakarta.servlet.ServletOutputStream imp
             if (closeFuture == null) {
                 ServletHttpExchange exchange = getServletHttpExchange();
                 ChannelHandlerContext context = exchange.channelHandlerContext;
-                writeResponseHeaderIfNeed();
-
-                if (exchange.servletContext.autoFlush) {
-                    closeFuture = context.write(LastHttpContent.EMPTY_LAST_CONTENT);
+                if (exchange.isAbort()) {
+                    // the client is gone (connection closed, or the http2 stream is reset).
+                    // not write, the http2 connection will be closed if write to the reset stream
+                    ByteBuf buffer = this.buffer;
+                    if (buffer != null) {
+                        this.buffer = null;
+                        buffer.release();
+                    }
+                    closeFuture = context.newSucceededFuture();
                 } else {
-                    closeFuture = context.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+                    closeFuture = writeLastContent();
+                    if (!exchange.servletContext.autoFlush) {
+                        context.flush();
+                    }
                 }
                 closeFuture.addListener(closeListenerWrapper);
             } else if (closeFuture.isDone()) {
@@ -337,6 +456,11 @@ public class ServletOutputStream extends jakarta.servlet.ServletOutputStream imp
         if (isClosed.get()) {
             return;
         }
+        ByteBuf buffer = this.buffer;
+        if (buffer != null) {
+            this.buffer = null;
+            buffer.release();
+        }
         ServletHttpExchange exchange = getServletHttpExchange();
         ChannelHandlerContext channelHandlerContext = exchange.channelHandlerContext;
         ChannelHandlerContext context = channelHandlerContext.pipeline().context(ChunkedWriteHandler.class);
@@ -2,6 +2,7 @@ package com.github.netty.protocol.servlet;
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Session entity class
@@ -21,6 +22,15 @@ public class Session implements Serializable {
      */
     private int maxInactiveInterval;
     private int accessCount;
+    /**
+     * The attribute names changed since the last save. (set or removed)
+     * null is unknown, the session service need save the whole session.
+     */
+    private transient Set<String> changedAttributeNames;
+    /**
+     * true if only the access (lastAccessedTime, accessCount) changed since the last save.
+     */
+    private transient boolean accessOnly;
 
     public Session() {
     }
@@ -90,6 +100,32 @@ public class Session implements Serializable {
         this.accessCount = accessCount;
     }
 
+    /**
+     * The attribute names changed since the last save. (set or removed)
+     *
+     * @return null is unknown, the session service need save the whole session.
+     */
+    public Set<String> changedAttributeNames() {
+        return changedAttributeNames;
+    }
+
+    public void changedAttributeNames(Set<String> changedAttributeNames) {
+        this.changedAttributeNames = changedAttributeNames;
+    }
+
+    /**
+     * Only the access (lastAccessedTime, accessCount) changed since the last save.
+     *
+     * @return true if the session service can persist only the metadata, or throttle the write
+     */
+    public boolean accessOnly() {
+        return accessOnly;
+    }
+
+    public void accessOnly(boolean accessOnly) {
+        this.accessOnly = accessOnly;
+    }
+
     @Override
     public String toString() {
         return "Session{" +
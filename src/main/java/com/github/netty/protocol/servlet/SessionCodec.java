@@ -0,0 +1,46 @@
+package com.github.netty.protocol.servlet;
+
+/**
+ * Session codec of the persistent session service (local file, remote rpc).
+ * The attribute can be encoded alone, so the session service can save the changed attributes only.
+ * default {@link BinarySessionCodec}. custom by {@link ServletContext#setSessionCodec(SessionCodec)}
+ *
+ * @author wangzihao
+ */
+public interface SessionCodec {
+
+    /**
+     * Encode the whole session (id, time, and attributes)
+     *
+     * @param session session
+     * @return bytes
+     */
+    byte[] encode(Session session);
+
+    /**
+     * Decode the whole session
+     *
+     * @param bytes bytes
+     * @return null if the bytes is empty
+     */
+    Session decode(byte[] bytes);
+
+    /**
+     * Encode a attribute value
+     *
+     * @param name  attribute name
+     * @param value attribute value
+     * @return null if the value can not be encoded (skip the attribute)
+     */
+    byte[] encodeAttribute(String name, Object value);
+
+    /**
+     * Decode a attribute value
+     *
+     * @param name  attribute name
+     * @param bytes bytes of {@link #encodeAttribute(String, Object)}
+     * @return attribute value. null if the value can not be decoded (for example: class not found)
+     */
+    Object decodeAttribute(String name, byte[] bytes);
+
+}
@@ -5,6 +5,7 @@ import com.github.netty.core.util.LoggerX;
 import com.github.netty.core.util.NamespaceUtil;
 import com.github.netty.core.util.ResourceManager;
 
+import java.io.Closeable;
 import java.net.InetSocketAddress;
 import java.util.List;
 
@@ -13,7 +14,7 @@ import java.util.List;
  *
  * @author wangzihao
  */
-public class SessionCompositeServiceImpl implements SessionService {
+public class SessionCompositeServiceImpl implements SessionService, Closeable {
     private final LoggerX logger = LoggerFactoryX.getLogger(getClass());
     private final String name = NamespaceUtil.newIdName(getClass());
 
@@ -31,15 +32,19 @@ public class SessionCompositeServiceImpl implements SessionService {
 
     public void enableRemoteRpcSession(InetSocketAddress address) {
         removeSessionService();
-        this.sessionService = new SessionRemoteRpcServiceImpl(address);
+        SessionRemoteRpcServiceImpl sessionService = new SessionRemoteRpcServiceImpl(address);
+        sessionService.setSessionCodec(servletContext.getSessionCodec());
+        this.sessionService = sessionService;
     }
 
     public void enableRemoteRpcSession(InetSocketAddress address, int rpcClientIoRatio, int rpcClientIoThreads,
                                        boolean enableRpcHeartLog, int rpcClientHeartIntervalMillSecond, int reconnectIntervalMillSeconds) {
         removeSessionService();
-        this.sessionService = new SessionRemoteRpcServiceImpl(address,
+        SessionRemoteRpcServiceImpl sessionService = new SessionRemoteRpcServiceImpl(address,
                 rpcClientIoRatio, rpcClientIoThreads,
                 enableRpcHeartLog, rpcClientHeartIntervalMillSecond, reconnectIntervalMillSeconds);
+        sessionService.setSessionCodec(servletContext.getSessionCodec());
+        this.sessionService = sessionService;
     }
 
     public void enableLocalFileSession(ResourceManager resourceManager) {
@@ -47,13 +52,33 @@ public class SessionCompositeServiceImpl implements SessionService {
         this.sessionService = new SessionLocalFileServiceImpl(resourceManager, servletContext);
     }
 
+    /**
+     * Enable the near cache of the remote session. see {@link SessionRemoteRpcServiceImpl#enableNearCache(int, long)}
+     *
+     * @param maxSize              max cached session count
+     * @param revalidateIntervalMs the cached session is used without revalidate the version in this interval
+     */
+    public void enableRemoteRpcSessionNearCache(int maxSize, long revalidateIntervalMs) {
+        SessionService sessionService = this.sessionService;
+        if (sessionService instanceof SessionRemoteRpcServiceImpl) {
+            ((SessionRemoteRpcServiceImpl) sessionService).enableNearCache(maxSize, revalidateIntervalMs);
+        }
+    }
+
+    public void setSessionCodec(SessionCodec sessionCodec) {
+        SessionService sessionService = this.sessionService;
+        if (sessionService instanceof SessionRemoteRpcServiceImpl) {
+            ((SessionRemoteRpcServiceImpl) sessionService).setSessionCodec(sessionCodec);
+        }
+    }
+
     public void removeSessionService() {
         if (sessionService == null) {
             return;
         }
         try {
-            if (sessionService instanceof SessionLocalFileServiceImpl) {
-                ((SessionLocalFileServiceImpl) sessionService).getSessionInvalidThread().interrupt();
+            if (sessionService instanceof Closeable) {
+                ((Closeable) sessionService).close();
             }
         } catch (Exception e) {
             //
@@ -61,6 +86,11 @@ public class SessionCompositeServiceImpl implements SessionService {
         sessionService = null;
     }
 
+    @Override
+    public void close() {
+        removeSessionService();
+    }
+
     @Override
     public void saveSession(Session session) {
         try {
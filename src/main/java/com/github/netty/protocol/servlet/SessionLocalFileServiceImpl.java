@@ -6,77 +6,120 @@ import com.github.netty.core.util.NamespaceUtil;
 import com.github.netty.core.util.ResourceManager;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
 
 /**
- * Local file session service
+ * Local file session service. (append-only log)
+ * All sessions are in a segment file, an in-memory index from session id to the record offset.
+ * Write-behind: the save and remove are queued (the same session is coalesced), the write thread append the queue to the file in batch, one fsync per batch.
+ * The file is compacted (rewrite the live records) in the background when the garbage is more than the live records.
+ * On start, the index is restored by scan the file (the broken tail is truncated), and the old version session files (one file per session) are imported.
+ * If only the access time of a written session changed ({@link Session#accessOnly()}), it is written at most once per {@link #getAccessWriteIntervalMs()}.
+ * <p>
+ * Record format: length(4) | crc32(4) | type(1) | id(utf) | expireTimestamp(8) | session bytes ({@link SessionCodec})
  *
  * @author wangzihao
  * 2018/8/19/019
  */
-public class SessionLocalFileServiceImpl implements SessionService {
+public class SessionLocalFileServiceImpl implements SessionService, Closeable {
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    private static final int HEADER_LENGTH = 8;
+    private static final String LOG_FILE_NAME = "session.log";
     private final String name = NamespaceUtil.newIdName(getClass());
     private final LoggerX logger = LoggerFactoryX.getLogger(getClass());
     private final String rootPath = "/session";
     private final ResourceManager resourceManager;
     private final SessionInvalidThread sessionInvalidThread;
+    private final SessionWriteThread sessionWriteThread;
     private final ServletContext servletContext;
+    private final File logFile;
+    /**
+     * session id : record location. only change in the write lock (on the write thread)
+     */
+    private final Map<String, Location> index = new ConcurrentHashMap<>(64);
+    /**
+     * session id : not written record
+     */
+    private final Map<String, Record> pendingMap = new ConcurrentHashMap<>(64);
+    private final AtomicLong pendingBytes = new AtomicLong();
+    /**
+     * read lock: read the file. write lock: swap the file (compact)
+     */
+    private final ReentrantReadWriteLock channelLock = new ReentrantReadWriteLock();
+    private final Object writeLock = new Object();
+    private FileChannel channel;
+    private long writePosition;
+    private long liveBytes;
+    private volatile boolean closed;
+    /**
+     * The interval of write the queue to the file (and fsync)
+     */
+    private long flushIntervalMs = 100;
+    /**
+     * write immediately, if the queued bytes more than this
+     */
+    private long maxPendingBytes = 4 * 1024 * 1024;
+    /**
+     * compact if the file is larger than this, and the garbage is more than the live records
+     */
+    private long compactMinBytes = 1024 * 1024;
+    /**
+     * the min interval of write a session if only the access time changed. less than or equal to 0 = write every save
+     */
+    private long accessWriteIntervalMs = 60 * 1000;
 
     public SessionLocalFileServiceImpl(ResourceManager resourceManager, ServletContext servletContext) {
         this.servletContext = servletContext;
         this.resourceManager = Objects.requireNonNull(resourceManager);
+        File dir = resourceManager.mkdirs(rootPath).toFile();
+        this.logFile = new File(dir, LOG_FILE_NAME);
+        try {
+            this.channel = openChannel(logFile);
+            restore();
+        } catch (IOException e) {
+            throw new IllegalStateException("open session log file error. file=" + logFile + ", error=" + e, e);
+        }
+        importSessionFiles();
+        this.sessionWriteThread = new SessionWriteThread();
+        this.sessionWriteThread.start();
         //The expired session is checked every 20 seconds
         this.sessionInvalidThread = new SessionInvalidThread(20 * 1000);
         this.sessionInvalidThread.start();
     }
 
+    private static FileChannel openChannel(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
     @Override
     public void saveSession(Session session) {
-        String fileName = getFileName(session.getId());
-
-        try (FileOutputStream fileOutputStream = resourceManager.newFileOutputStream(rootPath, fileName, false);
-             ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileOutputStream)) {
-            objectOutputStream.writeUTF(session.getId());
-            objectOutputStream.writeLong(session.getCreationTime());
-            objectOutputStream.writeLong(session.getLastAccessedTime());
-            objectOutputStream.writeInt(session.getMaxInactiveInterval());
-            objectOutputStream.writeInt(session.getAccessCount());
-
-            Map<String, Object> attributeMap = session.getAttributeMap();
-            int attributeSize = 0;
-            if (attributeMap != null) {
-                for (Map.Entry<String, Object> entry : attributeMap.entrySet()) {
-                    if (entry.getValue() instanceof Serializable) {
-                        attributeSize++;
-                    } else {
-//                        logger.warn("The value of key={} in the session property is not serialized and has been skipped automatically",entry.getKey());
-                    }
-                }
+        if (session.accessOnly() && accessWriteIntervalMs > 0 && !pendingMap.containsKey(session.getId())) {
+            Location location = index.get(session.getId());
+            if (location != null && System.currentTimeMillis() - location.writeTimestamp < accessWriteIntervalMs) {
+                return;
             }
-
-            objectOutputStream.writeInt(attributeSize);
-            if (attributeSize > 0) {
-                for (Map.Entry<String, Object> entry : attributeMap.entrySet()) {
-                    Object value = entry.getValue();
-                    if (value instanceof Serializable) {
-                        String key = entry.getKey();
-                        objectOutputStream.writeUTF(key);
-                        objectOutputStream.writeObject(value);
-                    }
-                }
-            }
-
-        } catch (IOException e) {
-            logger.warn("saveSession error {}. case:{}", session, e.toString());
-            throw new RuntimeException(e);
         }
+        byte[] data = servletContext.getSessionCodec().encode(session);
+        long expireTimestamp = session.getCreationTime() + session.getMaxInactiveInterval() * 1000L;
+        offer(new Record(TYPE_PUT, session.getId(), expireTimestamp, data));
     }
 
     @Override
     public void removeSession(String sessionId) {
-        String fileName = getFileName(sessionId);
-        resourceManager.delete(rootPath + (File.separator) + (fileName));
+        offer(new Record(TYPE_REMOVE, sessionId, 0, null));
     }
 
     @Override
@@ -84,30 +127,392 @@ public class SessionLocalFileServiceImpl implements SessionService {
         if (sessionIdList == null || sessionIdList.isEmpty()) {
             return;
         }
-        String path = rootPath.concat(File.separator);
         if (sessionIdList instanceof RandomAccess) {
             int size = sessionIdList.size();
             for (int i = 0; i < size; i++) {
-                String fileName = getFileName(sessionIdList.get(i));
-                resourceManager.delete(path.concat(fileName));
+                removeSession(sessionIdList.get(i));
             }
         } else {
             for (String sessionId : sessionIdList) {
-                String fileName = getFileName(sessionId);
-                resourceManager.delete(path.concat(fileName));
+                removeSession(sessionId);
             }
         }
     }
 
+    private void offer(Record record) {
+        if (closed) {
+            throw new IllegalStateException("session service is closed. " + this);
+        }
+        Record old = pendingMap.put(record.id, record);
+        long bytes = pendingBytes.addAndGet(record.length() - (old != null ? old.length() : 0));
+        if (bytes > maxPendingBytes) {
+            LockSupport.unpark(sessionWriteThread);
+        }
+    }
+
     @Override
     public Session getSession(String sessionId) {
-        String fileName = getFileName(sessionId);
-        return getSessionByFileName(fileName);
+        Record record = pendingMap.get(sessionId);
+        if (record != null) {
+            return record.type == TYPE_PUT ? servletContext.getSessionCodec().decode(record.data) : null;
+        }
+        byte[] data;
+        channelLock.readLock().lock();
+        try {
+            Location location = index.get(sessionId);
+            if (location == null) {
+                return null;
+            }
+            if (channel == null) {
+                throw new IllegalStateException("session service is closed. " + this);
+            }
+            data = readRecord(location).data;
+        } catch (IOException e) {
+            logger.warn("getSession error id={}. case:{}", sessionId, e.toString());
+            throw new UncheckedIOException(e);
+        } finally {
+            channelLock.readLock().unlock();
+        }
+        return servletContext.getSessionCodec().decode(data);
+    }
+
+    @Override
+    public void changeSessionId(String oldSessionId, String newSessionId) {
+        Session session = getSession(oldSessionId);
+        if (session == null) {
+            return;
+        }
+        session.setId(newSessionId);
+        saveSession(session);
+        removeSession(oldSessionId);
+    }
+
+    @Override
+    public int count() {
+        int count = index.size();
+        for (Record record : pendingMap.values()) {
+            boolean exist = index.containsKey(record.id);
+            if (record.type == TYPE_PUT && !exist) {
+                count++;
+            } else if (record.type == TYPE_REMOVE && exist) {
+                count--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write the queued records to the file, and fsync
+     *
+     * @throws IOException write error
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            if (pendingMap.isEmpty() || channel == null) {
+                return;
+            }
+            List<Record> recordList = new ArrayList<>(pendingMap.values());
+            List<Record> writeList = new ArrayList<>(recordList.size());
+            int bufferSize = 0;
+            for (Record record : recordList) {
+                // the session not written, no need to write the remove
+                if (record.type == TYPE_REMOVE && !index.containsKey(record.id)) {
+                    removePending(record);
+                    continue;
+                }
+                record.encoded = encodeRecord(record);
+                bufferSize += record.encoded.length;
+                writeList.add(record);
+            }
+            if (writeList.isEmpty()) {
+                return;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            for (Record record : writeList) {
+                buffer.put(record.encoded);
+            }
+            buffer.flip();
+            long position = writePosition;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(false);
+
+            long offset = writePosition;
+            long writeTimestamp = System.currentTimeMillis();
+            for (Record record : writeList) {
+                int length = record.encoded.length;
+                Location old;
+                if (record.type == TYPE_PUT) {
+                    old = index.put(record.id, new Location(offset, length, record.expireTimestamp, writeTimestamp));
+                    liveBytes += length;
+                } else {
+                    old = index.remove(record.id);
+                }
+                if (old != null) {
+                    liveBytes -= old.length;
+                }
+                offset += length;
+                record.encoded = null;
+                removePending(record);
+            }
+            writePosition = position;
+        }
+    }
+
+    private void removePending(Record record) {
+        if (pendingMap.remove(record.id, record)) {
+            pendingBytes.addAndGet(-record.length());
+        }
+    }
+
+    /**
+     * Rewrite the live records to a new file if the garbage is more than the live records
+     *
+     * @return true if compacted
+     * @throws IOException write error
+     */
+    public boolean compactIfNeed() throws IOException {
+        synchronized (writeLock) {
+            if (channel == null || writePosition < compactMinBytes || writePosition - liveBytes < liveBytes) {
+                return false;
+            }
+            compact();
+            return true;
+        }
     }
 
+    /**
+     * The new file is renamed to the log file before the old channel is closed,
+     * so if the rename fails, the old channel is still open and the log file is not changed.
+     * The channel of the new file is kept open (the rename not change the opened file)
+     *
+     * @throws IOException write or rename error
+     */
+    private void compact() throws IOException {
+        File compactFile = new File(logFile.getParentFile(), LOG_FILE_NAME + ".compact");
+        Map<String, Location> newIndex = new HashMap<>(index.size() * 4 / 3 + 1);
+        long position = 0;
+        FileChannel out = FileChannel.open(compactFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean success = false;
+        try {
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                ByteBuffer buffer = ByteBuffer.allocate(location.length);
+                readFully(channel, buffer, location.offset);
+                buffer.flip();
+                long offset = position;
+                while (buffer.hasRemaining()) {
+                    position += out.write(buffer, position);
+                }
+                newIndex.put(entry.getKey(), new Location(offset, location.length, location.expireTimestamp, location.writeTimestamp));
+            }
+            out.force(true);
+
+            long oldBytes = writePosition;
+            FileChannel oldChannel;
+            channelLock.writeLock().lock();
+            try {
+                moveFile(compactFile, logFile);
+                oldChannel = channel;
+                channel = out;
+                index.putAll(newIndex);
+                writePosition = position;
+                liveBytes = position;
+                success = true;
+            } finally {
+                channelLock.writeLock().unlock();
+            }
+            try {
+                oldChannel.close();
+            } catch (IOException e) {
+                //skip
+            }
+            logger.info("compact session log file. {} -> {} bytes, sessions={}", oldBytes, position, newIndex.size());
+        } finally {
+            if (!success) {
+                try {
+                    out.close();
+                } finally {
+                    Files.deleteIfExists(compactFile.toPath());
+                }
+            }
+        }
+    }
+
+    protected void moveFile(File source, File target) throws IOException {
+        Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restore the index by scan the file. truncate the broken tail (the crash when writing)
+     *
+     * @throws IOException read error
+     */
+    private void restore() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (position + HEADER_LENGTH <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int bodyLength = header.getInt();
+            int crc = header.getInt();
+            if (bodyLength <= 0 || position + HEADER_LENGTH + bodyLength > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(bodyLength);
+            readFully(channel, body, position + HEADER_LENGTH);
+            CRC32 crc32 = new CRC32();
+            crc32.update(body.array(), 0, bodyLength);
+            if ((int) crc32.getValue() != crc) {
+                break;
+            }
+            Record record = decodeRecord(body.array(), false);
+            int length = HEADER_LENGTH + bodyLength;
+            Location old;
+            if (record.type == TYPE_PUT) {
+                // the write time is unknown, the next access is written
+                old = index.put(record.id, new Location(position, length, record.expireTimestamp, 0));
+                liveBytes += length;
+            } else {
+                old = index.remove(record.id);
+            }
+            if (old != null) {
+                liveBytes -= old.length;
+            }
+            position += length;
+        }
+        if (position < size) {
+            logger.warn("session log file is broken at {}, truncate {} bytes. file={}", position, size - position, logFile);
+            channel.truncate(position);
+        }
+        writePosition = position;
+    }
+
+    /**
+     * Import the old version session files (one file per session), and delete them
+     */
+    private void importSessionFiles() {
+        Set<String> fileNames = resourceManager.getResourcePaths(rootPath);
+        if (fileNames == null) {
+            return;
+        }
+        int count = 0;
+        for (String fileName : fileNames) {
+            if (!fileName.endsWith(".s")) {
+                continue;
+            }
+            try {
+                Session session = getSessionByFileName(fileName);
+                if (session != null && session.isValid()) {
+                    saveSession(session);
+                    count++;
+                }
+                resourceManager.delete(rootPath + File.separator + fileName);
+            } catch (Exception e) {
+                logger.warn("import session file error name={}. case:{}", fileName, e.toString());
+            }
+        }
+        if (count > 0) {
+            try {
+                flush();
+            } catch (IOException e) {
+                logger.warn("import session file flush error. case:{}", e.toString());
+            }
+            logger.info("import {} session files to {}", count, logFile);
+        }
+    }
+
+    private Record readRecord(Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.length);
+        readFully(channel, buffer, location.offset);
+        return decodeRecord(buffer.array(), true);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    private static byte[] encodeRecord(Record record) {
+        byte[] id = record.id.getBytes(StandardCharsets.UTF_8);
+        int dataLength = record.data != null ? record.data.length : 0;
+        int bodyLength = 1 + 2 + id.length + 8 + dataLength;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + bodyLength);
+        buffer.putInt(bodyLength);
+        buffer.putInt(0);
+        buffer.put(record.type);
+        buffer.putShort((short) id.length);
+        buffer.put(id);
+        buffer.putLong(record.expireTimestamp);
+        if (dataLength > 0) {
+            buffer.put(record.data);
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer.array(), HEADER_LENGTH, bodyLength);
+        buffer.putInt(4, (int) crc32.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * @param bytes      record bytes
+     * @param withHeader true if the bytes has the header (length, crc32)
+     * @return record
+     */
+    private static Record decodeRecord(byte[] bytes, boolean withHeader) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (withHeader) {
+            buffer.position(HEADER_LENGTH);
+        }
+        byte type = buffer.get();
+        byte[] id = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(id);
+        long expireTimestamp = buffer.getLong();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return new Record(type, new String(id, StandardCharsets.UTF_8), expireTimestamp, data);
+    }
+
+    /**
+     * Read the old version session file (one file per session)
+     *
+     * @param fileName file name
+     * @return session
+     */
     protected Session getSessionByFileName(String fileName) {
+        byte[] bytes;
         try (FileInputStream fileInputStream = resourceManager.newFileInputStream(rootPath, fileName);
-             ObjectInputStream ois = new ObjectInputStream(fileInputStream)) {
+             ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, fileInputStream.available()))) {
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = fileInputStream.read(buf)) != -1) {
+                out.write(buf, 0, len);
+            }
+            bytes = out.toByteArray();
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            logger.warn("getSession error name={}. case:{}", fileName, e.toString());
+            throw new RuntimeException(e);
+        }
+        if (bytes.length >= 2 && (bytes[0] & 0xFF) == 0xAC && (bytes[1] & 0xFF) == 0xED) {
+            // the old version file (ObjectOutputStream)
+            return decodeObjectStream(fileName, bytes);
+        }
+        return servletContext.getSessionCodec().decode(bytes);
+    }
+
+    protected Session decodeObjectStream(String fileName, byte[] bytes) {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
             Session session = new Session();
             session.setId(ois.readUTF());
             session.setCreationTime(ois.readLong());
@@ -126,38 +531,47 @@ public class SessionLocalFileServiceImpl implements SessionService {
                     } catch (ClassNotFoundException e) {
                         logger.warn("getSession readObject error {}. case:{}", session, e.toString());
                     }
-                    attributeMap.put(key, value);
+                    if (value != null) {
+                        attributeMap.put(key, value);
+                    }
                 }
                 session.setAttributeMap(attributeMap);
             }
 
             return session;
-        } catch (FileNotFoundException e) {
-            return null;
         } catch (IOException e) {
             logger.warn("getSession error name={}. case:{}", fileName, e.toString());
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Stop the threads, write the queued records, and close the file
+     */
     @Override
-    public void changeSessionId(String oldSessionId, String newSessionId) {
-        String oldFileName = getFileName(oldSessionId);
-        String newFileName = getFileName(newSessionId);
-
-        try {
-            resourceManager.copyFile(rootPath, oldFileName, rootPath, newFileName);
-            removeSession(oldSessionId);
-        } catch (FileNotFoundException e) {
-            //
-        } catch (IOException e) {
-            logger.warn("changeSessionId error oldId={},newId={}. case:{}", oldSessionId, newSessionId, e.toString());
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        sessionInvalidThread.interrupt();
+        LockSupport.unpark(sessionWriteThread);
+        synchronized (writeLock) {
+            try {
+                flush();
+            } catch (IOException e) {
+                logger.warn("close flush error. case:{}", e.toString());
+            }
+            channelLock.writeLock().lock();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //skip
+            } finally {
+                channel = null;
+                channelLock.writeLock().unlock();
+            }
         }
-    }
-
-    @Override
-    public int count() {
-        return resourceManager.countFile(rootPath);
     }
 
     /**
@@ -190,11 +604,124 @@ public class SessionLocalFileServiceImpl implements SessionService {
         return sessionInvalidThread;
     }
 
+    public File getLogFile() {
+        return logFile;
+    }
+
+    public long getLogFileBytes() {
+        return writePosition;
+    }
+
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+    }
+
+    public long getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    public void setMaxPendingBytes(long maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    public long getCompactMinBytes() {
+        return compactMinBytes;
+    }
+
+    public void setCompactMinBytes(long compactMinBytes) {
+        this.compactMinBytes = compactMinBytes;
+    }
+
+    public long getAccessWriteIntervalMs() {
+        return accessWriteIntervalMs;
+    }
+
+    public void setAccessWriteIntervalMs(long accessWriteIntervalMs) {
+        this.accessWriteIntervalMs = accessWriteIntervalMs;
+    }
+
     @Override
     public String toString() {
         return name;
     }
 
+    private static class Record {
+        private final byte type;
+        private final String id;
+        private final long expireTimestamp;
+        private final byte[] data;
+        /**
+         * only use in the write lock
+         */
+        private byte[] encoded;
+
+        private Record(byte type, String id, long expireTimestamp, byte[] data) {
+            this.type = type;
+            this.id = id;
+            this.expireTimestamp = expireTimestamp;
+            this.data = data;
+        }
+
+        private int length() {
+            return data != null ? data.length : 0;
+        }
+    }
+
+    private static class Location {
+        private final long offset;
+        private final int length;
+        private final long expireTimestamp;
+        private final long writeTimestamp;
+
+        private Location(long offset, int length, long expireTimestamp, long writeTimestamp) {
+            this.offset = offset;
+            this.length = length;
+            this.expireTimestamp = expireTimestamp;
+            this.writeTimestamp = writeTimestamp;
+        }
+    }
+
+    /**
+     * Write the queued records to the file in batch, and compact the file
+     */
+    class SessionWriteThread extends Thread {
+        private SessionWriteThread() {
+            super("NettyX-" + NamespaceUtil.newIdName(SessionWriteThread.class));
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                if (pendingBytes.get() <= maxPendingBytes) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+                }
+                if (closed) {
+                    return;
+                }
+                try {
+                    flush();
+                    compactIfNeed();
+                } catch (Exception e) {
+                    logger.warn("SessionWriteThread write error case:{0}", e);
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+                }
+            }
+        }
+    }
+
     /**
      * Sessions with a timeout are invalidated and executed periodically
      */
@@ -220,27 +747,35 @@ public class SessionLocalFileServiceImpl implements SessionService {
                 }
 
                 try {
-                    Set<String> sessionFileNames = resourceManager.getResourcePaths(rootPath);
-                    if (sessionFileNames != null) {
-                        for (String sessionFileName : sessionFileNames) {
-                            try {
-                                Session session = getSessionByFileName(sessionFileName);
-                                if (session != null && !session.isValid()) {
-                                    String id = session.getId();
-                                    logger.info("NettyX - Session(ID=" + id + ") is invalidated by Session Manager");
-                                    removeSession(id);
-
-                                    // call event
-                                    ServletHttpSession httpSession = new ServletHttpSession(session, servletContext);
-                                    if (httpSession.hasListener()) {
-                                        servletContext.getDefaultExecutorSupplier().get().execute(httpSession::invalidate0);
-                                    } else {
-                                        httpSession.invalidate0();
-                                    }
+                    long currentTime = System.currentTimeMillis();
+                    List<String> expireIdList = new ArrayList<>();
+                    for (Map.Entry<String, Location> entry : index.entrySet()) {
+                        if (entry.getValue().expireTimestamp <= currentTime) {
+                            expireIdList.add(entry.getKey());
+                        }
+                    }
+                    for (Record record : pendingMap.values()) {
+                        if (record.type == TYPE_PUT && record.expireTimestamp <= currentTime) {
+                            expireIdList.add(record.id);
+                        }
+                    }
+                    for (String id : expireIdList) {
+                        try {
+                            Session session = getSession(id);
+                            if (session != null && !session.isValid()) {
+                                logger.info("NettyX - Session(ID=" + id + ") is invalidated by Session Manager");
+                                removeSession(id);
+
+                                // call event
+                                ServletHttpSession httpSession = new ServletHttpSession(session, servletContext);
+                                if (httpSession.hasListener()) {
+                                    servletContext.getDefaultExecutorSupplier().get().execute(httpSession::invalidate0);
+                                } else {
+                                    httpSession.invalidate0();
                                 }
-                            } catch (Exception e) {
-                                logger.warn("SessionInvalidCheck removeSession error case:{0}", e);
                             }
+                        } catch (Exception e) {
+                            logger.warn("SessionInvalidCheck removeSession error case:{0}", e);
                         }
                     }
                 } catch (Exception e) {
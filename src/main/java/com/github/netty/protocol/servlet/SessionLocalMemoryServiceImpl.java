@@ -21,6 +21,8 @@ public class SessionLocalMemoryServiceImpl implements SessionService {
         this.servletContext = servletContext;
         sessionMap.setOnExpiryConsumer(this::onInvalidate);
         sessionMap.setOnRemoveConsumer(this::onInvalidate);
+        // the session expiry is in seconds. no need to scan on every global scan
+        sessionMap.setScanInterval(1000);
     }
 
     private void onInvalidate(ExpiryLRUMap.Node<String, Session> node) {
@@ -1,22 +1,33 @@
 package com.github.netty.protocol.servlet;
 
+import com.github.netty.core.util.ExpiryLRUMap;
 import com.github.netty.core.util.LoggerFactoryX;
 import com.github.netty.core.util.LoggerX;
 import com.github.netty.core.util.NamespaceUtil;
 import com.github.netty.protocol.nrpc.RpcClient;
+import com.github.netty.protocol.nrpc.RpcPacket;
 import com.github.netty.protocol.nrpc.exception.RpcDecodeException;
 import com.github.netty.protocol.nrpc.exception.RpcEncodeException;
+import com.github.netty.protocol.nrpc.exception.RpcResponseException;
+import com.github.netty.protocol.nrpc.service.RpcDBFields;
 import com.github.netty.protocol.nrpc.service.RpcDBService;
 import io.netty.util.concurrent.FastThreadLocal;
 
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Remote session service
+ * The session is saved as {@link RpcDBFields} (a field per attribute), so the changed attributes can be saved by {@link RpcDBService#putDelta4(String, byte[], int, String)}
+ * Optional near cache ({@link #enableNearCache(int, long)}): the decoded session is cached with the version of the remote data,
+ * the get only revalidate the version ({@link RpcDBService#getIfChanged3(String, long, String)}), the session is refetched if changed by other node.
+ * the save keeps the cached session up to date (the delta is applied to it if no other put between), so the next get is not refetched.
  *
  * @author wangzihao
  * 2018/8/19/019
@@ -25,6 +36,10 @@ public class SessionRemoteRpcServiceImpl implements SessionService {
     private static final String SESSION_GROUP = "/session";
     private static final LoggerX logger = LoggerFactoryX.getLogger(SessionRemoteRpcServiceImpl.class);
     private static final byte[] EMPTY = {};
+    /**
+     * The field name of the session id and time. (not a valid attribute name in practice)
+     */
+    private static final String META_FIELD = "\0";
     private final String name = NamespaceUtil.newIdName(getClass());
     private final InetSocketAddress address;
     private final int ioRatio;
@@ -32,6 +47,19 @@ public class SessionRemoteRpcServiceImpl implements SessionService {
     private final boolean enableRpcHeartLog;
     private final int rpcClientHeartIntervalMillSecond;
     private final int reconnectIntervalMillSeconds;
+    private SessionCodec sessionCodec = new BinarySessionCodec();
+    /**
+     * false if the server not support {@link RpcDBService#putDelta4(String, byte[], int, String)}
+     */
+    private volatile boolean enablePutDelta = true;
+    /**
+     * Near cache of the decoded session. null is disable
+     */
+    private volatile ExpiryLRUMap<String, NearCacheEntry> nearCache;
+    /**
+     * Near cache. the cached session is used without revalidate in this interval. less than or equal to 0 is revalidate every get
+     */
+    private long nearCacheRevalidateIntervalMs;
     private final FastThreadLocal<RpcClient> rpcClientThreadLocal = new FastThreadLocal<RpcClient>() {
         @Override
         protected RpcClient initialValue() throws Exception {
@@ -63,33 +91,139 @@ public class SessionRemoteRpcServiceImpl implements SessionService {
 
     @Override
     public void saveSession(Session session) {
-        byte[] bytes = encode(session);
         long expireSecond = (session.getMaxInactiveInterval() * 1000L + session.getCreationTime() - System.currentTimeMillis()) / 1000;
-        if (expireSecond > 0) {
-            getRpcDBService().put4(session.getId(), bytes, (int) expireSecond, SESSION_GROUP);
-        } else {
-            getRpcDBService().remove2(session.getId(), SESSION_GROUP);
+        if (expireSecond <= 0) {
+            removeSession(session.getId());
+            return;
+        }
+        long version = -1;
+        Set<String> changedAttributeNames = session.changedAttributeNames();
+        if (changedAttributeNames != null && enablePutDelta) {
+            byte[] delta = encodeDelta(session, changedAttributeNames);
+            try {
+                version = getRpcDBService().putDelta4(session.getId(), delta, (int) expireSecond, SESSION_GROUP);
+            } catch (RpcResponseException e) {
+                if (!isNoSuchMethod(e)) {
+                    throw e;
+                }
+                // the server is older than putDelta4
+                enablePutDelta = false;
+                logger.warn("The session server not support putDelta4, put the whole session. address = {}", address);
+            }
+            // -1 is not exist in remote. put the whole session
+        }
+        boolean putWhole = version == -1;
+        if (putWhole) {
+            byte[] bytes = encode(session);
+            if (nearCache != null) {
+                try {
+                    version = getRpcDBService().putVersion4(session.getId(), bytes, (int) expireSecond, SESSION_GROUP);
+                } catch (RpcResponseException e) {
+                    if (!isNoSuchMethod(e)) {
+                        throw e;
+                    }
+                    disableNearCache("putVersion4");
+                    getRpcDBService().put4(session.getId(), bytes, (int) expireSecond, SESSION_GROUP);
+                }
+            } else {
+                getRpcDBService().put4(session.getId(), bytes, (int) expireSecond, SESSION_GROUP);
+            }
+        }
+        ExpiryLRUMap<String, NearCacheEntry> nearCache = this.nearCache;
+        if (nearCache != null) {
+            NearCacheEntry entry;
+            if (version == -1) {
+                // the version not supported. get again
+                nearCache.remove(session.getId());
+            } else if (putWhole) {
+                nearCache.put(session.getId(), new NearCacheEntry(copy(session), version), expireSecond * 1000L);
+            } else if ((entry = nearCache.get(session.getId())) != null && entry.version == version - 1) {
+                // no other put between (the delta version is the previous version + 1). the remote value is the cached value + the delta
+                nearCache.put(session.getId(), new NearCacheEntry(merge(entry.session, session, changedAttributeNames), version), expireSecond * 1000L);
+            } else {
+                // the delta is merged with the unknown changes of other nodes in the remote. get again
+                nearCache.remove(session.getId());
+            }
         }
     }
 
     @Override
     public void removeSession(String sessionId) {
+        ExpiryLRUMap<String, NearCacheEntry> nearCache = this.nearCache;
+        if (nearCache != null) {
+            nearCache.remove(sessionId);
+        }
         getRpcDBService().remove2(sessionId, SESSION_GROUP);
     }
 
     @Override
     public void removeSessionBatch(List<String> sessionIdList) {
+        ExpiryLRUMap<String, NearCacheEntry> nearCache = this.nearCache;
+        if (nearCache != null && sessionIdList != null) {
+            for (String sessionId : sessionIdList) {
+                nearCache.remove(sessionId);
+            }
+        }
         getRpcDBService().removeBatch2(sessionIdList, SESSION_GROUP);
     }
 
     @Override
     public Session getSession(String sessionId) {
-        byte[] bytes = getRpcDBService().get2(sessionId, SESSION_GROUP);
-        return decode(bytes);
+        ExpiryLRUMap<String, NearCacheEntry> nearCache = this.nearCache;
+        if (nearCache == null) {
+            byte[] bytes = getRpcDBService().get2(sessionId, SESSION_GROUP);
+            return decode(bytes);
+        }
+
+        long currentTime = System.currentTimeMillis();
+        NearCacheEntry entry = nearCache.get(sessionId);
+        if (entry != null && currentTime - entry.checkTimestamp < nearCacheRevalidateIntervalMs) {
+            return copy(entry.session);
+        }
+        byte[] bytes;
+        try {
+            bytes = getRpcDBService().getIfChanged3(sessionId, entry != null ? entry.version : -1, SESSION_GROUP);
+        } catch (RpcResponseException e) {
+            if (!isNoSuchMethod(e)) {
+                throw e;
+            }
+            disableNearCache("getIfChanged3");
+            return decode(getRpcDBService().get2(sessionId, SESSION_GROUP));
+        }
+        if (bytes == null || bytes.length < 8) {
+            nearCache.remove(sessionId);
+            return null;
+        }
+        long version = 0;
+        for (int i = 0; i < 8; i++) {
+            version = (version << 8) | (bytes[i] & 0xFF);
+        }
+        if (version == -1) {
+            // the server not support the version (the default method of RpcDBService), the data is not cached
+            nearCache.remove(sessionId);
+            return decode(Arrays.copyOfRange(bytes, 8, bytes.length));
+        }
+        if (entry != null && entry.version == version) {
+            // not changed
+            entry.checkTimestamp = currentTime;
+            return copy(entry.session);
+        }
+        Session session = decode(Arrays.copyOfRange(bytes, 8, bytes.length));
+        if (session != null) {
+            long timeout = session.getMaxInactiveInterval() * 1000L + session.getCreationTime() - currentTime;
+            if (timeout > 0) {
+                nearCache.put(sessionId, new NearCacheEntry(copy(session), version), timeout);
+            }
+        }
+        return session;
     }
 
     @Override
     public void changeSessionId(String oldSessionId, String newSessionId) {
+        ExpiryLRUMap<String, NearCacheEntry> nearCache = this.nearCache;
+        if (nearCache != null) {
+            nearCache.remove(oldSessionId);
+        }
         getRpcDBService().changeKey3(oldSessionId, newSessionId, SESSION_GROUP);
     }
 
@@ -98,6 +232,72 @@ public class SessionRemoteRpcServiceImpl implements SessionService {
         return getRpcDBService().count(SESSION_GROUP);
     }
 
+    private static boolean isNoSuchMethod(RpcResponseException e) {
+        return Objects.equals(e.getStatus(), RpcPacket.ResponsePacket.NO_SUCH_METHOD);
+    }
+
+    /**
+     * the server is older than the near cache methods (putVersion4, getIfChanged3)
+     */
+    private void disableNearCache(String methodName) {
+        if (nearCache != null) {
+            nearCache = null;
+            logger.warn("The session server not support {}, disable the near cache. address = {}", methodName, address);
+        }
+    }
+
+    /**
+     * Apply the saved delta to a copy of the cached session. (same as the merge in the remote)
+     *
+     * @param cached                the cached session. the previous version of the remote
+     * @param session               the saved session
+     * @param changedAttributeNames the attribute names of the delta
+     * @return the merged copy
+     */
+    protected Session merge(Session cached, Session session, Set<String> changedAttributeNames) {
+        Session merged = copy(cached);
+        merged.setId(session.getId());
+        merged.setCreationTime(session.getCreationTime());
+        merged.setLastAccessedTime(session.getLastAccessedTime());
+        merged.setMaxInactiveInterval(session.getMaxInactiveInterval());
+        merged.setAccessCount(session.getAccessCount());
+        Map<String, Object> attributeMap = session.getAttributeMap();
+        Map<String, Object> mergedAttributeMap = merged.getAttributeMap();
+        if (mergedAttributeMap == null) {
+            merged.setAttributeMap(mergedAttributeMap = new ConcurrentHashMap<>(6));
+        }
+        for (String name : changedAttributeNames) {
+            Object value = attributeMap != null ? attributeMap.get(name) : null;
+            if (value != null) {
+                mergedAttributeMap.put(name, value);
+            } else {
+                mergedAttributeMap.remove(name);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Copy the session of the near cache. the caller change the session (attributes, changedAttributeNames of the save) concurrently,
+     * so the cached session is not shared. the attribute value object is shared by the copies (same as the local memory session).
+     *
+     * @param session session
+     * @return the copy
+     */
+    protected Session copy(Session session) {
+        Session copy = new Session();
+        copy.setId(session.getId());
+        copy.setCreationTime(session.getCreationTime());
+        copy.setLastAccessedTime(session.getLastAccessedTime());
+        copy.setMaxInactiveInterval(session.getMaxInactiveInterval());
+        copy.setAccessCount(session.getAccessCount());
+        Map<String, Object> attributeMap = session.getAttributeMap();
+        if (attributeMap != null) {
+            copy.setAttributeMap(new ConcurrentHashMap<>(attributeMap));
+        }
+        return copy;
+    }
+
     /**
      * decoding
      *
@@ -108,7 +308,51 @@ public class SessionRemoteRpcServiceImpl implements SessionService {
         if (bytes == null || bytes.length == 0) {
             return null;
         }
+        if (!RpcDBFields.isFields(bytes)) {
+            return decodeObjectStream(bytes);
+        }
+        try {
+            RpcDBFields fields = RpcDBFields.parse(bytes);
+            byte[] meta = fields.get(META_FIELD);
+            if (meta == null) {
+                return null;
+            }
+            Session session = new Session();
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(meta))) {
+                session.setId(in.readUTF());
+                session.setCreationTime(in.readLong());
+                session.setLastAccessedTime(in.readLong());
+                session.setMaxInactiveInterval(in.readInt());
+                session.setAccessCount(in.readInt());
+            }
+            int attributeSize = fields.getFields().size() - 1;
+            if (attributeSize > 0) {
+                Map<String, Object> attributeMap = new ConcurrentHashMap<>(Math.max(6, attributeSize * 4 / 3 + 1));
+                for (Map.Entry<String, byte[]> entry : fields.getFields().entrySet()) {
+                    String key = entry.getKey();
+                    if (META_FIELD.equals(key)) {
+                        continue;
+                    }
+                    Object value = sessionCodec.decodeAttribute(key, entry.getValue());
+                    if (value != null) {
+                        attributeMap.put(key, value);
+                    }
+                }
+                session.setAttributeMap(attributeMap);
+            }
+            return session;
+        } catch (Exception e) {
+            throw new RpcDecodeException("decode http session error=" + e, e);
+        }
+    }
 
+    /**
+     * decoding the old version bytes (ObjectOutputStream)
+     *
+     * @param bytes
+     * @return
+     */
+    protected Session decodeObjectStream(byte[] bytes) {
         ObjectInputStream ois = null;
         InputStream bfi = null;
         try {
@@ -162,6 +406,38 @@ public class SessionRemoteRpcServiceImpl implements SessionService {
         return getRpcClient().getRpcDBService();
     }
 
+    /**
+     * Enable the near cache of the decoded session
+     *
+     * @param maxSize              max cached session count
+     * @param revalidateIntervalMs the cached session is used without revalidate the version in this interval.
+     *                             less than or equal to 0 is revalidate every get (a small rpc without the session data)
+     */
+    public void enableNearCache(int maxSize, long revalidateIntervalMs) {
+        this.nearCacheRevalidateIntervalMs = revalidateIntervalMs;
+        this.nearCache = new ExpiryLRUMap<>(Math.min(256, Math.max(16, maxSize)), maxSize, -1, null);
+    }
+
+    public void disableNearCache() {
+        this.nearCache = null;
+    }
+
+    public ExpiryLRUMap<String, NearCacheEntry> getNearCache() {
+        return nearCache;
+    }
+
+    public long getNearCacheRevalidateIntervalMs() {
+        return nearCacheRevalidateIntervalMs;
+    }
+
+    public SessionCodec getSessionCodec() {
+        return sessionCodec;
+    }
+
+    public void setSessionCodec(SessionCodec sessionCodec) {
+        this.sessionCodec = sessionCodec;
+    }
+
     /**
      * coding
      *
@@ -172,61 +448,55 @@ public class SessionRemoteRpcServiceImpl implements SessionService {
         if (session == null) {
             return EMPTY;
         }
-
-        ByteArrayOutputStream bout = new ByteArrayOutputStream(64);
-        ObjectOutputStream oout = null;
-        try {
-            oout = new ObjectOutputStream(bout);
-            oout.writeUTF(session.getId());
-            oout.writeLong(session.getCreationTime());
-            oout.writeLong(session.getLastAccessedTime());
-            oout.writeInt(session.getMaxInactiveInterval());
-            oout.writeInt(session.getAccessCount());
-
-            Map<String, Object> attributeMap = session.getAttributeMap();
-
-            int attributeSize = 0;
-            if (attributeMap != null) {
-                for (Map.Entry<String, Object> entry : attributeMap.entrySet()) {
-                    if (entry.getValue() instanceof Serializable) {
-                        attributeSize++;
-                    } else {
-                        logger.warn("The value of key={} in the http session property is not serialized and has been skipped automatically", entry.getKey());
-                    }
+        RpcDBFields fields = new RpcDBFields();
+        fields.put(META_FIELD, encodeMeta(session));
+        Map<String, Object> attributeMap = session.getAttributeMap();
+        if (attributeMap != null) {
+            for (Map.Entry<String, Object> entry : attributeMap.entrySet()) {
+                byte[] value = sessionCodec.encodeAttribute(entry.getKey(), entry.getValue());
+                if (value != null) {
+                    fields.put(entry.getKey(), value);
                 }
             }
+        }
+        return fields.toBytes();
+    }
 
-            oout.writeInt(attributeSize);
-            if (attributeSize > 0) {
-                for (Map.Entry<String, Object> entry : attributeMap.entrySet()) {
-                    Object value = entry.getValue();
-                    if (value instanceof Serializable) {
-                        String key = entry.getKey();
-                        oout.writeUTF(key);
-                        oout.writeObject(value);
-                    }
-                }
+    /**
+     * coding the changed attributes
+     *
+     * @param session               session
+     * @param changedAttributeNames changed attribute names
+     * @return {@link RpcDBFields} bytes
+     */
+    protected byte[] encodeDelta(Session session, Set<String> changedAttributeNames) {
+        RpcDBFields fields = new RpcDBFields();
+        fields.put(META_FIELD, encodeMeta(session));
+        Map<String, Object> attributeMap = session.getAttributeMap();
+        for (String name : changedAttributeNames) {
+            Object value = attributeMap != null ? attributeMap.get(name) : null;
+            byte[] bytes = value != null ? sessionCodec.encodeAttribute(name, value) : null;
+            if (bytes != null) {
+                fields.put(name, bytes);
+            } else {
+                fields.remove(name);
             }
+        }
+        return fields.toBytes();
+    }
 
-            oout.flush();
-            return bout.toByteArray();
+    protected byte[] encodeMeta(Session session) {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bout)) {
+            out.writeUTF(session.getId());
+            out.writeLong(session.getCreationTime());
+            out.writeLong(session.getLastAccessedTime());
+            out.writeInt(session.getMaxInactiveInterval());
+            out.writeInt(session.getAccessCount());
         } catch (IOException e) {
             throw new RpcEncodeException("encode http session error=" + e, e);
-        } finally {
-            if (oout != null) {
-                try {
-                    oout.close();
-                } catch (IOException e) {
-                    //skip
-                }
-            } else {
-                try {
-                    bout.close();
-                } catch (IOException e) {
-                    //skip
-                }
-            }
         }
+        return bout.toByteArray();
     }
 
     @Override
@@ -234,4 +504,30 @@ public class SessionRemoteRpcServiceImpl implements SessionService {
         return name;
     }
 
+    /**
+     * The near cached session with the version of the remote data
+     */
+    public static class NearCacheEntry {
+        private final Session session;
+        private final long version;
+        private volatile long checkTimestamp = System.currentTimeMillis();
+
+        NearCacheEntry(Session session, long version) {
+            this.session = session;
+            this.version = version;
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public long getCheckTimestamp() {
+            return checkTimestamp;
+        }
+    }
+
 }
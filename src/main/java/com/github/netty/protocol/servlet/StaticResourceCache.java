@@ -0,0 +1,344 @@
+package com.github.netty.protocol.servlet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.IllegalReferenceCountException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Hot small file cache of {@link DefaultServlet}. (LRU, bounded by total bytes)
+ * The file content is held as read-only direct buffer, with the ETag/Last-Modified and the precomputed gzip content (compressible mime type only).
+ * The entry is checked by the file lastModified and length at most once per checkIntervalMs, a changed file is reloaded.
+ * Note: large file is not cached, it is send by FileRegion (zero copy).
+ *
+ * @author wangzihao
+ */
+public class StaticResourceCache {
+    private final long maxBytes;
+    private final long maxFileBytes;
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(64, 0.75F, true);
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private long checkIntervalMs = 1000;
+    private boolean enableGzip = true;
+    private String[] gzipMimeTypes = {"text/", "application/javascript", "application/x-javascript",
+            "application/json", "application/xml", "image/svg+xml"};
+    private long totalBytes;
+
+    /**
+     * @param maxBytes     max total bytes of the cache (content + gzip content)
+     * @param maxFileBytes max bytes of a cached file. the file larger than this is not cached
+     */
+    public StaticResourceCache(long maxBytes, long maxFileBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxFileBytes = Math.min(Math.max(0, maxFileBytes), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get a cached file, load if absent or changed.
+     *
+     * @param file        file
+     * @param contentType contentType. decide whether precompute gzip content
+     * @return null if the file is not cacheable (too large, not exist)
+     * @throws IOException read file fail
+     */
+    public Entry get(File file, String contentType) throws IOException {
+        String key = file.getPath();
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (this) {
+            entry = map.get(key);
+        }
+        if (entry != null) {
+            if (now - entry.checkTimestamp < checkIntervalMs) {
+                hitCount.increment();
+                return entry;
+            }
+            if (entry.lastModified == file.lastModified() && entry.length == file.length()) {
+                entry.checkTimestamp = now;
+                hitCount.increment();
+                return entry;
+            }
+            remove(key, entry);
+        }
+        missCount.increment();
+
+        long length = file.length();
+        if (length > maxFileBytes || length > maxBytes || !file.isFile()) {
+            return null;
+        }
+        Entry newEntry = load(file, contentType, now);
+        if (newEntry == null) {
+            return null;
+        }
+        synchronized (this) {
+            Entry old = map.put(key, newEntry);
+            if (old != null) {
+                totalBytes -= old.getBytes();
+                old.release();
+            }
+            totalBytes += newEntry.getBytes();
+            evictIfNeed();
+        }
+        return newEntry;
+    }
+
+    private Entry load(File file, String contentType, long now) throws IOException {
+        ByteBuf content;
+        long lastModified;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            lastModified = file.lastModified();
+            long size = channel.size();
+            if (size > maxFileBytes) {
+                return null;
+            }
+            int length = (int) size;
+            content = Unpooled.directBuffer(length, length);
+            try {
+                while (content.isWritable()) {
+                    if (content.writeBytes(channel, content.writerIndex(), content.writableBytes()) < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                content.release();
+                throw e;
+            }
+        }
+        ByteBuf gzipContent = null;
+        if (enableGzip && content.readableBytes() > 0 && isGzipMimeType(contentType)) {
+            gzipContent = gzip(content);
+        }
+        return new Entry(file.getPath(), lastModified, content.readableBytes(),
+                content.asReadOnly(), gzipContent, now);
+    }
+
+    /**
+     * @param content content
+     * @return null if the gzip content not smaller
+     * @throws IOException gzip fail
+     */
+    private static ByteBuf gzip(ByteBuf content) throws IOException {
+        int length = content.readableBytes();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 4));
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            content.getBytes(content.readerIndex(), gzipOut, length);
+        }
+        if (out.size() >= length) {
+            return null;
+        }
+        ByteBuf gzipContent = Unpooled.directBuffer(out.size(), out.size());
+        gzipContent.writeBytes(out.toByteArray());
+        return gzipContent.asReadOnly();
+    }
+
+    private boolean isGzipMimeType(String contentType) {
+        if (contentType == null || contentType.isEmpty()) {
+            return false;
+        }
+        for (String mimeType : gzipMimeTypes) {
+            if (contentType.startsWith(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evictIfNeed() {
+        Iterator<Entry> iterator = map.values().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getBytes();
+            eldest.release();
+        }
+    }
+
+    private synchronized void remove(String key, Entry entry) {
+        if (map.remove(key, entry)) {
+            totalBytes -= entry.getBytes();
+            entry.release();
+        }
+    }
+
+    /**
+     * Remove a cached file
+     *
+     * @param file file
+     */
+    public synchronized void remove(File file) {
+        Entry entry = map.remove(file.getPath());
+        if (entry != null) {
+            totalBytes -= entry.getBytes();
+            entry.release();
+        }
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : map.values()) {
+            entry.release();
+        }
+        map.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    public long getCheckIntervalMs() {
+        return checkIntervalMs;
+    }
+
+    /**
+     * The interval of check the file changed. less than or equal to 0 is check every request
+     *
+     * @param checkIntervalMs checkIntervalMs
+     */
+    public void setCheckIntervalMs(long checkIntervalMs) {
+        this.checkIntervalMs = checkIntervalMs;
+    }
+
+    public boolean isEnableGzip() {
+        return enableGzip;
+    }
+
+    public void setEnableGzip(boolean enableGzip) {
+        this.enableGzip = enableGzip;
+    }
+
+    public String[] getGzipMimeTypes() {
+        return gzipMimeTypes;
+    }
+
+    /**
+     * The mime type (prefix) that precompute gzip content
+     *
+     * @param gzipMimeTypes for example: text/, application/json
+     */
+    public void setGzipMimeTypes(String[] gzipMimeTypes) {
+        this.gzipMimeTypes = gzipMimeTypes == null ? new String[0] : gzipMimeTypes;
+    }
+
+    @Override
+    public String toString() {
+        return "StaticResourceCache{" +
+                "size=" + size() +
+                ", totalBytes=" + getTotalBytes() +
+                ", maxBytes=" + maxBytes +
+                ", maxFileBytes=" + maxFileBytes +
+                ", hitCount=" + hitCount.sum() +
+                ", missCount=" + missCount.sum() +
+                '}';
+    }
+
+    public static class Entry {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+        private final ByteBuf content;
+        private final ByteBuf gzipContent;
+        private final DefaultServlet.WebResource resource;
+        private volatile long checkTimestamp;
+
+        private Entry(String path, long lastModified, long length, ByteBuf content, ByteBuf gzipContent, long checkTimestamp) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.content = content;
+            this.gzipContent = gzipContent;
+            this.resource = new DefaultServlet.WebResource(lastModified, length);
+            this.checkTimestamp = checkTimestamp;
+            // compute once
+            resource.getETag();
+            resource.getLastModifiedHttp();
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public DefaultServlet.WebResource getResource() {
+            return resource;
+        }
+
+        public boolean isExistGzipContent() {
+            return gzipContent != null;
+        }
+
+        /**
+         * A retained duplicate of the file content. the caller write or release it.
+         *
+         * @param gzip true if gzip content
+         * @return read-only direct buffer. null if the entry is evicted (released) concurrently, or no gzip content
+         */
+        public ByteBuf retainedContent(boolean gzip) {
+            ByteBuf buf = gzip ? gzipContent : content;
+            if (buf == null) {
+                return null;
+            }
+            try {
+                return buf.retainedDuplicate();
+            } catch (IllegalReferenceCountException e) {
+                return null;
+            }
+        }
+
+        private long getBytes() {
+            return gzipContent == null ? length : length + gzipContent.readableBytes();
+        }
+
+        private void release() {
+            content.release();
+            if (gzipContent != null) {
+                gzipContent.release();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "path='" + path + '\'' +
+                    ", length=" + length +
+                    ", gzipLength=" + (gzipContent == null ? -1 : gzipContent.readableBytes()) +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package com.github.netty.protocol.servlet.http2;
+
+import com.github.netty.core.util.LoggerFactoryX;
+import com.github.netty.core.util.LoggerX;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http2.Http2ConnectionAdapter;
+import io.netty.handler.codec.http2.Http2ConnectionHandler;
+import io.netty.handler.codec.http2.Http2Stream;
+import io.netty.util.AttributeKey;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Http2 stream scheduler. (one instance per servlet context, shared by all h2, h2c connections)
+ * <p>
+ * 1. Per connection concurrency cap: a connection can only run maxConcurrentStreamsPerConnection streams at the same time, the others wait in the connection queue.
+ * 2. Weighted fair queuing across connections (start time fair queuing): the connection has the smallest virtual time run first,
+ * the virtual time of the connection add 256/weight when a stream of it start, the weight is the http2 stream weight (1-256, default 16).
+ * in the connection, the stream has the bigger weight run first.
+ * 3. The waiting stream is aborted early (not run the servlet) if the stream is reset (RST_STREAM) or closed, or the connection is closed.
+ *
+ * @author wangzihao
+ */
+public class Http2StreamScheduler {
+    public static final int DEFAULT_WEIGHT = 16;
+    private static final int MAX_WEIGHT = 256;
+    private static final LoggerX LOGGER = LoggerFactoryX.getLogger(Http2StreamScheduler.class);
+    private static final Comparator<ConnectionQueue> CONNECTION_COMPARATOR = (o1, o2) -> {
+        int compare = Long.compare(o1.virtualTime, o2.virtualTime);
+        return compare != 0 ? compare : Long.compare(o1.id, o2.id);
+    };
+    private static final Comparator<StreamTask> TASK_COMPARATOR = (o1, o2) -> {
+        int compare = Integer.compare(o2.weight, o1.weight);
+        return compare != 0 ? compare : Long.compare(o1.sequence, o2.sequence);
+    };
+    /**
+     * the id of the scheduler. the attribute key name must be unique (identityHashCode can be the same)
+     */
+    private static final AtomicLong SCHEDULER_ID_INCR = new AtomicLong();
+    private final AttributeKey<ConnectionQueue> connectionQueueKey = AttributeKey.newInstance(Http2StreamScheduler.class.getName() + "#" + SCHEDULER_ID_INCR.incrementAndGet());
+    private final Supplier<Executor> executorSupplier;
+    private final Consumer<Runnable> abortHandler;
+    private final int maxConcurrentStreamsPerConnection;
+    private final int maxConcurrentStreams;
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * the connections can run a stream now (has waiting stream, and not over the connection concurrency cap)
+     */
+    private final PriorityQueue<ConnectionQueue> readyQueue = new PriorityQueue<>(CONNECTION_COMPARATOR);
+    private long virtualTime;
+    private long sequence;
+    private int runningCount;
+    private int waitingCount;
+    private int connectionCount;
+    // metrics
+    private final LongAdder dispatchCount = new LongAdder();
+    private final LongAdder abortCount = new LongAdder();
+    private final LongAdder waitNanosTotal = new LongAdder();
+    private final AtomicLong waitNanosMax = new AtomicLong();
+
+    /**
+     * @param executorSupplier                  the executor of the servlet
+     * @param abortHandler                      release the task that not run (the stream is reset, or the connection is closed)
+     * @param maxConcurrentStreamsPerConnection max running streams of a connection. less than or equal to 0 is unlimited
+     * @param maxConcurrentStreams              max running streams of all connections. less than or equal to 0 is unlimited
+     */
+    public Http2StreamScheduler(Supplier<Executor> executorSupplier, Consumer<Runnable> abortHandler,
+                                int maxConcurrentStreamsPerConnection, int maxConcurrentStreams) {
+        this.executorSupplier = executorSupplier;
+        this.abortHandler = abortHandler;
+        this.maxConcurrentStreamsPerConnection = maxConcurrentStreamsPerConnection > 0 ? maxConcurrentStreamsPerConnection : Integer.MAX_VALUE;
+        this.maxConcurrentStreams = maxConcurrentStreams > 0 ? maxConcurrentStreams : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Submit the stream task. call on the event loop of the channel
+     *
+     * @param channel  connection
+     * @param streamId http2 stream id
+     * @param weight   http2 stream weight (1-256)
+     * @param task     servlet task
+     */
+    public void execute(Channel channel, int streamId, int weight, Runnable task) {
+        ConnectionQueue connection = channel.attr(connectionQueueKey).get();
+        if (connection == null) {
+            connection = newConnectionQueue(channel);
+        }
+        StreamTask streamTask = new StreamTask(connection, streamId, Math.min(Math.max(weight, 1), MAX_WEIGHT), task);
+        boolean abort;
+        lock.lock();
+        try {
+            abort = connection.closed;
+            if (!abort) {
+                streamTask.sequence = sequence++;
+                connection.tasks.offer(streamTask);
+                waitingCount++;
+                if (!connection.ready && connection.runningCount < maxConcurrentStreamsPerConnection) {
+                    // the idle connection can not save the virtual time for the future
+                    connection.virtualTime = Math.max(connection.virtualTime, virtualTime);
+                    connection.ready = true;
+                    readyQueue.offer(connection);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (abort) {
+            abort(streamTask);
+        } else {
+            dispatch();
+        }
+    }
+
+    private ConnectionQueue newConnectionQueue(Channel channel) {
+        ConnectionQueue connection = new ConnectionQueue(channel);
+        channel.attr(connectionQueueKey).set(connection);
+        lock.lock();
+        try {
+            connection.id = sequence++;
+            connectionCount++;
+        } finally {
+            lock.unlock();
+        }
+        // abort the waiting stream if the stream reset
+        Http2ConnectionHandler handler = channel.pipeline().get(Http2ConnectionHandler.class);
+        if (handler != null) {
+            handler.connection().addListener(new Http2ConnectionAdapter() {
+                @Override
+                public void onStreamClosed(Http2Stream stream) {
+                    onStreamAbort(connection, stream.id());
+                }
+            });
+        }
+        channel.closeFuture().addListener(f -> onConnectionClose(connection));
+        return connection;
+    }
+
+    private void onStreamAbort(ConnectionQueue connection, int streamId) {
+        StreamTask abortTask = null;
+        lock.lock();
+        try {
+            for (Iterator<StreamTask> iterator = connection.tasks.iterator(); iterator.hasNext(); ) {
+                StreamTask task = iterator.next();
+                if (task.streamId == streamId) {
+                    iterator.remove();
+                    waitingCount--;
+                    abortTask = task;
+                    break;
+                }
+            }
+            if (connection.ready && connection.tasks.isEmpty()) {
+                readyQueue.remove(connection);
+                connection.ready = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (abortTask != null) {
+            abort(abortTask);
+        }
+    }
+
+    private void onConnectionClose(ConnectionQueue connection) {
+        List<StreamTask> abortList;
+        lock.lock();
+        try {
+            if (connection.closed) {
+                return;
+            }
+            connection.closed = true;
+            connectionCount--;
+            if (connection.ready) {
+                readyQueue.remove(connection);
+                connection.ready = false;
+            }
+            abortList = new ArrayList<>(connection.tasks);
+            waitingCount -= abortList.size();
+            connection.tasks.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (StreamTask task : abortList) {
+            abort(task);
+        }
+    }
+
+    private void abort(StreamTask task) {
+        abortCount.increment();
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("http2 stream abort before run. streamId = {}, channel = {}", task.streamId, task.connection.channel);
+        }
+        try {
+            abortHandler.accept(task.task);
+        } catch (Throwable e) {
+            LOGGER.warn("http2 stream abort error. streamId = {}, error = {}", task.streamId, e.toString(), e);
+        }
+    }
+
+    private void onComplete(StreamTask task) {
+        release(task);
+        dispatch();
+    }
+
+    private void release(StreamTask task) {
+        ConnectionQueue connection = task.connection;
+        lock.lock();
+        try {
+            runningCount--;
+            connection.runningCount--;
+            if (!connection.ready && !connection.closed && !connection.tasks.isEmpty()
+                    && connection.runningCount < maxConcurrentStreamsPerConnection) {
+                connection.virtualTime = Math.max(connection.virtualTime, virtualTime);
+                connection.ready = true;
+                readyQueue.offer(connection);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start the waiting streams in the fair order, until the concurrency cap
+     */
+    private void dispatch() {
+        while (true) {
+            StreamTask task;
+            lock.lock();
+            try {
+                if (runningCount >= maxConcurrentStreams) {
+                    return;
+                }
+                ConnectionQueue connection = readyQueue.poll();
+                if (connection == null) {
+                    return;
+                }
+                task = connection.tasks.poll();
+                virtualTime = Math.max(virtualTime, connection.virtualTime);
+                connection.virtualTime += MAX_WEIGHT / task.weight;
+                connection.runningCount++;
+                runningCount++;
+                waitingCount--;
+                if (!connection.tasks.isEmpty() && connection.runningCount < maxConcurrentStreamsPerConnection) {
+                    readyQueue.offer(connection);
+                } else {
+                    connection.ready = false;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            long waitNanos = System.nanoTime() - task.createNanos;
+            dispatchCount.increment();
+            waitNanosTotal.add(waitNanos);
+            long max;
+            while (waitNanos > (max = waitNanosMax.get()) && !waitNanosMax.compareAndSet(max, waitNanos)) {
+                // retry
+            }
+            try {
+                executorSupplier.get().execute(task);
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("http2 stream rejected. streamId = {}, channel = {}, error = {}", task.streamId, task.connection.channel, e.toString());
+                abort(task);
+                release(task);
+            }
+        }
+    }
+
+    public int getMaxConcurrentStreamsPerConnection() {
+        return maxConcurrentStreamsPerConnection;
+    }
+
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    /**
+     * Number of the streams running now
+     *
+     * @return running count
+     */
+    public int getRunningCount() {
+        return runningCount;
+    }
+
+    /**
+     * Number of the streams waiting in the queue (queue depth of all connections)
+     *
+     * @return waiting count
+     */
+    public int getWaitingCount() {
+        return waitingCount;
+    }
+
+    /**
+     * Queue depth of the connection
+     *
+     * @param channel connection
+     * @return waiting streams of the connection
+     */
+    public int getWaitingCount(Channel channel) {
+        ConnectionQueue connection = channel.attr(connectionQueueKey).get();
+        if (connection == null) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            return connection.tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Number of the streams started
+     *
+     * @return dispatch count
+     */
+    public long getDispatchCount() {
+        return dispatchCount.sum();
+    }
+
+    /**
+     * Number of the streams aborted before run (reset, connection closed, executor rejected)
+     *
+     * @return abort count
+     */
+    public long getAbortCount() {
+        return abortCount.sum();
+    }
+
+    /**
+     * Average queue wait time of the started streams
+     *
+     * @return nanos
+     */
+    public long getAvgWaitNanos() {
+        long count = dispatchCount.sum();
+        return count == 0 ? 0 : waitNanosTotal.sum() / count;
+    }
+
+    /**
+     * Max queue wait time of the started streams
+     *
+     * @return nanos
+     */
+    public long getMaxWaitNanos() {
+        return waitNanosMax.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Http2StreamScheduler{" +
+                "maxConcurrentStreamsPerConnection=" + maxConcurrentStreamsPerConnection +
+                ", maxConcurrentStreams=" + maxConcurrentStreams +
+                ", connectionCount=" + connectionCount +
+                ", runningCount=" + runningCount +
+                ", waitingCount=" + waitingCount +
+                ", dispatchCount=" + getDispatchCount() +
+                ", abortCount=" + getAbortCount() +
+                ", avgWaitNanos=" + getAvgWaitNanos() +
+                ", maxWaitNanos=" + getMaxWaitNanos() +
+                '}';
+    }
+
+    private static class ConnectionQueue {
+        private final Channel channel;
+        private final PriorityQueue<StreamTask> tasks = new PriorityQueue<>(TASK_COMPARATOR);
+        private long id;
+        private long virtualTime;
+        private int runningCount;
+        private boolean ready;
+        private boolean closed;
+
+        private ConnectionQueue(Channel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private class StreamTask implements Runnable {
+        private final ConnectionQueue connection;
+        private final int streamId;
+        private final int weight;
+        private final Runnable task;
+        private final long createNanos = System.nanoTime();
+        private long sequence;
+
+        private StreamTask(ConnectionQueue connection, int streamId, int weight, Runnable task) {
+            this.connection = connection;
+            this.streamId = streamId;
+            this.weight = weight;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                onComplete(this);
+            }
+        }
+    }
+}
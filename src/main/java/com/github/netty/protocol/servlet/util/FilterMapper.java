@@ -4,10 +4,8 @@ import com.github.netty.core.util.AntPathMatcher;
 import jakarta.servlet.DispatcherType;
 import jakarta.servlet.ServletContext;
 
-import java.util.Arrays;
-import java.util.EnumSet;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Filter mapping
@@ -37,16 +35,44 @@ public class FilterMapper<T> {
      * knowing where the last 'before' mapping was added.
      */
     private int insertPoint = 0;
+    /**
+     * Resolved filter chain cache. (dispatcherType - (path - immutable matched elements))
+     * The filter mappings almost never change after startup. any change replace the cache.
+     */
+    private volatile Map<String, List<Element<T>>>[] cache = newCache();
+    private int maxCacheSize = 1024;
 
     public FilterMapper() {
     }
 
+    private static <T> Map<String, List<Element<T>>>[] newCache() {
+        Map<String, List<Element<T>>>[] cache = new Map[DispatcherType.values().length];
+        for (int i = 0; i < cache.length; i++) {
+            cache[i] = new ConcurrentHashMap<>(64);
+        }
+        return cache;
+    }
+
     public void clear() {
         synchronized (lock) {
             array = new Element[0];
+            cache = newCache();
         }
     }
 
+    public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * Maximum cached paths per dispatcherType. the cache is cleared when full. (for example, path with id /user/1)
+     *
+     * @param maxCacheSize less than or equal to 0 is disable cache
+     */
+    public void setMaxCacheSize(int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+    }
+
     public void setEnableAntPathMatcher(boolean enableAntPathMatcher) {
         if (enableAntPathMatcher) {
             antPathMatcher = new AntPathMatcher();
@@ -54,6 +80,7 @@ public class FilterMapper<T> {
         } else {
             antPathMatcher = null;
         }
+        cache = newCache();
     }
 
     public boolean isEnableAntPathMatcher() {
@@ -71,6 +98,7 @@ public class FilterMapper<T> {
             Element[] results = Arrays.copyOf(array, array.length + 1);
             results[array.length] = filterMap;
             array = results;
+            cache = newCache();
         }
     }
 
@@ -89,6 +117,7 @@ public class FilterMapper<T> {
             results[insertPoint] = filterMap;
             array = results;
             insertPoint++;
+            cache = newCache();
         }
     }
 
@@ -120,6 +149,7 @@ public class FilterMapper<T> {
             if (n < insertPoint) {
                 insertPoint--;
             }
+            cache = newCache();
         }
     }
 
@@ -134,6 +164,7 @@ public class FilterMapper<T> {
             }
             this.rootPath = rootPath;
             this.array = newElements;
+            cache = newCache();
         }
     }
 
@@ -172,18 +203,48 @@ public class FilterMapper<T> {
      * @param relativePathNoQueryString relativePathNoQueryString
      */
     public void addMappingObjects(String relativePathNoQueryString, DispatcherType dispatcherType, List<Element<T>> list) {
+        list.addAll(getMappingObjects(relativePathNoQueryString, dispatcherType));
+    }
+
+    /**
+     * Get the matched mapping objects (in filter order). resolved once per (path, dispatcherType), then cached.
+     *
+     * @param relativePathNoQueryString relativePathNoQueryString
+     * @param dispatcherType            current dispatcherType
+     * @return immutable list. Do not modify
+     */
+    public List<Element<T>> getMappingObjects(String relativePathNoQueryString, DispatcherType dispatcherType) {
+        Map<String, List<Element<T>>> cache = this.cache[dispatcherType.ordinal()];
+        List<Element<T>> list = cache.get(relativePathNoQueryString);
+        if (list == null) {
+            list = match(relativePathNoQueryString, dispatcherType);
+            int maxCacheSize = this.maxCacheSize;
+            if (maxCacheSize > 0) {
+                if (cache.size() >= maxCacheSize) {
+                    cache.clear();
+                }
+                cache.put(relativePathNoQueryString, list);
+            }
+        }
+        return list;
+    }
+
+    private List<Element<T>> match(String relativePathNoQueryString, DispatcherType dispatcherType) {
         AntPathMatcher antPathMatcher = this.antPathMatcher;
+        List<Element<T>> list = null;
         for (Element<T> element : this.array) {
             if (element.dispatcherTypes != null && !element.dispatcherTypes.contains(dispatcherType)) {
                 continue;
             }
-            if (ServletUtil.matchFiltersURL(element.normOriginalPattern, relativePathNoQueryString)) {
-                list.add(element);
-            } else if (antPathMatcher != null && antPathMatcher.match(element.normOriginalPattern, relativePathNoQueryString, "*")) {
+            if (ServletUtil.matchFiltersURL(element.normOriginalPattern, relativePathNoQueryString)
+                    || (antPathMatcher != null && antPathMatcher.match(element.normOriginalPattern, relativePathNoQueryString, "*"))) {
+                if (list == null) {
+                    list = new ArrayList<>(8);
+                }
                 list.add(element);
             }
         }
-
+        return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
     }
 
     public static class Element<T> {
@@ -21,6 +21,7 @@ public class HttpConstants {
     public static final String DEFAULT_SESSION_COOKIE_PATH = "/";
     public static final AsciiString H2_EXT_STREAM_ID = AsciiString.cached("x-http2-stream-id");
     public static final AsciiString H2_EXT_SCHEME = AsciiString.cached("x-http2-scheme");
+    public static final AsciiString H2_EXT_STREAM_WEIGHT = AsciiString.cached("x-http2-stream-weight");
     public static final boolean EXIST_DEPENDENCY_H2;
     public static final boolean EXIST_JAKARTA_WEBSOCKET;
 
@@ -55,7 +55,7 @@ public class ServletUtil {
     private static byte[] HEX2B;
     private static long lastTimestamp = System.currentTimeMillis();
     private static final Date lastDate = new Date(lastTimestamp);
-    private static CharSequence nowRFCTime = DateFormatter.format(lastDate);
+    private static CharSequence nowRFCTime = new AsciiString(DateFormatter.format(lastDate));
 
     static {
         ANCIENT_DATE = COOKIE_DATE_PATTERN_SUPPLIER.get().format(new Date(10000));
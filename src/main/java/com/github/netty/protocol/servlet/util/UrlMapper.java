@@ -42,6 +42,9 @@ import java.util.*;
  * /index.bop              servlet4
  * Note that in the case of /catalog/index.html and /catalog/racecar.bop, the servlet mapped to "/catalog" is not used because it is not an exact match
  *
+ * The patterns are compiled to a segment trie on first lookup after a change, lookup cost is O(path segments).
+ * Precedence: exact &gt; longest path prefix (/foo/*) &gt; ant wildcard (if enabled) &gt; extension (*.bop) &gt; all (/, /*) &gt; "default".
+ *
  * @author wangzihao
  * Created on 2017-08-25 11:32.
  */
@@ -50,6 +53,10 @@ public class UrlMapper<T> {
     private int sort = 0;
     private String rootPath = "";
     private final Collection<Element<T>> elementList = new TreeSet<>();
+    /**
+     * compiled patterns. null if changed
+     */
+    private volatile Index<T> index;
 
     public UrlMapper() {
     }
@@ -78,6 +85,7 @@ public class UrlMapper<T> {
 
     public void clear() {
         elementList.clear();
+        index = null;
     }
 
     public void setEnableAntPathMatcher(boolean enableAntPathMatcher) {
@@ -87,6 +95,7 @@ public class UrlMapper<T> {
         } else {
             antPathMatcher = null;
         }
+        index = null;
     }
 
     public boolean isEnableAntPathMatcher() {
@@ -100,6 +109,7 @@ public class UrlMapper<T> {
         for (Element<T> element : elements) {
             elementList.add(new Element<>(rootPath, element.originalPattern, element.object, element.objectName, sort++));
         }
+        index = null;
     }
 
     /**
@@ -120,6 +130,7 @@ public class UrlMapper<T> {
             }
         }
         elementList.add(new Element<>(rootPath, urlPattern, object, objectName, sort++));
+        index = null;
     }
 
     /**
@@ -129,16 +140,286 @@ public class UrlMapper<T> {
      * @return T object
      */
     public Element<T> getMappingObjectByServletPath(String relativePathNoQueryString) {
-        Collection<Element<T>> elementList = this.elementList;
-        AntPathMatcher antPathMatcher = this.antPathMatcher;
-        for (Element<T> element : elementList) {
-            if (ServletUtil.matchFiltersURL(element.normOriginalPattern, relativePathNoQueryString)) {
-                return element;
-            } else if (antPathMatcher != null && antPathMatcher.match(element.normOriginalPattern, relativePathNoQueryString, "*")) {
+        Index<T> index = this.index;
+        if (index == null) {
+            synchronized (this) {
+                index = this.index;
+                if (index == null) {
+                    this.index = index = new Index<>(new ArrayList<>(elementList));
+                }
+            }
+        }
+        return index.match(relativePathNoQueryString, antPathMatcher);
+    }
+
+    /**
+     * Compiled patterns.
+     * exact map, segment trie (path prefix and ant literal prefix), extension map, all pattern, default.
+     */
+    static class Index<T> {
+        private final Map<String, Element<T>> exactMap = new HashMap<>();
+        private final Node<T> root = new Node<>();
+        private final SegmentMap<Element<T>> extensionMap = new SegmentMap<>();
+        private final List<Element<T>> defaultList = new ArrayList<>(1);
+        private Element<T> allElement;
+
+        /**
+         * @param sortedElementList elements in sort order. the first wins if the same pattern
+         */
+        Index(List<Element<T>> sortedElementList) {
+            for (Element<T> element : sortedElementList) {
+                String pattern = element.normOriginalPattern;
+                if (element.defaultFlag) {
+                    defaultList.add(element);
+                } else if (element.allPatternFlag) {
+                    if (allElement == null) {
+                        allElement = element;
+                    }
+                } else if (pattern.indexOf('*') == -1) {
+                    exactMap.putIfAbsent(pattern, element);
+                    // the ant path matcher also match the path not normalized (/a//b)
+                    addAnt(pattern, element);
+                } else if (pattern.startsWith("*.") && pattern.indexOf('*', 1) == -1 && pattern.indexOf('/') == -1) {
+                    extensionMap.putIfAbsent(pattern.substring(2), element);
+                } else if (pattern.endsWith("/*") && pattern.indexOf('*') == pattern.length() - 1) {
+                    Node<T> node = addPath(pattern, pattern.length() - 2);
+                    if (node.prefixElement == null) {
+                        node.prefixElement = element;
+                    }
+                    addAnt(pattern, element);
+                } else {
+                    addAnt(pattern, element);
+                }
+            }
+        }
+
+        private static int segmentBegin(String path) {
+            return !path.isEmpty() && path.charAt(0) == '/' ? 1 : 0;
+        }
+
+        /**
+         * add the segments of path[0, end) to the trie
+         */
+        private Node<T> addPath(String path, int end) {
+            Node<T> node = root;
+            int begin = segmentBegin(path);
+            while (begin <= end) {
+                int slash = path.indexOf('/', begin);
+                int segmentEnd = slash == -1 || slash > end ? end : slash;
+                String segment = path.substring(begin, segmentEnd);
+                Node<T> child = node.children.get(segment, 0, segment.length());
+                if (child == null) {
+                    child = new Node<>();
+                    node.children.putIfAbsent(segment, child);
+                }
+                node = child;
+                begin = segmentEnd + 1;
+            }
+            return node;
+        }
+
+        /**
+         * add the ant pattern to the node of literal segments before the first wildcard segment
+         */
+        private void addAnt(String pattern, Element<T> element) {
+            int begin = segmentBegin(pattern);
+            int literalEnd = -1;
+            for (int i = begin; i < pattern.length(); ) {
+                int slash = pattern.indexOf('/', i);
+                int segmentEnd = slash == -1 ? pattern.length() : slash;
+                if (slash == -1 || hasWildcard(pattern, i, segmentEnd)) {
+                    break;
+                }
+                literalEnd = segmentEnd;
+                i = segmentEnd + 1;
+            }
+            Node<T> node = literalEnd == -1 ? root : addPath(pattern, literalEnd);
+            node.antList.add(element);
+        }
+
+        private static boolean hasWildcard(String pattern, int begin, int end) {
+            for (int i = begin; i < end; i++) {
+                char c = pattern.charAt(i);
+                if (c == '*' || c == '?' || c == '{') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Element<T> match(String path, AntPathMatcher antPathMatcher) {
+            // 1. exact
+            Element<T> element = exactMap.get(path);
+            if (element != null) {
                 return element;
             }
+
+            // 2. longest path prefix
+            Element<T> prefix = null;
+            Node<T> node = root;
+            int length = path.length();
+            for (int begin = segmentBegin(path); begin <= length; ) {
+                int slash = path.indexOf('/', begin);
+                int end = slash == -1 ? length : slash;
+                node = node.children.get(path, begin, end);
+                if (node == null) {
+                    break;
+                }
+                if (node.prefixElement != null) {
+                    prefix = node.prefixElement;
+                }
+                begin = end + 1;
+            }
+            if (prefix != null) {
+                return prefix;
+            }
+
+            // 3. ant
+            if (antPathMatcher != null) {
+                element = matchAntPath(path, antPathMatcher);
+                if (element != null) {
+                    return element;
+                }
+            }
+
+            // 4. extension
+            if (!extensionMap.isEmpty()) {
+                int slash = path.lastIndexOf('/');
+                int period = path.lastIndexOf('.');
+                if (slash >= 0 && period > slash && period != length - 1) {
+                    element = extensionMap.get(path, period + 1, length);
+                    if (element != null) {
+                        return element;
+                    }
+                }
+            }
+
+            // 5. all
+            if (allElement != null) {
+                return allElement;
+            }
+
+            // 6. default
+            for (Element<T> defaultElement : defaultList) {
+                if (ServletUtil.matchFiltersURL(defaultElement.normOriginalPattern, path)
+                        || (antPathMatcher != null && antPathMatcher.match(defaultElement.normOriginalPattern, path, "*"))) {
+                    return defaultElement;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * walk the literal segments of the path. the empty segment is skipped, same as the ant path matcher (/a//b is /a/b)
+         */
+        private Element<T> matchAntPath(String path, AntPathMatcher antPathMatcher) {
+            Element<T> ant = matchAnt(root, path, null, antPathMatcher);
+            Node<T> node = root;
+            int length = path.length();
+            for (int begin = 0; begin < length; ) {
+                int slash = path.indexOf('/', begin);
+                int end = slash == -1 ? length : slash;
+                if (end > begin) {
+                    node = node.children.get(path, begin, end);
+                    if (node == null) {
+                        break;
+                    }
+                    if (!node.antList.isEmpty()) {
+                        ant = matchAnt(node, path, ant, antPathMatcher);
+                    }
+                }
+                begin = end + 1;
+            }
+            return ant;
+        }
+
+        /**
+         * @return the first (sort order) of best and the node ant elements that match
+         */
+        private static <T> Element<T> matchAnt(Node<T> node, String path, Element<T> best, AntPathMatcher antPathMatcher) {
+            for (Element<T> element : node.antList) {
+                if ((best == null || element.sort < best.sort)
+                        && antPathMatcher.match(element.normOriginalPattern, path, "*")) {
+                    best = element;
+                }
+            }
+            return best;
+        }
+    }
+
+    static class Node<T> {
+        final SegmentMap<Node<T>> children = new SegmentMap<>();
+        final List<Element<T>> antList = new ArrayList<>(0);
+        Element<T> prefixElement;
+    }
+
+    /**
+     * Open addressing map of string key, can get by a region of a string (no substring).
+     */
+    static class SegmentMap<V> {
+        private String[] keys = new String[4];
+        private Object[] values = new Object[4];
+        private int size;
+
+        private static int hash(CharSequence s, int begin, int end) {
+            int h = 0;
+            for (int i = begin; i < end; i++) {
+                h = 31 * h + s.charAt(i);
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean regionEquals(String key, String s, int begin, int end) {
+            return key.length() == end - begin && key.regionMatches(0, s, begin, end - begin);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        V get(String s, int begin, int end) {
+            if (size == 0) {
+                return null;
+            }
+            String[] keys = this.keys;
+            int mask = keys.length - 1;
+            for (int i = hash(s, begin, end) & mask; ; i = (i + 1) & mask) {
+                String key = keys[i];
+                if (key == null) {
+                    return null;
+                }
+                if (regionEquals(key, s, begin, end)) {
+                    return (V) values[i];
+                }
+            }
+        }
+
+        void putIfAbsent(String key, V value) {
+            if ((size + 1) * 2 > keys.length) {
+                String[] oldKeys = keys;
+                Object[] oldValues = values;
+                keys = new String[oldKeys.length << 1];
+                values = new Object[oldKeys.length << 1];
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != null) {
+                        putIfAbsent(oldKeys[i], (V) oldValues[i]);
+                    }
+                }
+            }
+            int mask = keys.length - 1;
+            for (int i = hash(key, 0, key.length()) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == null) {
+                    keys[i] = key;
+                    values[i] = value;
+                    size++;
+                    return;
+                }
+                if (keys[i].equals(key)) {
+                    return;
+                }
+            }
         }
-        return null;
     }
 
     public static class Element<T> implements Comparable<Element<T>> {
@@ -15,16 +15,18 @@ import java.util.*;
 import java.util.function.Supplier;
 
 /**
- * Scan rpc interfaces and definition bean using Solon style
+ * Scan rpc interfaces and definition bean using Solon style.
+ * the registrar is a lifecycle bean, close the rpc clients on destroy
  *
  * @author wangzihao
  */
-public class NettyRpcClientBeanDefinitionRegistrar {
+public class NettyRpcClientBeanDefinitionRegistrar implements ApplicationX.DisposableBean {
     private final LoggerX logger = LoggerFactoryX.getLogger(getClass());
 //    private final String enableNettyRpcClientsCanonicalName = EnableNettyRpcClients.class.getCanonicalName();
 //    private final String nettyRpcClientCanonicalName = NettyRpcClient.class.getCanonicalName();
     private Supplier<NettyRpcLoadBalanced> nettyRpcLoadBalancedSupplier;
     private Supplier<NettyProperties> nettyPropertiesSupplier;
+    private volatile NettyRpcLoadBalanced defaultLoadBalanced;
     private ApplicationX applicationX;
 
     public NettyRpcClientBeanDefinitionRegistrar() {
@@ -39,7 +41,10 @@ public class NettyRpcClientBeanDefinitionRegistrar {
         this.applicationX = applicationX;
         
         // 初始化Bean获取器
-        this.nettyRpcLoadBalancedSupplier = () -> applicationX.getBean(NettyRpcLoadBalanced.class);
+        this.nettyRpcLoadBalancedSupplier = () -> {
+            NettyRpcLoadBalanced loadBalanced = applicationX.getBean(NettyRpcLoadBalanced.class, null, false);
+            return loadBalanced != null ? loadBalanced : getDefaultLoadBalanced();
+        };
         this.nettyPropertiesSupplier = () -> {
             NettyProperties properties = applicationX.getBean(NettyProperties.class);
             logger.info("used codec = {}", DataCodecUtil.getDataCodec());
@@ -56,10 +61,44 @@ public class NettyRpcClientBeanDefinitionRegistrar {
             scanAndRegisterRpcClients(basePackage);
         }
 
+        // 注册自身, 销毁时关闭RPC客户端及共享的worker. (先于后处理器注册, 避免被后处理器改为非生命周期Bean)
+        applicationX.addSingletonBean(this, generateBeanName(getClass().getName()) + "#" + importingClass.getName(), true);
+
         // 注册Bean后处理器
         applicationX.addBeanPostProcessor(new SolonBeanPostProcessor());
     }
 
+    /**
+     * Close the rpc clients. the shared worker of the client pool is shutdown here, the client stop not shutdown it
+     *
+     * @see NettyRpcClientProxy#closeClients()
+     */
+    @Override
+    public void destroy() {
+        NettyRpcClientProxy.closeClients();
+    }
+
+    /**
+     * The built-in load balanced. when no NettyRpcLoadBalanced bean
+     *
+     * @return LeastPendingNettyRpcLoadBalanced
+     * @see NettyProperties.Nrpc#getClientAddresses()
+     */
+    private NettyRpcLoadBalanced getDefaultLoadBalanced() {
+        if (defaultLoadBalanced == null) {
+            synchronized (this) {
+                if (defaultLoadBalanced == null) {
+                    List<String> addresses = nettyPropertiesSupplier.get().getNrpc().getClientAddresses();
+                    if (addresses == null || addresses.isEmpty()) {
+                        throw new IllegalStateException("Not found bean. by type=" + NettyRpcLoadBalanced.class + ". or config server.netty.nrpc.clientAddresses");
+                    }
+                    defaultLoadBalanced = LeastPendingNettyRpcLoadBalanced.parse(addresses);
+                }
+            }
+        }
+        return defaultLoadBalanced;
+    }
+
     private void scanAndRegisterRpcClients(String basePackage) {
         try {
             // 使用ApplicationX的扫描功能
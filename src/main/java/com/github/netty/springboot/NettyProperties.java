@@ -2,6 +2,8 @@ package com.github.netty.springboot;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionHandler;
@@ -12,6 +14,7 @@ import com.github.netty.core.util.AbortPolicyWithReport;
 import com.github.netty.core.util.ApplicationX;
 import com.github.netty.core.util.NettyThreadPoolExecutor;
 import com.github.netty.protocol.DynamicProtocolChannelHandler;
+import com.github.netty.protocol.mqtt.OffHeapQueueRepository;
 import com.github.netty.protocol.mysql.client.MysqlFrontendBusinessHandler;
 import com.github.netty.protocol.mysql.server.MysqlBackendBusinessHandler;
 import com.github.netty.protocol.nrpc.codec.DataCodecUtil;
@@ -298,6 +301,14 @@ public class NettyProperties implements Serializable {
          * 为null则会去取servlet.http.enabled
          */
         private Boolean enableH2 = null;
+        /**
+         * http2(h2, h2c) - 每个连接同时执行的最大stream数, 超过的stream在连接的队列里等待 (多个连接之间按stream权重公平调度, 等待中的stream被客户端取消(RST_STREAM)或连接关闭时不再执行). 小于等于0则不调度, 直接提交给线程池
+         */
+        private int h2MaxConcurrentStreamsPerConnection = 0;
+        /**
+         * http2(h2, h2c) - 所有连接同时执行的最大stream数(需要开启h2MaxConcurrentStreamsPerConnection). 小于等于0则不限制
+         */
+        private int h2MaxConcurrentStreams = 0;
         /**
          * 是否开启Websocket  upgrade: ws
          */
@@ -324,6 +335,14 @@ public class NettyProperties implements Serializable {
          * 响应最大缓冲区大小（超过这个大小，会触发flush方法，发送给网络并清空缓冲区）
          */
         private int responseMaxBufferSize = 8192 * 10;
+        /**
+         * 静态资源(DefaultServlet) - 热点小文件缓存的最大字节 (LRU淘汰, 包含预压缩的gzip内容, 文件修改后自动重新加载). 小于等于0则不开启
+         */
+        private long staticResourceCacheMaxBytes = 0;
+        /**
+         * 静态资源(DefaultServlet) - 可缓存的单个文件最大字节. 超过的大文件不缓存, 用零拷贝(FileRegion)发送
+         */
+        private int staticResourceCacheMaxFileBytes = 1024 * 1024;
         /**
          * 接收客户端的文件上传超时时间(毫秒). -1 表示永远不超时。
          */
@@ -332,6 +351,15 @@ public class NettyProperties implements Serializable {
          * 客户端断开后，如果超过abortAfterMessageTimeoutMs后，还没有收到完整的body，则抛出abort异常
          */
         private long abortAfterMessageTimeoutMs = 500;
+        /**
+         * 是否开启multipart流式解析. 开启后文件上传边接收边解析(在上传线程池写磁盘, 不占用IO线程), 解析出的Part不用等整个body接收完就可以获取, 并且不再额外保存原始body到临时文件.
+         * 注: 开启后multipart请求的getInputStream()读不到数据, 请用getParts()或getPart(name)
+         */
+        private boolean enableMultipartStreaming = false;
+        /**
+         * multipart流式解析 - 未解析的字节超过这个大小后, 暂停读取客户端数据(autoRead=false), 直到低于一半再恢复
+         */
+        private long multipartStreamingHighWaterMark = 1024 * 1024;
         /**
          * 不会出现在body中的字段. 仅限于 multipart/form-data, application/x-www-form-urlencoded. （为了避免因为要获取某个字段，一直在等客户端发完数据。）
          */
@@ -345,6 +373,14 @@ public class NettyProperties implements Serializable {
          * session存储 - session远程存储的url地址, 注: 如果不设置就不会开启
          */
         private String sessionRemoteServerAddress;
+        /**
+         * session存储 - 远程存储的本地缓存(近端缓存)最多缓存多少个session, 0=不开启. 缓存解码后的session, 每次获取只校验版本号, 其他节点修改后才重新拉取
+         */
+        private int sessionRemoteNearCacheMaxSize = 0;
+        /**
+         * session存储 - 远程存储的本地缓存, 在这个时间内直接使用缓存不校验版本号(毫秒), 0=每次获取都校验版本号
+         */
+        private long sessionRemoteNearCacheRevalidateIntervalMs = 0;
 
         /**
          * servlet文件存储的根目录。(servlet文件上传下载) 如果未指定，则使用临时目录。
@@ -392,6 +428,22 @@ public class NettyProperties implements Serializable {
             this.abortAfterMessageTimeoutMs = abortAfterMessageTimeoutMs;
         }
 
+        public boolean isEnableMultipartStreaming() {
+            return enableMultipartStreaming;
+        }
+
+        public void setEnableMultipartStreaming(boolean enableMultipartStreaming) {
+            this.enableMultipartStreaming = enableMultipartStreaming;
+        }
+
+        public long getMultipartStreamingHighWaterMark() {
+            return multipartStreamingHighWaterMark;
+        }
+
+        public void setMultipartStreamingHighWaterMark(long multipartStreamingHighWaterMark) {
+            this.multipartStreamingHighWaterMark = multipartStreamingHighWaterMark;
+        }
+
         public boolean isEnableUrlServletAntPathMatcher() {
             return enableUrlServletAntPathMatcher;
         }
@@ -500,6 +552,38 @@ public class NettyProperties implements Serializable {
             this.responseMaxBufferSize = responseMaxBufferSize;
         }
 
+        public int getH2MaxConcurrentStreamsPerConnection() {
+            return h2MaxConcurrentStreamsPerConnection;
+        }
+
+        public void setH2MaxConcurrentStreamsPerConnection(int h2MaxConcurrentStreamsPerConnection) {
+            this.h2MaxConcurrentStreamsPerConnection = h2MaxConcurrentStreamsPerConnection;
+        }
+
+        public int getH2MaxConcurrentStreams() {
+            return h2MaxConcurrentStreams;
+        }
+
+        public void setH2MaxConcurrentStreams(int h2MaxConcurrentStreams) {
+            this.h2MaxConcurrentStreams = h2MaxConcurrentStreams;
+        }
+
+        public long getStaticResourceCacheMaxBytes() {
+            return staticResourceCacheMaxBytes;
+        }
+
+        public void setStaticResourceCacheMaxBytes(long staticResourceCacheMaxBytes) {
+            this.staticResourceCacheMaxBytes = staticResourceCacheMaxBytes;
+        }
+
+        public int getStaticResourceCacheMaxFileBytes() {
+            return staticResourceCacheMaxFileBytes;
+        }
+
+        public void setStaticResourceCacheMaxFileBytes(int staticResourceCacheMaxFileBytes) {
+            this.staticResourceCacheMaxFileBytes = staticResourceCacheMaxFileBytes;
+        }
+
         public boolean isEnableNsLookup() {
             return enableNsLookup;
         }
@@ -548,6 +632,22 @@ public class NettyProperties implements Serializable {
             this.sessionRemoteServerAddress = sessionRemoteServerAddress;
         }
 
+        public int getSessionRemoteNearCacheMaxSize() {
+            return sessionRemoteNearCacheMaxSize;
+        }
+
+        public void setSessionRemoteNearCacheMaxSize(int sessionRemoteNearCacheMaxSize) {
+            this.sessionRemoteNearCacheMaxSize = sessionRemoteNearCacheMaxSize;
+        }
+
+        public long getSessionRemoteNearCacheRevalidateIntervalMs() {
+            return sessionRemoteNearCacheRevalidateIntervalMs;
+        }
+
+        public void setSessionRemoteNearCacheRevalidateIntervalMs(long sessionRemoteNearCacheRevalidateIntervalMs) {
+            this.sessionRemoteNearCacheRevalidateIntervalMs = sessionRemoteNearCacheRevalidateIntervalMs;
+        }
+
         public File getBasedir() {
             return basedir;
         }
@@ -576,6 +676,30 @@ public class NettyProperties implements Serializable {
              * 如果出现繁忙拒绝执行, 则会自动dump线程信息. 值为空字符串则不进行dump.
              */
             private String dumpPath = System.getProperty("user.home");
+            /**
+             * 执行模式. virtual=每个servlet请求一个虚拟线程(JDK21+), 适合阻塞的Spring MVC控制器, 不会阻塞IO线程也不受maxThreads限制. 响应仍由channel绑定的IO线程写出. 低于JDK21自动回退为线程池
+             */
+            private ThreadPoolMode mode = ThreadPoolMode.pool;
+            /**
+             * 虚拟线程模式下, 每个ServletContext的最大并发请求数(代替线程池大小), 超过则排队等待. 小于等于0则不限制
+             */
+            private int virtualMaxConcurrency = 10000;
+
+            public ThreadPoolMode getMode() {
+                return mode;
+            }
+
+            public void setMode(ThreadPoolMode mode) {
+                this.mode = mode;
+            }
+
+            public int getVirtualMaxConcurrency() {
+                return virtualMaxConcurrency;
+            }
+
+            public void setVirtualMaxConcurrency(int virtualMaxConcurrency) {
+                this.virtualMaxConcurrency = virtualMaxConcurrency;
+            }
 
             public boolean isEnable() {
                 return enable;
@@ -749,6 +873,20 @@ public class NettyProperties implements Serializable {
         }
     }
 
+    /**
+     * 业务线程执行模式
+     */
+    public enum ThreadPoolMode {
+        /**
+         * 线程池 (maxThreads限制并发)
+         */
+        pool,
+        /**
+         * 虚拟线程 (JDK21+, 每个请求一个虚拟线程, 不限线程数. 低于JDK21自动回退为线程池)
+         */
+        virtual
+    }
+
     public static class Nrpc {
         /**
          * RPC服务端 - 业务线程池配置
@@ -759,7 +897,7 @@ public class NettyProperties implements Serializable {
          */
         private boolean enabled = false;
         /**
-         * 编码-fastjson最快，jdk需要实现序列化接口
+         * 编码-fastjson最快，jdk需要实现序列化接口, binary按方法参数类型编译二进制格式(客户端与服务端需使用相同的接口参数类型)
          */
         private Codec codec = Codec.jdk;
         /**
@@ -806,6 +944,34 @@ public class NettyProperties implements Serializable {
          * RPC服务端 - 每次消息最大长度 (默认10M)
          */
         private int serverMessageMaxLength = 10 * 1024 * 1024;
+        /**
+         * RPC服务端 - 零拷贝解码. 请求体直接引用网络包(不拷贝成byte[]), 服务名与方法名走缓存(不重复创建字符串)
+         */
+        private boolean serverZeroCopyDecode = false;
+        /**
+         * RPC客户端 - 方法编号. 每个连接首次调用时与服务端协商(服务名,版本,方法名)的数字编号, 之后请求只传编号. 服务端不支持时自动使用名称
+         */
+        private boolean clientMethodIdEnable = false;
+        /**
+         * RPC客户端 - 批量写. 多个调用线程的请求放入无锁队列, 由连接的IO线程合并写入后只flush一次(减少系统调用)
+         */
+        private boolean clientWriteBatchEnable = false;
+        /**
+         * RPC客户端 - 批量写, 一批最多的请求数量, 达到后立即flush
+         */
+        private int clientWriteBatchMaxSize = 64;
+        /**
+         * RPC客户端 - 批量写, 一批中第一个请求最多等待的时间(微秒), 超过后立即flush
+         */
+        private long clientWriteBatchMaxLingerMicros = 50;
+        /**
+         * RPC客户端 - 每个服务端地址的连接数. 大于1时每次调用选择在途请求(未响应)最少的连接, 避免所有请求都经过同一个IO线程
+         */
+        private int clientPoolSize = 1;
+        /**
+         * RPC客户端 - 服务端地址列表(host:port). 没有自定义NettyRpcLoadBalanced时, 使用内置的按在途请求数最少选择地址的负载均衡 {@link com.github.netty.springboot.client.LeastPendingNettyRpcLoadBalanced}
+         */
+        private List<String> clientAddresses = new ArrayList<>();
         /**
          * RPC客户端 - 用户接口的全局默认版本，可以用主动覆盖 {@link com.github.netty.annotation.NRpcService#version() }
          */
@@ -942,10 +1108,67 @@ public class NettyProperties implements Serializable {
             this.serverMessageMaxLength = serverMessageMaxLength;
         }
 
+        public boolean isServerZeroCopyDecode() {
+            return serverZeroCopyDecode;
+        }
+
+        public void setServerZeroCopyDecode(boolean serverZeroCopyDecode) {
+            this.serverZeroCopyDecode = serverZeroCopyDecode;
+        }
+
+        public boolean isClientMethodIdEnable() {
+            return clientMethodIdEnable;
+        }
+
+        public void setClientMethodIdEnable(boolean clientMethodIdEnable) {
+            this.clientMethodIdEnable = clientMethodIdEnable;
+        }
+
+        public boolean isClientWriteBatchEnable() {
+            return clientWriteBatchEnable;
+        }
+
+        public void setClientWriteBatchEnable(boolean clientWriteBatchEnable) {
+            this.clientWriteBatchEnable = clientWriteBatchEnable;
+        }
+
+        public int getClientWriteBatchMaxSize() {
+            return clientWriteBatchMaxSize;
+        }
+
+        public void setClientWriteBatchMaxSize(int clientWriteBatchMaxSize) {
+            this.clientWriteBatchMaxSize = clientWriteBatchMaxSize;
+        }
+
+        public long getClientWriteBatchMaxLingerMicros() {
+            return clientWriteBatchMaxLingerMicros;
+        }
+
+        public void setClientWriteBatchMaxLingerMicros(long clientWriteBatchMaxLingerMicros) {
+            this.clientWriteBatchMaxLingerMicros = clientWriteBatchMaxLingerMicros;
+        }
+
+        public int getClientPoolSize() {
+            return clientPoolSize;
+        }
+
+        public void setClientPoolSize(int clientPoolSize) {
+            this.clientPoolSize = clientPoolSize;
+        }
+
+        public List<String> getClientAddresses() {
+            return clientAddresses;
+        }
+
+        public void setClientAddresses(List<String> clientAddresses) {
+            this.clientAddresses = clientAddresses;
+        }
+
         public enum Codec {
             fastjson,
             jackson,
             jdk,
+            binary,
             auto
         }
 
@@ -969,6 +1192,30 @@ public class NettyProperties implements Serializable {
              * 如果出现繁忙拒绝执行, 则会自动dump线程信息. 值为空字符串则不进行dump.
              */
             private String dumpPath = System.getProperty("user.home");
+            /**
+             * 执行模式. virtual=虚拟线程(JDK21+), 适合业务阻塞在JDBC或下游调用的服务, 可以同时挂起上万个请求. 低于JDK21自动回退为线程池
+             */
+            private ThreadPoolMode mode = ThreadPoolMode.pool;
+            /**
+             * 虚拟线程模式下, 每个服务的最大并发数(代替线程池大小), 服务可以用 @NRpcService(maxConcurrency) 单独配置. 小于等于0则不限制
+             */
+            private int virtualMaxConcurrencyPerService = 10000;
+
+            public ThreadPoolMode getMode() {
+                return mode;
+            }
+
+            public void setMode(ThreadPoolMode mode) {
+                this.mode = mode;
+            }
+
+            public int getVirtualMaxConcurrencyPerService() {
+                return virtualMaxConcurrencyPerService;
+            }
+
+            public void setVirtualMaxConcurrencyPerService(int virtualMaxConcurrencyPerService) {
+                this.virtualMaxConcurrencyPerService = virtualMaxConcurrencyPerService;
+            }
 
             public boolean isEnable() {
                 return enable;
@@ -1069,6 +1316,81 @@ public class NettyProperties implements Serializable {
          * 刷新缓冲区数据间隔(毫秒),开启定时发送的好处是,批量发送带来的高吞吐,但是会有延迟。 (如果大于0秒则定时发送缓冲区数据, 小于等于0秒则实时发送数据)
          */
         private int autoFlushIdleMs = 0;
+        /**
+         * 持久化存储目录(离线消息队列, 保留消息, 订阅关系), 使用追加写的分段文件(内存映射). 为空则使用内存存储, 重启后丢失
+         */
+        private String persistentStorePath;
+        /**
+         * 持久化存储的组提交间隔(毫秒), 每个间隔刷一次盘. (小于等于0则每次写入都刷盘)
+         */
+        private long autosaveIntervalMs = 1000;
+        /**
+         * 持久化存储的分段文件大小(字节)
+         */
+        private int segmentSize = 64 * 1024 * 1024;
+        /**
+         * 内存离线消息队列的总字节上限(堆外环形内存区大小), 所有客户端共享. 例: 67108864(64M)
+         * 默认0, 小于等于0则不限制, 使用无界队列(与之前版本一致). 大于0时开启有界队列, 超出上限按queueOverflowPolicy丢弃消息. 配置了持久化存储目录时不生效
+         */
+        private int queueMaxBytes = 0;
+        /**
+         * 内存离线消息队列的单个客户端字节上限
+         */
+        private int queueMaxBytesPerClient = 4 * 1024 * 1024;
+        /**
+         * 内存离线消息队列超出上限时的策略. DROP_OLDEST=丢弃最旧的消息, DROP_NEWEST=丢弃新消息, DISCONNECT=断开慢客户端的连接.
+         * 客户端队列满或共享内存被未消费的消息占满时, DROP_NEWEST和DISCONNECT丢弃新消息(DISCONNECT还断开发送目标客户端, 共享内存满时断开最旧消息所属的客户端).
+         * 共享内存有足够空间但被其他客户端最旧的消息阻塞时, DROP_NEWEST和DISCONNECT丢弃该客户端最旧的消息并接收新消息(DISCONNECT还断开该客户端)
+         */
+        private OffHeapQueueRepository.OverflowPolicy queueOverflowPolicy = OffHeapQueueRepository.OverflowPolicy.DROP_OLDEST;
+
+        public String getPersistentStorePath() {
+            return persistentStorePath;
+        }
+
+        public void setPersistentStorePath(String persistentStorePath) {
+            this.persistentStorePath = persistentStorePath;
+        }
+
+        public long getAutosaveIntervalMs() {
+            return autosaveIntervalMs;
+        }
+
+        public void setAutosaveIntervalMs(long autosaveIntervalMs) {
+            this.autosaveIntervalMs = autosaveIntervalMs;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public int getQueueMaxBytes() {
+            return queueMaxBytes;
+        }
+
+        public void setQueueMaxBytes(int queueMaxBytes) {
+            this.queueMaxBytes = queueMaxBytes;
+        }
+
+        public int getQueueMaxBytesPerClient() {
+            return queueMaxBytesPerClient;
+        }
+
+        public void setQueueMaxBytesPerClient(int queueMaxBytesPerClient) {
+            this.queueMaxBytesPerClient = queueMaxBytesPerClient;
+        }
+
+        public OffHeapQueueRepository.OverflowPolicy getQueueOverflowPolicy() {
+            return queueOverflowPolicy;
+        }
+
+        public void setQueueOverflowPolicy(OffHeapQueueRepository.OverflowPolicy queueOverflowPolicy) {
+            this.queueOverflowPolicy = queueOverflowPolicy;
+        }
 
         public int getMessageMaxLength() {
             return messageMaxLength;
@@ -0,0 +1,81 @@
+package com.github.netty.springboot.client;
+
+import com.github.netty.core.util.StringUtil;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Load balancing by the least in-flight request count of the address. {@link NettyRpcClientProxy#getPendingCount(InetSocketAddress)}
+ * Used when no NettyRpcLoadBalanced bean, and config the addresses {@link com.github.netty.springboot.NettyProperties.Nrpc#getClientAddresses()}
+ *
+ * @author wangzihao
+ */
+public class LeastPendingNettyRpcLoadBalanced implements NettyRpcLoadBalanced {
+    private final List<InetSocketAddress> addressList;
+
+    public LeastPendingNettyRpcLoadBalanced(Collection<InetSocketAddress> addressList) {
+        if (addressList == null || addressList.isEmpty()) {
+            throw new IllegalArgumentException("LeastPendingNettyRpcLoadBalanced addressList is empty");
+        }
+        this.addressList = Collections.unmodifiableList(new ArrayList<>(addressList));
+    }
+
+    /**
+     * Parse addresses
+     *
+     * @param addresses host:port
+     * @return LeastPendingNettyRpcLoadBalanced
+     */
+    public static LeastPendingNettyRpcLoadBalanced parse(Collection<String> addresses) {
+        List<InetSocketAddress> addressList = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            if (StringUtil.isEmpty(address)) {
+                continue;
+            }
+            int index = address.lastIndexOf(':');
+            if (index <= 0) {
+                throw new IllegalArgumentException("LeastPendingNettyRpcLoadBalanced address format is host:port. address=" + address);
+            }
+            addressList.add(new InetSocketAddress(address.substring(0, index).trim(),
+                    Integer.parseInt(address.substring(index + 1).trim())));
+        }
+        return new LeastPendingNettyRpcLoadBalanced(addressList);
+    }
+
+    @Override
+    public InetSocketAddress chooseAddress(NettyRpcRequest request) {
+        int size = addressList.size();
+        if (size == 1) {
+            return addressList.get(0);
+        }
+        // random begin. the same pending count will not always chose the first
+        int begin = ThreadLocalRandom.current().nextInt(size);
+        InetSocketAddress result = null;
+        int resultPending = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            InetSocketAddress address = addressList.get((begin + i) % size);
+            int pending = NettyRpcClientProxy.getPendingCount(address);
+            if (pending < resultPending) {
+                result = address;
+                resultPending = pending;
+            }
+        }
+        return result;
+    }
+
+    public List<InetSocketAddress> getAddressList() {
+        return addressList;
+    }
+
+    @Override
+    public String toString() {
+        return "LeastPendingNettyRpcLoadBalanced{" +
+                "addressList=" + addressList +
+                '}';
+    }
+}
@@ -4,10 +4,12 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
@@ -38,12 +40,14 @@ import com.github.netty.protocol.nrpc.RpcServerInstance;
 import com.github.netty.protocol.nrpc.exception.RpcConnectException;
 import com.github.netty.springboot.NettyProperties;
 
+import io.netty.channel.EventLoopGroup;
 import io.netty.util.concurrent.FastThreadLocal;
 
 /**
  * RPC client proxy (thread safe)
- * 1. Management rpc client different ip addresses. Ip address corresponds to a client only.
+ * 1. Management rpc client different ip addresses. Ip address corresponds to a client pool (size = {@link NettyProperties.Nrpc#getClientPoolSize()}).
  * 2. In selecting ip address, will call NettyRpcLoadBalanced.class.
+ * 3. In selecting client of the pool, will chose the least pending (in-flight request count) client.
  *
  * @author wangzihao
  * @see com.github.netty.springboot.client.NettyRpcLoadBalanced#chooseAddress(NettyRpcRequest)
@@ -62,7 +66,27 @@ import io.netty.util.concurrent.FastThreadLocal;
  * @see RequestPart
  */
 public class NettyRpcClientProxy implements InvocationHandler {
+    /**
+     * 创建一个适用于NettyRpcFilter的比较器
+     */
+    private static final Comparator<NettyRpcFilter> FILTER_COMPARATOR = (filter1, filter2) -> {
+        // 检查是否实现了Ordered接口
+        if (filter1 instanceof Ordered && filter2 instanceof Ordered) {
+            Ordered ordered1 = (Ordered) filter1;
+            Ordered ordered2 = (Ordered) filter2;
+            return ordered1.getOrder() < ordered2.getOrder() ? -1 : 1;
+        }
+        // 如果只有一个实现了Ordered接口，则优先
+        else if (filter1 instanceof Ordered) {
+            return -1;
+        } else if (filter2 instanceof Ordered) {
+            return 1;
+        }
+        // 都没有实现Ordered接口，则保持原有顺序
+        return 0;
+    };
     private static final Map<InetSocketAddress, RpcClient> CLIENT_MAP = new ConcurrentHashMap<>(64);
+    private static final Map<InetSocketAddress, RpcClient[]> CLIENT_POOL_MAP = new ConcurrentHashMap<>(64);
     private static final FastThreadLocal<DefaultNettyRpcRequest> REQUEST_THREAD_LOCAL = new FastThreadLocal<DefaultNettyRpcRequest>() {
         @Override
         protected DefaultNettyRpcRequest initialValue() throws Exception {
@@ -88,6 +112,7 @@ public class NettyRpcClientProxy implements InvocationHandler {
     private int timeout;
     private final NettyProperties properties;
     private Supplier<NettyRpcLoadBalanced> loadBalancedSupplier;
+    private volatile NettyRpcFilterListCache nettyRpcFilterListCache;
 
     NettyRpcClientProxy(String serviceName, String requestMappingName, Class interfaceClass, NettyProperties properties, Supplier<NettyRpcLoadBalanced> loadBalancedSupplier) {
         this.serviceName = serviceName;
@@ -108,10 +133,61 @@ public class NettyRpcClientProxy implements InvocationHandler {
         return FILTER_CHAIN_THREAD_LOCAL.get();
     }
 
+    /**
+     * First client of each address pool
+     *
+     * @return address - client
+     */
     public static Map<InetSocketAddress, RpcClient> getClientMap() {
         return CLIENT_MAP;
     }
 
+    public static Map<InetSocketAddress, RpcClient[]> getClientPoolMap() {
+        return CLIENT_POOL_MAP;
+    }
+
+    /**
+     * Close all clients of the pools, and shutdown the worker shared by the clients of a pool.
+     * the pools is static, so call it only when the application is shutdown.
+     *
+     * @see NettyRpcClientBeanDefinitionRegistrar#destroy()
+     */
+    public static void closeClients() {
+        synchronized (CLIENT_MAP) {
+            for (RpcClient[] pool : CLIENT_POOL_MAP.values()) {
+                for (RpcClient rpcClient : pool) {
+                    rpcClient.close();
+                }
+                if (pool.length > 1) {
+                    EventLoopGroup worker = pool[0].getWorker();
+                    if (worker != null) {
+                        worker.shutdownGracefully();
+                    }
+                }
+            }
+            CLIENT_POOL_MAP.clear();
+            CLIENT_MAP.clear();
+        }
+    }
+
+    /**
+     * In-flight request count of the address. (sum of the pool)
+     *
+     * @param address address
+     * @return pending count. 0 if the address not connected
+     */
+    public static int getPendingCount(InetSocketAddress address) {
+        RpcClient[] pool = CLIENT_POOL_MAP.get(address);
+        if (pool == null) {
+            return 0;
+        }
+        int count = 0;
+        for (RpcClient rpcClient : pool) {
+            count += rpcClient.getRpcDoneMap().size();
+        }
+        return count;
+    }
+
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
         String methodName = method.getName();
@@ -129,7 +205,7 @@ public class NettyRpcClientProxy implements InvocationHandler {
             return this.equals(args[0]);
         }
 
-        NettyRpcFilterChain filterChain = FILTER_CHAIN_THREAD_LOCAL.get();
+        NettyRpcFilterChain filterChain = null;
         DefaultNettyRpcRequest request = REQUEST_THREAD_LOCAL.get();
         request.args = args;
         request.method = method;
@@ -153,37 +229,40 @@ public class NettyRpcClientProxy implements InvocationHandler {
             }
             request.sender = sender;
 
-            filterChain.nettyRpcFilterList = getNettyRpcFilterList();
-            filterChain.doFilter(request);
+            List<NettyRpcFilter> nettyRpcFilterList = getNettyRpcFilterList();
+            if (!nettyRpcFilterList.isEmpty()) {
+                filterChain = FILTER_CHAIN_THREAD_LOCAL.get();
+                filterChain.nettyRpcFilterList = nettyRpcFilterList;
+                filterChain.doFilter(request);
+            }
             return request.getResponse();
         } finally {
             request.recycle();
-            filterChain.recycle();
+            if (filterChain != null) {
+                filterChain.recycle();
+            }
         }
     }
 
+    /**
+     * Get the sorted filter list. Cached, rebuild only when a new NettyRpcFilter bean is registered
+     *
+     * @return unmodifiable sorted filter list
+     * @see ApplicationX#getBeanTypeVersion(Class)
+     */
     public List<NettyRpcFilter> getNettyRpcFilterList() {
-        // 使用Solon风格获取Bean列表
-        List<NettyRpcFilter> nettyRpcFilterList = properties.getApplication().getBeanForType(NettyRpcFilter.class);
-        // 创建一个适用于NettyRpcFilter的比较器
-        nettyRpcFilterList.sort((filter1, filter2) -> {
-            // 检查是否实现了Ordered接口
-            if (filter1 instanceof Ordered && filter2 instanceof Ordered) {
-                Ordered ordered1 = (Ordered) filter1;
-                Ordered ordered2 = (Ordered) filter2;
-                return ordered1.getOrder() < ordered2.getOrder() ? -1 : 1;
-            }
-            // 如果只有一个实现了Ordered接口，则优先
-            else if (filter1 instanceof Ordered) {
-                return -1;
-            }
-            else if (filter2 instanceof Ordered) {
-                return 1;
-            }
-            // 都没有实现Ordered接口，则保持原有顺序
-            return 0;
-        });
-        return nettyRpcFilterList;
+        ApplicationX application = properties.getApplication();
+        int version = application.getBeanTypeVersion(NettyRpcFilter.class);
+        NettyRpcFilterListCache cache = this.nettyRpcFilterListCache;
+        if (cache == null || cache.version != version) {
+            // 使用Solon风格获取Bean列表
+            List<NettyRpcFilter> nettyRpcFilterList = application.getBeanForType(NettyRpcFilter.class);
+            nettyRpcFilterList.sort(FILTER_COMPARATOR);
+            cache = new NettyRpcFilterListCache(version, nettyRpcFilterList.isEmpty() ?
+                    Collections.emptyList() : Collections.unmodifiableList(nettyRpcFilterList));
+            this.nettyRpcFilterListCache = cache;
+        }
+        return cache.nettyRpcFilterList;
     }
 
     public int getTimeout() {
@@ -231,32 +310,82 @@ public class NettyRpcClientProxy implements InvocationHandler {
     }
 
     /**
-     * Get the RPC client (from the current thread, if not, create it automatically)
+     * Get the RPC client (least pending client of the address pool, if not, create it automatically)
      *
      * @param address InetSocketAddress
      * @return RpcClient
      */
     public RpcClient getClient(InetSocketAddress address) {
-        RpcClient rpcClient = CLIENT_MAP.get(address);
-        if (rpcClient == null) {
+        RpcClient[] pool = CLIENT_POOL_MAP.get(address);
+        if (pool == null) {
             synchronized (CLIENT_MAP) {
-                rpcClient = CLIENT_MAP.get(address);
-                if (rpcClient == null) {
-                    NettyProperties.Nrpc nrpc = properties.getNrpc();
-                    rpcClient = new RpcClient(address);
-                    // 使用Solon风格获取Bean列表
-                    rpcClient.getAopList().addAll(properties.getApplication().getBeanForType(RpcClientAop.class));
-                    rpcClient.setIoThreadCount(nrpc.getClientIoThreads());
-                    rpcClient.setIoRatio(nrpc.getClientIoRatio());
-                    rpcClient.setConnectTimeout(nrpc.getClientConnectTimeout());
-                    rpcClient.setIdleTimeMs(nrpc.getClientHeartIntervalTimeMs());
-                    rpcClient.setReconnectScheduledIntervalMs(nrpc.getClientReconnectScheduledIntervalMs());
-                    rpcClient.setEnableRpcHeartLog(nrpc.isClientEnableHeartLog());
-                    rpcClient.setEnableReconnectScheduledTask(nrpc.isClientReconnectScheduledTaskEnable());
-                    CLIENT_MAP.put(address, rpcClient);
+                pool = CLIENT_POOL_MAP.get(address);
+                if (pool == null) {
+                    int poolSize = Math.max(1, properties.getNrpc().getClientPoolSize());
+                    pool = new RpcClient[poolSize];
+                    for (int i = 0; i < poolSize; i++) {
+                        pool[i] = newRpcClient(address);
+                    }
+                    if (poolSize > 1) {
+                        // the clients of the pool share one worker (io threads = clientIoThreads, not poolSize * clientIoThreads)
+                        EventLoopGroup worker = pool[0].newSharedWorker();
+                        for (RpcClient rpcClient : pool) {
+                            rpcClient.setWorker(worker);
+                        }
+                    }
+                    CLIENT_MAP.put(address, pool[0]);
+                    CLIENT_POOL_MAP.put(address, pool);
                 }
             }
         }
+        return choseLeastPending(pool);
+    }
+
+    /**
+     * Chose the least pending (in-flight request count) client. prefer the connected client
+     *
+     * @param pool client pool
+     * @return RpcClient
+     */
+    protected RpcClient choseLeastPending(RpcClient[] pool) {
+        int length = pool.length;
+        if (length == 1) {
+            return pool[0];
+        }
+        // random begin. the same pending count will not always chose the first
+        int begin = ThreadLocalRandom.current().nextInt(length);
+        RpcClient result = null;
+        int resultPending = Integer.MAX_VALUE;
+        boolean resultUp = false;
+        for (int i = 0; i < length; i++) {
+            RpcClient rpcClient = pool[(begin + i) % length];
+            boolean up = rpcClient.getState() == RpcClient.State.UP;
+            int pending = rpcClient.getRpcDoneMap().size();
+            if (result == null || (up && !resultUp) || (up == resultUp && pending < resultPending)) {
+                result = rpcClient;
+                resultPending = pending;
+                resultUp = up;
+            }
+        }
+        return result;
+    }
+
+    protected RpcClient newRpcClient(InetSocketAddress address) {
+        NettyProperties.Nrpc nrpc = properties.getNrpc();
+        RpcClient rpcClient = new RpcClient(address);
+        // 使用Solon风格获取Bean列表
+        rpcClient.getAopList().addAll(properties.getApplication().getBeanForType(RpcClientAop.class));
+        rpcClient.setIoThreadCount(nrpc.getClientIoThreads());
+        rpcClient.setIoRatio(nrpc.getClientIoRatio());
+        rpcClient.setConnectTimeout(nrpc.getClientConnectTimeout());
+        rpcClient.setIdleTimeMs(nrpc.getClientHeartIntervalTimeMs());
+        rpcClient.setReconnectScheduledIntervalMs(nrpc.getClientReconnectScheduledIntervalMs());
+        rpcClient.setEnableRpcHeartLog(nrpc.isClientEnableHeartLog());
+        rpcClient.setEnableReconnectScheduledTask(nrpc.isClientReconnectScheduledTaskEnable());
+        rpcClient.setMethodIdEnable(nrpc.isClientMethodIdEnable());
+        rpcClient.setWriteBatchEnable(nrpc.isClientWriteBatchEnable());
+        rpcClient.setWriteBatchMaxSize(nrpc.getClientWriteBatchMaxSize());
+        rpcClient.setWriteBatchMaxLingerMicros(nrpc.getClientWriteBatchMaxLingerMicros());
         return rpcClient;
     }
 
@@ -320,6 +449,16 @@ public class NettyRpcClientProxy implements InvocationHandler {
                 '}';
     }
 
+    private static class NettyRpcFilterListCache {
+        private final int version;
+        private final List<NettyRpcFilter> nettyRpcFilterList;
+
+        private NettyRpcFilterListCache(int version, List<NettyRpcFilter> nettyRpcFilterList) {
+            this.version = version;
+            this.nettyRpcFilterList = nettyRpcFilterList;
+        }
+    }
+
     private static class NettyRpcFilterChain implements NettyRpcFilter.FilterChain, Recyclable {
         private List<NettyRpcFilter> nettyRpcFilterList;
         private int count = 0;
@@ -333,7 +472,7 @@ public class NettyRpcClientProxy implements InvocationHandler {
 
         @Override
         public List<NettyRpcFilter> getNettyRpcFilterList() {
-            return Collections.unmodifiableList(nettyRpcFilterList);
+            return nettyRpcFilterList;
         }
 
         @Override
@@ -15,11 +15,13 @@ import com.github.netty.core.util.LoggerFactoryX;
 import com.github.netty.core.util.LoggerX;
 import com.github.netty.core.util.StringUtil;
 import com.github.netty.protocol.HttpServletProtocol;
+import com.github.netty.protocol.servlet.DefaultServlet;
 import com.github.netty.protocol.servlet.ServletErrorPage;
 import com.github.netty.protocol.servlet.SessionCompositeServiceImpl;
 import com.github.netty.protocol.servlet.SessionLocalFileServiceImpl;
 import com.github.netty.protocol.servlet.SessionLocalMemoryServiceImpl;
 import com.github.netty.protocol.servlet.SessionService;
+import com.github.netty.protocol.servlet.StaticResourceCache;
 import com.github.netty.protocol.servlet.util.Protocol;
 import com.github.netty.springboot.NettyProperties;
 import com.github.netty.springboot.SolonUtil.Ssl;
@@ -111,6 +113,10 @@ public class HttpServletProtocolSolonAdapter extends HttpServletProtocol {
         servletContext.setAutoFlush(httpServlet.getAutoFlushIdleMs() > 0);
         servletContext.setUploadFileTimeoutMs(httpServlet.getUploadFileTimeoutMs());
         servletContext.setAbortAfterMessageTimeoutMs(httpServlet.getAbortAfterMessageTimeoutMs());
+        servletContext.setEnableMultipartStreaming(httpServlet.isEnableMultipartStreaming());
+        servletContext.setMultipartStreamingHighWaterMark(httpServlet.getMultipartStreamingHighWaterMark());
+        servletContext.setHttp2MaxConcurrentStreamsPerConnection(httpServlet.getH2MaxConcurrentStreamsPerConnection());
+        servletContext.setHttp2MaxConcurrentStreams(httpServlet.getH2MaxConcurrentStreams());
         servletContext.setContextPath(webServerFactory.getContextPath());
         servletContext.setServerHeader(webServerFactory.getServerHeader());
         servletContext.setServletContextName(webServerFactory.getDisplayName());
@@ -122,6 +128,10 @@ public class HttpServletProtocolSolonAdapter extends HttpServletProtocol {
             servletContext.getMimeMappings().add(mapping.getExtension(), mapping.getMimeType());
         }
         servletContext.getNotExistBodyParameters().addAll(Arrays.asList(httpServlet.getNotExistBodyParameter()));
+        DefaultServlet defaultServlet = servletContext.getDefaultServletCast();
+        if (defaultServlet != null && httpServlet.getStaticResourceCacheMaxBytes() > 0) {
+            defaultServlet.setResourceCache(new StaticResourceCache(httpServlet.getStaticResourceCacheMaxBytes(), httpServlet.getStaticResourceCacheMaxFileBytes()));
+        }
 
         NettyProperties.HttpServlet.ServerCompression compression = properties.getHttpServlet().getCompression();
         if (compression != null && compression.isEnabled()) {
@@ -207,6 +217,10 @@ public class HttpServletProtocolSolonAdapter extends HttpServletProtocol {
                     properties.getNrpc().isClientEnableHeartLog(),
                     properties.getNrpc().getClientHeartIntervalTimeMs(),
                     properties.getNrpc().getClientReconnectScheduledIntervalMs());
+            if (httpServlet.getSessionRemoteNearCacheMaxSize() > 0) {
+                compositeSessionService.enableRemoteRpcSessionNearCache(httpServlet.getSessionRemoteNearCacheMaxSize(),
+                        httpServlet.getSessionRemoteNearCacheRevalidateIntervalMs());
+            }
             sessionService = compositeSessionService;
         } else if (httpServlet.isEnablesLocalFileSession()) {
             //Enable session file storage
@@ -3,7 +3,9 @@ package com.github.netty.springboot.server;
 import com.github.netty.core.ProtocolHandler;
 import com.github.netty.core.ServerListener;
 import com.github.netty.core.util.AbortPolicyWithReport;
+import com.github.netty.core.util.LoggerFactoryX;
 import com.github.netty.core.util.NettyThreadPoolExecutor;
+import com.github.netty.core.util.VirtualThreadUtil;
 import com.github.netty.protocol.*;
 import com.github.netty.protocol.dubbo.Application;
 import com.github.netty.protocol.dubbo.ProxyFrontendHandler;
@@ -166,9 +168,14 @@ public class NettyEmbeddedAutoConfiguration implements Plugin {
 
         NRpcProtocolSolonAdapter protocol = new NRpcProtocolSolonAdapter(appContext, nettyProperties, null);
         protocol.setMessageMaxLength(nettyProperties.getNrpc().getServerMessageMaxLength());
+        protocol.setZeroCopyDecode(nettyProperties.getNrpc().isServerZeroCopyDecode());
         protocol.setMethodOverwriteCheck(nettyProperties.getNrpc().isServerMethodOverwriteCheck());
         protocol.setServerDefaultVersion(nettyProperties.getNrpc().getServerDefaultVersion());
-        protocol.setExecutorSupplier(newExecutorSupplier(nettyProperties.getNrpc().getThreadPool()));
+        NettyProperties.Nrpc.ServerThreadPool threadPool = nettyProperties.getNrpc().getThreadPool();
+        protocol.setExecutorSupplier(newExecutorSupplier(threadPool));
+        if (isVirtualMode(threadPool.isEnable(), threadPool.getMode())) {
+            protocol.setServiceMaxConcurrency(threadPool.getVirtualMaxConcurrencyPerService());
+        }
         return protocol;
     }
 
@@ -195,6 +202,9 @@ public class NettyEmbeddedAutoConfiguration implements Plugin {
         protocol.setMaxContentLength(http.getRequestMaxContentSize());
         protocol.setMaxBufferBytes(http.getResponseMaxBufferSize());
         protocol.setAutoFlushIdleMs(http.getAutoFlushIdleMs());
+        if (isVirtualMode(http.getThreadPool().isEnable(), http.getThreadPool().getMode())) {
+            protocol.getServletContext().setMaxConcurrency(http.getThreadPool().getVirtualMaxConcurrency());
+        }
         
         return protocol;
     }
@@ -205,6 +215,12 @@ public class NettyEmbeddedAutoConfiguration implements Plugin {
     public MqttProtocol mqttProtocol(Collection<InterceptHandler> interceptHandlers) {
         NettyProperties.Mqtt mqtt = nettyProperties.getMqtt();
         MqttProtocol protocol = new MqttProtocol(mqtt.getMessageMaxLength(), mqtt.getNettyReaderIdleTimeSeconds(), mqtt.getAutoFlushIdleMs());
+        protocol.setPersistentStorePath(mqtt.getPersistentStorePath());
+        protocol.setAutosaveIntervalMs(mqtt.getAutosaveIntervalMs());
+        protocol.setSegmentSize(mqtt.getSegmentSize());
+        protocol.setQueueMaxBytes(mqtt.getQueueMaxBytes());
+        protocol.setQueueMaxBytesPerClient(mqtt.getQueueMaxBytesPerClient());
+        protocol.setQueueOverflowPolicy(mqtt.getQueueOverflowPolicy());
         if (interceptHandlers != null) {
             interceptHandlers.forEach(protocol::addInterceptHandler);
         }
@@ -245,9 +261,23 @@ public class NettyEmbeddedAutoConfiguration implements Plugin {
         return listener;
     }
 
+    /**
+     * Run on virtual thread if configured and the JVM support (JDK21+)
+     */
+    protected boolean isVirtualMode(boolean enable, NettyProperties.ThreadPoolMode mode) {
+        return enable && mode == NettyProperties.ThreadPoolMode.virtual && VirtualThreadUtil.isSupported();
+    }
+
     protected Supplier<Executor> newExecutorSupplier(NettyProperties.HttpServlet.ServerThreadPool pool) {
         Supplier<Executor> executorSupplier;
-        if (pool.isEnable()) {
+        if (pool.isEnable() && pool.getMode() == NettyProperties.ThreadPoolMode.virtual && !VirtualThreadUtil.isSupported()) {
+            LoggerFactoryX.getLogger(getClass()).warn("httpServlet threadPool.mode=virtual need JDK21+, current java.version={}. fallback to pool.", System.getProperty("java.version"));
+        }
+        Executor virtualExecutor = isVirtualMode(pool.isEnable(), pool.getMode()) ?
+                VirtualThreadUtil.newVirtualThreadPerTaskExecutor(pool.getPoolName() + "-virtual-") : null;
+        if (virtualExecutor != null) {
+            executorSupplier = () -> virtualExecutor;
+        } else if (pool.isEnable()) {
             if (pool.getExecutor() == NettyThreadPoolExecutor.class) {
                 RejectedExecutionHandler rejectedHandler;
                 if (pool.getRejected() == HttpAbortPolicyWithReport.class) {
@@ -286,7 +316,14 @@ public class NettyEmbeddedAutoConfiguration implements Plugin {
 
     protected Supplier<Executor> newExecutorSupplier(NettyProperties.Nrpc.ServerThreadPool pool) {
         Supplier<Executor> executorSupplier;
-        if (pool.isEnable()) {
+        if (pool.isEnable() && pool.getMode() == NettyProperties.ThreadPoolMode.virtual && !VirtualThreadUtil.isSupported()) {
+            LoggerFactoryX.getLogger(getClass()).warn("nrpc threadPool.mode=virtual need JDK21+, current java.version={}. fallback to pool.", System.getProperty("java.version"));
+        }
+        Executor virtualExecutor = isVirtualMode(pool.isEnable(), pool.getMode()) ?
+                VirtualThreadUtil.newVirtualThreadPerTaskExecutor(pool.getPoolName() + "-virtual-") : null;
+        if (virtualExecutor != null) {
+            executorSupplier = () -> virtualExecutor;
+        } else if (pool.isEnable()) {
             if (pool.getExecutor() == NettyThreadPoolExecutor.class) {
                 RejectedExecutionHandler rejectedHandler;
                 if (pool.getRejected() == AbortPolicyWithReport.class) {
@@ -0,0 +1,111 @@
+package com.github.netty.core.util;
+
+import com.github.netty.protocol.servlet.ServletContext;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * concurrency limit test. the task thread wait the permit, the caller never block
+ *
+ * @author wangzihao
+ */
+public class ConcurrencyLimitExecutorTests {
+    private static final Executor THREAD_PER_TASK = command -> new Thread(command).start();
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("timeout");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void limitRunningTasks() throws InterruptedException {
+        ConcurrencyLimitExecutor executor = new ConcurrencyLimitExecutor(THREAD_PER_TASK, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(5);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            // the caller not block
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        await(() -> executor.getActiveCount() == 2 && executor.getWaitingCount() == 3);
+        assertEquals(2, running.get());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+        await(() -> executor.getActiveCount() == 0);
+        assertEquals(0, executor.getWaitingCount());
+    }
+
+    @Test
+    public void releasePermitOnTaskError() throws InterruptedException {
+        ConcurrencyLimitExecutor executor = new ConcurrencyLimitExecutor(Runnable::run, 1);
+        assertThrows(IllegalStateException.class, () -> executor.execute(() -> {
+            throw new IllegalStateException("error");
+        }));
+        assertEquals(0, executor.getActiveCount());
+        AtomicInteger count = new AtomicInteger();
+        executor.execute(count::incrementAndGet);
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    public void unlimited() {
+        ConcurrencyLimitExecutor executor = new ConcurrencyLimitExecutor(Runnable::run, 0);
+        assertEquals(0, executor.getMaxConcurrency());
+        assertEquals(-1, executor.getActiveCount());
+        AtomicInteger count = new AtomicInteger();
+        executor.execute(count::incrementAndGet);
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    public void servletContextDispatchExecutor() {
+        ServletContext servletContext = new ServletContext();
+        assertNull(servletContext.getDispatchExecutor());
+
+        Executor asyncExecutor = Runnable::run;
+        servletContext.setAsyncExecutorSupplier(() -> asyncExecutor);
+        // unlimited. the async executor is used directly
+        assertSame(asyncExecutor, servletContext.getDispatchExecutor());
+        assertNull(servletContext.getConcurrencyLimiter());
+
+        servletContext.setMaxConcurrency(8);
+        Executor dispatchExecutor = servletContext.getDispatchExecutor();
+        assertTrue(dispatchExecutor instanceof ConcurrencyLimitExecutor);
+        assertSame(dispatchExecutor, servletContext.getDispatchExecutor());
+        assertSame(dispatchExecutor, servletContext.getConcurrencyLimiter());
+        assertSame(asyncExecutor, ((ConcurrencyLimitExecutor) dispatchExecutor).getDelegate());
+        assertEquals(8, ((ConcurrencyLimitExecutor) dispatchExecutor).getMaxConcurrency());
+
+        // the async executor changed. wrap the new executor
+        Executor newAsyncExecutor = Runnable::run;
+        servletContext.setAsyncExecutorSupplier(() -> newAsyncExecutor);
+        ConcurrencyLimitExecutor newDispatchExecutor = (ConcurrencyLimitExecutor) servletContext.getDispatchExecutor();
+        assertNotSame(dispatchExecutor, newDispatchExecutor);
+        assertSame(newAsyncExecutor, newDispatchExecutor.getDelegate());
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.netty.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * expiry notify executor test
+ *
+ * @author wangzihao
+ */
+public class ExpiryLRUMapTests {
+
+    @Test
+    public void notifyByExpiryExecutor() throws InterruptedException {
+        ExpiryLRUMap<String, String> map = new ExpiryLRUMap<>();
+        assertSame(ExpiryLRUMap.ExpiresNotify.getDefaultExecutor(), map.getExpiryExecutor());
+
+        AtomicInteger executeCount = new AtomicInteger();
+        Executor executor = task -> {
+            executeCount.incrementAndGet();
+            task.run();
+        };
+        map.setExpiryExecutor(executor);
+        assertSame(executor, map.getExpiryExecutor());
+        CountDownLatch latch = new CountDownLatch(1);
+        map.setOnExpiryConsumer(node -> latch.countDown());
+        map.put("a", "1", 1);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(executeCount.get() > 0);
+
+        map.setExpiryExecutor(null);
+        assertSame(ExpiryLRUMap.ExpiresNotify.getDefaultExecutor(), map.getExpiryExecutor());
+    }
+
+    @Test
+    public void notifyByCallerWhenRejected() throws InterruptedException {
+        ExpiryLRUMap<String, String> map = new ExpiryLRUMap<>();
+        map.setExpiryExecutor(task -> {
+            throw new RejectedExecutionException("rejected");
+        });
+        CountDownLatch latch = new CountDownLatch(2);
+        map.setOnExpiryConsumer(node -> latch.countDown());
+        map.put("a", "1", 1);
+        map.put("b", "2", 1);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void legacyNotifyQueueTakeExpiredNode() throws InterruptedException {
+        assertNotNull(ExpiryLRUMap.ExpiresScan.NOTIFY_INSTANCE);
+        BlockingQueue<ExpiryLRUMap.Node<?, ?>> queue = ExpiryLRUMap.getExpiryNotifyQueue();
+        // not enable. notify the consumer only
+        ExpiryLRUMap<String, String> notEnableMap = new ExpiryLRUMap<>();
+        notEnableMap.setExpiryExecutor(Runnable::run);
+        CountDownLatch latch = new CountDownLatch(1);
+        notEnableMap.setOnExpiryConsumer(node -> latch.countDown());
+        notEnableMap.put("notEnable", "1", 1);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        ExpiryLRUMap<String, String> map = new ExpiryLRUMap<>();
+        assertFalse(map.isLegacyNotifyQueueEnable());
+        map.setLegacyNotifyQueueEnable(true);
+        map.setExpiryExecutor(Runnable::run);
+        map.put("legacy", "1", 1);
+        ExpiryLRUMap.Node<?, ?> node;
+        do {
+            node = queue.poll(5, TimeUnit.SECONDS);
+            assertNotNull(node);
+            assertNotSame(notEnableMap, node.getExpiryLRUMap());
+            // skip the expired nodes of other maps
+        } while (node.getExpiryLRUMap() != map);
+        assertEquals("legacy", node.getKey());
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.netty.protocol.mqtt;
+
+import com.github.netty.protocol.mqtt.security.IAuthorizatorPolicy;
+import com.github.netty.protocol.mqtt.subscriptions.ISubscriptionsDirectory;
+import com.github.netty.protocol.mqtt.subscriptions.Subscription;
+import com.github.netty.protocol.mqtt.subscriptions.Topic;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.*;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * publish fan-out test. the subscribers of one event loop are written in order, and each connection is flushed once
+ *
+ * @author wangzihao
+ */
+public class MqttPostOfficeTests {
+    private static final Topic TOPIC = new Topic("a/b");
+
+    private static class Fixture {
+        final List<String> log = new ArrayList<>();
+        final List<Subscription> subscriptions = new ArrayList<>();
+        final Map<String, MqttSession> sessions = new ConcurrentHashMap<>();
+        final Set<String> denyRead = new HashSet<>();
+        final List<EmbeddedChannel> channels = new ArrayList<>();
+        final MqttPostOffice postOffice;
+
+        Fixture() {
+            ISubscriptionsDirectory directory = new ISubscriptionsDirectory() {
+                @Override
+                public Set<Subscription> matchWithoutQosSharpening(Topic topic) {
+                    return new LinkedHashSet<>(subscriptions);
+                }
+
+                @Override
+                public Set<Subscription> matchQosSharpening(Topic topic) {
+                    return new LinkedHashSet<>(subscriptions);
+                }
+
+                @Override
+                public void add(Subscription newSubscription) {
+                    subscriptions.add(newSubscription);
+                }
+
+                @Override
+                public void removeSubscription(Topic topic, String clientID) {
+                    subscriptions.removeIf(e -> e.getClientId().equals(clientID));
+                }
+
+                @Override
+                public int size() {
+                    return subscriptions.size();
+                }
+
+                @Override
+                public String dumpTree() {
+                    return "";
+                }
+            };
+            MqttSessionRegistry sessionRegistry = new MqttSessionRegistry(directory, null) {
+                @Override
+                MqttSession retrieve(String clientID) {
+                    return sessions.get(clientID);
+                }
+            };
+            IAuthorizatorPolicy authorizatorPolicy = new IAuthorizatorPolicy() {
+                @Override
+                public boolean canWrite(Topic topic, String user, String client) {
+                    return true;
+                }
+
+                @Override
+                public boolean canRead(Topic topic, String user, String client) {
+                    return !denyRead.contains(client);
+                }
+            };
+            this.postOffice = new MqttPostOffice(directory, authorizatorPolicy, null, sessionRegistry, null);
+        }
+
+        MqttConnection newConnection(String name) {
+            EmbeddedChannel channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+                @Override
+                public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                    MqttPublishMessage publish = (MqttPublishMessage) msg;
+                    log.add("write " + name + " " + publish.payload().toString(StandardCharsets.UTF_8));
+                    ReferenceCountUtil.release(msg);
+                    promise.setSuccess();
+                }
+
+                @Override
+                public void flush(ChannelHandlerContext ctx) {
+                    log.add("flush " + name);
+                    ctx.flush();
+                }
+            });
+            channels.add(channel);
+            return new MqttConnection(null, channel, null, null, null, postOffice);
+        }
+
+        void subscribe(String clientId, MqttConnection connection) {
+            MqttSession session = new MqttSession(true, clientId, new ConcurrentLinkedQueue<>());
+            session.markConnected();
+            session.bind(connection);
+            sessions.put(clientId, session);
+            subscriptions.add(new Subscription(clientId, TOPIC, MqttQoS.AT_MOST_ONCE));
+        }
+
+        void publish(String payload) {
+            MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, false, 0);
+            ByteBuf buf = Unpooled.copiedBuffer(payload, StandardCharsets.UTF_8);
+            MqttPublishMessage msg = new MqttPublishMessage(fixedHeader, new MqttPublishVariableHeader(TOPIC.toString(), 0), buf);
+            try {
+                postOffice.internalPublish(msg);
+            } finally {
+                assertEquals(1, buf.refCnt());
+                buf.release();
+            }
+        }
+
+        void close() {
+            for (EmbeddedChannel channel : channels) {
+                channel.finishAndReleaseAll();
+            }
+        }
+    }
+
+    @Test
+    public void fanOutInOrderAndFlushOncePerConnection() {
+        Fixture fixture = new Fixture();
+        try {
+            MqttConnection connection1 = fixture.newConnection("c1");
+            MqttConnection connection2 = fixture.newConnection("c2");
+            // the two channels are two event loops. c1 has the clients 'a','c', c2 has 'b','e'
+            fixture.subscribe("a", connection1);
+            fixture.subscribe("b", connection2);
+            fixture.subscribe("c", connection1);
+            fixture.subscribe("e", connection2);
+
+            fixture.publish("m1");
+            fixture.publish("m2");
+            assertEquals(Arrays.asList(
+                    "write c1 m1", "write c1 m1", "flush c1",
+                    "write c2 m1", "write c2 m1", "flush c2",
+                    "write c1 m2", "write c1 m2", "flush c1",
+                    "write c2 m2", "write c2 m2", "flush c2"), fixture.log);
+        } finally {
+            fixture.close();
+        }
+    }
+
+    @Test
+    public void skipNotAuthorizedSubscriberOnly() {
+        Fixture fixture = new Fixture();
+        try {
+            MqttConnection connection1 = fixture.newConnection("c1");
+            MqttConnection connection2 = fixture.newConnection("c2");
+            fixture.subscribe("a", connection1);
+            fixture.subscribe("denied", connection2);
+            fixture.subscribe("c", connection2);
+            fixture.denyRead.add("denied");
+
+            fixture.publish("m1");
+            assertEquals(Arrays.asList(
+                    "write c1 m1", "flush c1",
+                    "write c2 m1", "flush c2"), fixture.log);
+        } finally {
+            fixture.close();
+        }
+    }
+}
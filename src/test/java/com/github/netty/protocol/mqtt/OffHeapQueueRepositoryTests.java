@@ -0,0 +1,167 @@
+package com.github.netty.protocol.mqtt;
+
+import com.github.netty.protocol.mqtt.subscriptions.Topic;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * bounded off-heap queue test. the overflow policy and the ring arena reclaim
+ *
+ * @author wangzihao
+ */
+public class OffHeapQueueRepositoryTests {
+
+    private static boolean offer(Queue<MqttSessionRegistry.EnqueuedMessage> queue, int bytes, int mark) {
+        ByteBuf payload = Unpooled.buffer(bytes);
+        payload.writeZero(bytes);
+        payload.setByte(0, mark);
+        boolean accepted = queue.offer(new MqttSessionRegistry.PublishedMessage(new Topic("a/b"), MqttQoS.AT_LEAST_ONCE, payload));
+        if (accepted) {
+            assertEquals(0, payload.refCnt());
+        } else {
+            // the dropped payload is still owned by the caller
+            payload.release();
+        }
+        return accepted;
+    }
+
+    private static int mark(MqttSessionRegistry.EnqueuedMessage message) {
+        ByteBuf payload = ((MqttSessionRegistry.PublishedMessage) message).payload;
+        try {
+            return payload.getByte(0);
+        } finally {
+            payload.release();
+        }
+    }
+
+    /**
+     * The slow client keep the oldest block of the ring, the fast client consumed the blocks behind it.
+     * The total bytes is far below the limit, but the free space is not contiguous.
+     */
+    private static Queue<MqttSessionRegistry.EnqueuedMessage> blockRingBySlowClient(OffHeapQueueRepository repository) {
+        Queue<MqttSessionRegistry.EnqueuedMessage> slow = repository.createQueue("slow", false);
+        Queue<MqttSessionRegistry.EnqueuedMessage> fast = repository.createQueue("fast", false);
+        assertTrue(offer(slow, 100, 1));
+        for (int i = 0; i < 8; i++) {
+            assertTrue(offer(fast, 100, i));
+        }
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, mark(fast.poll()));
+        }
+        assertEquals(100, repository.getTotalBytes());
+        return fast;
+    }
+
+    @Test
+    public void dropNewestNotBlockedBySlowClient() {
+        OffHeapQueueRepository repository = new OffHeapQueueRepository(1000, 1000, OffHeapQueueRepository.OverflowPolicy.DROP_NEWEST);
+        Queue<MqttSessionRegistry.EnqueuedMessage> fast = blockRingBySlowClient(repository);
+
+        // the policy is applied to the owner of the oldest block, the fast client is not dropped
+        assertTrue(offer(fast, 200, 9));
+        assertEquals(0, repository.getQueueSize("slow"));
+        assertEquals(1, repository.getDroppedCount());
+        assertEquals(200, repository.getTotalBytes());
+        assertEquals(9, mark(fast.poll()));
+        repository.close();
+    }
+
+    @Test
+    public void disconnectTheClientHoldTheSpace() {
+        OffHeapQueueRepository repository = new OffHeapQueueRepository(1000, 1000, OffHeapQueueRepository.OverflowPolicy.DISCONNECT);
+        List<String> disconnected = new ArrayList<>();
+        repository.setDisconnectHandler(disconnected::add);
+        Queue<MqttSessionRegistry.EnqueuedMessage> fast = blockRingBySlowClient(repository);
+
+        assertTrue(offer(fast, 200, 9));
+        assertEquals(1, disconnected.size());
+        assertEquals("slow", disconnected.get(0));
+        assertEquals(1, repository.getDisconnectCount());
+        assertEquals(0, repository.getQueueSize("slow"));
+        repository.close();
+    }
+
+    @Test
+    public void arenaFull() {
+        OffHeapQueueRepository repository = new OffHeapQueueRepository(1000, 1000, OffHeapQueueRepository.OverflowPolicy.DISCONNECT);
+        List<String> disconnected = new ArrayList<>();
+        repository.setDisconnectHandler(disconnected::add);
+        Queue<MqttSessionRegistry.EnqueuedMessage> slow = repository.createQueue("slow", false);
+        Queue<MqttSessionRegistry.EnqueuedMessage> fast = repository.createQueue("fast", false);
+        for (int i = 0; i < 9; i++) {
+            assertTrue(offer(slow, 100, i));
+        }
+
+        // the arena is full of the live messages: drop the new message, disconnect the slow client
+        assertFalse(offer(fast, 200, 9));
+        assertEquals(9, repository.getQueueSize("slow"));
+        assertEquals(0, repository.getQueueSize("fast"));
+        assertEquals(1, repository.getDroppedCount());
+        assertEquals(1, disconnected.size());
+        assertEquals("slow", disconnected.get(0));
+
+        // the client queue is full: disconnect the offering client
+        assertFalse(offer(slow, 2000, 10));
+        assertEquals(2, disconnected.size());
+        assertEquals("slow", disconnected.get(1));
+        repository.close();
+    }
+
+    @Test
+    public void dropOldestOfClient() {
+        OffHeapQueueRepository repository = new OffHeapQueueRepository(1000, 300, OffHeapQueueRepository.OverflowPolicy.DROP_OLDEST);
+        Queue<MqttSessionRegistry.EnqueuedMessage> queue = repository.createQueue("c1", false);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(offer(queue, 100, i));
+        }
+        queue.offer(new MqttSessionRegistry.PubRelMarker());
+        assertEquals(300, repository.getQueueBytes("c1"));
+        assertEquals(2, repository.getDroppedCount());
+        assertEquals(2, mark(queue.poll()));
+        assertEquals(3, mark(queue.poll()));
+        assertEquals(4, mark(queue.poll()));
+        assertTrue(queue.poll() instanceof MqttSessionRegistry.PubRelMarker);
+        assertNull(queue.poll());
+        assertEquals(0, repository.getTotalBytes());
+        repository.close();
+    }
+
+    @Test
+    public void removeQueue() {
+        OffHeapQueueRepository repository = new OffHeapQueueRepository(1000, 1000, OffHeapQueueRepository.OverflowPolicy.DROP_OLDEST);
+        // the clean session use the plain queue
+        Queue<MqttSessionRegistry.EnqueuedMessage> cleanQueue = repository.createQueue("clean", true);
+        assertTrue(cleanQueue instanceof ConcurrentLinkedQueue);
+        assertEquals(0, repository.getQueueCount());
+
+        Queue<MqttSessionRegistry.EnqueuedMessage> queue = repository.createQueue("c1", false);
+        assertSame(queue, repository.createQueue("c1", false));
+        assertTrue(offer(queue, 100, 1));
+        assertEquals(1, repository.getQueueCount());
+
+        // the session registry drop the queue
+        queue.clear();
+        repository.removeQueue("c1");
+        assertEquals(0, repository.getQueueCount());
+        assertEquals(0, repository.getTotalBytes());
+        assertFalse(offer(queue, 100, 2));
+        assertEquals(0, repository.getTotalBytes());
+        assertNotSame(queue, repository.createQueue("c1", false));
+
+        // the clean session drop the queue of the old session
+        assertTrue(offer(repository.createQueue("c1", false), 100, 3));
+        repository.createQueue("c1", true);
+        assertEquals(0, repository.getQueueCount());
+        assertEquals(0, repository.getTotalBytes());
+        repository.close();
+    }
+}
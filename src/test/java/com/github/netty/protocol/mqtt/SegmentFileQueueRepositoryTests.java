@@ -0,0 +1,142 @@
+package com.github.netty.protocol.mqtt;
+
+import com.github.netty.protocol.mqtt.subscriptions.Topic;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * segment file queue test. the seq order after the compaction (relocation) and the restart
+ *
+ * @author wangzihao
+ */
+public class SegmentFileQueueRepositoryTests {
+    @TempDir
+    Path dir;
+
+    private static MqttSessionRegistry.PublishedMessage message(String payload) {
+        return new MqttSessionRegistry.PublishedMessage(new Topic("a/b"), MqttQoS.AT_LEAST_ONCE,
+                Unpooled.copiedBuffer(payload, StandardCharsets.UTF_8));
+    }
+
+    private static String payload(MqttSessionRegistry.EnqueuedMessage message) {
+        MqttSessionRegistry.PublishedMessage publishedMessage = (MqttSessionRegistry.PublishedMessage) message;
+        assertEquals("a/b", publishedMessage.topic.toString());
+        assertEquals(MqttQoS.AT_LEAST_ONCE, publishedMessage.publishingQos);
+        return publishedMessage.payload.toString(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> payloads(Queue<MqttSessionRegistry.EnqueuedMessage> queue) {
+        List<String> list = new ArrayList<>();
+        for (MqttSessionRegistry.EnqueuedMessage message : queue) {
+            list.add(payload(message));
+        }
+        return list;
+    }
+
+    private static List<String> range(String prefix, int from, int to) {
+        List<String> list = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            list.add(prefix + i);
+        }
+        return list;
+    }
+
+    private SegmentFileQueueRepository open() throws IOException {
+        SegmentFileQueueRepository repository = new SegmentFileQueueRepository(dir.toFile(), 4096, 60000);
+        repository.getStore().setCompactMinBytes(0);
+        return repository;
+    }
+
+    @Test
+    public void seqOrderAfterRelocate() throws IOException {
+        File storeDir = dir.toFile();
+        SegmentFileQueueRepository repository = open();
+        Queue<MqttSessionRegistry.EnqueuedMessage> queue1 = repository.createQueue("c1", false);
+        Queue<MqttSessionRegistry.EnqueuedMessage> queue2 = repository.createQueue("c2", false);
+        for (int i = 0; i < 300; i++) {
+            queue1.offer(message("a" + i));
+            if (i < 50) {
+                queue2.offer(message("b" + i));
+            }
+        }
+        queue2.offer(new MqttSessionRegistry.PubRelMarker());
+        for (int i = 0; i < 280; i++) {
+            assertEquals("a" + i, payload(queue1.poll()));
+        }
+
+        // the live messages of the oldest segments are relocated to the tail
+        int segmentCount = repository.getStore().getSegmentCount();
+        int count = 0;
+        while (repository.getStore().compact()) {
+            count++;
+        }
+        assertTrue(count > 0);
+        assertTrue(repository.getStore().getSegmentCount() < segmentCount);
+        assertEquals(range("a", 280, 300), payloads(queue1));
+        assertEquals(51, queue2.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("b" + i, payload(queue2.poll()));
+        }
+        repository.close();
+
+        // restore: sort by seq, the old copy of the relocated message is dropped
+        repository = open();
+        queue1 = repository.createQueue("c1", false);
+        queue2 = repository.createQueue("c2", false);
+        assertEquals(range("a", 280, 300), payloads(queue1));
+        assertEquals(41, queue2.size());
+        queue1.offer(message("new"));
+        for (int i = 280; i < 300; i++) {
+            assertEquals("a" + i, payload(queue1.poll()));
+        }
+        assertEquals("new", payload(queue1.poll()));
+        assertNull(queue1.poll());
+        for (int i = 10; i < 50; i++) {
+            assertEquals("b" + i, payload(queue2.poll()));
+        }
+        assertTrue(queue2.poll() instanceof MqttSessionRegistry.PubRelMarker);
+        assertTrue(queue2.isEmpty());
+        repository.close();
+
+        // the dequeue records survive the restart
+        repository = open();
+        assertTrue(repository.createQueue("c1", false).isEmpty());
+        assertTrue(repository.createQueue("c2", false).isEmpty());
+        repository.close();
+        assertNotNull(storeDir.listFiles());
+    }
+
+    @Test
+    public void cleanSessionDropStored() throws IOException {
+        SegmentFileQueueRepository repository = new SegmentFileQueueRepository(dir.toFile(), 4096, 0);
+        Queue<MqttSessionRegistry.EnqueuedMessage> queue = repository.createQueue("c1", false);
+        queue.offer(message("a"));
+        queue.offer(message("b"));
+        repository.close();
+
+        repository = new SegmentFileQueueRepository(dir.toFile(), 4096, 0);
+        assertEquals(2, repository.createQueue("c1", false).size());
+        Queue<MqttSessionRegistry.EnqueuedMessage> cleanQueue = repository.createQueue("c1", true);
+        assertTrue(cleanQueue.isEmpty());
+        repository.close();
+
+        repository = new SegmentFileQueueRepository(dir.toFile(), 4096, 0);
+        queue = repository.createQueue("c1", false);
+        assertTrue(queue.isEmpty());
+        queue.offer(message("c"));
+        assertEquals("c", payload(queue.peek()));
+        repository.close();
+    }
+}
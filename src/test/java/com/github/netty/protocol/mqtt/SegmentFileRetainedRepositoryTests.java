@@ -0,0 +1,125 @@
+package com.github.netty.protocol.mqtt;
+
+import com.github.netty.protocol.mqtt.subscriptions.Topic;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * segment file retained messages test. put/remove across the restart and the compaction
+ *
+ * @author wangzihao
+ */
+public class SegmentFileRetainedRepositoryTests {
+    @TempDir
+    Path dir;
+
+    private static MqttPublishMessage publish(String topic, MqttQoS qos, String payload) {
+        return MqttMessageBuilders.publish()
+                .topicName(topic)
+                .qos(qos)
+                .retained(true)
+                .messageId(1)
+                .payload(Unpooled.copiedBuffer(payload, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private static Map<String, String> retained(SegmentFileRetainedRepository repository, String topic) {
+        Map<String, String> map = new TreeMap<>();
+        for (MqttRetainedMessage message : repository.retainedOnTopic(topic)) {
+            map.put(message.getTopic(), new String(message.getPayload(), StandardCharsets.UTF_8));
+        }
+        return map;
+    }
+
+    private static void retain(SegmentFileRetainedRepository repository, String topic, String payload) {
+        MqttPublishMessage message = publish(topic, MqttQoS.AT_LEAST_ONCE, payload);
+        try {
+            repository.retain(new Topic(topic), message);
+        } finally {
+            message.release();
+        }
+    }
+
+    @Test
+    public void putRemoveAcrossRestart() throws IOException {
+        SegmentFileRetainedRepository repository = new SegmentFileRetainedRepository(dir.toFile(), 4096, 0);
+        assertTrue(repository.isEmpty());
+        retain(repository, "a/b", "1");
+        retain(repository, "a/c", "2");
+        retain(repository, "a/b", "3");
+        retain(repository, "x", "4");
+        repository.cleanRetained(new Topic("x"));
+        repository.cleanRetained(new Topic("not-exist"));
+        repository.close();
+
+        repository = new SegmentFileRetainedRepository(dir.toFile(), 4096, 0);
+        Map<String, String> expect = new TreeMap<>();
+        expect.put("a/b", "3");
+        expect.put("a/c", "2");
+        assertEquals(expect, retained(repository, "#"));
+        assertEquals(Collections.singletonMap("a/b", "3"), retained(repository, "a/b"));
+        assertEquals(MqttQoS.AT_LEAST_ONCE, repository.retainedOnTopic("a/b").get(0).qosLevel());
+        assertTrue(retained(repository, "x").isEmpty());
+        repository.cleanRetained(new Topic("a/b"));
+        repository.close();
+
+        repository = new SegmentFileRetainedRepository(dir.toFile(), 4096, 0);
+        assertEquals(Collections.singletonMap("a/c", "2"), retained(repository, "a/+"));
+        repository.close();
+    }
+
+    @Test
+    public void compactAcrossRestart() throws IOException {
+        SegmentFileRetainedRepository repository = new SegmentFileRetainedRepository(dir.toFile(), 4096, 60000);
+        repository.getStore().setCompactMinBytes(0);
+        retain(repository, "fixed", "f");
+        for (int i = 0; i < 500; i++) {
+            retain(repository, "t/" + (i % 5), "v" + i);
+        }
+        int count = 0;
+        while (repository.getStore().compact()) {
+            count++;
+        }
+        assertTrue(count > 0);
+        Map<String, String> expect = new TreeMap<>();
+        expect.put("fixed", "f");
+        for (int i = 0; i < 5; i++) {
+            expect.put("t/" + i, "v" + (495 + i));
+        }
+        assertEquals(expect, retained(repository, "#"));
+        repository.close();
+
+        repository = new SegmentFileRetainedRepository(dir.toFile(), 4096, 60000);
+        assertEquals(expect, retained(repository, "#"));
+        repository.close();
+    }
+
+    @Test
+    public void consumerOutOfLock() throws IOException {
+        SegmentFileRetainedRepository repository = new SegmentFileRetainedRepository(dir.toFile(), 4096, 60000);
+        for (int i = 0; i < 200; i++) {
+            retain(repository, "t/" + i, "v" + i);
+        }
+        Set<String> topics = new HashSet<>();
+        repository.retainedOnTopic("t/+", message -> {
+            assertFalse(repository.getStore().getLock().isHeldByCurrentThread());
+            // the consumer can write the repository (e.g. clean on the same thread)
+            repository.cleanRetained(new Topic(message.getTopic()));
+            topics.add(message.getTopic());
+        });
+        assertEquals(200, topics.size());
+        assertTrue(repository.isEmpty());
+        repository.close();
+    }
+}
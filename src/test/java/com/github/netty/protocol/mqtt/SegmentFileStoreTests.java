@@ -0,0 +1,267 @@
+package com.github.netty.protocol.mqtt;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * segment file store restore and compaction test
+ *
+ * @author wangzihao
+ */
+public class SegmentFileStoreTests {
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    @TempDir
+    Path dir;
+
+    private static ByteBuffer body(String key, String value) {
+        byte[] keyBytes = SegmentFileStore.toBytes(key);
+        byte[] valueBytes = SegmentFileStore.toBytes(value);
+        ByteBuffer body = ByteBuffer.allocate(8 + keyBytes.length + valueBytes.length);
+        SegmentFileStore.putBytes(body, keyBytes);
+        SegmentFileStore.putBytes(body, valueBytes);
+        body.flip();
+        return body;
+    }
+
+    private static File segmentFile(File dir, int id) {
+        return new File(dir, String.format("%010d.segment", id));
+    }
+
+    @Test
+    public void restoreIgnoreBrokenTail() throws IOException {
+        File storeDir = dir.toFile();
+        KeyValueStore kv = new KeyValueStore(storeDir, 4096);
+        kv.put("a", "1");
+        kv.put("b", "2");
+        long bytes = kv.store.getTotalBytes();
+        kv.put("c", "3");
+        kv.store.close();
+
+        // the crc of the last record is broken
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(storeDir, 1), "rw")) {
+            file.seek(bytes + 12);
+            int b = file.read();
+            file.seek(bytes + 12);
+            file.write(b ^ 1);
+        }
+        kv = new KeyValueStore(storeDir, 4096);
+        assertEquals(2, kv.index.size());
+        assertEquals("1", kv.get("a"));
+        assertEquals("2", kv.get("b"));
+        assertNull(kv.get("c"));
+        assertEquals(bytes, kv.store.getTotalBytes());
+
+        // the broken tail is overwritten by the next append
+        kv.put("d", "4");
+        long tail = kv.store.getTotalBytes();
+        kv.store.close();
+        // the crash when writing. the length is written, the body is not
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(storeDir, 1), "rw")) {
+            file.seek(tail);
+            file.writeInt(100);
+        }
+        kv = new KeyValueStore(storeDir, 4096);
+        assertEquals(3, kv.index.size());
+        assertEquals("4", kv.get("d"));
+        assertNull(kv.get("c"));
+        kv.store.close();
+    }
+
+    @Test
+    public void compactRelocateLiveRecords() throws IOException {
+        File storeDir = dir.toFile();
+        KeyValueStore kv = new KeyValueStore(storeDir, 4096);
+        kv.store.setCompactMinBytes(0);
+        // the live records in the oldest segment
+        kv.put("fixed", "f");
+        for (int i = 0; i < 1000; i++) {
+            kv.put("k" + (i % 10), "v" + i);
+        }
+        kv.remove("k9");
+        int segmentCountBefore = kv.store.getSegmentCount();
+        assertTrue(segmentCountBefore > 3);
+
+        int count = 0;
+        while (kv.store.compact()) {
+            count++;
+        }
+        assertTrue(count > 0);
+        assertTrue(kv.relocateCount > 0);
+        assertEquals(segmentCountBefore - count, kv.store.getSegmentCount());
+        for (int i = 0; i < 9; i++) {
+            assertEquals("v" + (990 + i), kv.get("k" + i));
+        }
+        assertEquals("f", kv.get("fixed"));
+        assertNull(kv.get("k9"));
+        int segmentCount = kv.store.getSegmentCount();
+        kv.store.close();
+        assertEquals(segmentCount, storeDir.listFiles().length);
+
+        // restore the relocated records
+        kv = new KeyValueStore(storeDir, 4096);
+        assertEquals(10, kv.index.size());
+        assertEquals("f", kv.get("fixed"));
+        for (int i = 0; i < 9; i++) {
+            assertEquals("v" + (990 + i), kv.get("k" + i));
+        }
+        kv.store.close();
+    }
+
+    @Test
+    public void compactInBatchesWithConcurrentAppend() throws Exception {
+        File storeDir = dir.toFile();
+        // the segment is larger than a batch of the compaction
+        KeyValueStore kv = new KeyValueStore(storeDir, 1024 * 1024);
+        kv.store.setCompactMinBytes(0);
+        String value = new String(new char[1000]).replace('\0', 'x');
+        for (int i = 0; i < 3000; i++) {
+            kv.put("k" + (i % 500), value + i);
+        }
+        assertTrue(kv.store.getSegmentCount() > 2);
+
+        AtomicBoolean stop = new AtomicBoolean();
+        KeyValueStore store = kv;
+        Thread writer = new Thread(() -> {
+            for (int i = 0; !stop.get(); i++) {
+                store.put("w" + (i % 100), "w" + i);
+                store.remove("w" + ((i + 50) % 100));
+            }
+        });
+        writer.start();
+        try {
+            assertTrue(kv.store.compact());
+        } finally {
+            stop.set(true);
+            writer.join();
+        }
+        for (int i = 0; i < 500; i++) {
+            assertEquals(value + (2500 + i), kv.get("k" + i));
+        }
+        Map<String, String> expect = kv.values();
+        kv.store.close();
+
+        KeyValueStore restore = new KeyValueStore(storeDir, 1024 * 1024);
+        assertEquals(expect, restore.values());
+        restore.store.close();
+    }
+
+    @Test
+    public void rejectAccessAfterClose() throws IOException {
+        KeyValueStore kv = new KeyValueStore(dir.toFile(), 4096);
+        kv.put("a", "1");
+        long location = kv.index.get("a");
+        kv.store.close();
+
+        assertThrows(IllegalStateException.class, () -> kv.put("b", "2"));
+        assertThrows(IllegalStateException.class, () -> kv.get("a"));
+        assertThrows(IllegalStateException.class, () -> kv.store.markGarbage(location));
+        // nothing to force after the close
+        kv.store.flush();
+    }
+
+    /**
+     * key value index on the store
+     */
+    static class KeyValueStore implements SegmentFileStore.RecordHandler {
+        final Map<String, Long> index = new HashMap<>();
+        final SegmentFileStore store;
+        final ReentrantLock lock;
+        int relocateCount;
+
+        KeyValueStore(File dir, int segmentSize) throws IOException {
+            this.store = new SegmentFileStore(dir, segmentSize, 60000, this);
+            this.lock = store.getLock();
+            store.open();
+        }
+
+        void put(String key, String value) {
+            lock.lock();
+            try {
+                Long old = index.put(key, store.append(TYPE_PUT, body(key, value), null));
+                if (old != null) {
+                    store.markGarbage(old);
+                }
+            } finally {
+                lock.unlock();
+            }
+            store.syncIfNeed();
+        }
+
+        void remove(String key) {
+            lock.lock();
+            try {
+                Long old = index.remove(key);
+                if (old != null) {
+                    store.markGarbage(old);
+                    store.markGarbage(store.append(TYPE_REMOVE, body(key, ""), null));
+                }
+            } finally {
+                lock.unlock();
+            }
+            store.syncIfNeed();
+        }
+
+        String get(String key) {
+            lock.lock();
+            try {
+                Long location = index.get(key);
+                if (location == null) {
+                    return null;
+                }
+                ByteBuffer body = store.read(location);
+                SegmentFileStore.getString(body);
+                return SegmentFileStore.getString(body);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Map<String, String> values() {
+            Map<String, String> values = new HashMap<>();
+            for (String key : new HashMap<>(index).keySet()) {
+                values.put(key, get(key));
+            }
+            return values;
+        }
+
+        @Override
+        public void onRestore(byte type, ByteBuffer body, long location) {
+            String key = SegmentFileStore.getString(body);
+            Long old;
+            if (type == TYPE_PUT) {
+                old = index.put(key, location);
+            } else {
+                old = index.remove(key);
+                store.markGarbage(location);
+            }
+            if (old != null) {
+                store.markGarbage(old);
+            }
+        }
+
+        @Override
+        public boolean isLive(byte type, ByteBuffer body, long location) {
+            Long current = index.get(SegmentFileStore.getString(body));
+            return type == TYPE_PUT && current != null && current == location;
+        }
+
+        @Override
+        public void onRelocate(byte type, ByteBuffer body, long oldLocation, long newLocation) {
+            index.put(SegmentFileStore.getString(body), newLocation);
+            relocateCount++;
+        }
+    }
+}
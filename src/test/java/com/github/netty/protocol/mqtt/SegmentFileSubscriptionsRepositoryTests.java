@@ -0,0 +1,82 @@
+package com.github.netty.protocol.mqtt;
+
+import com.github.netty.protocol.mqtt.subscriptions.Subscription;
+import com.github.netty.protocol.mqtt.subscriptions.Topic;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * segment file subscriptions test. add/remove across the restart and the compaction
+ *
+ * @author wangzihao
+ */
+public class SegmentFileSubscriptionsRepositoryTests {
+    @TempDir
+    Path dir;
+
+    private static Map<String, MqttQoS> subscriptions(SegmentFileSubscriptionsRepository repository) {
+        Map<String, MqttQoS> map = new TreeMap<>();
+        for (Subscription subscription : repository.listAllSubscriptions()) {
+            map.put(subscription.getClientId() + "|" + subscription.getTopicFilter(), subscription.getRequestedQos());
+        }
+        return map;
+    }
+
+    @Test
+    public void addRemoveAcrossRestart() throws IOException {
+        SegmentFileSubscriptionsRepository repository = new SegmentFileSubscriptionsRepository(dir.toFile(), 4096, 0);
+        repository.addNewSubscription(new Subscription("c1", new Topic("a/#"), MqttQoS.AT_MOST_ONCE));
+        repository.addNewSubscription(new Subscription("c1", new Topic("b/+"), MqttQoS.AT_LEAST_ONCE));
+        repository.addNewSubscription(new Subscription("c2", new Topic("a/#"), MqttQoS.EXACTLY_ONCE));
+        // overwrite the qos
+        repository.addNewSubscription(new Subscription("c1", new Topic("a/#"), MqttQoS.AT_LEAST_ONCE));
+        repository.removeSubscription("b/+", "c1");
+        repository.removeSubscription("not-exist", "c3");
+        repository.close();
+
+        repository = new SegmentFileSubscriptionsRepository(dir.toFile(), 4096, 0);
+        Map<String, MqttQoS> expect = new TreeMap<>();
+        expect.put("c1|a/#", MqttQoS.AT_LEAST_ONCE);
+        expect.put("c2|a/#", MqttQoS.EXACTLY_ONCE);
+        assertEquals(expect, subscriptions(repository));
+        repository.removeSubscription("a/#", "c2");
+        repository.close();
+
+        repository = new SegmentFileSubscriptionsRepository(dir.toFile(), 4096, 0);
+        assertEquals(Collections.singletonMap("c1|a/#", MqttQoS.AT_LEAST_ONCE), subscriptions(repository));
+        repository.close();
+    }
+
+    @Test
+    public void compactAcrossRestart() throws IOException {
+        SegmentFileSubscriptionsRepository repository = new SegmentFileSubscriptionsRepository(dir.toFile(), 4096, 60000);
+        repository.getStore().setCompactMinBytes(0);
+        repository.addNewSubscription(new Subscription("fixed", new Topic("f"), MqttQoS.AT_MOST_ONCE));
+        for (int i = 0; i < 500; i++) {
+            Topic topic = new Topic("t/" + (i % 10));
+            repository.addNewSubscription(new Subscription("c" + (i % 3), topic, MqttQoS.AT_LEAST_ONCE));
+            if (i % 2 == 0) {
+                repository.removeSubscription(topic.toString(), "c" + (i % 3));
+            }
+        }
+        int count = 0;
+        while (repository.getStore().compact()) {
+            count++;
+        }
+        assertTrue(count > 0);
+        Map<String, MqttQoS> expect = subscriptions(repository);
+        assertEquals(MqttQoS.AT_MOST_ONCE, expect.get("fixed|f"));
+        repository.close();
+
+        repository = new SegmentFileSubscriptionsRepository(dir.toFile(), 4096, 60000);
+        assertEquals(expect, subscriptions(repository));
+        repository.close();
+    }
+}
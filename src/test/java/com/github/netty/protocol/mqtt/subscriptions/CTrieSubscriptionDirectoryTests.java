@@ -0,0 +1,109 @@
+package com.github.netty.protocol.mqtt.subscriptions;
+
+import com.github.netty.protocol.mqtt.MemorySubscriptionsRepository;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * match cache test. the cache is invalid after the ctrie generation changed (subscribe, unsubscribe), and the size is bounded
+ *
+ * @author wangzihao
+ */
+public class CTrieSubscriptionDirectoryTests {
+
+    private static Subscription subscription(String clientId, String topicFilter, MqttQoS qos) {
+        return new Subscription(clientId, new Topic(topicFilter), qos);
+    }
+
+    @Test
+    public void generationIncrementOnChange() {
+        CTrie ctrie = new CTrie();
+        long generation = ctrie.generation();
+        ctrie.addToTree(subscription("c1", "a/b", MqttQoS.AT_MOST_ONCE));
+        assertEquals(generation + 1, ctrie.generation());
+        ctrie.removeFromTree(new Topic("a/b"), "c1");
+        assertEquals(generation + 2, ctrie.generation());
+        // match not change the generation
+        ctrie.recursiveMatch(new Topic("a/b"));
+        assertEquals(generation + 2, ctrie.generation());
+    }
+
+    @Test
+    public void cacheHitUntilSubscribe() {
+        CTrieSubscriptionDirectory directory = new CTrieSubscriptionDirectory(new MemorySubscriptionsRepository());
+        directory.add(subscription("c1", "a/+", MqttQoS.AT_MOST_ONCE));
+        Topic topic = new Topic("a/b");
+
+        Subscription[] first = directory.matchQosSharpeningArray(topic);
+        assertEquals(1, first.length);
+        assertEquals(1, directory.getMatchCacheSize());
+        // cache hit return the same array
+        assertSame(first, directory.matchQosSharpeningArray(new Topic("a/b")));
+
+        // subscribe. the cached entry is stale
+        directory.add(subscription("c2", "a/#", MqttQoS.AT_LEAST_ONCE));
+        Subscription[] second = directory.matchQosSharpeningArray(topic);
+        assertNotSame(first, second);
+        assertEquals(2, second.length);
+
+        // the higher qos subscription of the same client win
+        directory.add(subscription("c1", "a/b", MqttQoS.EXACTLY_ONCE));
+        Subscription[] third = directory.matchQosSharpeningArray(topic);
+        assertEquals(2, third.length);
+        for (Subscription subscription : third) {
+            if ("c1".equals(subscription.getClientId())) {
+                assertEquals(MqttQoS.EXACTLY_ONCE, subscription.getRequestedQos());
+            }
+        }
+    }
+
+    @Test
+    public void cacheInvalidOnUnsubscribe() {
+        CTrieSubscriptionDirectory directory = new CTrieSubscriptionDirectory(new MemorySubscriptionsRepository());
+        directory.add(subscription("c1", "a/b", MqttQoS.AT_MOST_ONCE));
+        directory.add(subscription("c2", "a/b", MqttQoS.AT_MOST_ONCE));
+        Topic topic = new Topic("a/b");
+        assertEquals(2, directory.matchQosSharpeningArray(topic).length);
+        directory.matchQosSharpeningArray(new Topic("x/y"));
+        assertEquals(2, directory.getMatchCacheSize());
+
+        directory.removeSubscription(new Topic("a/b"), "c1");
+        Subscription[] subscriptions = directory.matchQosSharpeningArray(topic);
+        assertEquals(1, subscriptions.length);
+        assertEquals("c2", subscriptions[0].getClientId());
+        // the entries of the old generation are cleared
+        assertEquals(1, directory.getMatchCacheSize());
+
+        directory.removeSubscription(new Topic("a/b"), "c2");
+        assertEquals(0, directory.matchQosSharpeningArray(topic).length);
+    }
+
+    @Test
+    public void cacheSizeBounded() {
+        CTrieSubscriptionDirectory directory = new CTrieSubscriptionDirectory(new MemorySubscriptionsRepository());
+        directory.add(subscription("c1", "a/#", MqttQoS.AT_MOST_ONCE));
+        int max = CTrieSubscriptionDirectory.DEFAULT_MAX_MATCH_CACHE_SIZE;
+        assertEquals(4096, max);
+        for (int i = 0; i < max + 100; i++) {
+            assertEquals(1, directory.matchQosSharpeningArray(new Topic("a/" + i)).length);
+        }
+        assertEquals(max, directory.getMatchCacheSize());
+
+        // the topic not in the cache still match
+        assertEquals(1, directory.matchQosSharpeningArray(new Topic("a/" + (max + 1))).length);
+        assertEquals(max, directory.getMatchCacheSize());
+        // the cached topic still hit
+        Subscription[] cached = directory.matchQosSharpeningArray(new Topic("a/0"));
+        assertSame(cached, directory.matchQosSharpeningArray(new Topic("a/0")));
+    }
+
+    @Test
+    public void disableCache() {
+        CTrieSubscriptionDirectory directory = new CTrieSubscriptionDirectory(new MemorySubscriptionsRepository(), 0);
+        directory.add(subscription("c1", "a/#", MqttQoS.AT_MOST_ONCE));
+        assertEquals(1, directory.matchQosSharpeningArray(new Topic("a/b")).length);
+        assertEquals(0, directory.getMatchCacheSize());
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.netty.protocol.mqtt.subscriptions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * topic trie test. the wildcard (# and +) and the system topic ($)
+ *
+ * @author wangzihao
+ */
+public class TopicTrieTests {
+    private static final String[] TOPICS = {"a", "a/b", "a/b/c", "a/c", "a//c", "/a", "b/b", "$SYS/broker", "$SYS", "a/$x", ""};
+
+    private static TopicTrie<String> newTrie() {
+        TopicTrie<String> trie = new TopicTrie<>();
+        for (String topic : TOPICS) {
+            assertNull(trie.put(topic, "v-" + topic));
+        }
+        return trie;
+    }
+
+    private static Set<String> match(TopicTrie<String> trie, String filter) {
+        Set<String> set = new TreeSet<>();
+        trie.match(filter, (topic, value) -> {
+            assertEquals("v-" + topic, value);
+            assertTrue(set.add(topic), topic);
+        });
+        return set;
+    }
+
+    private static Set<String> set(String... topics) {
+        return new TreeSet<>(Arrays.asList(topics));
+    }
+
+    @Test
+    public void multiLevelWildcard() {
+        TopicTrie<String> trie = newTrie();
+        assertEquals(set("a", "a/b", "a/b/c", "a/c", "a//c", "/a", "b/b", "a/$x", ""), match(trie, "#"));
+        // 'a/#' match the parent 'a'
+        assertEquals(set("a", "a/b", "a/b/c", "a/c", "a//c", "a/$x"), match(trie, "a/#"));
+        assertEquals(set("a/b", "a/b/c"), match(trie, "a/b/#"));
+        assertEquals(set("$SYS", "$SYS/broker"), match(trie, "$SYS/#"));
+        assertEquals(set(), match(trie, "x/#"));
+    }
+
+    @Test
+    public void singleLevelWildcard() {
+        TopicTrie<String> trie = newTrie();
+        assertEquals(set("a", ""), match(trie, "+"));
+        assertEquals(set("a/b", "a/c", "b/b", "/a", "a/$x"), match(trie, "+/+"));
+        // the '$' is only special in the first level
+        assertEquals(set("a/b", "a/c", "a/$x"), match(trie, "a/+"));
+        assertEquals(set("a/b/c", "a//c"), match(trie, "a/+/c"));
+        assertEquals(set("a/b", "b/b"), match(trie, "+/b"));
+        assertEquals(set("$SYS/broker"), match(trie, "$SYS/+"));
+        // the '#' match the parent level
+        assertEquals(set("a", "", "a/b", "a/b/c", "a/c", "a//c", "b/b", "/a", "a/$x"), match(trie, "+/#"));
+    }
+
+    @Test
+    public void exactMatchAndRemove() {
+        TopicTrie<String> trie = newTrie();
+        assertEquals(TOPICS.length, trie.size());
+        assertEquals(set("a/b"), match(trie, "a/b"));
+        assertEquals(set("$SYS"), match(trie, "$SYS"));
+        assertEquals(set(""), match(trie, ""));
+        assertEquals(set(), match(trie, "a/b/c/d"));
+        assertEquals("v-a//c", trie.get("a//c"));
+        assertNull(trie.get("a/x"));
+
+        assertEquals("v-a/b", trie.put("a/b", "v-a/b"));
+        assertEquals(TOPICS.length, trie.size());
+        assertEquals("v-a/b/c", trie.remove("a/b/c"));
+        assertNull(trie.remove("a/b/c"));
+        assertNull(trie.remove("x/y"));
+        // the parent is kept
+        assertEquals("v-a/b", trie.get("a/b"));
+        assertEquals(set("a/b"), match(trie, "a/b/#"));
+        assertEquals(TOPICS.length - 1, trie.size());
+
+        for (String topic : TOPICS) {
+            trie.remove(topic);
+        }
+        assertTrue(trie.isEmpty());
+        assertEquals(set(), match(trie, "#"));
+        List<String> all = new ArrayList<>();
+        trie.forEach((topic, value) -> all.add(topic));
+        assertTrue(all.isEmpty());
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.netty.protocol.nrpc;
+
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * in-flight request registry test
+ *
+ * @author wangzihao
+ */
+public class RpcInFlightMapTests {
+
+    @Test
+    public void putGetRemove() {
+        RpcInFlightMap<String> map = new RpcInFlightMap<>(4, 10, 8, null);
+        for (int i = 0; i < 1000; i++) {
+            assertNull(map.put(i, "v" + i));
+        }
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; i += 2) {
+            assertEquals("v" + i, map.remove(i));
+        }
+        assertEquals(500, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 2 == 0 ? null : "v" + i, map.get(i));
+        }
+        assertFalse(map.remove(1, "other"));
+        assertTrue(map.remove(1, map.get(1)));
+        assertNull(map.get(1));
+    }
+
+    @Test
+    public void expiry() throws Exception {
+        EventLoop eventLoop = new DefaultEventLoop();
+        try {
+            List<Integer> expiryKeys = new CopyOnWriteArrayList<>();
+            CountDownLatch latch = new CountDownLatch(2);
+            RpcInFlightMap<String> map = new RpcInFlightMap<>(16, 5, 64, (key, value, createTimestamp, expiryTimestamp) -> {
+                assertTrue(eventLoop.inEventLoop());
+                expiryKeys.add(key);
+                latch.countDown();
+            });
+            map.start(eventLoop);
+            map.put(1, "1", 20);
+            map.put(2, "2", 20);
+            map.put(3, "3", 20);
+            map.put(4, "4");
+            // completed before the timeout
+            map.remove(2);
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            assertEquals(2, expiryKeys.size());
+            assertTrue(expiryKeys.contains(1) && expiryKeys.contains(3));
+            assertEquals(1, map.size(), "never expiry");
+            assertEquals("4", map.get(4));
+        } finally {
+            eventLoop.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    public void rejectDuplicate() throws Exception {
+        EventLoop eventLoop = new DefaultEventLoop();
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            List<String> expiryValues = new CopyOnWriteArrayList<>();
+            RpcInFlightMap<String> map = new RpcInFlightMap<>(16, 5, 64, (key, value, createTimestamp, expiryTimestamp) -> {
+                expiryValues.add(value);
+                latch.countDown();
+            });
+            map.start(eventLoop);
+            assertNull(map.putIfAbsent(1, "first", 20));
+            assertEquals("first", map.putIfAbsent(1, "duplicate", 60000));
+            assertEquals("first", map.get(1));
+
+            // the pending entry keep the timeout
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals("first", expiryValues.get(0));
+            assertTrue(map.isEmpty());
+        } finally {
+            eventLoop.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    public void startAgainOnOtherEventLoop() throws Exception {
+        EventLoop eventLoop1 = new DefaultEventLoop();
+        EventLoop eventLoop2 = new DefaultEventLoop();
+        try {
+            List<Boolean> inEventLoop2 = new CopyOnWriteArrayList<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            RpcInFlightMap<String> map = new RpcInFlightMap<>(16, 5, 64, (key, value, createTimestamp, expiryTimestamp) -> {
+                inEventLoop2.add(eventLoop2.inEventLoop());
+                latch.countDown();
+            });
+            map.start(eventLoop1);
+            map.put(1, "1", 60000);
+
+            // reconnect. the first event loop is closed
+            eventLoop1.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+            map.start(eventLoop2);
+            map.put(2, "2", 20);
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(1, inEventLoop2.size());
+            assertTrue(inEventLoop2.get(0));
+            assertEquals("1", map.get(1));
+        } finally {
+            eventLoop1.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+            eventLoop2.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    public void expireOnCallerIfEventLoopShutdown() throws Exception {
+        EventLoop eventLoop = new DefaultEventLoop();
+        EventLoop eventLoop2 = new DefaultEventLoop();
+        try {
+            Thread caller = Thread.currentThread();
+            List<String> expiryValues = new CopyOnWriteArrayList<>();
+            RpcInFlightMap<String> map = new RpcInFlightMap<>(16, 5, 64, (key, value, createTimestamp, expiryTimestamp) -> {
+                assertSame(caller, Thread.currentThread());
+                expiryValues.add(value);
+            });
+            map.start(eventLoop);
+            map.put(1, "never");
+            eventLoop.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+
+            // the tick is rejected. not throw, the pending entry is failed at once
+            assertNull(map.put(2, "2", 60000));
+            assertEquals(1, expiryValues.size());
+            assertEquals("2", expiryValues.get(0));
+            assertNull(map.get(2));
+            assertEquals("never", map.get(1));
+
+            // bind the shut down event loop not throw, then start again on the new event loop
+            CountDownLatch latch = new CountDownLatch(1);
+            RpcInFlightMap<String> map2 = new RpcInFlightMap<>(16, 5, 64, (key, value, createTimestamp, expiryTimestamp) -> latch.countDown());
+            map2.start(eventLoop);
+            map2.start(eventLoop2);
+            map2.put(3, "3", 20);
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            eventLoop.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+            eventLoop2.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.netty.protocol.nrpc;
+
+import com.github.netty.annotation.NRpcService;
+import com.github.netty.protocol.nrpc.codec.JdkDataCodec;
+import com.github.netty.protocol.nrpc.codec.RpcDecoder;
+import com.github.netty.protocol.nrpc.codec.RpcEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import static com.github.netty.protocol.nrpc.RpcPacket.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * request by the negotiated method id test
+ *
+ * @author wangzihao
+ */
+public class RpcMethodIdTests {
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 8080);
+
+    public interface EchoService {
+        String echo();
+    }
+
+    @NRpcService(value = "/echoService", version = "1.0.0")
+    public static class EchoServiceImpl implements EchoService {
+        @Override
+        public String echo() {
+            return "echo";
+        }
+    }
+
+    private static MethodIdPacket newMethodIdPacket(int methodId, String methodName) {
+        MethodIdPacket packet = new MethodIdPacket();
+        packet.setAck(ACK_YES);
+        packet.setMethodId(methodId);
+        packet.setRequestMappingName("/echoService");
+        packet.setVersion("1.0.0");
+        packet.setMethodName(methodName);
+        return packet;
+    }
+
+    private static RequestPacket newRequest(int requestId, int methodId) {
+        RequestPacket request = RequestPacket.newInstance();
+        request.setRequestId(requestId);
+        request.setMethodId(methodId);
+        request.setTimeout(1000);
+        request.setAck(ACK_YES);
+        request.setData(new byte[0]);
+        return request;
+    }
+
+    private static <T> T encodeDecode(RpcPacket packet) {
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcEncoder());
+        EmbeddedChannel decoder = new EmbeddedChannel(new RpcDecoder());
+        try {
+            assertTrue(encoder.writeOutbound(packet));
+            ByteBuf buf = encoder.readOutbound();
+            assertTrue(decoder.writeInbound(buf));
+            return decoder.readInbound();
+        } finally {
+            encoder.finishAndReleaseAll();
+            decoder.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void encodeDecode() {
+        MethodIdPacket methodIdPacket = encodeDecode(newMethodIdPacket(65535, "echo"));
+        assertEquals(TYPE_METHOD_ID, methodIdPacket.getPacketType());
+        assertEquals(ACK_YES, methodIdPacket.getAck());
+        assertEquals(65535, methodIdPacket.getMethodId());
+        assertEquals("/echoService", methodIdPacket.getRequestMappingName());
+        assertEquals("1.0.0", methodIdPacket.getVersion());
+        assertEquals("echo", methodIdPacket.getMethodName());
+
+        RequestPacket request = newRequest(7, 3);
+        request.setData(new byte[]{1, 2, 3});
+        RequestPacket decoded = encodeDecode(request);
+        assertEquals(7, decoded.getRequestId());
+        assertEquals(3, decoded.getMethodId());
+        assertEquals(1000, decoded.getTimeout());
+        assertArrayEquals(new byte[]{1, 2, 3}, decoded.getData());
+        // the names are resolved by the server method id table
+        assertNull(decoded.getMethodName());
+
+        // request by name
+        RequestPacket byName = newRequest(8, -1);
+        byName.setRequestMappingName("/echoService");
+        byName.setVersion("1.0.0");
+        byName.setMethodName("echo");
+        RequestPacket decodedByName = encodeDecode(byName);
+        assertEquals(-1, decodedByName.getMethodId());
+        assertEquals("echo", decodedByName.getMethodName());
+    }
+
+    @Test
+    public void serverConfirmAndDispatchById() {
+        RpcServerChannelHandler handler = new RpcServerChannelHandler(new JdkDataCodec());
+        handler.addInstance(new EchoServiceImpl());
+        EmbeddedChannel channel = new EmbeddedChannel(handler) {
+            @Override
+            protected SocketAddress localAddress0() {
+                return ADDRESS;
+            }
+
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return ADDRESS;
+            }
+        };
+        try {
+            // not exist method is not confirmed
+            channel.writeInbound(newMethodIdPacket(2, "notExist"));
+            assertNull(channel.readOutbound());
+
+            channel.writeInbound(newMethodIdPacket(3, "echo"));
+            MethodIdPacket confirm = channel.readOutbound();
+            assertNotNull(confirm);
+            assertEquals(3, confirm.getMethodId());
+            assertEquals(ACK_NO, confirm.getAck());
+
+            channel.writeInbound(newRequest(1, 3));
+            ResponseLastPacket response = channel.readOutbound();
+            assertEquals(1, response.getRequestId());
+            assertEquals(ResponsePacket.OK, response.getStatus().intValue());
+
+            channel.writeInbound(newRequest(2, 2));
+            ResponseLastPacket notFound = channel.readOutbound();
+            assertEquals(2, notFound.getRequestId());
+            assertEquals(ResponsePacket.NO_SUCH_SERVICE, notFound.getStatus().intValue());
+            assertTrue(notFound.getMessage().contains("method id 2"));
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.netty.protocol.nrpc;
+
+import com.github.netty.annotation.NRpcService;
+import com.github.netty.protocol.nrpc.codec.JdkDataCodec;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.netty.protocol.nrpc.RpcPacket.ACK_YES;
+import static com.github.netty.protocol.nrpc.RpcPacket.ResponsePacket.SERVER_ERROR;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * per service concurrency limit test
+ *
+ * @author wangzihao
+ */
+public class RpcServerConcurrencyLimitTests {
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 8080);
+
+    public interface SlowService {
+        String slow();
+    }
+
+    @NRpcService(value = "/slowService", version = "1.0.0")
+    public static class SlowServiceImpl implements SlowService {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public String slow() {
+            entered.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "ok";
+        }
+    }
+
+    private static RpcPacket.RequestPacket newRequest(int requestId) {
+        RpcPacket.RequestPacket request = RpcPacket.RequestPacket.newInstance();
+        request.setRequestId(requestId);
+        request.setRequestMappingName("/slowService");
+        request.setVersion("1.0.0");
+        request.setMethodName("slow");
+        request.setTimeout(5000);
+        request.setAck(ACK_YES);
+        return request;
+    }
+
+    @Test
+    public void rejectBusyServiceWithoutHoldPoolThread() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        SlowServiceImpl service = new SlowServiceImpl();
+        RpcServerChannelHandler handler = new RpcServerChannelHandler(new JdkDataCodec());
+        handler.addInstance(service);
+        handler.getServiceInstanceMap().values().iterator().next().setMaxConcurrency(1);
+        handler.setExecutorSupplier(() -> pool);
+        EmbeddedChannel channel = new EmbeddedChannel(handler) {
+            @Override
+            protected SocketAddress localAddress0() {
+                return ADDRESS;
+            }
+
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return ADDRESS;
+            }
+        };
+        try {
+            channel.writeInbound(newRequest(1));
+            assertTrue(service.entered.await(5, TimeUnit.SECONDS));
+
+            // the service is saturated. reject on the caller, not wait the permit on a pool thread
+            channel.writeInbound(newRequest(2));
+            RpcPacket.ResponseLastPacket response = channel.readOutbound();
+            assertNotNull(response);
+            assertEquals(2, response.getRequestId());
+            assertEquals(SERVER_ERROR, response.getStatus().intValue());
+            assertTrue(response.getMessage().contains("service busy"));
+
+            // the second pool thread is free
+            Future<?> probe = pool.submit(() -> {
+            });
+            probe.get(1, TimeUnit.SECONDS);
+        } finally {
+            service.release.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+            channel.finishAndReleaseAll();
+        }
+        assertEquals(0, handler.getServiceInstanceMap().values().iterator().next().getActiveCount());
+    }
+}
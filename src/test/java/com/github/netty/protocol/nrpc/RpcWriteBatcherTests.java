@@ -0,0 +1,156 @@
+package com.github.netty.protocol.nrpc;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.*;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalIoHandler;
+import io.netty.channel.local.LocalServerChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * request write batching test
+ *
+ * @author wangzihao
+ */
+public class RpcWriteBatcherTests {
+
+    private static EmbeddedChannel newChannel(AtomicInteger flushCount) {
+        return new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void flush(ChannelHandlerContext ctx) throws Exception {
+                flushCount.incrementAndGet();
+                super.flush(ctx);
+            }
+        });
+    }
+
+    @Test
+    public void flushWhenBatchFull() {
+        AtomicInteger flushCount = new AtomicInteger();
+        EmbeddedChannel channel = newChannel(flushCount);
+        RpcWriteBatcher batcher = new RpcWriteBatcher(channel, 3, TimeUnit.SECONDS.toMicros(10));
+
+        ChannelFuture f1 = batcher.write("1");
+        ChannelFuture f2 = batcher.write("2");
+        channel.runPendingTasks();
+        assertEquals(0, flushCount.get(), "wait the linger");
+        assertEquals(2, batcher.getPendingSize());
+
+        ChannelFuture f3 = batcher.write("3");
+        channel.runPendingTasks();
+        assertEquals(1, flushCount.get(), "one flush for the batch");
+        assertEquals(0, batcher.getPendingSize());
+        assertTrue(f1.isSuccess() && f2.isSuccess() && f3.isSuccess());
+        assertEquals("1", channel.readOutbound());
+        assertEquals("2", channel.readOutbound());
+        assertEquals("3", channel.readOutbound());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void flushWhenLingerExpired() {
+        AtomicInteger flushCount = new AtomicInteger();
+        EmbeddedChannel channel = newChannel(flushCount);
+        RpcWriteBatcher batcher = new RpcWriteBatcher(channel, 100, 500);
+
+        ChannelFuture future = batcher.write("1");
+        channel.runPendingTasks();
+        assertFalse(future.isDone());
+
+        channel.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        channel.runScheduledPendingTasks();
+        assertTrue(future.isSuccess());
+        assertEquals(1, flushCount.get());
+        assertEquals("1", channel.readOutbound());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void flushImmediatelyWithoutLinger() {
+        AtomicInteger flushCount = new AtomicInteger();
+        EmbeddedChannel channel = newChannel(flushCount);
+        RpcWriteBatcher batcher = new RpcWriteBatcher(channel, 100, 0);
+
+        batcher.write("1");
+        batcher.write("2");
+        channel.runPendingTasks();
+        // the two writes before the event loop run are in one batch
+        assertEquals(1, flushCount.get());
+        assertEquals("1", channel.readOutbound());
+        assertEquals("2", channel.readOutbound());
+
+        batcher.write("3");
+        channel.runPendingTasks();
+        assertEquals(2, flushCount.get());
+        assertEquals("3", channel.readOutbound());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void concurrentWriters() throws Exception {
+        int threads = 4;
+        int writesPerThread = 2000;
+        EventLoopGroup group = new MultiThreadIoEventLoopGroup(2, LocalIoHandler.newFactory());
+        LocalAddress address = new LocalAddress("RpcWriteBatcherTests");
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch receivedAll = new CountDownLatch(1);
+        try {
+            new ServerBootstrap().group(group)
+                    .channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            if (received.incrementAndGet() == threads * writesPerThread) {
+                                receivedAll.countDown();
+                            }
+                        }
+                    })
+                    .bind(address).sync();
+            Channel channel = new Bootstrap().group(group)
+                    .channel(LocalChannel.class)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .connect(address).sync().channel();
+            RpcWriteBatcher batcher = new RpcWriteBatcher(channel, 16, 50);
+
+            List<Thread> writers = new ArrayList<>();
+            List<ChannelFuture> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < writesPerThread; i++) {
+                        ChannelFuture future = batcher.write(i);
+                        synchronized (futures) {
+                            futures.add(future);
+                        }
+                    }
+                });
+                writers.add(thread);
+                thread.start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            assertTrue(receivedAll.await(10, TimeUnit.SECONDS), "received " + received.get());
+            synchronized (futures) {
+                assertEquals(threads * writesPerThread, futures.size());
+                for (ChannelFuture future : futures) {
+                    assertTrue(future.await(1, TimeUnit.SECONDS) && future.isSuccess());
+                }
+            }
+            assertEquals(0, batcher.getPendingSize());
+            channel.close().sync();
+        } finally {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.github.netty.protocol.nrpc.codec;
+
+import com.github.netty.protocol.nrpc.exception.RpcDecodeException;
+import com.github.netty.protocol.nrpc.exception.RpcEncodeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * binary schema round trip test
+ *
+ * @author wangzihao
+ */
+public class BinarySchemaTests {
+
+    private static Object roundTrip(BinarySchema.Codec encoder, BinarySchema.Codec decoder, Object value) {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            encoder.write(buf, value);
+            Object result = decoder.read(buf);
+            assertFalse(buf.isReadable(), "all bytes read");
+            return result;
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static User newUser() {
+        User user = new User();
+        user.id = 1L;
+        user.age = -18;
+        user.name = "xiaowang";
+        user.status = Status.ENABLE;
+        user.tags = new ArrayList<>(Arrays.asList("a", null, "c"));
+        user.scores = new LinkedHashMap<>();
+        user.scores.put("math", 99);
+        user.bytes = new byte[]{1, 2, 3};
+        user.friend = new User();
+        user.friend.name = "friend";
+        user.extra = new BigDecimal("3.14");
+        return user;
+    }
+
+    @Test
+    public void pojoRoundTrip() {
+        BinarySchema schema = new BinarySchema();
+        BinarySchema.Codec codec = schema.getCodec(User.class);
+        User user = newUser();
+        User result = (User) roundTrip(codec, codec, user);
+        assertEquals(user, result);
+        assertNull(roundTrip(codec, codec, null));
+    }
+
+    @Test
+    public void dynamicRoundTrip() {
+        BinarySchema schema = new BinarySchema();
+        schema.register(User.class);
+        BinarySchema.Codec codec = schema.getDynamicCodec();
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("int", 1);
+        map.put("long", Long.MIN_VALUE);
+        map.put("string", "s");
+        map.put("bool", true);
+        map.put("double", 1.5D);
+        map.put("list", Arrays.asList(1, "2", null));
+        map.put("set", new LinkedHashSet<>(Arrays.asList("x", "y")));
+        map.put("date", new Date(1000L));
+        map.put("enum", Status.DISABLE);
+        map.put("pojo", newUser());
+        assertEquals(map, roundTrip(codec, codec, map));
+        assertArrayEquals(new Object[]{"a", 2}, (Object[]) roundTrip(codec, codec, new Object[]{"a", 2}));
+    }
+
+    @Test
+    public void rejectNotRegisteredClass() {
+        BinarySchema encodeSchema = new BinarySchema();
+        BinarySchema decodeSchema = new BinarySchema();
+        User user = newUser();
+
+        // the class name on the wire is never loaded by the decoder
+        assertThrows(RpcDecodeException.class, () -> roundTrip(encodeSchema.getDynamicCodec(), decodeSchema.getDynamicCodec(), user));
+        assertThrows(RpcDecodeException.class, () -> roundTrip(encodeSchema.getDynamicCodec(), decodeSchema.getDynamicCodec(), Status.ENABLE));
+
+        decodeSchema.register(User.class);
+        assertEquals(user, roundTrip(encodeSchema.getDynamicCodec(), decodeSchema.getDynamicCodec(), user));
+        // the field types of the registered pojo are compiled too
+        assertEquals(Status.ENABLE, roundTrip(encodeSchema.getDynamicCodec(), decodeSchema.getDynamicCodec(), Status.ENABLE));
+    }
+
+    @Test
+    public void rejectJavaSerializable() {
+        BinarySchema schema = new BinarySchema();
+        assertThrows(RpcEncodeException.class, () -> roundTrip(schema.getDynamicCodec(), schema.getDynamicCodec(), new NoDefaultConstructor("a")));
+
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(20);
+        buf.writeInt(0);
+        assertThrows(RpcDecodeException.class, () -> schema.getDynamicCodec().read(buf));
+        buf.release();
+    }
+
+    private static void assertDecodeError(BinarySchema.Codec codec, ByteBuf buf) {
+        try {
+            assertThrows(RpcDecodeException.class, () -> codec.read(buf));
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void rejectTruncatedLength() {
+        BinarySchema schema = new BinarySchema();
+        BinarySchema.Codec dynamicCodec = schema.getDynamicCodec();
+        // "2^30 elements" with a few bytes. not allocate before read
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(21);
+        BinarySchema.writeVarInt(buf, 1 << 30);
+        assertDecodeError(dynamicCodec, buf);
+
+        for (int tag : new int[]{11, 12, 13, 14}) {
+            buf = Unpooled.buffer();
+            buf.writeByte(tag);
+            BinarySchema.writeVarInt(buf, 3);
+            buf.writeByte(0);
+            assertDecodeError(dynamicCodec, buf);
+        }
+
+        buf = Unpooled.buffer();
+        BinarySchema.writeVarInt(buf, (1 << 30) + 1);
+        assertDecodeError(schema.getCodec(String[].class), buf);
+        buf = Unpooled.buffer();
+        BinarySchema.writeVarInt(buf, 100);
+        buf.writeBytes(new byte[10]);
+        assertDecodeError(schema.getCodec(byte[].class), buf);
+        buf = Unpooled.buffer();
+        BinarySchema.writeVarInt(buf, 100);
+        assertDecodeError(schema.getCodec(String.class), buf);
+        buf = Unpooled.buffer();
+        BinarySchema.writeVarInt(buf, 1 << 30);
+        assertDecodeError(schema.getCodec(int[].class), buf);
+    }
+
+    @Test
+    public void rejectNegativeLength() {
+        BinarySchema schema = new BinarySchema();
+        // the 5 bytes varint more than 2^31 is a negative int
+        for (int tag : new int[]{11, 12, 14, 21}) {
+            ByteBuf buf = Unpooled.buffer();
+            buf.writeByte(tag);
+            buf.writeBytes(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x0F});
+            buf.writeBytes(new byte[16]);
+            assertDecodeError(schema.getDynamicCodec(), buf);
+        }
+        ByteBuf buf = Unpooled.buffer();
+        BinarySchema.writeVarInt(buf, Integer.MIN_VALUE + 1);
+        buf.writeBytes(new byte[16]);
+        assertDecodeError(schema.getCodec(String[].class), buf);
+    }
+
+    @Test
+    public void rejectDeepNesting() {
+        BinarySchema schema = new BinarySchema();
+        // [[[[...]]]] list in list
+        ByteBuf buf = Unpooled.buffer();
+        for (int i = 0; i < 100000; i++) {
+            buf.writeByte(12);
+            BinarySchema.writeVarInt(buf, 1);
+        }
+        buf.writeByte(0);
+        assertDecodeError(schema.getDynamicCodec(), buf);
+
+        // the recursive pojo
+        User user = new User();
+        User last = user;
+        for (int i = 0; i < BinarySchema.MAX_DEPTH + 1; i++) {
+            last.friend = new User();
+            last = last.friend;
+        }
+        BinarySchema.Codec codec = schema.getCodec(User.class);
+        buf = Unpooled.buffer();
+        codec.write(buf, user);
+        assertDecodeError(codec, buf);
+
+        // the depth is restored after the error
+        User shallow = new User();
+        shallow.friend = new User();
+        assertEquals(shallow, roundTrip(codec, codec, shallow));
+    }
+
+    @Test
+    public void varInt() {
+        ByteBuf buf = Unpooled.buffer();
+        int[] ints = {0, 1, 127, 128, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        for (int value : ints) {
+            BinarySchema.writeVarInt(buf, value);
+        }
+        for (int value : ints) {
+            assertEquals(value, BinarySchema.readVarInt(buf));
+        }
+        long[] longs = {0, 1L << 40, Long.MAX_VALUE, -1L, Long.MIN_VALUE};
+        for (long value : longs) {
+            BinarySchema.writeVarLong(buf, value);
+        }
+        for (long value : longs) {
+            assertEquals(value, BinarySchema.readVarLong(buf));
+        }
+        BinarySchema.writeString(buf, null);
+        BinarySchema.writeString(buf, "");
+        BinarySchema.writeString(buf, "中文");
+        assertNull(BinarySchema.readString(buf));
+        assertEquals("", BinarySchema.readString(buf));
+        assertEquals("中文", BinarySchema.readString(buf));
+        buf.release();
+    }
+
+    public enum Status {
+        ENABLE, DISABLE
+    }
+
+    public static class User {
+        private long id;
+        private int age;
+        private String name;
+        private Status status;
+        private List<String> tags;
+        private Map<String, Integer> scores;
+        private byte[] bytes;
+        private User friend;
+        private Object extra;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof User)) {
+                return false;
+            }
+            User user = (User) o;
+            return id == user.id && age == user.age && Objects.equals(name, user.name) && status == user.status
+                    && Objects.equals(tags, user.tags) && Objects.equals(scores, user.scores)
+                    && Arrays.equals(bytes, user.bytes) && Objects.equals(friend, user.friend) && Objects.equals(extra, user.extra);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, name);
+        }
+    }
+
+    public static class NoDefaultConstructor implements Serializable {
+        private final String value;
+
+        public NoDefaultConstructor(String value) {
+            this.value = value;
+        }
+    }
+}
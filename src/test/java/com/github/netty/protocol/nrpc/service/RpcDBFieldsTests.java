@@ -0,0 +1,69 @@
+package com.github.netty.protocol.nrpc.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * field record parse test
+ *
+ * @author wangzihao
+ */
+public class RpcDBFieldsTests {
+
+    private static byte[] delta(int putCount, int length, int removeCount) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bout)) {
+            out.writeShort(0xDBF1);
+            out.writeInt(putCount);
+            out.writeUTF("a");
+            out.writeInt(length);
+            out.write(new byte[]{1, 2, 3});
+            out.writeInt(removeCount);
+            out.writeUTF("b");
+        }
+        return bout.toByteArray();
+    }
+
+    @Test
+    public void parseMerge() {
+        RpcDBFields fields = new RpcDBFields()
+                .put("a", new byte[]{1})
+                .put("b", new byte[]{2});
+        RpcDBFields delta = RpcDBFields.parse(new RpcDBFields()
+                .put("c", new byte[]{3})
+                .remove("a")
+                .toBytes());
+        assertEquals(1, delta.getFields().size());
+        assertTrue(delta.getRemoveFields().contains("a"));
+
+        fields.merge(delta);
+        assertNull(fields.get("a"));
+        assertArrayEquals(new byte[]{2}, fields.get("b"));
+        assertArrayEquals(new byte[]{3}, fields.get("c"));
+    }
+
+    @Test
+    public void rejectCorruptDelta() throws IOException {
+        RpcDBFields fields = RpcDBFields.parse(delta(1, 3, 1));
+        assertArrayEquals(new byte[]{1, 2, 3}, fields.get("a"));
+        assertTrue(fields.getRemoveFields().contains("b"));
+
+        // the count and length is not allocated before read
+        assertThrows(IllegalArgumentException.class, () -> RpcDBFields.parse(delta(Integer.MAX_VALUE, 3, 1)));
+        assertThrows(IllegalArgumentException.class, () -> RpcDBFields.parse(delta(-1, 3, 1)));
+        assertThrows(IllegalArgumentException.class, () -> RpcDBFields.parse(delta(1, Integer.MAX_VALUE, 1)));
+        assertThrows(IllegalArgumentException.class, () -> RpcDBFields.parse(delta(1, -1, 1)));
+        assertThrows(IllegalArgumentException.class, () -> RpcDBFields.parse(delta(1, 3, Integer.MAX_VALUE)));
+        assertThrows(IllegalArgumentException.class, () -> RpcDBFields.parse(delta(1, 3, -1)));
+        // truncated
+        byte[] bytes = delta(1, 3, 1);
+        assertThrows(IllegalArgumentException.class, () -> RpcDBFields.parse(Arrays.copyOf(bytes, bytes.length - 2)));
+        assertThrows(IllegalArgumentException.class, () -> RpcDBFields.parse(new byte[]{(byte) 0xDB, (byte) 0xF1, 0}));
+    }
+}
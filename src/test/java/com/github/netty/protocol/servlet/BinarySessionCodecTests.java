@@ -0,0 +1,171 @@
+package com.github.netty.protocol.servlet;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * binary session codec test
+ *
+ * @author wangzihao
+ */
+public class BinarySessionCodecTests {
+    private final BinarySessionCodec codec = new BinarySessionCodec();
+
+    private static Session newSession(Map<String, Object> attributeMap) {
+        Session session = new Session("id-1", 1800);
+        session.setAccessCount(3);
+        session.setAttributeMap(attributeMap);
+        return session;
+    }
+
+    private Object roundTrip(Object value) {
+        byte[] bytes = codec.encodeAttribute("name", value);
+        assertNotNull(bytes);
+        return codec.decodeAttribute("name", bytes);
+    }
+
+    @Test
+    public void sessionRoundTrip() {
+        Map<String, Object> attributeMap = new ConcurrentHashMap<>();
+        attributeMap.put("int", -1);
+        attributeMap.put("long", Long.MAX_VALUE);
+        attributeMap.put("string", "中文");
+        attributeMap.put("bytes", new byte[]{1, 2});
+        attributeMap.put("date", new Date(1000L));
+        attributeMap.put("decimal", new BigDecimal("1.10"));
+        attributeMap.put("enum1", Status.ENABLE);
+        attributeMap.put("enum2", Status.DISABLE);
+        attributeMap.put("user", new User("a", Arrays.asList(1, 2)));
+        attributeMap.put("notSerializable", new Object());
+        Session session = newSession(attributeMap);
+
+        byte[] bytes = codec.encode(session);
+        assertTrue(BinarySessionCodec.isSessionBytes(bytes));
+        Session result = codec.decode(bytes);
+        assertEquals(session.getId(), result.getId());
+        assertEquals(session.getCreationTime(), result.getCreationTime());
+        assertEquals(session.getLastAccessedTime(), result.getLastAccessedTime());
+        assertEquals(session.getMaxInactiveInterval(), result.getMaxInactiveInterval());
+        assertEquals(session.getAccessCount(), result.getAccessCount());
+
+        Map<String, Object> resultMap = result.getAttributeMap();
+        // the value can not encode is skipped
+        assertEquals(attributeMap.size() - 1, resultMap.size());
+        assertFalse(resultMap.containsKey("notSerializable"));
+        for (Map.Entry<String, Object> entry : resultMap.entrySet()) {
+            Object expect = attributeMap.get(entry.getKey());
+            if (expect instanceof byte[]) {
+                assertArrayEquals((byte[]) expect, (byte[]) entry.getValue());
+            } else {
+                assertEquals(expect, entry.getValue(), entry.getKey());
+            }
+        }
+    }
+
+    @Test
+    public void emptySession() {
+        Session session = newSession(null);
+        Session result = codec.decode(codec.encode(session));
+        assertEquals("id-1", result.getId());
+        assertNull(result.getAttributeMap());
+
+        session.setAttributeMap(new HashMap<>());
+        result = codec.decode(codec.encode(session));
+        assertNull(result.getAttributeMap());
+        assertNull(codec.decode(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void valueTypes() {
+        Object[] values = {null, true, false, (short) -2, (byte) 3, 'c', 1.5F, 2.5D, 0, Integer.MIN_VALUE, Long.MIN_VALUE,
+                "", new BigInteger("-123456789012345678901234567890"), new BigDecimal("-0.001")};
+        for (Object value : values) {
+            Object result = roundTrip(value);
+            assertEquals(value, result);
+            if (value != null) {
+                assertSame(value.getClass(), result.getClass());
+            }
+        }
+    }
+
+    @Test
+    public void collectionKeepConcreteClass() {
+        List<Object> arrayList = new ArrayList<>(Arrays.asList(1, "2", null));
+        List<Object> linkedList = new LinkedList<>(Arrays.asList(1, "2"));
+        Set<Object> hashSet = new HashSet<>(Arrays.asList("a", "b"));
+        Set<Object> linkedHashSet = new LinkedHashSet<>(Arrays.asList("z", "a", "m"));
+        Map<Object, Object> hashMap = new HashMap<>();
+        hashMap.put("k", Arrays.asList(1, 2));
+        Map<Object, Object> linkedHashMap = new LinkedHashMap<>();
+        linkedHashMap.put("z", 1);
+        linkedHashMap.put("a", new LinkedList<>(Collections.singletonList(Status.ENABLE)));
+        // the other class is written by the jdk serialization
+        Map<String, Object> treeMap = new TreeMap<>(Comparator.<String>reverseOrder());
+        treeMap.put("a", 1);
+        treeMap.put("b", 2);
+        List<Object> fixedSizeList = Arrays.asList("x", "y");
+        List<Object> unmodifiableList = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(1, 2)));
+
+        Object[] values = {arrayList, linkedList, hashSet, linkedHashSet, hashMap, linkedHashMap, treeMap, fixedSizeList, unmodifiableList};
+        for (Object value : values) {
+            Object result = roundTrip(value);
+            assertEquals(value, result);
+            assertSame(value.getClass(), result.getClass(), value.getClass().getName());
+        }
+        // the order is kept
+        assertEquals(new ArrayList<>(linkedHashSet), new ArrayList<>((Set<?>) roundTrip(linkedHashSet)));
+        assertEquals(new ArrayList<>(linkedHashMap.keySet()), new ArrayList<>(((Map<?, ?>) roundTrip(linkedHashMap)).keySet()));
+        assertEquals(Arrays.asList("b", "a"), new ArrayList<>(((Map<?, ?>) roundTrip(treeMap)).keySet()));
+    }
+
+    @Test
+    public void classNameDictionary() {
+        List<Object> list = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            list.add(i % 2 == 0 ? Status.ENABLE : Status.DISABLE);
+        }
+        byte[] bytes = codec.encodeAttribute("list", list);
+        // the class name is written once
+        String text = new String(bytes, StandardCharsets.ISO_8859_1);
+        String className = Status.class.getName();
+        assertEquals(text.indexOf(className), text.lastIndexOf(className));
+        assertEquals(list, codec.decodeAttribute("list", bytes));
+    }
+
+    public enum Status {
+        ENABLE, DISABLE
+    }
+
+    public static class User implements Serializable {
+        private final String name;
+        private final List<Integer> ids;
+
+        public User(String name, List<Integer> ids) {
+            this.name = name;
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof User)) {
+                return false;
+            }
+            User user = (User) o;
+            return Objects.equals(name, user.name) && Objects.equals(ids, user.ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, ids);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.netty.protocol.servlet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http.multipart.DefaultHttpDataFactory;
+import io.netty.handler.codec.http.multipart.HttpPostMultipartRequestDecoder;
+import io.netty.handler.codec.http.multipart.InterfaceHttpPostRequestDecoder;
+import jakarta.servlet.http.Part;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * streaming multipart decode test
+ *
+ * @author wangzihao
+ */
+public class MultipartStreamDecoderTests {
+    private static final String BOUNDARY = "----netty-boundary";
+
+    private static InterfaceHttpPostRequestDecoder newDecoder() {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/upload");
+        request.headers().set(HttpHeaderNames.CONTENT_TYPE, "multipart/form-data; boundary=" + BOUNDARY);
+        request.headers().set(HttpHeaderNames.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
+        return new HttpPostMultipartRequestDecoder(new DefaultHttpDataFactory(false), request);
+    }
+
+    private static String field(String name, String value) {
+        return "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n"
+                + value + "\r\n";
+    }
+
+    private static String fileHead(String name, String filename) {
+        return "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n";
+    }
+
+    private static String end() {
+        return "--" + BOUNDARY + "--\r\n";
+    }
+
+    private static HttpContent content(String s) {
+        return new DefaultHttpContent(Unpooled.copiedBuffer(s, StandardCharsets.UTF_8));
+    }
+
+    private static HttpContent lastContent(String s) {
+        return new DefaultLastHttpContent(Unpooled.copiedBuffer(s, StandardCharsets.UTF_8));
+    }
+
+    private static String read(Part part) throws IOException {
+        try (InputStream in = part.getInputStream()) {
+            byte[] bytes = new byte[(int) part.getSize()];
+            int length = 0;
+            for (int n; length < bytes.length && (n = in.read(bytes, length, bytes.length - length)) > 0; ) {
+                length += n;
+            }
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void partAvailableBeforeLastContent() throws IOException {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        InterfaceHttpPostRequestDecoder decoder = newDecoder();
+        MultipartStreamDecoder streamDecoder = new MultipartStreamDecoder(decoder, () -> null, channel, Runnable::run, 1024 * 1024);
+
+        streamDecoder.offer(content(field("name", "netty") + fileHead("file", "a.txt") + "hello "));
+        Part name = streamDecoder.awaitPart("name", 1000);
+        assertNotNull(name);
+        assertEquals("netty", read(name));
+        assertFalse(streamDecoder.isDone());
+        assertFalse(streamDecoder.awaitDone(10));
+
+        streamDecoder.offer(content("file"));
+        streamDecoder.offer(lastContent("\r\n" + end()));
+        assertTrue(streamDecoder.awaitDone(1000));
+        assertTrue(streamDecoder.isDone());
+        Part file = streamDecoder.awaitPart("file", 1000);
+        assertNotNull(file);
+        assertEquals("a.txt", file.getSubmittedFileName());
+        assertEquals("hello file", read(file));
+        assertNull(streamDecoder.awaitPart("not-exist", 1000));
+        assertEquals(2, streamDecoder.getPartList().size());
+        assertEquals(0, streamDecoder.getPendingBytes());
+        assertNull(streamDecoder.getDecoderException());
+
+        decoder.destroy();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void backpressure() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        InterfaceHttpPostRequestDecoder decoder = newDecoder();
+        Queue<Runnable> uploadTasks = new ArrayDeque<>();
+        MultipartStreamDecoder streamDecoder = new MultipartStreamDecoder(decoder, () -> null, channel, uploadTasks::offer, 64);
+
+        String body = field("a", "0123456789") + field("b", "0123456789") + field("c", "0123456789");
+        streamDecoder.offer(content(body));
+        assertTrue(streamDecoder.getPendingBytes() > 64);
+        assertFalse(channel.config().isAutoRead(), "the decode is slow. stop read");
+        assertEquals(1, uploadTasks.size());
+
+        uploadTasks.poll().run();
+        assertEquals(0, streamDecoder.getPendingBytes());
+        channel.runPendingTasks();
+        assertTrue(channel.config().isAutoRead(), "resume read");
+        // the last field is decoded after the next delimiter
+        assertEquals(2, streamDecoder.getPartList().size());
+
+        streamDecoder.offer(lastContent(end()));
+        uploadTasks.poll().run();
+        assertTrue(streamDecoder.isDone());
+        assertEquals(3, streamDecoder.getPartList().size());
+
+        decoder.destroy();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void closeReleasePending() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        InterfaceHttpPostRequestDecoder decoder = newDecoder();
+        Queue<Runnable> uploadTasks = new ArrayDeque<>();
+        MultipartStreamDecoder streamDecoder = new MultipartStreamDecoder(decoder, () -> null, channel, uploadTasks::offer, 16);
+
+        HttpContent content = content(field("a", "0123456789"));
+        ByteBuf buf = content.content();
+        streamDecoder.offer(content);
+        assertFalse(channel.config().isAutoRead());
+
+        streamDecoder.close();
+        assertTrue(streamDecoder.awaitDone(10), "not wait after close");
+        uploadTasks.poll().run();
+        assertEquals(0, buf.refCnt());
+        assertTrue(streamDecoder.getPartList().isEmpty());
+        channel.runPendingTasks();
+        assertTrue(channel.config().isAutoRead());
+
+        // the content after close is released
+        HttpContent after = lastContent(end());
+        streamDecoder.offer(after);
+        assertEquals(0, after.refCnt());
+        assertTrue(uploadTasks.isEmpty());
+
+        decoder.destroy();
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.netty.protocol.servlet;
+
+import com.github.netty.protocol.servlet.util.HttpHeaderConstants;
+import com.github.netty.protocol.servlet.util.ServletUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.util.AsciiString;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * response headers test. the iterator must return the plain headers (no merged header block)
+ *
+ * @author wangzihao
+ */
+public class NettyHttpResponseHeadersTests {
+    private static final AsciiString SERVER = AsciiString.cached("github.com/wangzihaogithub");
+    private static final AsciiString CONTENT_TYPE = AsciiString.cached("text/html;charset=UTF-8");
+
+    private static NettyHttpResponse newResponse() {
+        NettyHttpResponse response = new NettyHttpResponse();
+        response.headers().set(HttpHeaderConstants.CONTENT_LENGTH, 5);
+        response.headers().set(HttpHeaderConstants.DATE, ServletUtil.getDateByRfcHttp());
+        response.headers().set(HttpHeaderConstants.CONTENT_TYPE, CONTENT_TYPE);
+        response.headers().set(HttpHeaderConstants.SERVER, SERVER);
+        return response;
+    }
+
+    private static List<String> iterate(NettyHttpResponse response) {
+        List<String> list = new ArrayList<>();
+        Iterator<Map.Entry<CharSequence, CharSequence>> iterator = response.headers().iteratorCharSequence();
+        while (iterator.hasNext()) {
+            Map.Entry<CharSequence, CharSequence> entry = iterator.next();
+            String value = entry.getValue().toString();
+            assertFalse(value.contains("\r") || value.contains("\n"), value);
+            list.add(entry.getKey() + ": " + value);
+        }
+        return list;
+    }
+
+    @Test
+    public void repeatIterate() {
+        NettyHttpResponse response = newResponse();
+        List<String> first = iterate(response);
+        List<String> second = iterate(response);
+        assertEquals(4, first.size());
+        assertEquals(first, second);
+        assertTrue(first.contains("Server: " + SERVER));
+        assertTrue(first.contains("Content-Type: " + CONTENT_TYPE));
+    }
+
+    @Test
+    public void encodeEachHeaderLine() {
+        EmbeddedChannel channel = new EmbeddedChannel(new HttpResponseEncoder());
+        assertTrue(channel.writeOutbound(newResponse()));
+        ByteBuf buf = channel.readOutbound();
+        String http;
+        try {
+            http = buf.toString(StandardCharsets.US_ASCII);
+        } finally {
+            buf.release();
+        }
+        String[] lines = http.split("\r\n");
+        assertEquals("HTTP/1.1 200 OK", lines[0]);
+        assertTrue(http.contains("\r\nServer: " + SERVER + "\r\n"));
+        assertTrue(http.contains("\r\nContent-Type: " + CONTENT_TYPE + "\r\n"));
+        assertTrue(http.contains("\r\nDate: " + ServletUtil.getDateByRfcHttp() + "\r\n"));
+        assertTrue(http.endsWith("\r\n\r\n"));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void convertToHttp2Headers() {
+        NettyHttpResponse response = newResponse();
+        Http2Headers http2Headers = HttpConversionUtil.toHttp2Headers(response, true);
+        assertEquals("200", http2Headers.status().toString());
+        assertEquals(SERVER.toString(), http2Headers.get("server").toString());
+        assertEquals(CONTENT_TYPE.toString(), http2Headers.get("content-type").toString());
+        assertEquals(ServletUtil.getDateByRfcHttp().toString(), http2Headers.get("date").toString());
+        assertEquals("5", http2Headers.get("content-length").toString());
+
+        // the response headers can convert again
+        assertEquals(http2Headers, HttpConversionUtil.toHttp2Headers(response, true));
+    }
+}
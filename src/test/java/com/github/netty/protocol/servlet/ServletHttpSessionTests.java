@@ -0,0 +1,82 @@
+package com.github.netty.protocol.servlet;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * session dirty tracking test
+ *
+ * @author wangzihao
+ */
+public class ServletHttpSessionTests {
+
+    private static ServletHttpSession newSavedSession(List<Set<String>> changedList) {
+        ServletContext servletContext = new ServletContext();
+        servletContext.setSessionService((SessionService) Proxy.newProxyInstance(SessionService.class.getClassLoader(),
+                new Class[]{SessionService.class}, (proxy, method, args) -> {
+                    if ("saveSession".equals(method.getName())) {
+                        Set<String> changed = ((Session) args[0]).changedAttributeNames();
+                        changedList.add(changed == null ? null : new HashSet<>(changed));
+                    }
+                    return null;
+                }));
+        Session session = new Session("id-0", 60);
+        Map<String, Object> attributeMap = new ConcurrentHashMap<>();
+        List<String> list = new ArrayList<>();
+        list.add("a");
+        attributeMap.put("list", list);
+        attributeMap.put("name", "wang");
+        session.setAttributeMap(attributeMap);
+        // saved before
+        session.setAccessCount(1);
+        return new ServletHttpSession(session, servletContext);
+    }
+
+    @Test
+    public void readMutableAttributeNotDirty() {
+        List<Set<String>> changedList = new ArrayList<>();
+        ServletHttpSession httpSession = newSavedSession(changedList);
+
+        assertNotNull(httpSession.getAttribute("list"));
+        assertEquals("wang", httpSession.getAttribute("name"));
+        httpSession.save();
+        assertTrue(changedList.isEmpty());
+    }
+
+    @Test
+    public void saveOnlyChangedAttribute() {
+        List<Set<String>> changedList = new ArrayList<>();
+        ServletHttpSession httpSession = newSavedSession(changedList);
+
+        httpSession.getAttribute("list");
+        httpSession.setAttribute("name", "li");
+        httpSession.save();
+        assertEquals(1, changedList.size());
+        assertEquals(Set.of("name"), changedList.get(0));
+
+        // nothing changed since the last save
+        httpSession.save();
+        assertEquals(1, changedList.size());
+    }
+
+    @Test
+    public void markMutableAttributeDirty() {
+        List<Set<String>> changedList = new ArrayList<>();
+        ServletHttpSession httpSession = newSavedSession(changedList);
+
+        ((List<String>) httpSession.getAttribute("list")).add("b");
+        httpSession.markAttributeDirty("list");
+        httpSession.save();
+        assertEquals(1, changedList.size());
+        assertEquals(Set.of("list"), changedList.get(0));
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.netty.protocol.servlet;
+
+import com.github.netty.core.util.ChunkedWriteHandler;
+import com.github.netty.protocol.servlet.util.Protocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.HttpVersion;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * response buffer test. the small writes are aggregated, the whole response is one message with Content-Length
+ *
+ * @author wangzihao
+ */
+public class ServletOutputStreamTests {
+
+    private static String request(String mode) {
+        ServletContext servletContext = new ServletContext();
+        servletContext.setDefaultExecutorSupplier(() -> Runnable::run);
+        servletContext.addServlet("write", new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                ServletOutputStream out = resp.getOutputStream();
+                switch (mode) {
+                    case "big": {
+                        out.write(new byte[resp.getBufferSize() + 10]);
+                        return;
+                    }
+                    case "contentLength": {
+                        resp.setContentLength(4);
+                        out.write("ab".getBytes());
+                        out.write("cdef".getBytes());
+                        return;
+                    }
+                    case "reset": {
+                        out.write("discard".getBytes());
+                        resp.resetBuffer();
+                        out.write("ab".getBytes());
+                        return;
+                    }
+                    default: {
+                        for (int i = 0; i < 100; i++) {
+                            out.write("ab".getBytes());
+                        }
+                        if ("flush".equals(mode)) {
+                            resp.flushBuffer();
+                        }
+                    }
+                }
+            }
+        }).addMapping("/*");
+
+        EmbeddedChannel channel = new EmbeddedChannel(new HttpResponseEncoder(),
+                new ChunkedWriteHandler(() -> Long.MAX_VALUE),
+                new DispatcherChannelHandler(servletContext, Long.MAX_VALUE, Protocol.http1_1, false));
+        try {
+            channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/write"));
+            channel.runPendingTasks();
+            channel.flushOutbound();
+            StringBuilder builder = new StringBuilder();
+            ByteBuf buf;
+            while ((buf = channel.readOutbound()) != null) {
+                builder.append(buf.toString(StandardCharsets.ISO_8859_1));
+                buf.release();
+            }
+            return builder.toString();
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    private static String body(String response) {
+        return response.substring(response.indexOf("\r\n\r\n") + 4);
+    }
+
+    @Test
+    public void aggregateSmallWrites() {
+        String response = request("small");
+        assertTrue(response.contains("Content-Length: 200\r\n"), response);
+        assertFalse(response.contains("Transfer-Encoding"), response);
+        assertEquals("ab".repeat(100), body(response));
+    }
+
+    @Test
+    public void flushBufferStreamChunked() {
+        String response = request("flush");
+        assertTrue(response.contains("Transfer-Encoding: chunked\r\n"), response);
+        assertFalse(response.contains("Content-Length"), response);
+        assertEquals("c8\r\n" + "ab".repeat(100) + "\r\n0\r\n\r\n", body(response));
+    }
+
+    @Test
+    public void bigWriteStreamChunked() {
+        String response = request("big");
+        assertTrue(response.contains("Transfer-Encoding: chunked\r\n"), response);
+        assertTrue(response.endsWith("\r\n0\r\n\r\n"), response);
+    }
+
+    @Test
+    public void dropBytesAfterContentLength() {
+        String response = request("contentLength");
+        assertTrue(response.contains("Content-Length: 4\r\n"), response);
+        assertEquals("abcd", body(response));
+    }
+
+    @Test
+    public void resetBufferDiscardBufferedBytes() {
+        String response = request("reset");
+        assertTrue(response.contains("Content-Length: 2\r\n"), response);
+        assertEquals("ab", body(response));
+    }
+}
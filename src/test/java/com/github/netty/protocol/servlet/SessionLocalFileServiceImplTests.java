@@ -0,0 +1,187 @@
+package com.github.netty.protocol.servlet;
+
+import com.github.netty.core.util.ResourceManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * session log file (append-only log) compact and restore test
+ *
+ * @author wangzihao
+ */
+public class SessionLocalFileServiceImplTests {
+    @TempDir
+    Path dir;
+
+    private final ServletContext servletContext = new ServletContext();
+
+    private SessionLocalFileServiceImpl newSessionService() {
+        SessionLocalFileServiceImpl sessionService = new SessionLocalFileServiceImpl(new ResourceManager(dir.toString()), servletContext);
+        sessionService.setFlushIntervalMs(60000);
+        return sessionService;
+    }
+
+    private static Session newSession(String id, int value) {
+        Session session = new Session(id, 1800);
+        Map<String, Object> attributeMap = new HashMap<>();
+        attributeMap.put("value", value);
+        session.setAttributeMap(attributeMap);
+        return session;
+    }
+
+    private static void saveAll(SessionLocalFileServiceImpl sessionService, int value) throws IOException {
+        for (int i = 0; i < 10; i++) {
+            sessionService.saveSession(newSession("id-" + i, value));
+        }
+        sessionService.flush();
+    }
+
+    private static void assertSessions(SessionLocalFileServiceImpl sessionService, int value) {
+        assertEquals(10, sessionService.count());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(value, sessionService.getSession("id-" + i).getAttributeMap().get("value"), "id-" + i);
+        }
+    }
+
+    @Test
+    public void compactKeepLiveRecords() throws IOException {
+        SessionLocalFileServiceImpl sessionService = newSessionService();
+        for (int value = 0; value < 5; value++) {
+            saveAll(sessionService, value);
+        }
+        sessionService.removeSession("id-9");
+        sessionService.flush();
+        long bytes = sessionService.getLogFileBytes();
+        assertTrue(bytes > sessionService.getLiveBytes() * 2);
+
+        sessionService.setCompactMinBytes(0);
+        sessionService.compactIfNeed();
+        assertEquals(sessionService.getLiveBytes(), sessionService.getLogFileBytes());
+        assertEquals(sessionService.getLogFileBytes(), sessionService.getLogFile().length());
+        assertFalse(new File(dir.toFile(), "session/session.log.compact").exists());
+        assertEquals(9, sessionService.count());
+        assertNull(sessionService.getSession("id-9"));
+        assertEquals(4, sessionService.getSession("id-0").getAttributeMap().get("value"));
+
+        // write after compact, and restore
+        saveAll(sessionService, 5);
+        assertSessions(sessionService, 5);
+        sessionService.close();
+
+        SessionLocalFileServiceImpl restore = newSessionService();
+        assertSessions(restore, 5);
+        restore.close();
+    }
+
+    @Test
+    public void renameErrorKeepChannel() throws IOException {
+        SessionLocalFileServiceImpl sessionService = new SessionLocalFileServiceImpl(new ResourceManager(dir.toString()), servletContext) {
+            @Override
+            protected void moveFile(File source, File target) throws IOException {
+                throw new IOException("rename error");
+            }
+        };
+        sessionService.setFlushIntervalMs(60000);
+        for (int value = 0; value < 3; value++) {
+            saveAll(sessionService, value);
+        }
+        long bytes = sessionService.getLogFileBytes();
+
+        sessionService.setCompactMinBytes(0);
+        assertThrows(IOException.class, sessionService::compactIfNeed);
+        assertFalse(new File(dir.toFile(), "session/session.log.compact").exists());
+        assertEquals(bytes, sessionService.getLogFileBytes());
+        assertSessions(sessionService, 2);
+
+        // the channel is still open
+        saveAll(sessionService, 3);
+        assertSessions(sessionService, 3);
+        sessionService.close();
+
+        SessionLocalFileServiceImpl restore = newSessionService();
+        assertSessions(restore, 3);
+        restore.close();
+    }
+
+    @Test
+    public void restoreTruncateBrokenTail() throws IOException {
+        SessionLocalFileServiceImpl sessionService = newSessionService();
+        saveAll(sessionService, 1);
+        long bytes = sessionService.getLogFileBytes();
+        sessionService.close();
+
+        // the crash when writing. a record header without the body
+        Files.write(sessionService.getLogFile().toPath(), new byte[]{0, 0, 1, 0, 1, 2, 3, 4, 5},
+                StandardOpenOption.APPEND);
+        SessionLocalFileServiceImpl restore = newSessionService();
+        assertSessions(restore, 1);
+        assertEquals(bytes, restore.getLogFileBytes());
+        assertEquals(bytes, restore.getLogFile().length());
+
+        // the crc is broken
+        saveAll(restore, 2);
+        restore.close();
+        byte[] content = Files.readAllBytes(restore.getLogFile().toPath());
+        content[content.length - 1] ^= 1;
+        Files.write(restore.getLogFile().toPath(), content);
+        SessionLocalFileServiceImpl restore2 = newSessionService();
+        // the last record is dropped, the session is the old value
+        assertEquals(10, restore2.count());
+        int oldCount = 0;
+        for (int i = 0; i < 10; i++) {
+            Object value = restore2.getSession("id-" + i).getAttributeMap().get("value");
+            if (value.equals(1)) {
+                oldCount++;
+            } else {
+                assertEquals(2, value);
+            }
+        }
+        assertEquals(1, oldCount);
+        restore2.close();
+    }
+
+    @Test
+    public void throttleAccessOnlyWrite() throws IOException {
+        SessionLocalFileServiceImpl sessionService = newSessionService();
+        Session session = newSession("id-0", 1);
+        sessionService.saveSession(session);
+        sessionService.flush();
+        long bytes = sessionService.getLogFileBytes();
+
+        // only accessed. not written in the interval
+        session.setAccessCount(2);
+        session.accessOnly(true);
+        sessionService.saveSession(session);
+        sessionService.flush();
+        assertEquals(bytes, sessionService.getLogFileBytes());
+
+        // the attribute changed
+        session.getAttributeMap().put("value", 2);
+        session.accessOnly(false);
+        sessionService.saveSession(session);
+        sessionService.flush();
+        assertTrue(sessionService.getLogFileBytes() > bytes);
+        assertEquals(2, sessionService.getSession("id-0").getAttributeMap().get("value"));
+
+        // the interval is disabled. write every access
+        bytes = sessionService.getLogFileBytes();
+        sessionService.setAccessWriteIntervalMs(0);
+        session.setAccessCount(3);
+        session.accessOnly(true);
+        sessionService.saveSession(session);
+        sessionService.flush();
+        assertTrue(sessionService.getLogFileBytes() > bytes);
+        assertEquals(3, sessionService.getSession("id-0").getAccessCount());
+        sessionService.close();
+    }
+}
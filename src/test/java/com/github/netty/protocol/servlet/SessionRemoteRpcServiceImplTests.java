@@ -0,0 +1,262 @@
+package com.github.netty.protocol.servlet;
+
+import com.github.netty.protocol.nrpc.RpcPacket;
+import com.github.netty.protocol.nrpc.exception.RpcResponseException;
+import com.github.netty.protocol.nrpc.service.RpcDBService;
+import com.github.netty.protocol.nrpc.service.RpcDBServiceImpl;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * remote session delta save test. (the rpc db service is local)
+ *
+ * @author wangzihao
+ */
+public class SessionRemoteRpcServiceImplTests {
+
+    private static SessionRemoteRpcServiceImpl newSessionService(RpcDBService rpcDBService) {
+        return new SessionRemoteRpcServiceImpl(new InetSocketAddress("127.0.0.1", 0)) {
+            @Override
+            public RpcDBService getRpcDBService() {
+                return rpcDBService;
+            }
+        };
+    }
+
+    private static Session newSession() {
+        Session session = new Session("session-1", 1800);
+        Map<String, Object> attributeMap = new ConcurrentHashMap<>();
+        attributeMap.put("a", 1);
+        attributeMap.put("b", "b");
+        attributeMap.put("c", new ArrayList<>(Arrays.asList(1, 2)));
+        session.setAttributeMap(attributeMap);
+        return session;
+    }
+
+    @Test
+    public void saveDelta() {
+        CountingRpcDBService rpcDBService = new CountingRpcDBService();
+        SessionRemoteRpcServiceImpl sessionService = newSessionService(rpcDBService);
+
+        Session session = newSession();
+        // unknown changes. put the whole session
+        sessionService.saveSession(session);
+        assertEquals(1, rpcDBService.putCount.get());
+        assertEquals(0, rpcDBService.putDeltaCount.get());
+
+        // set b, remove c
+        session.getAttributeMap().put("b", "b2");
+        session.getAttributeMap().remove("c");
+        session.setAccessCount(2);
+        session.changedAttributeNames(new HashSet<>(Arrays.asList("b", "c")));
+        sessionService.saveSession(session);
+        assertEquals(1, rpcDBService.putCount.get());
+        assertEquals(1, rpcDBService.putDeltaCount.get());
+
+        Session result = sessionService.getSession("session-1");
+        assertEquals(2, result.getAccessCount());
+        assertEquals(session.getCreationTime(), result.getCreationTime());
+        Map<String, Object> expect = new HashMap<>();
+        expect.put("a", 1);
+        expect.put("b", "b2");
+        assertEquals(expect, new HashMap<>(result.getAttributeMap()));
+    }
+
+    @Test
+    public void putWholeIfNotExist() {
+        CountingRpcDBService rpcDBService = new CountingRpcDBService();
+        SessionRemoteRpcServiceImpl sessionService = newSessionService(rpcDBService);
+
+        // the remote is expired or restarted. the delta is rejected (-1)
+        Session session = newSession();
+        session.changedAttributeNames(Collections.singleton("a"));
+        sessionService.saveSession(session);
+        assertEquals(1, rpcDBService.putDeltaCount.get());
+        assertEquals(1, rpcDBService.putCount.get());
+        assertEquals(3, sessionService.getSession("session-1").getAttributeMap().size());
+    }
+
+    @Test
+    public void fallbackIfServerNotSupportDelta() {
+        CountingRpcDBService rpcDBService = new CountingRpcDBService() {
+            @Override
+            public long putDelta4(String key, byte[] delta, int expireSecond, String group) {
+                putDeltaCount.incrementAndGet();
+                throw new RpcResponseException(RpcPacket.ResponsePacket.NO_SUCH_METHOD, "not found method [putDelta4]");
+            }
+        };
+        SessionRemoteRpcServiceImpl sessionService = newSessionService(rpcDBService);
+        Session session = newSession();
+        sessionService.saveSession(session);
+
+        session.getAttributeMap().put("a", 2);
+        session.changedAttributeNames(Collections.singleton("a"));
+        sessionService.saveSession(session);
+        assertEquals(1, rpcDBService.putDeltaCount.get());
+        assertEquals(2, rpcDBService.putCount.get());
+        assertEquals(2, sessionService.getSession("session-1").getAttributeMap().get("a"));
+
+        // not try again
+        session.changedAttributeNames(Collections.singleton("a"));
+        sessionService.saveSession(session);
+        assertEquals(1, rpcDBService.putDeltaCount.get());
+        assertEquals(3, rpcDBService.putCount.get());
+    }
+
+    @Test
+    public void otherErrorNotFallback() {
+        CountingRpcDBService rpcDBService = new CountingRpcDBService() {
+            @Override
+            public long putDelta4(String key, byte[] delta, int expireSecond, String group) {
+                throw new RpcResponseException(RpcPacket.ResponsePacket.SERVER_ERROR, "error");
+            }
+        };
+        SessionRemoteRpcServiceImpl sessionService = newSessionService(rpcDBService);
+        Session session = newSession();
+        session.changedAttributeNames(Collections.singleton("a"));
+        assertThrows(RpcResponseException.class, () -> sessionService.saveSession(session));
+    }
+
+    @Test
+    public void nearCacheNotShareSession() {
+        CountingRpcDBService rpcDBService = new CountingRpcDBService();
+        SessionRemoteRpcServiceImpl sessionService = newSessionService(rpcDBService);
+        sessionService.enableNearCache(16, 60000);
+        Session session = newSession();
+        sessionService.saveSession(session);
+
+        Session session1 = sessionService.getSession("session-1");
+        Session session2 = sessionService.getSession("session-1");
+        assertNotSame(session1, session2);
+        assertNotSame(session, session1);
+
+        // the save of a request not change the cached session
+        session1.getAttributeMap().put("a", 100);
+        session1.changedAttributeNames(Collections.singleton("a"));
+        assertNull(session2.changedAttributeNames());
+        assertEquals(1, session2.getAttributeMap().get("a"));
+
+        session2.getAttributeMap().put("b", "b2");
+        session2.changedAttributeNames(Collections.singleton("b"));
+        sessionService.saveSession(session1);
+        sessionService.saveSession(session2);
+        assertEquals(2, rpcDBService.putDeltaCount.get());
+
+        // the two deltas are merged in the remote
+        Session result = new SessionRemoteRpcServiceImpl(new InetSocketAddress("127.0.0.1", 0)) {
+            @Override
+            public RpcDBService getRpcDBService() {
+                return rpcDBService;
+            }
+        }.getSession("session-1");
+        assertEquals(100, result.getAttributeMap().get("a"));
+        assertEquals("b2", result.getAttributeMap().get("b"));
+        assertEquals(100, sessionService.getSession("session-1").getAttributeMap().get("a"));
+    }
+
+    @Test
+    public void nearCacheNotCacheUnversionedServer() {
+        // a third-party implementation with only the non default methods. the versioned methods are the defaults
+        RpcDBServiceImpl target = new RpcDBServiceImpl();
+        Set<String> versionedMethods = new HashSet<>(Arrays.asList("putVersion4", "version2", "getIfChanged3", "putDelta4"));
+        RpcDBService rpcDBService = (RpcDBService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{RpcDBService.class}, (proxy, method, args) -> {
+            if (versionedMethods.contains(method.getName())) {
+                return InvocationHandler.invokeDefault(proxy, method, args);
+            }
+            return method.invoke(target, args);
+        });
+        assertEquals(-1, rpcDBService.version2("session-1", "g"));
+
+        SessionRemoteRpcServiceImpl sessionService = newSessionService(rpcDBService);
+        sessionService.enableNearCache(16, 60000);
+        Session session = newSession();
+        sessionService.saveSession(session);
+        assertEquals(3, sessionService.getSession("session-1").getAttributeMap().size());
+
+        // changed by other node. the unversioned session is not served from the near cache
+        session.getAttributeMap().put("a", 2);
+        newSessionService(rpcDBService).saveSession(session);
+        assertEquals(2, sessionService.getSession("session-1").getAttributeMap().get("a"));
+    }
+
+    @Test
+    public void nearCacheHitAfterDeltaSave() {
+        CountingRpcDBService rpcDBService = new CountingRpcDBService();
+        newSessionService(rpcDBService).saveSession(newSession());
+        SessionRemoteRpcServiceImpl sessionService = newSessionService(rpcDBService);
+        sessionService.enableNearCache(16, 60000);
+
+        Session session = sessionService.getSession("session-1");
+        assertEquals(1, rpcDBService.getCount.get());
+        ((List<Integer>) session.getAttributeMap().get("c")).add(3);
+        session.getAttributeMap().put("a", 2);
+        session.getAttributeMap().remove("b");
+        session.changedAttributeNames(new HashSet<>(Arrays.asList("a", "b")));
+        sessionService.saveSession(session);
+        assertEquals(1, rpcDBService.putDeltaCount.get());
+
+        // the delta is applied to the cached session, not evict
+        Session result = sessionService.getSession("session-1");
+        assertEquals(1, rpcDBService.getCount.get());
+        assertNotSame(session, result);
+        assertEquals(2, result.getAttributeMap().get("a"));
+        assertFalse(result.getAttributeMap().containsKey("b"));
+        assertEquals(sessionService.getNearCache().get("session-1").getVersion(), rpcDBService.version2("session-1", "/session"));
+    }
+
+    @Test
+    public void nearCacheEvictIfOtherNodeSaveBetween() {
+        CountingRpcDBService rpcDBService = new CountingRpcDBService();
+        newSessionService(rpcDBService).saveSession(newSession());
+        SessionRemoteRpcServiceImpl sessionService = newSessionService(rpcDBService);
+        sessionService.enableNearCache(16, 60000);
+        Session session = sessionService.getSession("session-1");
+
+        // other node change b
+        Session otherSession = newSessionService(rpcDBService).getSession("session-1");
+        otherSession.getAttributeMap().put("b", "other");
+        otherSession.changedAttributeNames(Collections.singleton("b"));
+        newSessionService(rpcDBService).saveSession(otherSession);
+
+        session.getAttributeMap().put("a", 2);
+        session.changedAttributeNames(Collections.singleton("a"));
+        sessionService.saveSession(session);
+        assertNull(sessionService.getNearCache().get("session-1"));
+
+        Session result = sessionService.getSession("session-1");
+        assertEquals(2, result.getAttributeMap().get("a"));
+        assertEquals("other", result.getAttributeMap().get("b"));
+    }
+
+    static class CountingRpcDBService extends RpcDBServiceImpl {
+        final AtomicInteger putCount = new AtomicInteger();
+        final AtomicInteger putDeltaCount = new AtomicInteger();
+        final AtomicInteger getCount = new AtomicInteger();
+
+        @Override
+        public byte[] getIfChanged3(String key, long version, String group) {
+            getCount.incrementAndGet();
+            return super.getIfChanged3(key, version, group);
+        }
+
+        @Override
+        public long putVersion4(String key, byte[] data, int expireSecond, String group) {
+            putCount.incrementAndGet();
+            return super.putVersion4(key, data, expireSecond, group);
+        }
+
+        @Override
+        public long putDelta4(String key, byte[] delta, int expireSecond, String group) {
+            putDeltaCount.incrementAndGet();
+            return super.putDelta4(key, delta, expireSecond, group);
+        }
+    }
+}
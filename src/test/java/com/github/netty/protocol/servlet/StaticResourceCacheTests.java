@@ -0,0 +1,147 @@
+package com.github.netty.protocol.servlet;
+
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * hot small file cache test
+ *
+ * @author wangzihao
+ */
+public class StaticResourceCacheTests {
+    @TempDir
+    Path dir;
+
+    private static String repeat(String s, int count) {
+        StringBuilder builder = new StringBuilder(s.length() * count);
+        for (int i = 0; i < count; i++) {
+            builder.append(s);
+        }
+        return builder.toString();
+    }
+
+    private static String toString(ByteBuf buf) {
+        try {
+            return buf.toString(StandardCharsets.UTF_8);
+        } finally {
+            buf.release();
+        }
+    }
+
+    private File write(String name, String content) throws IOException {
+        return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8)).toFile();
+    }
+
+    @Test
+    public void hitAndReloadChanged() throws IOException {
+        StaticResourceCache cache = new StaticResourceCache(1024 * 1024, 1024);
+        cache.setCheckIntervalMs(0);
+        File file = write("a.txt", "hello");
+
+        StaticResourceCache.Entry entry = cache.get(file, "text/plain");
+        assertEquals("hello", toString(entry.retainedContent(false)));
+        assertSame(entry, cache.get(file, "text/plain"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // changed. the length and lastModified is checked (checkIntervalMs = 0)
+        write("a.txt", "hello world");
+        assertTrue(file.setLastModified(entry.getLastModified() + 2000));
+        StaticResourceCache.Entry reload = cache.get(file, "text/plain");
+        assertNotSame(entry, reload);
+        assertEquals("hello world", toString(reload.retainedContent(false)));
+        assertEquals(reload.getResource().getETag(), cache.get(file, "text/plain").getResource().getETag());
+        assertNotEquals(entry.getResource().getETag(), reload.getResource().getETag());
+        assertEquals(1, cache.size());
+        assertEquals(11, cache.getTotalBytes());
+
+        // the old entry is released
+        assertNull(entry.retainedContent(false));
+        cache.clear();
+    }
+
+    @Test
+    public void notCheckInInterval() throws IOException {
+        StaticResourceCache cache = new StaticResourceCache(1024 * 1024, 1024);
+        cache.setCheckIntervalMs(60000);
+        File file = write("a.txt", "hello");
+        StaticResourceCache.Entry entry = cache.get(file, "text/plain");
+
+        write("a.txt", "changed");
+        assertSame(entry, cache.get(file, "text/plain"));
+
+        cache.remove(file);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getTotalBytes());
+        assertEquals("changed", toString(cache.get(file, "text/plain").retainedContent(false)));
+        cache.clear();
+    }
+
+    @Test
+    public void evictByTotalBytes() throws IOException {
+        StaticResourceCache cache = new StaticResourceCache(10, 10);
+        cache.setEnableGzip(false);
+        File a = write("a.bin", "aaaa");
+        File b = write("b.bin", "bbbb");
+        File c = write("c.bin", "cccc");
+
+        StaticResourceCache.Entry entryA = cache.get(a, null);
+        ByteBuf retained = entryA.retainedContent(false);
+        cache.get(b, null);
+        cache.get(c, null);
+        assertEquals(2, cache.size());
+        assertEquals(8, cache.getTotalBytes());
+
+        // evicted (released by the cache), the retained content in writing is still readable
+        assertEquals("aaaa", toString(retained));
+        assertNull(entryA.retainedContent(false));
+
+        // larger than maxFileBytes
+        assertNull(cache.get(write("large.bin", "01234567890"), null));
+        assertNull(cache.get(dir.resolve("not-exist").toFile(), null));
+        assertEquals(2, cache.size());
+        cache.clear();
+        assertEquals(0, cache.getTotalBytes());
+    }
+
+    @Test
+    public void gzipContent() throws IOException {
+        StaticResourceCache cache = new StaticResourceCache(1024 * 1024, 64 * 1024);
+        String text = repeat("netty servlet static resource ", 100);
+        File file = write("a.css", text);
+
+        StaticResourceCache.Entry entry = cache.get(file, "text/css");
+        assertTrue(entry.isExistGzipContent());
+        ByteBuf gzip = entry.retainedContent(true);
+        byte[] bytes = new byte[gzip.readableBytes()];
+        gzip.readBytes(bytes);
+        gzip.release();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] unzip = new byte[text.length() + 1];
+            int length = 0;
+            for (int n; (n = in.read(unzip, length, unzip.length - length)) > 0; ) {
+                length += n;
+            }
+            assertEquals(text, new String(unzip, 0, length, StandardCharsets.UTF_8));
+        }
+        assertEquals(text.length() + bytes.length, cache.getTotalBytes());
+
+        // not compressible mime type
+        StaticResourceCache.Entry png = cache.get(write("a.png", text), "image/png");
+        assertFalse(png.isExistGzipContent());
+        assertNull(png.retainedContent(true));
+        cache.clear();
+    }
+}
@@ -0,0 +1,197 @@
+package com.github.netty.protocol.servlet.http2;
+
+import com.github.netty.protocol.servlet.DispatcherChannelHandler;
+import com.github.netty.protocol.servlet.ServletContext;
+import com.github.netty.protocol.servlet.util.HttpConstants;
+import com.github.netty.protocol.servlet.util.Protocol;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.Http2ConnectionHandler;
+import io.netty.handler.codec.http2.Http2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.Http2FrameAdapter;
+import io.netty.handler.codec.http2.Http2Stream;
+import io.netty.util.ReferenceCountUtil;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * http2 stream scheduler test. the stream weight is read from the request header x-http2-stream-weight
+ *
+ * @author wangzihao
+ */
+public class Http2StreamSchedulerTests {
+
+    private static class Fixture {
+        final ServletContext servletContext = new ServletContext();
+        final Queue<Runnable> executorQueue = new ArrayDeque<>();
+        final List<String> served = new ArrayList<>();
+        final List<EmbeddedChannel> channels = new ArrayList<>();
+
+        Fixture(int maxConcurrentStreamsPerConnection, int maxConcurrentStreams) {
+            servletContext.addServlet("stream", new HttpServlet() {
+                @Override
+                protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                    served.add(req.getHeader("x-connection") + req.getHeader(HttpConstants.H2_EXT_STREAM_ID.toString()));
+                }
+            }).addMapping("/*");
+            servletContext.setAsyncExecutorSupplier(() -> executorQueue::add);
+            servletContext.setHttp2MaxConcurrentStreamsPerConnection(maxConcurrentStreamsPerConnection);
+            servletContext.setHttp2MaxConcurrentStreams(maxConcurrentStreams);
+        }
+
+        EmbeddedChannel newConnection(boolean http2ConnectionHandler) {
+            EmbeddedChannel channel = new EmbeddedChannel();
+            if (http2ConnectionHandler) {
+                channel.pipeline().addLast(new Http2ConnectionHandlerBuilder()
+                        .server(true)
+                        .frameListener(new Http2FrameAdapter())
+                        .build());
+            }
+            channel.pipeline().addLast(new DispatcherChannelHandler(servletContext, Long.MAX_VALUE, Protocol.h2c, false));
+            channels.add(channel);
+            return channel;
+        }
+
+        void request(EmbeddedChannel channel, String connectionName, int streamId, int weight) {
+            FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/test");
+            request.headers().set("x-connection", connectionName);
+            request.headers().setInt(HttpConstants.H2_EXT_STREAM_ID, streamId);
+            request.headers().setInt(HttpConstants.H2_EXT_STREAM_WEIGHT, weight);
+            channel.writeInbound(request);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = executorQueue.poll()) != null) {
+                task.run();
+            }
+        }
+
+        int responseCount(EmbeddedChannel channel) {
+            int count = 0;
+            Object msg;
+            while ((msg = channel.readOutbound()) != null) {
+                if (msg instanceof HttpResponse) {
+                    count++;
+                }
+                ReferenceCountUtil.release(msg);
+            }
+            return count;
+        }
+
+        void close() {
+            for (EmbeddedChannel channel : channels) {
+                channel.finishAndReleaseAll();
+            }
+        }
+    }
+
+    @Test
+    public void weightedFairOrdering() {
+        Fixture fixture = new Fixture(1, 1);
+        try {
+            Http2StreamScheduler scheduler = fixture.servletContext.getHttp2StreamScheduler();
+            EmbeddedChannel a = fixture.newConnection(false);
+            EmbeddedChannel b = fixture.newConnection(false);
+            // a: weight 64, virtual time +4 per stream. b: weight 16, virtual time +16 per stream
+            for (int i = 1; i <= 6; i++) {
+                fixture.request(a, "a", i, 64);
+            }
+            for (int i = 1; i <= 6; i++) {
+                fixture.request(b, "b", i, 16);
+            }
+            assertEquals(1, scheduler.getRunningCount());
+            assertEquals(11, scheduler.getWaitingCount());
+            assertEquals(5, scheduler.getWaitingCount(a));
+
+            fixture.runAll();
+            assertEquals(Arrays.asList("a1", "b1", "a2", "a3", "a4", "a5", "b2", "a6", "b3", "b4", "b5", "b6"), fixture.served);
+            assertEquals(0, scheduler.getRunningCount());
+            assertEquals(0, scheduler.getWaitingCount());
+            assertEquals(12, scheduler.getDispatchCount());
+            assertEquals(0, scheduler.getAbortCount());
+        } finally {
+            fixture.close();
+        }
+    }
+
+    @Test
+    public void bigWeightStreamFirstInConnection() {
+        Fixture fixture = new Fixture(1, 0);
+        try {
+            EmbeddedChannel a = fixture.newConnection(false);
+            fixture.request(a, "a", 1, 16);
+            fixture.request(a, "a", 3, 1);
+            fixture.request(a, "a", 5, 256);
+            fixture.request(a, "a", 7, 16);
+            fixture.runAll();
+            assertEquals(Arrays.asList("a1", "a5", "a7", "a3"), fixture.served);
+        } finally {
+            fixture.close();
+        }
+    }
+
+    @Test
+    public void releaseWaitingStreamOnStreamClosed() throws Exception {
+        Fixture fixture = new Fixture(1, 0);
+        try {
+            Http2StreamScheduler scheduler = fixture.servletContext.getHttp2StreamScheduler();
+            EmbeddedChannel a = fixture.newConnection(true);
+            fixture.request(a, "a", 1, 16);
+            fixture.request(a, "a", 3, 16);
+            fixture.request(a, "a", 5, 16);
+            assertEquals(2, scheduler.getWaitingCount(a));
+
+            // RST_STREAM of the waiting stream 3
+            Http2Stream stream = a.pipeline().get(Http2ConnectionHandler.class).connection().remote().createStream(3, false);
+            stream.close();
+            assertEquals(1, scheduler.getWaitingCount(a));
+            assertEquals(1, scheduler.getAbortCount());
+
+            fixture.runAll();
+            assertEquals(Arrays.asList("a1", "a5"), fixture.served);
+            // HttpRunnable.abort closed the exchange of stream 3, the output stream skip the write
+            assertEquals(2, fixture.responseCount(a));
+            assertEquals(0, scheduler.getRunningCount());
+            assertEquals(0, scheduler.getWaitingCount());
+        } finally {
+            fixture.close();
+        }
+    }
+
+    @Test
+    public void abortWaitingStreamOnConnectionClose() {
+        Fixture fixture = new Fixture(1, 0);
+        try {
+            Http2StreamScheduler scheduler = fixture.servletContext.getHttp2StreamScheduler();
+            EmbeddedChannel a = fixture.newConnection(false);
+            fixture.request(a, "a", 1, 16);
+            fixture.runAll();
+            assertEquals(1, fixture.responseCount(a));
+
+            fixture.request(a, "a", 3, 16);
+            fixture.request(a, "a", 5, 16);
+            assertEquals(1, scheduler.getWaitingCount(a));
+            // the running stream 3 is not finish, the waiting stream 5 is aborted by the connection close
+            a.close();
+            assertEquals(0, scheduler.getWaitingCount(a));
+            assertEquals(1, scheduler.getAbortCount());
+            assertEquals(0, scheduler.getConnectionCount());
+
+            fixture.runAll();
+            assertEquals(Arrays.asList("a1", "a3"), fixture.served);
+        } finally {
+            fixture.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.netty.protocol.servlet.util;
+
+import jakarta.servlet.DispatcherType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * filter chain cache test. resolved once per (path, dispatcherType), the mapping change replace the cache
+ *
+ * @author wangzihao
+ */
+public class FilterMapperTests {
+
+    private static List<String> names(List<FilterMapper.Element<String>> list) {
+        List<String> names = new ArrayList<>();
+        for (FilterMapper.Element<String> element : list) {
+            names.add(element.getObjectName());
+        }
+        return names;
+    }
+
+    private static FilterMapper<String> newMapper() {
+        FilterMapper<String> mapper = new FilterMapper<>();
+        mapper.addMapping("/*", "all", "all", true, EnumSet.of(DispatcherType.REQUEST));
+        mapper.addMapping("/api/*", "api", "api", true, EnumSet.of(DispatcherType.REQUEST, DispatcherType.FORWARD));
+        mapper.addMapping("/*", "first", "first", false, null);
+        return mapper;
+    }
+
+    @Test
+    public void cachePerPathAndDispatcherType() {
+        FilterMapper<String> mapper = newMapper();
+        List<FilterMapper.Element<String>> request = mapper.getMappingObjects("/api/user", DispatcherType.REQUEST);
+        assertEquals(List.of("first", "all", "api"), names(request));
+        // cache hit return the same list
+        assertSame(request, mapper.getMappingObjects("/api/user", DispatcherType.REQUEST));
+        assertThrows(UnsupportedOperationException.class, () -> request.add(request.get(0)));
+
+        List<FilterMapper.Element<String>> forward = mapper.getMappingObjects("/api/user", DispatcherType.FORWARD);
+        assertEquals(List.of("first", "api"), names(forward));
+        assertSame(forward, mapper.getMappingObjects("/api/user", DispatcherType.FORWARD));
+
+        assertEquals(List.of("first"), names(mapper.getMappingObjects("/index", DispatcherType.ERROR)));
+
+        List<FilterMapper.Element<String>> list = new ArrayList<>();
+        mapper.addMappingObjects("/api/user", DispatcherType.REQUEST, list);
+        assertEquals(request, list);
+    }
+
+    @Test
+    public void cacheInvalidOnMappingChange() {
+        FilterMapper<String> mapper = newMapper();
+        List<FilterMapper.Element<String>> before = mapper.getMappingObjects("/api/user", DispatcherType.REQUEST);
+
+        mapper.addMapping("/api/user", "user", "user", true, null);
+        List<FilterMapper.Element<String>> added = mapper.getMappingObjects("/api/user", DispatcherType.REQUEST);
+        assertNotSame(before, added);
+        assertEquals(List.of("first", "all", "api", "user"), names(added));
+
+        mapper.remove(added.get(0));
+        assertEquals(List.of("all", "api", "user"), names(mapper.getMappingObjects("/api/user", DispatcherType.REQUEST)));
+
+        mapper.clear();
+        assertTrue(mapper.getMappingObjects("/api/user", DispatcherType.REQUEST).isEmpty());
+    }
+
+    @Test
+    public void cacheSizeBounded() {
+        FilterMapper<String> mapper = newMapper();
+        mapper.setMaxCacheSize(2);
+        List<FilterMapper.Element<String>> first = mapper.getMappingObjects("/user/1", DispatcherType.REQUEST);
+        assertSame(first, mapper.getMappingObjects("/user/1", DispatcherType.REQUEST));
+        mapper.getMappingObjects("/user/2", DispatcherType.REQUEST);
+        // full. the cache is cleared
+        mapper.getMappingObjects("/user/3", DispatcherType.REQUEST);
+        List<FilterMapper.Element<String>> again = mapper.getMappingObjects("/user/1", DispatcherType.REQUEST);
+        assertNotSame(first, again);
+        assertEquals(names(first), names(again));
+
+        // disable cache
+        mapper.setMaxCacheSize(0);
+        mapper.clear();
+        mapper.addMapping("/*", "all", "all", true, null);
+        List<FilterMapper.Element<String>> uncached = mapper.getMappingObjects("/user/1", DispatcherType.REQUEST);
+        assertEquals(List.of("all"), names(uncached));
+        assertNotSame(uncached, mapper.getMappingObjects("/user/1", DispatcherType.REQUEST));
+    }
+}
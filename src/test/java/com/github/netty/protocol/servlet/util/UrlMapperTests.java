@@ -0,0 +1,122 @@
+package com.github.netty.protocol.servlet.util;
+
+import com.github.netty.core.util.AntPathMatcher;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * url pattern trie test. compare with the linear matcher (before the trie)
+ *
+ * @author wangzihao
+ */
+public class UrlMapperTests {
+    private static final String[] SEGMENTS = {"", "a", "b", "foo", "bar", "baz", "catalog", "index.html", "racecar.bop", "x.do", "a.b.c", "api", "v1", "user", "1"};
+
+    /**
+     * the linear matcher before the trie. the elements in sort order, the first match wins
+     */
+    private static <T> UrlMapper.Element<T> linearMatch(Collection<UrlMapper.Element<T>> elementList, String path, AntPathMatcher antPathMatcher) {
+        for (UrlMapper.Element<T> element : elementList) {
+            if (ServletUtil.matchFiltersURL(element.normOriginalPattern, path)) {
+                return element;
+            } else if (antPathMatcher != null && antPathMatcher.match(element.normOriginalPattern, path, "*")) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> paths() {
+        List<String> paths = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder builder = new StringBuilder();
+            int count = 1 + random.nextInt(4);
+            for (int j = 0; j < count; j++) {
+                builder.append('/').append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+            }
+            paths.add(builder.toString());
+        }
+        paths.addAll(Arrays.asList("/", "/foo", "/foo/", "/foo/bar", "/foo/bar/", "/catalog", "/catalog/index.html", "/index.bop", "/.bop", "/a.", "/baz"));
+        return paths;
+    }
+
+    /**
+     * the precedence of the trie is the same as the linear matcher,
+     * if the path prefix patterns are added longest first and before the extension patterns.
+     */
+    private static void assertSameAsLinear(String[] patterns, boolean enableAntPathMatcher) {
+        UrlMapper<String> urlMapper = new UrlMapper<>();
+        urlMapper.setEnableAntPathMatcher(enableAntPathMatcher);
+        AntPathMatcher antPathMatcher = null;
+        if (enableAntPathMatcher) {
+            antPathMatcher = new AntPathMatcher();
+        }
+        Collection<UrlMapper.Element<String>> elementList = new TreeSet<>();
+        for (int i = 0; i < patterns.length; i++) {
+            String name = "default".equals(patterns[i]) ? "default" : "s" + i;
+            String pattern = "default".equals(patterns[i]) ? "/" : patterns[i];
+            urlMapper.addMapping(pattern, pattern, name);
+            elementList.add(new UrlMapper.Element<>("", pattern, pattern, name, i));
+        }
+        for (String path : paths()) {
+            UrlMapper.Element<String> expect = linearMatch(elementList, path, antPathMatcher);
+            UrlMapper.Element<String> actual = urlMapper.getMappingObjectByServletPath(path);
+            assertEquals(expect == null ? null : expect.objectName, actual == null ? null : actual.objectName, path);
+        }
+    }
+
+    @Test
+    public void sameAsLinear() {
+        assertSameAsLinear(new String[]{"/foo/bar/*", "/baz/*", "/catalog", "*.bop", "default"}, false);
+        assertSameAsLinear(new String[]{"/foo/bar/*", "/foo/*", "/a/b/*", "/a/*", "/api/v1/user", "/api", "/foo/bar", "*.do", "*.html", "/*"}, false);
+        assertSameAsLinear(new String[]{"/a", "/b", "/1", "/a/b", "/foo/bar/index.html", "*.c"}, false);
+        assertSameAsLinear(new String[]{"/api/v1/*", "/api/*", "/api/v?/user", "/foo/{id}", "/a/**/b", "*.html"}, true);
+    }
+
+    @Test
+    public void specPrecedence() {
+        UrlMapper<String> urlMapper = new UrlMapper<>();
+        // extension and short prefix first. the registration order does not matter
+        urlMapper.addMapping("*.bop", "servlet4", "servlet4");
+        urlMapper.addMapping("/foo/*", "foo", "foo");
+        urlMapper.addMapping("/foo/bar/*", "servlet1", "servlet1");
+        urlMapper.addMapping("/baz/*", "servlet2", "servlet2");
+        urlMapper.addMapping("/catalog", "servlet3", "servlet3");
+        urlMapper.addMapping("/", "default", "default");
+
+        assertEquals("servlet1", urlMapper.getMappingObjectByServletPath("/foo/bar/index.html").objectName);
+        assertEquals("servlet1", urlMapper.getMappingObjectByServletPath("/foo/bar/index.bop").objectName);
+        assertEquals("foo", urlMapper.getMappingObjectByServletPath("/foo/index.bop").objectName);
+        assertEquals("servlet2", urlMapper.getMappingObjectByServletPath("/baz").objectName);
+        assertEquals("servlet2", urlMapper.getMappingObjectByServletPath("/baz/index.html").objectName);
+        assertEquals("servlet3", urlMapper.getMappingObjectByServletPath("/catalog").objectName);
+        assertEquals("default", urlMapper.getMappingObjectByServletPath("/catalog/index.html").objectName);
+        assertEquals("servlet4", urlMapper.getMappingObjectByServletPath("/catalog/racecar.bop").objectName);
+        assertEquals("servlet4", urlMapper.getMappingObjectByServletPath("/index.bop").objectName);
+    }
+
+    @Test
+    public void recompileAfterChange() {
+        UrlMapper<String> urlMapper = new UrlMapper<>();
+        urlMapper.addMapping("/a/*", "a", "a");
+        assertEquals("a", urlMapper.getMappingObjectByServletPath("/a/b").objectName);
+        assertNull(urlMapper.getMappingObjectByServletPath("/b"));
+
+        urlMapper.addMapping("/a/b", "ab", "ab");
+        assertEquals("ab", urlMapper.getMappingObjectByServletPath("/a/b").objectName);
+
+        urlMapper.setRootPath("/test");
+        assertEquals("ab", urlMapper.getMappingObjectByServletPath("/a/b").objectName);
+
+        urlMapper.clear();
+        assertNull(urlMapper.getMappingObjectByServletPath("/a/b"));
+        assertThrows(IllegalArgumentException.class, () -> {
+            urlMapper.addMapping("/c", "c", "c");
+            urlMapper.addMapping("/d", "d", "c");
+        });
+    }
+}
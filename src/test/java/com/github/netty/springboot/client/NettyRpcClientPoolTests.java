@@ -0,0 +1,88 @@
+package com.github.netty.springboot.client;
+
+import com.github.netty.protocol.nrpc.RpcClient;
+import com.github.netty.protocol.nrpc.RpcDone;
+import com.github.netty.springboot.NettyProperties;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * client pool test. least pending selection, and close the pools
+ *
+ * @author wangzihao
+ */
+public class NettyRpcClientPoolTests {
+    private static final RpcDone RPC_DONE = (RpcDone) Proxy.newProxyInstance(RpcDone.class.getClassLoader(),
+            new Class[]{RpcDone.class}, (proxy, method, args) -> null);
+
+    public interface PoolService {
+        String hello();
+    }
+
+    private static RpcClient newClient(InetSocketAddress address, int pending) {
+        RpcClient rpcClient = new RpcClient(address);
+        for (int i = 0; i < pending; i++) {
+            rpcClient.getRpcDoneMap().put(i, RPC_DONE);
+        }
+        return rpcClient;
+    }
+
+    @Test
+    public void choseLeastPendingClient() {
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", 18080);
+        NettyRpcClientProxy proxy = new NettyRpcClientProxy("pool", null, PoolService.class, new NettyProperties(), null);
+        RpcClient[] pool = {newClient(address, 3), newClient(address, 1), newClient(address, 2)};
+        for (int i = 0; i < 20; i++) {
+            assertSame(pool[1], proxy.choseLeastPending(pool));
+        }
+        RpcClient[] single = {newClient(address, 5)};
+        assertSame(single[0], proxy.choseLeastPending(single));
+    }
+
+    @Test
+    public void chooseLeastPendingAddress() {
+        InetSocketAddress address1 = new InetSocketAddress("127.0.0.1", 18081);
+        InetSocketAddress address2 = new InetSocketAddress("127.0.0.1", 18082);
+        try {
+            LeastPendingNettyRpcLoadBalanced loadBalanced = LeastPendingNettyRpcLoadBalanced.parse(Arrays.asList("127.0.0.1:18081", "", "127.0.0.1:18082"));
+            assertEquals(Arrays.asList(address1, address2), loadBalanced.getAddressList());
+
+            // the pending count is the sum of the pool
+            NettyRpcClientProxy.getClientPoolMap().put(address1, new RpcClient[]{newClient(address1, 1), newClient(address1, 2)});
+            NettyRpcClientProxy.getClientPoolMap().put(address2, new RpcClient[]{newClient(address2, 2)});
+            assertEquals(3, NettyRpcClientProxy.getPendingCount(address1));
+            assertEquals(2, NettyRpcClientProxy.getPendingCount(address2));
+            for (int i = 0; i < 20; i++) {
+                assertEquals(address2, loadBalanced.chooseAddress(null));
+            }
+        } finally {
+            NettyRpcClientProxy.closeClients();
+        }
+        assertEquals(0, NettyRpcClientProxy.getPendingCount(address1));
+        assertThrows(IllegalArgumentException.class, () -> LeastPendingNettyRpcLoadBalanced.parse(Arrays.asList("127.0.0.1")));
+    }
+
+    @Test
+    public void closeClientsShutdownSharedWorker() {
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", 18083);
+        EventLoopGroup worker = new DefaultEventLoopGroup(1);
+        RpcClient[] pool = {newClient(address, 0), newClient(address, 0)};
+        for (RpcClient rpcClient : pool) {
+            rpcClient.setWorker(worker);
+        }
+        NettyRpcClientProxy.getClientPoolMap().put(address, pool);
+        NettyRpcClientProxy.getClientMap().put(address, pool[0]);
+
+        NettyRpcClientProxy.closeClients();
+        assertTrue(worker.isShuttingDown());
+        assertTrue(NettyRpcClientProxy.getClientPoolMap().isEmpty());
+        assertTrue(NettyRpcClientProxy.getClientMap().isEmpty());
+    }
+}
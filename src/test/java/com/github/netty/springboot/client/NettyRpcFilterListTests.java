@@ -0,0 +1,73 @@
+package com.github.netty.springboot.client;
+
+import com.github.netty.core.Ordered;
+import com.github.netty.core.util.ApplicationX;
+import com.github.netty.springboot.NettyProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * cached filter list test. the list is rebuilt only when a new NettyRpcFilter bean is registered
+ *
+ * @author wangzihao
+ */
+public class NettyRpcFilterListTests {
+
+    public interface FilterService {
+        String hello();
+    }
+
+    public static class PlainFilter implements NettyRpcFilter {
+        @Override
+        public void doFilter(NettyRpcFullRequest request, FilterChain chain) throws Throwable {
+            chain.doFilter(request);
+        }
+    }
+
+    public static class OrderedFilter extends PlainFilter implements Ordered {
+        private final int order;
+
+        public OrderedFilter(int order) {
+            this.order = order;
+        }
+
+        @Override
+        public int getOrder() {
+            return order;
+        }
+    }
+
+    @Test
+    public void rebuildOnlyWhenFilterRegistered() {
+        NettyProperties properties = new NettyProperties();
+        ApplicationX application = properties.getApplication();
+        NettyRpcClientProxy proxy = new NettyRpcClientProxy("filter", null, FilterService.class, properties, null);
+
+        List<NettyRpcFilter> empty = proxy.getNettyRpcFilterList();
+        assertTrue(empty.isEmpty());
+        assertSame(empty, proxy.getNettyRpcFilterList());
+
+        // not a filter. the version not change
+        int version = application.getBeanTypeVersion(NettyRpcFilter.class);
+        application.addSingletonBean("not filter", "notFilter");
+        assertEquals(version, application.getBeanTypeVersion(NettyRpcFilter.class));
+        assertSame(empty, proxy.getNettyRpcFilterList());
+
+        PlainFilter plainFilter = new PlainFilter();
+        OrderedFilter orderedFilter2 = new OrderedFilter(2);
+        OrderedFilter orderedFilter1 = new OrderedFilter(1);
+        application.addSingletonBean(plainFilter, "plainFilter");
+        application.addSingletonBean(orderedFilter2, "orderedFilter2");
+        application.addSingletonBean(orderedFilter1, "orderedFilter1");
+        assertEquals(version + 3, application.getBeanTypeVersion(NettyRpcFilter.class));
+
+        List<NettyRpcFilter> list = proxy.getNettyRpcFilterList();
+        assertEquals(Arrays.asList(orderedFilter1, orderedFilter2, plainFilter), list);
+        assertSame(list, proxy.getNettyRpcFilterList());
+        assertThrows(UnsupportedOperationException.class, () -> list.add(plainFilter));
+    }
+}